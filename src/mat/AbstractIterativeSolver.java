@@ -0,0 +1,135 @@
+package mat;
+
+/**
+ * This abstract class represents the common aspects of the iterative solvers: the stopping
+ * criteria, the optional preconditioner, the optional parallel kernels and the bookkeeping of the
+ * metrics. The work vectors are kept between solves so that repeated solves of the same size do
+ * not allocate.
+ */
+abstract class AbstractIterativeSolver implements IterativeSolver {
+
+  protected final double tolerance;
+  protected final int maxIterations;
+  protected final Preconditioner preconditioner;
+  protected final boolean parallel;
+
+  // metrics of the solve in progress
+  protected long matrixVectorProducts;
+  protected long preconditionerApplications;
+
+  AbstractIterativeSolver(double tolerance, int maxIterations, Preconditioner preconditioner,
+      boolean parallel) throws IllegalArgumentException {
+    if (tolerance <= 0) {
+      throw new IllegalArgumentException("The tolerance of a solver must be positive");
+    }
+    if (maxIterations <= 0) {
+      throw new IllegalArgumentException("The maximum number of iterations must be positive");
+    }
+
+    this.tolerance = tolerance;
+    this.maxIterations = maxIterations;
+    this.preconditioner = preconditioner;
+    this.parallel = parallel;
+  }
+
+  @Override
+  public SolverStats solve(SquareMatrix matrix, float[] b, float[] x)
+      throws IllegalArgumentException {
+    int n = matrix.size();
+    if (b.length != n || x.length != n) {
+      throw new IllegalArgumentException(
+          "The length of the vectors does not match the size of the matrix");
+    }
+    if (this.preconditioner != null && this.preconditioner.size() != n) {
+      throw new IllegalArgumentException(
+          "The preconditioner was built for a matrix of a different size");
+    }
+
+    this.matrixVectorProducts = 0;
+    this.preconditionerApplications = 0;
+    ensureCapacity(n);
+
+    long start = System.nanoTime();
+    // assumption - all implementations extend AbstractMatrix
+    return iterate((AbstractMatrix) matrix, b, x, n, start);
+  }
+
+  /**
+   * Make sure the work vectors can hold n entries. Vectors are only reallocated if they are too
+   * short.
+   *
+   * @param n the size of the system
+   */
+  abstract void ensureCapacity(int n);
+
+  /**
+   * Run the iterations of this method.
+   *
+   * @param matrix the matrix of the system
+   * @param b      the right hand side
+   * @param x      the initial guess, overwritten with the solution
+   * @param n      the size of the system
+   * @param start  the value of System.nanoTime() when the solve started
+   * @return the metrics of this solve
+   */
+  abstract SolverStats iterate(AbstractMatrix matrix, float[] b, float[] x, int n, long start);
+
+  /**
+   * Compute y = matrix * x, counting the product.
+   */
+  void multiply(AbstractMatrix matrix, float[] x, float[] y) {
+    matrix.multiplyVector(x, y, this.parallel);
+    this.matrixVectorProducts++;
+  }
+
+  /**
+   * Store the true residual b - matrix * x in r and return its 2-norm. The residual updated by the
+   * recurrences of a method drifts away from the true one in float precision, hence convergence is
+   * confirmed with this before stopping.
+   */
+  double trueResidual(AbstractMatrix matrix, float[] b, float[] x, float[] r, int n) {
+    multiply(matrix, x, r);
+    Vectors.residual(b, r, n);
+    return norm(r, n);
+  }
+
+  /**
+   * Compute z = inverse(M) * r, or copy r into z if there is no preconditioner.
+   */
+  void precondition(float[] r, float[] z, int n) {
+    if (this.preconditioner == null) {
+      System.arraycopy(r, 0, z, 0, n);
+    } else {
+      this.preconditioner.apply(r, z);
+      this.preconditionerApplications++;
+    }
+  }
+
+  /**
+   * Return the dot product x . y using the parallel path if enabled.
+   */
+  double dot(float[] x, float[] y, int n) {
+    return Vectors.dot(x, y, n, this.parallel);
+  }
+
+  /**
+   * Return the 2-norm of x using the parallel path if enabled.
+   */
+  double norm(float[] x, int n) {
+    return Vectors.norm(x, n, this.parallel);
+  }
+
+  /**
+   * Build the metrics of the finished solve.
+   */
+  SolverStats stats(boolean converged, int iterations, double initialResidual,
+      double finalResidual, double rhsNorm, long start) {
+    return new SolverStats(converged, iterations, initialResidual, finalResidual, rhsNorm,
+        System.nanoTime() - start, this.matrixVectorProducts, this.preconditionerApplications);
+  }
+
+  // true if the vector is missing or shorter than n
+  static boolean tooShort(float[] vector, int n) {
+    return vector == null || vector.length < n;
+  }
+}
@@ -1,11 +1,139 @@
 package mat;
 
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * This abstract class represents the common aspects between different implementations of a 2D
  * square matrix.
  */
 abstract class AbstractMatrix implements SquareMatrix {
 
+  // the reductions of this matrix, computed on first use and again once this matrix changed
+  private volatile Reductions reductions;
+
+  @Override
+  public MatrixStats stats() {
+    int[] rowCounts = new int[size()];
+    int[] colCounts = new int[size()];
+    int[] band = new int[2];
+    long nnz = countEntries(rowCounts, colCounts);
+    bandwidth(band);
+    return new MatrixStats(size(), nnz, rowCounts, colCounts, band[0], band[1]);
+  }
+
+  // The reductions are computed together in one pass over the entries, and kept until the
+  // modification count of this matrix changes.
+
+  @Override
+  public float[] rowSums() {
+    return reductions().rowSums();
+  }
+
+  @Override
+  public float[] columnSums() {
+    return reductions().columnSums();
+  }
+
+  @Override
+  public float trace() {
+    return reductions().trace();
+  }
+
+  @Override
+  public float frobeniusNorm() {
+    return reductions().frobeniusNorm();
+  }
+
+  @Override
+  public float oneNorm() {
+    return reductions().oneNorm();
+  }
+
+  @Override
+  public float infinityNorm() {
+    return reductions().infinityNorm();
+  }
+
+  @Override
+  public float min() {
+    return reductions().min();
+  }
+
+  @Override
+  public float max() {
+    return reductions().max();
+  }
+
+  // By default the cells of a batch are read and written one at a time, once all are checked.
+
+  @Override
+  public void setAll(int[] rows, int[] cols, float[] values) throws IllegalArgumentException {
+    checkBatch(rows, cols, values.length);
+    for (int k = 0; k < rows.length; k++) {
+      set(rows[k], cols[k], values[k]);
+    }
+  }
+
+  @Override
+  public void getAll(int[] rows, int[] cols, float[] out) throws IllegalArgumentException {
+    checkBatch(rows, cols, out.length);
+    for (int k = 0; k < rows.length; k++) {
+      out[k] = get(rows[k], cols[k]);
+    }
+  }
+
+  @Override
+  public void forEachNonZero(IntIntFloatConsumer action) {
+    forEachInRows(0, size(), action);
+  }
+
+  @Override
+  public Spliterator<MatrixEntry> spliterator() {
+    return new EntrySpliterator(this, 0);
+  }
+
+  @Override
+  public Stream<MatrixEntry> nonZeros() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  // racing threads may each compute the reductions, any of them is correct
+  private Reductions reductions() {
+    Reductions result = this.reductions;
+    if (result == null || result.modificationCount() != modificationCount()) {
+      result = computeReductions();
+      this.reductions = result;
+    }
+    return result;
+  }
+
+  /**
+   * Compute the reductions of this matrix in one pass over its entries.
+   *
+   * @return the reductions, stamped with the modification count before the pass
+   */
+  Reductions computeReductions() {
+    return Reductions.of(this, modificationCount());
+  }
+
+  /**
+   * Get the prefix sums of the work of reading the rows of this matrix, used to split the rows
+   * between threads. By default a row weighs its entries, plus one for the row itself.
+   *
+   * @return the prefix sums of the work of the rows, of length size() + 1
+   */
+  long[] rowWork() {
+    int[] rowCounts = new int[size()];
+    countEntries(rowCounts, null);
+    long[] prefix = new long[size() + 1];
+    for (int i = 0; i < rowCounts.length; i++) {
+      prefix[i + 1] = prefix[i] + rowCounts[i] + 1;
+    }
+    return prefix;
+  }
+
   // Abstract methods for mixed case. SparseMatrix being provided an ArrayMatrix
 
   /**
@@ -59,4 +187,174 @@ abstract class AbstractMatrix implements SquareMatrix {
    * @return a square matrix
    */
   abstract protected SquareMatrix premulArrayMatrix(ArrayMatrix other);
+
+  // Entry by entry operations. The Hadamard product commutes, but the Kronecker product and the
+  // maps do not, so for these the argument is always the left operand.
+
+  /**
+   * This implementation is good for the Hadamard product of a SparseMatrix with a SquareMatrix.
+   *
+   * @param other a sparse matrix
+   * @return a square matrix
+   */
+  abstract protected SquareMatrix hadamardSparseMatrix(SparseMatrix other);
+
+  /**
+   * This implementation is good for the Hadamard product of an ArrayMatrix with a SquareMatrix.
+   *
+   * @param other an array matrix
+   * @return a square matrix
+   */
+  abstract protected SquareMatrix hadamardArrayMatrix(ArrayMatrix other);
+
+  /**
+   * This implementation is good for the Kronecker product of a SparseMatrix with a SquareMatrix
+   * i.e. SparseMatrix (x) SquareMatrix.
+   *
+   * @param other a sparse matrix
+   * @return a square matrix
+   * @throws IllegalArgumentException if the result would have too many entries to be stored
+   */
+  abstract protected SquareMatrix kroneckerSparseMatrix(SparseMatrix other)
+      throws IllegalArgumentException;
+
+  /**
+   * This implementation is good for the Kronecker product of an ArrayMatrix with a SquareMatrix
+   * i.e. ArrayMatrix (x) SquareMatrix.
+   *
+   * @param other an array matrix
+   * @return a square matrix
+   * @throws IllegalArgumentException if the result would have too many entries to be stored
+   */
+  abstract protected SquareMatrix kroneckerArrayMatrix(ArrayMatrix other)
+      throws IllegalArgumentException;
+
+  /**
+   * This implementation is good for mapping a SparseMatrix and a SquareMatrix entry by entry i.e.
+   * result(i, j) = function(SparseMatrix(i, j), SquareMatrix(i, j)).
+   *
+   * @param other    a sparse matrix
+   * @param function the function of the pairs of entries
+   * @return a square matrix
+   */
+  abstract protected SquareMatrix mapSparseMatrix(SparseMatrix other,
+      FloatBinaryOperator function);
+
+  /**
+   * This implementation is good for mapping an ArrayMatrix and a SquareMatrix entry by entry i.e.
+   * result(i, j) = function(ArrayMatrix(i, j), SquareMatrix(i, j)).
+   *
+   * @param other    an array matrix
+   * @param function the function of the pairs of entries
+   * @return a square matrix
+   */
+  abstract protected SquareMatrix mapArrayMatrix(ArrayMatrix other,
+      FloatBinaryOperator function);
+
+  /**
+   * Check that the Kronecker product of two matrices of the given sizes has few enough rows, and
+   * return its size.
+   *
+   * @param left  the size of the left operand
+   * @param right the size of the right operand
+   * @return the size of the product
+   * @throws IllegalArgumentException if the product has too many rows
+   */
+  static int kroneckerSize(int left, int right) throws IllegalArgumentException {
+    long size = (long) left * right;
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException(
+          "The Kronecker product of the two matrices has too many rows to be stored");
+    }
+    return (int) size;
+  }
+
+  // Hooks used by the solvers. These work on plain vectors rather than on other matrices.
+
+  /**
+   * Multiply this matrix with the given vector and store the result in the other given vector i.e.
+   * y = this * x. The previous contents of y are overwritten. x and y must not be the same array.
+   *
+   * @param x        the vector to be multiplied, of length size()
+   * @param y        the vector to store the result in, of length size()
+   * @param parallel true if the rows may be processed by multiple threads
+   */
+  abstract void multiplyVector(float[] x, float[] y, boolean parallel);
+
+  /**
+   * Copy the diagonal of this matrix into the given array.
+   *
+   * @param out the array to store the diagonal in, of length size()
+   */
+  abstract void diagonal(float[] out);
+
+  /**
+   * Return a copy of the non-zero entries of this matrix in compressed row form. The entries of
+   * every row are sorted by column. The arrays may be shared with this matrix, so they must not be
+   * modified.
+   *
+   * @return the compressed rows of this matrix
+   */
+  abstract CompressedRows compressRows();
+
+  /**
+   * Count the non-zero entries of every row and every column of this matrix. The arrays must be
+   * filled with zeros, and either of them may be null if its counts are not needed.
+   *
+   * @param rowCounts the array to store the number of entries of every row in, or null
+   * @param colCounts the array to store the number of entries of every column in, or null
+   * @return the number of non-zero entries of this matrix
+   */
+  abstract long countEntries(int[] rowCounts, int[] colCounts);
+
+  /**
+   * Find how far the non-zero entries of this matrix lie from the main diagonal.
+   *
+   * @param out the array to store the largest i - j of an entry (i, j) in at index 0, and the
+   *            largest j - i at index 1, both 0 if there is no such entry
+   */
+  abstract void bandwidth(int[] out);
+
+  /**
+   * Perform the given action on the non-zero entries of the given rows of this matrix, row by row
+   * and by column within a row. This backs forEachNonZero, the spliterators and the reductions.
+   *
+   * @param from   the first row
+   * @param to     the row after the last one
+   * @param action the action to perform on the entries
+   */
+  abstract void forEachInRows(int from, int to, IntIntFloatConsumer action);
+
+  /**
+   * Check that the given row or column is within the bounds of this matrix.
+   *
+   * @param index the row or column
+   * @param what  "Row" or "Column", for the message
+   * @throws IllegalArgumentException if the index is not within the bounds of this matrix
+   */
+  void checkIndex(int index, String what) throws IllegalArgumentException {
+    if (index < 0 || index >= size()) {
+      throw new IllegalArgumentException(
+          what + " number cannot be beyond the bounds of the matrix");
+    }
+  }
+
+  /**
+   * Check that the arrays of a batch of cells are of the same length, and that every cell is
+   * within the bounds of this matrix.
+   *
+   * @param rows   the rows of the cells
+   * @param cols   the columns of the cells
+   * @param length the length of the array of values
+   * @throws IllegalArgumentException if the lengths differ or a cell is out of bounds
+   */
+  void checkBatch(int[] rows, int[] cols, int length) throws IllegalArgumentException {
+    if (rows.length != cols.length || rows.length != length) {
+      throw new IllegalArgumentException("The arrays of a batch must be of the same length");
+    }
+    for (int k = 0; k < rows.length; k++) {
+      checkIndex(rows[k], "Row");
+      checkIndex(cols[k], "Column");
+    }
+  }
 }
@@ -25,6 +25,21 @@ abstract class AbstractNode<T> {
 
   AbstractNode(int rowIndex, int colIndex, AbstractNode<T> left, AbstractNode<T> right,
       AbstractNode<T> top, AbstractNode<T> bottom) {
+    link(rowIndex, colIndex, left, right, top, bottom);
+  }
+
+  /**
+   * Place this node at the given position between the given links.
+   *
+   * @param rowIndex row index of the node
+   * @param colIndex col index of the node
+   * @param left     left link of the node
+   * @param right    right link of the node
+   * @param top      top link of the node
+   * @param bottom   bottom link of the node
+   */
+  void link(int rowIndex, int colIndex, AbstractNode<T> left, AbstractNode<T> right,
+      AbstractNode<T> top, AbstractNode<T> bottom) {
     this.rowIndex = rowIndex;
     this.colIndex = colIndex;
     this.left = left;
@@ -1,5 +1,7 @@
 package mat;
 
+import java.util.stream.IntStream;
+
 /**
  * This class implements a 2D matrix of numbers using a 2D array. This implementation is efficient
  * if most of the entries of the matrix are not zero. But this wastes a lot of space and computing
@@ -8,6 +10,12 @@ package mat;
 public class ArrayMatrix extends AbstractMatrix {
 
   private float[][] mat;
+  // number of non-zero entries of the matrix and of every row and column, kept up to date by set
+  private long nnz;
+  private int[] rowCounts;
+  private int[] colCounts;
+  // number of calls of set and setIdentity
+  private long modifications;
 
   /**
    * Constructs a new matrix of the given dimensions. All entries of this matrix are by default, 0
@@ -26,21 +34,30 @@ public class ArrayMatrix extends AbstractMatrix {
         mat[i][j] = 0.0f;
       }
     }
+    rowCounts = new int[size];
+    colCounts = new int[size];
   }
 
-  private ArrayMatrix(float[][] mat) throws IllegalArgumentException {
+  // takes over the given rows, which the caller must not use afterwards
+  ArrayMatrix(float[][] mat) throws IllegalArgumentException {
     int numRows = mat.length;
-    int numCols = mat[0].length;
+    int numCols = numRows == 0 ? 0 : mat[0].length;
     //ensuring all rows have the same number of columns
     for (int i = 0; i < numRows; i += 1) {
       if (mat[i].length != numCols) {
         throw new IllegalArgumentException("Unequal number of columns");
       }
     }
-    this.mat = new float[numRows][numCols];
+    this.mat = mat;
+    this.rowCounts = new int[numRows];
+    this.colCounts = new int[numCols];
     for (int i = 0; i < numRows; i += 1) {
       for (int j = 0; j < numCols; j += 1) {
-        this.mat[i][j] = mat[i][j];
+        if (mat[i][j] != 0f) {
+          this.nnz += 1;
+          this.rowCounts[i] += 1;
+          this.colCounts[j] += 1;
+        }
       }
     }
   }
@@ -56,7 +73,11 @@ public class ArrayMatrix extends AbstractMatrix {
           mat[i][j] = 0;
         }
       }
+      rowCounts[i] = 1;
+      colCounts[i] = 1;
     }
+    nnz = mat.length;
+    modifications++;
   }
 
   @Override
@@ -70,7 +91,24 @@ public class ArrayMatrix extends AbstractMatrix {
       throw new IllegalArgumentException(
           "Column number in set cannot be beyond the bounds of the matrix");
     }
+    // count the cell if it turns from zero to non-zero or back
+    int change = (value != 0f ? 1 : 0) - (mat[i][j] != 0f ? 1 : 0);
+    nnz += change;
+    rowCounts[i] += change;
+    colCounts[j] += change;
     mat[i][j] = value;
+    modifications++;
+  }
+
+  // add the given value to the entry (i, j), which must be in the bounds of this matrix
+  void addAt(int i, int j, float value) {
+    float sum = mat[i][j] + value;
+    int change = (sum != 0f ? 1 : 0) - (mat[i][j] != 0f ? 1 : 0);
+    nnz += change;
+    rowCounts[i] += change;
+    colCounts[j] += change;
+    mat[i][j] = sum;
+    modifications++;
   }
 
   @Override
@@ -95,7 +133,17 @@ public class ArrayMatrix extends AbstractMatrix {
     }
 
     // assumption - all implementations extend AbstractMatrix
-    return ((AbstractMatrix) other).addArrayMatrix(this);
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).addArrayMatrix(this);
+      MatrixMetrics.record("add", this, other, result, start);
+      event.finish("add", "addArrayMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
   }
 
   @Override
@@ -108,7 +156,17 @@ public class ArrayMatrix extends AbstractMatrix {
 
     // assumption - all implementations extend AbstractMatrix
     // need to achieve this * other
-    return ((AbstractMatrix) other).premulArrayMatrix(this);
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).premulArrayMatrix(this);
+      MatrixMetrics.record("postmul", this, other, result, start);
+      event.finish("postmul", "premulArrayMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
 
 
   }
@@ -123,7 +181,175 @@ public class ArrayMatrix extends AbstractMatrix {
 
     // assumption - all implementations extend AbstractMatrix
     // need to achieve other * this
-    return ((AbstractMatrix) other).postmulArrayMatrix(this);
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).postmulArrayMatrix(this);
+      MatrixMetrics.record("premul", this, other, result, start);
+      event.finish("premul", "postmulArrayMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
+  }
+
+  @Override
+  public SquareMatrix hadamard(SquareMatrix other) throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be multiplied entry by entry");
+    }
+
+    // assumption - all implementations extend AbstractMatrix
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).hadamardArrayMatrix(this);
+      MatrixMetrics.record("hadamard", this, other, result, start);
+      event.finish("hadamard", "hadamardArrayMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
+  }
+
+  @Override
+  public SquareMatrix kronecker(SquareMatrix other) throws IllegalArgumentException {
+    kroneckerSize(this.size(), other.size());
+
+    // assumption - all implementations extend AbstractMatrix
+    // need to achieve this (x) other
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).kroneckerArrayMatrix(this);
+      MatrixMetrics.record("kronecker", this, other, result, start);
+      event.finish("kronecker", "kroneckerArrayMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
+  }
+
+  @Override
+  public SquareMatrix map(FloatUnaryOperator function) {
+    // the matrix stands for both operands, so it is recorded once
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      float[][] values = new float[this.size()][this.size()];
+      for (int i = 0; i < this.size(); i += 1) {
+        for (int j = 0; j < this.size(); j += 1) {
+          values[i][j] = function.apply(this.mat[i][j]);
+        }
+      }
+      SquareMatrix result = new ArrayMatrix(values);
+      MatrixMetrics.record("mapUnary", this, this, result, start);
+      event.finish("mapUnary", "map", this, this, result);
+      return result;
+    } finally {
+      event.release();
+    }
+  }
+
+  @Override
+  public SquareMatrix map(SquareMatrix other, FloatBinaryOperator function)
+      throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be mapped entry by entry");
+    }
+
+    // assumption - all implementations extend AbstractMatrix
+    // need to achieve function(this, other)
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).mapArrayMatrix(this, function);
+      MatrixMetrics.record("map", this, other, result, start);
+      event.finish("map", "mapArrayMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
+  }
+
+  @Override
+  public void scale(float alpha) {
+    for (int i = 0; i < mat.length; i += 1) {
+      float[] row = mat[i];
+      for (int j = 0; j < row.length; j += 1) {
+        float value = alpha * row[j];
+        if (value == 0f && row[j] != 0f) {
+          nnz -= 1;
+          rowCounts[i] -= 1;
+          colCounts[j] -= 1;
+        }
+        row[j] = value;
+      }
+    }
+    modifications++;
+  }
+
+  @Override
+  public void axpy(float alpha, SquareMatrix other) throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be added together");
+    }
+    if (alpha == 0f) {
+      return;
+    }
+    if (!(other instanceof ArrayMatrix)) {
+      // assumption - all implementations extend AbstractMatrix
+      CompressedRows x = ((AbstractMatrix) other).compressRows();
+      for (int i = 0; i < x.size; i += 1) {
+        float[] row = mat[i];
+        for (int p = x.rowStart[i]; p < x.rowStart[i + 1]; p += 1) {
+          int j = x.colIndex[p];
+          float sum = alpha * x.values[p] + row[j];
+          int change = (sum != 0f ? 1 : 0) - (row[j] != 0f ? 1 : 0);
+          nnz += change;
+          rowCounts[i] += change;
+          colCounts[j] += change;
+          row[j] = sum;
+        }
+      }
+    } else {
+      // the rows of other are read before they are written, so other may be this
+      float[][] rowsOfOther = ((ArrayMatrix) other).mat;
+      for (int i = 0; i < mat.length; i += 1) {
+        float[] row = mat[i];
+        float[] otherRow = rowsOfOther[i];
+        for (int j = 0; j < row.length; j += 1) {
+          float sum = alpha * otherRow[j] + row[j];
+          int change = (sum != 0f ? 1 : 0) - (row[j] != 0f ? 1 : 0);
+          nnz += change;
+          rowCounts[i] += change;
+          colCounts[j] += change;
+          row[j] = sum;
+        }
+      }
+    }
+    modifications++;
+  }
+
+  @Override
+  public void multiply(float alpha, float[] x, float beta, float[] y)
+      throws IllegalArgumentException {
+    if (x.length != mat.length || y.length != mat.length) {
+      throw new IllegalArgumentException(
+          "The length of the vector does not match the size of the matrix");
+    }
+    for (int i = 0; i < mat.length; i += 1) {
+      float sum = alpha * rowDot(i, x);
+      y[i] = beta == 0f ? sum : sum + beta * y[i];
+    }
   }
 
   @Override
@@ -131,6 +357,23 @@ public class ArrayMatrix extends AbstractMatrix {
     return mat.length;
   }
 
+  @Override
+  public long nnz() {
+    return nnz;
+  }
+
+  @Override
+  public long modificationCount() {
+    return modifications;
+  }
+
+  @Override
+  public long estimatedBytes() {
+    // this matrix, the array of rows, the rows and the two arrays of counts
+    long n = mat.length;
+    return 32 + (16 + 4 * n) + n * (16 + 4 * n) + 2 * (16 + 4 * n);
+  }
+
   @Override
   protected SquareMatrix addSparseMatrix(SparseMatrix other) {
     return other.addArrayMatrix(this);
@@ -184,4 +427,245 @@ public class ArrayMatrix extends AbstractMatrix {
     }
     return new ArrayMatrix(result);
   }
+
+  @Override
+  protected SquareMatrix hadamardSparseMatrix(SparseMatrix other) {
+    return other.hadamardArrayMatrix(this);
+  }
+
+  @Override
+  protected SquareMatrix hadamardArrayMatrix(ArrayMatrix other) {
+    float[][] result = new float[this.size()][this.size()];
+    for (int i = 0; i < this.size(); i += 1) {
+      for (int j = 0; j < this.size(); j += 1) {
+        result[i][j] = other.mat[i][j] * this.mat[i][j];
+      }
+    }
+    return new ArrayMatrix(result);
+  }
+
+  @Override
+  protected SquareMatrix kroneckerSparseMatrix(SparseMatrix other)
+      throws IllegalArgumentException {
+    // every block of the result is a scaled copy of this or empty, so it is as sparse as other
+    return SparseMatrix.kronecker(other.compressRows(), this.compressRows());
+  }
+
+  @Override
+  protected SquareMatrix kroneckerArrayMatrix(ArrayMatrix other)
+      throws IllegalArgumentException {
+    int n = this.size();
+    float[][] result = new float[kroneckerSize(other.size(), n)][];
+    for (int i = 0; i < other.size(); i += 1) {
+      for (int k = 0; k < n; k += 1) {
+        float[] row = new float[result.length];
+        for (int j = 0; j < other.size(); j += 1) {
+          float scale = other.mat[i][j];
+          if (scale != 0f) {
+            for (int l = 0; l < n; l += 1) {
+              row[j * n + l] = scale * this.mat[k][l];
+            }
+          }
+        }
+        result[i * n + k] = row;
+      }
+    }
+    return new ArrayMatrix(result);
+  }
+
+  @Override
+  protected SquareMatrix mapSparseMatrix(SparseMatrix other, FloatBinaryOperator function) {
+    // other maps with this as its left operand, so the operands of the function are swapped back
+    return other.mapArrayMatrix(this, (left, right) -> function.apply(right, left));
+  }
+
+  @Override
+  protected SquareMatrix mapArrayMatrix(ArrayMatrix other, FloatBinaryOperator function) {
+    float[][] result = new float[this.size()][this.size()];
+    for (int i = 0; i < this.size(); i += 1) {
+      for (int j = 0; j < this.size(); j += 1) {
+        result[i][j] = function.apply(other.mat[i][j], this.mat[i][j]);
+      }
+    }
+    return new ArrayMatrix(result);
+  }
+
+  @Override
+  void multiplyVector(float[] x, float[] y, boolean parallel) {
+    if (parallel) {
+      IntStream.range(0, mat.length).parallel().forEach(i -> y[i] = rowDot(i, x));
+    } else {
+      for (int i = 0; i < mat.length; i += 1) {
+        y[i] = rowDot(i, x);
+      }
+    }
+  }
+
+  // dot product of the given row of this matrix with the vector x
+  private float rowDot(int i, float[] x) {
+    float[] row = mat[i];
+    float sum = 0f;
+    for (int j = 0; j < row.length; j += 1) {
+      sum += row[j] * x[j];
+    }
+    return sum;
+  }
+
+  /**
+   * Get the rows of this matrix, for the kernels of the other implementations that read them
+   * directly instead of calling get for every entry.
+   *
+   * @return the rows of this matrix, they must not be modified
+   */
+  float[][] rows() {
+    return mat;
+  }
+
+  @Override
+  void diagonal(float[] out) {
+    for (int i = 0; i < mat.length; i += 1) {
+      out[i] = mat[i][i];
+    }
+  }
+
+  @Override
+  CompressedRows compressRows() {
+    int size = mat.length;
+    int[] rowStart = new int[size + 1];
+    for (int i = 0; i < size; i += 1) {
+      int count = 0;
+      for (int j = 0; j < size; j += 1) {
+        if (mat[i][j] != 0f) {
+          count += 1;
+        }
+      }
+      rowStart[i + 1] = rowStart[i] + count;
+    }
+
+    int[] colIndex = new int[rowStart[size]];
+    float[] values = new float[rowStart[size]];
+    int pos = 0;
+    for (int i = 0; i < size; i += 1) {
+      for (int j = 0; j < size; j += 1) {
+        if (mat[i][j] != 0f) {
+          colIndex[pos] = j;
+          values[pos] = mat[i][j];
+          pos += 1;
+        }
+      }
+    }
+    return new CompressedRows(size, rowStart, colIndex, values);
+  }
+
+  @Override
+  long countEntries(int[] rowCounts, int[] colCounts) {
+    if (rowCounts != null) {
+      System.arraycopy(this.rowCounts, 0, rowCounts, 0, mat.length);
+    }
+    if (colCounts != null) {
+      System.arraycopy(this.colCounts, 0, colCounts, 0, mat.length);
+    }
+    return nnz;
+  }
+
+  // every row is read in full, whatever its entries
+  @Override
+  long[] rowWork() {
+    long[] prefix = new long[mat.length + 1];
+    for (int i = 0; i < mat.length; i += 1) {
+      prefix[i + 1] = prefix[i] + mat.length;
+    }
+    return prefix;
+  }
+
+  @Override
+  void forEachInRows(int from, int to, IntIntFloatConsumer action) {
+    for (int i = from; i < to; i += 1) {
+      if (rowCounts[i] == 0) {
+        continue;
+      }
+      float[] row = mat[i];
+      for (int j = 0; j < row.length; j += 1) {
+        if (row[j] != 0f) {
+          action.accept(i, j, row[j]);
+        }
+      }
+    }
+  }
+
+  @Override
+  public EntryCursor rowCursor(int i) throws IllegalArgumentException {
+    checkIndex(i, "Row");
+    return new DenseCursor(mat, i, true);
+  }
+
+  @Override
+  public EntryCursor columnCursor(int j) throws IllegalArgumentException {
+    checkIndex(j, "Column");
+    return new DenseCursor(mat, j, false);
+  }
+
+  @Override
+  void bandwidth(int[] out) {
+    out[0] = 0;
+    out[1] = 0;
+    for (int i = 0; i < mat.length; i += 1) {
+      if (rowCounts[i] == 0) {
+        continue;
+      }
+      int first = 0;
+      while (mat[i][first] == 0f) {
+        first += 1;
+      }
+      int last = mat.length - 1;
+      while (mat[i][last] == 0f) {
+        last -= 1;
+      }
+      out[0] = Math.max(out[0], i - first);
+      out[1] = Math.max(out[1], last - i);
+    }
+  }
+
+  /**
+   * A cursor over a row or a column of the array, skipping the entries that are 0.
+   */
+  private static final class DenseCursor implements EntryCursor {
+
+    private final float[][] mat;
+    private final int line;
+    private final boolean byRow;
+    private int k = -1;
+
+    private DenseCursor(float[][] mat, int line, boolean byRow) {
+      this.mat = mat;
+      this.line = line;
+      this.byRow = byRow;
+    }
+
+    @Override
+    public boolean next() {
+      while (k < mat.length) {
+        k += 1;
+        if (k < mat.length && getValue() != 0f) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public int getRow() {
+      return byRow ? line : k;
+    }
+
+    @Override
+    public int getColumn() {
+      return byRow ? k : line;
+    }
+
+    @Override
+    public float getValue() {
+      return byRow ? mat[line][k] : mat[k][line];
+    }
+  }
 }
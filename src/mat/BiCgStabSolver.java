@@ -0,0 +1,151 @@
+package mat;
+
+/**
+ * This class represents the right-preconditioned biconjugate gradient stabilized method
+ * (BiCGSTAB). It solves systems with general non-symmetric matrices using two matrix-vector
+ * products per iteration. A solver keeps its work vectors between solves, hence a single instance
+ * should not be used by multiple threads at the same time.
+ */
+public class BiCgStabSolver extends AbstractIterativeSolver {
+
+  private float[] r;
+  private float[] shadow;
+  private float[] p;
+  private float[] v;
+  private float[] s;
+  private float[] t;
+  private float[] preconditioned;
+
+  /**
+   * Constructs a BiCGSTAB solver without a preconditioner.
+   *
+   * @param tolerance     the relative residual ||b - A * x|| / ||b|| at which to stop
+   * @param maxIterations the maximum number of iterations
+   * @throws IllegalArgumentException if the tolerance or the number of iterations is not positive
+   */
+  public BiCgStabSolver(double tolerance, int maxIterations) throws IllegalArgumentException {
+    this(tolerance, maxIterations, null, false);
+  }
+
+  /**
+   * Constructs a BiCGSTAB solver.
+   *
+   * @param tolerance      the relative residual ||b - A * x|| / ||b|| at which to stop
+   * @param maxIterations  the maximum number of iterations
+   * @param preconditioner the preconditioner, or null for none
+   * @param parallel       true to split the matrix-vector products and dot products between
+   *                       threads
+   * @throws IllegalArgumentException if the tolerance or the number of iterations is not positive
+   */
+  public BiCgStabSolver(double tolerance, int maxIterations, Preconditioner preconditioner,
+      boolean parallel) throws IllegalArgumentException {
+    super(tolerance, maxIterations, preconditioner, parallel);
+  }
+
+  @Override
+  void ensureCapacity(int n) {
+    if (tooShort(this.r, n)) {
+      this.r = new float[n];
+      this.shadow = new float[n];
+      this.p = new float[n];
+      this.v = new float[n];
+      this.s = new float[n];
+      this.t = new float[n];
+      this.preconditioned = new float[n];
+    }
+  }
+
+  @Override
+  SolverStats iterate(AbstractMatrix matrix, float[] b, float[] x, int n, long start) {
+    double rhsNorm = norm(b, n);
+    double target = this.tolerance * (rhsNorm == 0 ? 1 : rhsNorm);
+
+    double initialResidual = trueResidual(matrix, b, x, this.r, n);
+    double residual = initialResidual;
+    if (residual <= target) {
+      return stats(true, 0, initialResidual, residual, rhsNorm, start);
+    }
+
+    double rho = 1;
+    double alpha = 1;
+    double omega = 1;
+    boolean restart = true;
+
+    int iteration = 0;
+    while (iteration < this.maxIterations) {
+      if (restart) {
+        // start over from the residual currently in r
+        System.arraycopy(this.r, 0, this.shadow, 0, n);
+        for (int i = 0; i < n; i++) {
+          this.p[i] = 0f;
+          this.v[i] = 0f;
+        }
+        rho = 1;
+        alpha = 1;
+        omega = 1;
+        restart = false;
+      }
+      iteration++;
+      double rhoNext = dot(this.shadow, this.r, n);
+      if (rhoNext == 0 || omega == 0) {
+        // breakdown, the shadow residual became orthogonal to the residual
+        break;
+      }
+
+      // p = r + beta * (p - omega * v)
+      double beta = (rhoNext / rho) * (alpha / omega);
+      float fb = (float) beta;
+      float fo = (float) omega;
+      for (int i = 0; i < n; i++) {
+        this.p[i] = this.r[i] + fb * (this.p[i] - fo * this.v[i]);
+      }
+
+      precondition(this.p, this.preconditioned, n);
+      multiply(matrix, this.preconditioned, this.v);
+      double shadowV = dot(this.shadow, this.v, n);
+      if (shadowV == 0) {
+        break;
+      }
+      alpha = rhoNext / shadowV;
+      Vectors.axpy(alpha, this.preconditioned, x, n);
+
+      // s = r - alpha * v
+      float fa = (float) alpha;
+      for (int i = 0; i < n; i++) {
+        this.s[i] = this.r[i] - fa * this.v[i];
+      }
+      residual = norm(this.s, n);
+      if (residual <= target) {
+        residual = trueResidual(matrix, b, x, this.r, n);
+        if (residual <= target) {
+          return stats(true, iteration, initialResidual, residual, rhsNorm, start);
+        }
+        // the recurrence drifted from the true residual
+        restart = true;
+        continue;
+      }
+
+      precondition(this.s, this.preconditioned, n);
+      multiply(matrix, this.preconditioned, this.t);
+      double tt = dot(this.t, this.t, n);
+      omega = tt == 0 ? 0 : dot(this.t, this.s, n) / tt;
+      Vectors.axpy(omega, this.preconditioned, x, n);
+
+      // r = s - omega * t
+      fo = (float) omega;
+      for (int i = 0; i < n; i++) {
+        this.r[i] = this.s[i] - fo * this.t[i];
+      }
+      residual = norm(this.r, n);
+      if (residual <= target) {
+        residual = trueResidual(matrix, b, x, this.r, n);
+        if (residual <= target) {
+          return stats(true, iteration, initialResidual, residual, rhsNorm, start);
+        }
+        restart = true;
+      }
+      rho = rhoNext;
+    }
+    return stats(false, iteration, initialResidual, residual, rhsNorm, start);
+  }
+}
@@ -10,6 +10,9 @@ import java.util.List;
  */
 class ColumnSentinel<T> extends AbstractNode<T> {
 
+  // number of data nodes in this column, kept up to date by the matrix
+  int count;
+
   ColumnSentinel() {
     super();
     this.left = this;
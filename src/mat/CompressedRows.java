@@ -0,0 +1,168 @@
+package mat;
+
+/**
+ * This class represents the non-zero entries of a square matrix stored in compressed row form. The
+ * entries of row i are found at positions rowStart[i] (inclusive) to rowStart[i + 1] (exclusive) of
+ * colIndex and values, sorted by column.
+ */
+final class CompressedRows {
+
+  final int size;
+  final int[] rowStart;
+  final int[] colIndex;
+  final float[] values;
+
+  CompressedRows(int size, int[] rowStart, int[] colIndex, float[] values) {
+    this.size = size;
+    this.rowStart = rowStart;
+    this.colIndex = colIndex;
+    this.values = values;
+  }
+
+  /**
+   * Get the number of non-zero entries stored.
+   *
+   * @return the number of stored entries
+   */
+  int nnz() {
+    return this.rowStart[this.size];
+  }
+
+  /**
+   * Compute y = A * x, split between threads by the given scheduler. The scheduler cuts the
+   * entries into tasks of equal size, so a row may be split between tasks. Every task sums the
+   * rows it holds entirely into y, and keeps the partial sums of the rows cut by its bounds, which
+   * are added up once all tasks are done.
+   *
+   * @param x         the vector to multiply with
+   * @param y         the vector that receives the product
+   * @param scheduler the split of the entries, built by RowScheduler.byWeight from rowStart
+   * @return the load of the threads that ran the product
+   */
+  ScheduleStats multiply(float[] x, float[] y, RowScheduler scheduler) {
+    long[] prefix = scheduler.prefix();
+    int tasks = scheduler.tasks();
+    // the row a task starts in the middle of, and the row it ends in the middle of, with the sums
+    // of their entries in the task
+    int[] headRow = new int[tasks];
+    float[] headSum = new float[tasks];
+    int[] tailRow = new int[tasks];
+    float[] tailSum = new float[tasks];
+
+    ScheduleStats stats = scheduler.run((t, from, to) -> {
+      headRow[t] = -1;
+      tailRow[t] = -1;
+      int end = (int) to;
+      int i = RowScheduler.firstAtLeast(prefix, from);
+      if (i > 0 && this.rowStart[i] > from) {
+        headRow[t] = i - 1;
+        headSum[t] = dot(x, (int) from, Math.min(this.rowStart[i], end));
+      }
+      for (; i < this.size && this.rowStart[i] < end; i++) {
+        if (this.rowStart[i + 1] <= end) {
+          y[i] = dot(x, this.rowStart[i], this.rowStart[i + 1]);
+        } else {
+          tailRow[t] = i;
+          tailSum[t] = dot(x, this.rowStart[i], end);
+        }
+      }
+    });
+
+    // the empty rows after the last entry belong to no task
+    for (int i = RowScheduler.firstAtLeast(prefix, nnz()); i < this.size; i++) {
+      y[i] = 0f;
+    }
+    for (int t = 0; t < tasks; t++) {
+      if (headRow[t] >= 0) {
+        y[headRow[t]] = 0f;
+      }
+      if (tailRow[t] >= 0) {
+        y[tailRow[t]] = 0f;
+      }
+    }
+    for (int t = 0; t < tasks; t++) {
+      if (headRow[t] >= 0) {
+        y[headRow[t]] += headSum[t];
+      }
+      if (tailRow[t] >= 0) {
+        y[tailRow[t]] += tailSum[t];
+      }
+    }
+    return stats;
+  }
+
+  // the sum of the entries from position from to position to, times the entries of x
+  private float dot(float[] x, int from, int to) {
+    float sum = 0f;
+    for (int p = from; p < to; p++) {
+      sum += this.values[p] * x[this.colIndex[p]];
+    }
+    return sum;
+  }
+
+  /**
+   * Return the transpose of these compressed rows. Since the rows of the transpose are the columns
+   * of the matrix, this also converts the matrix into compressed column form. The entries of every
+   * row of the transpose are sorted by column.
+   *
+   * @return the compressed rows of the transpose
+   */
+  CompressedRows transpose() {
+    int[] start = new int[this.size + 1];
+    for (int p = 0; p < nnz(); p++) {
+      start[this.colIndex[p] + 1]++;
+    }
+    for (int j = 0; j < this.size; j++) {
+      start[j + 1] += start[j];
+    }
+
+    // rows are visited in order, hence every row of the transpose comes out sorted
+    int[] next = new int[this.size];
+    System.arraycopy(start, 0, next, 0, this.size);
+    int[] index = new int[nnz()];
+    float[] data = new float[nnz()];
+    for (int i = 0; i < this.size; i++) {
+      for (int p = this.rowStart[i]; p < this.rowStart[i + 1]; p++) {
+        int q = next[this.colIndex[p]]++;
+        index[q] = i;
+        data[q] = this.values[p];
+      }
+    }
+    return new CompressedRows(this.size, start, index, data);
+  }
+
+  /**
+   * Return the pattern of the sum of this matrix and its transpose, without the diagonal. This is
+   * the adjacency structure of the undirected graph of the matrix, used by the orderings. The
+   * entries of every row are sorted by column, and the values are all zero.
+   *
+   * @return the symmetric pattern of this matrix
+   */
+  CompressedRows symmetricPattern() {
+    CompressedRows transpose = transpose();
+    int[] start = new int[this.size + 1];
+    int[] index = new int[2 * nnz()];
+    int count = 0;
+    for (int i = 0; i < this.size; i++) {
+      // merge the sorted rows of A and transpose(A)
+      int p = this.rowStart[i];
+      int q = transpose.rowStart[i];
+      while (p < this.rowStart[i + 1] || q < transpose.rowStart[i + 1]) {
+        int a = p < this.rowStart[i + 1] ? this.colIndex[p] : Integer.MAX_VALUE;
+        int b = q < transpose.rowStart[i + 1] ? transpose.colIndex[q] : Integer.MAX_VALUE;
+        if (a <= b) {
+          p++;
+        }
+        if (b <= a) {
+          q++;
+        }
+        int j = Math.min(a, b);
+        if (j != i) {
+          index[count++] = j;
+        }
+      }
+      start[i + 1] = count;
+    }
+    return new CompressedRows(this.size, start, index, new float[count]);
+  }
+}
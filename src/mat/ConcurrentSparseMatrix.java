@@ -0,0 +1,588 @@
+package mat;
+
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class represents a SparseMatrix that can be read and updated by many threads at the same
+ * time. The rows and the columns are each guarded by a fixed number of read-write locks (stripes),
+ * row i by stripe i mod stripes and column j by stripe j mod stripes. Setting the cell (i, j)
+ * locks the stripe of row i and then the stripe of column j, since it relinks both lists. Getting a
+ * cell only walks its row, so it only takes the read lock of the stripe of the row. Updates of
+ * cells in different row and column stripes, and reads of different rows, proceed in parallel.
+ *
+ * <p>Locks are always acquired row stripe first, then column stripe, and a thread never holds more
+ * than one stripe of either kind while waiting for another, so updates cannot deadlock. Operations
+ * on the whole matrix read the rows under all row stripes, in increasing order, and work on a
+ * consistent copy where they need the columns too. No locks of two different matrices are ever
+ * held at the same time.
+ *
+ * <p>How the throughput of updates grows with the number of writer threads has not been measured,
+ * as it was only benchmarked on a single processor. Writers of different stripes share no lock,
+ * but they still share the count of modifications, which is a single atomic counter.
+ */
+public class ConcurrentSparseMatrix extends SparseMatrix {
+
+  // estimated size of a lock stripe with its slot in the array of stripes
+  private static final long STRIPE_BYTES = 88 + 4;
+
+  private final ReadWriteLock[] rowLocks;
+  private final ReadWriteLock[] colLocks;
+  private final int mask;
+  // a pool of nodes per row stripe, or null if nodes are not pooled. Replaced under all stripes
+  private NodePool[] pools;
+  // updated by writers of different stripes at the same time, hence not a plain field
+  private final LongAdder nnz = new LongAdder();
+  // read without locks by caches, so every update must be visible at once
+  private final AtomicLong modifications = new AtomicLong();
+
+  /**
+   * Constructs a new concurrent matrix of the given dimensions, with a number of stripes suited to
+   * the number of processors. All entries of this matrix are by default, 0.
+   *
+   * @param size the number of rows and columns in this matrix
+   * @throws IllegalArgumentException if the size is a non-positive number
+   */
+  public ConcurrentSparseMatrix(int size) throws IllegalArgumentException {
+    this(size, 4 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructs a new concurrent matrix of the given dimensions. All entries of this matrix are by
+   * default, 0.
+   *
+   * @param size    the number of rows and columns in this matrix
+   * @param stripes the number of locks guarding the rows and the columns each, rounded up to a
+   *                power of two
+   * @throws IllegalArgumentException if the size is a non-positive number or the number of stripes
+   *                                  is not positive
+   */
+  public ConcurrentSparseMatrix(int size, int stripes) throws IllegalArgumentException {
+    // the index of the sentinels must not change while threads set entries
+    super(size, true);
+    if (stripes <= 0) {
+      throw new IllegalArgumentException("The number of lock stripes must be positive");
+    }
+
+    int count = Integer.highestOneBit(stripes);
+    if (count < stripes) {
+      count <<= 1;
+    }
+    this.mask = count - 1;
+    this.rowLocks = new ReadWriteLock[count];
+    this.colLocks = new ReadWriteLock[count];
+    for (int s = 0; s < count; s++) {
+      this.rowLocks[s] = new ReentrantReadWriteLock();
+      this.colLocks[s] = new ReentrantReadWriteLock();
+    }
+  }
+
+  @Override
+  public void setIdentity() {
+    lockAll();
+    try {
+      super.setIdentity();
+    } finally {
+      unlockAll();
+    }
+  }
+
+  @Override
+  public void set(int i, int j, float value) throws IllegalArgumentException {
+    // negative indices still map to a stripe, and are rejected by the matrix under the lock
+    ReadWriteLock rowLock = this.rowLocks[i & this.mask];
+    ReadWriteLock colLock = this.colLocks[j & this.mask];
+    rowLock.writeLock().lock();
+    try {
+      colLock.writeLock().lock();
+      try {
+        if (!isCompact()) {
+          super.set(i, j, value);
+          return;
+        }
+      } finally {
+        colLock.writeLock().unlock();
+      }
+    } finally {
+      rowLock.writeLock().unlock();
+    }
+    // the first change after compact() relinks every row and column, hence takes every stripe
+    lockAll();
+    try {
+      super.set(i, j, value);
+    } finally {
+      unlockAll();
+    }
+  }
+
+  // a batch takes every stripe once, rather than a row and a column stripe per cell
+  @Override
+  public void setAll(int[] rows, int[] cols, float[] values) throws IllegalArgumentException {
+    lockAll();
+    try {
+      super.setAll(rows, cols, values);
+    } finally {
+      unlockAll();
+    }
+  }
+
+  @Override
+  public void getAll(int[] rows, int[] cols, float[] out) throws IllegalArgumentException {
+    lockAllRows();
+    try {
+      super.getAll(rows, cols, out);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  public void scale(float alpha) {
+    lockAll();
+    try {
+      super.scale(alpha);
+    } finally {
+      unlockAll();
+    }
+  }
+
+  // the entries of the other matrix are read by axpy before any lock of this matrix is taken
+  @Override
+  void addScaled(float alpha, CompressedRows x) {
+    lockAll();
+    try {
+      super.addScaled(alpha, x);
+    } finally {
+      unlockAll();
+    }
+  }
+
+  /**
+   * Reuse the nodes of removed entries for the entries set later. Every row stripe has a pool of
+   * its own, used only under the write lock of the stripe, so threads that update different
+   * stripes never share a pool.
+   *
+   * @param chunkSize the number of nodes allocated at once when a pool has no free nodes
+   * @throws IllegalArgumentException if the chunk size is not positive
+   */
+  @Override
+  public void enableNodePool(int chunkSize) throws IllegalArgumentException {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("The chunk size of a node pool must be positive");
+    }
+    NodePool[] result = new NodePool[this.rowLocks.length];
+    for (int s = 0; s < result.length; s++) {
+      result[s] = new NodePool(chunkSize);
+    }
+    lockAll();
+    try {
+      this.pools = result;
+    } finally {
+      unlockAll();
+    }
+  }
+
+  @Override
+  public void disableNodePool() {
+    lockAll();
+    try {
+      this.pools = null;
+    } finally {
+      unlockAll();
+    }
+  }
+
+  @Override
+  public int pooledNodes() {
+    lockAllRows();
+    try {
+      int count = 0;
+      if (this.pools != null) {
+        for (NodePool pool : this.pools) {
+          count += pool.available();
+        }
+      }
+      return count;
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  // the caller holds the write lock of the stripe of row i
+  @Override
+  NodePool pool(int i) {
+    return this.pools == null ? null : this.pools[i & this.mask];
+  }
+
+  /**
+   * Replace the lists of this matrix with contiguous arrays, under every stripe. The first set
+   * after this links the entries again, which also takes every stripe, so no reader ever sees a
+   * matrix that is half compacted or half expanded.
+   */
+  @Override
+  public void compact() {
+    lockAll();
+    try {
+      super.compact();
+    } finally {
+      unlockAll();
+    }
+  }
+
+  @Override
+  public float get(int i, int j) throws IllegalArgumentException {
+    ReadWriteLock rowLock = this.rowLocks[i & this.mask];
+    rowLock.readLock().lock();
+    try {
+      return super.get(i, j);
+    } finally {
+      rowLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long nnz() {
+    return this.nnz.sum();
+  }
+
+  @Override
+  void entriesChanged(long delta) {
+    this.nnz.add(delta);
+  }
+
+  @Override
+  public long modificationCount() {
+    return this.modifications.get();
+  }
+
+  @Override
+  void modified() {
+    this.modifications.incrementAndGet();
+  }
+
+  @Override
+  public long estimatedBytes() {
+    long bytes = super.estimatedBytes() + 2L * this.rowLocks.length * STRIPE_BYTES;
+    NodePool[] pools = this.pools;
+    if (pools != null) {
+      for (NodePool pool : pools) {
+        bytes += pool.estimatedBytes();
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public MatrixStats stats() {
+    lockAllRows();
+    try {
+      return super.stats();
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  // Operations on the whole matrix work on a consistent copy, so that the locks of this matrix
+  // are never held while the other matrix is read.
+
+  @Override
+  public SquareMatrix add(SquareMatrix other) throws IllegalArgumentException {
+    return copy().add(other);
+  }
+
+  @Override
+  public SquareMatrix premul(SquareMatrix other) throws IllegalArgumentException {
+    return copy().premul(other);
+  }
+
+  @Override
+  public SquareMatrix postmul(SquareMatrix other) throws IllegalArgumentException {
+    return copy().postmul(other);
+  }
+
+  @Override
+  public SquareMatrix hadamard(SquareMatrix other) throws IllegalArgumentException {
+    return copy().hadamard(other);
+  }
+
+  @Override
+  public SquareMatrix kronecker(SquareMatrix other) throws IllegalArgumentException {
+    return copy().kronecker(other);
+  }
+
+  @Override
+  public SquareMatrix map(FloatUnaryOperator function) {
+    return copy().map(function);
+  }
+
+  @Override
+  public SquareMatrix map(SquareMatrix other, FloatBinaryOperator function)
+      throws IllegalArgumentException {
+    return copy().map(other, function);
+  }
+
+  @Override
+  public SparseMatrix permute(Permutation rowPerm, Permutation colPerm)
+      throws IllegalArgumentException {
+    lockAllRows();
+    try {
+      return super.permute(rowPerm, colPerm);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  protected SquareMatrix addSparseMatrix(SparseMatrix other) {
+    return copy().addSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix postmulSparseMatrix(SparseMatrix other) {
+    return copy().postmulSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix premulSparseMatrix(SparseMatrix other) {
+    return copy().premulSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix addArrayMatrix(ArrayMatrix other) {
+    return copy().addArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix postmulArrayMatrix(ArrayMatrix other) {
+    return copy().postmulArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix premulArrayMatrix(ArrayMatrix other) {
+    return copy().premulArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix hadamardSparseMatrix(SparseMatrix other) {
+    return copy().hadamardSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix hadamardArrayMatrix(ArrayMatrix other) {
+    return copy().hadamardArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix kroneckerSparseMatrix(SparseMatrix other)
+      throws IllegalArgumentException {
+    return copy().kroneckerSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix kroneckerArrayMatrix(ArrayMatrix other)
+      throws IllegalArgumentException {
+    return copy().kroneckerArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix mapSparseMatrix(SparseMatrix other, FloatBinaryOperator function) {
+    return copy().mapSparseMatrix(other, function);
+  }
+
+  @Override
+  protected SquareMatrix mapArrayMatrix(ArrayMatrix other, FloatBinaryOperator function) {
+    return copy().mapArrayMatrix(other, function);
+  }
+
+  // The iterations work on a consistent copy too, and the cursors on a copy of their row or
+  // column made under its stripe, so that no lock is held while the caller reads the entries.
+
+  @Override
+  public void forEachNonZero(IntIntFloatConsumer action) {
+    copy().forEachNonZero(action);
+  }
+
+  @Override
+  public Spliterator<MatrixEntry> spliterator() {
+    return copy().spliterator();
+  }
+
+  @Override
+  public EntryCursor rowCursor(int i) throws IllegalArgumentException {
+    checkIndex(i, "Row");
+    SliceCursor.Builder row = new SliceCursor.Builder(i, true);
+    ReadWriteLock rowLock = this.rowLocks[i & this.mask];
+    rowLock.readLock().lock();
+    try {
+      forEachInRows(i, i + 1, row);
+    } finally {
+      rowLock.readLock().unlock();
+    }
+    return row.build();
+  }
+
+  // the column stripe keeps out every writer that relinks the column
+  @Override
+  public EntryCursor columnCursor(int j) throws IllegalArgumentException {
+    checkIndex(j, "Column");
+    SliceCursor.Builder column = new SliceCursor.Builder(j, false);
+    ReadWriteLock colLock = this.colLocks[j & this.mask];
+    colLock.readLock().lock();
+    try {
+      forEachInColumn(j, column);
+    } finally {
+      colLock.readLock().unlock();
+    }
+    return column.build();
+  }
+
+  // Operations that only walk the rows are consistent under the row stripes alone.
+
+  @Override
+  SparseMatrix copy() {
+    lockAllRows();
+    try {
+      return super.copy();
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  public void addTo(ArrayMatrix target) throws IllegalArgumentException {
+    lockAllRows();
+    try {
+      super.addTo(target);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  public void multiply(float alpha, float[] x, float beta, float[] y)
+      throws IllegalArgumentException {
+    lockAllRows();
+    try {
+      super.multiply(alpha, x, beta, y);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  public ScheduleStats multiplyParallel(float[] x, float[] y) throws IllegalArgumentException {
+    lockAllRows();
+    try {
+      return super.multiplyParallel(x, y);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  public void multiply(float[][] x, float[][] y) throws IllegalArgumentException {
+    lockAllRows();
+    try {
+      super.multiply(x, y);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  public ScheduleStats multiplyParallel(float[][] x, float[][] y)
+      throws IllegalArgumentException {
+    lockAllRows();
+    try {
+      return super.multiplyParallel(x, y);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  void multiplyVector(float[] x, float[] y, boolean parallel) {
+    lockAllRows();
+    try {
+      super.multiplyVector(x, y, parallel);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  CompressedRows compressRows() {
+    lockAllRows();
+    try {
+      return super.compressRows();
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  void diagonal(float[] out) {
+    lockAllRows();
+    try {
+      super.diagonal(out);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  // the pass runs on other threads, which need no locks while this thread keeps out the writers
+  @Override
+  Reductions computeReductions() {
+    lockAllRows();
+    try {
+      return super.computeReductions();
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  @Override
+  long countEntries(int[] rowCounts, int[] colCounts) {
+    lockAllRows();
+    try {
+      return super.countEntries(rowCounts, colCounts);
+    } finally {
+      unlockAllRows();
+    }
+  }
+
+  // read locks of all row stripes, in increasing order
+  private void lockAllRows() {
+    for (ReadWriteLock lock : this.rowLocks) {
+      lock.readLock().lock();
+    }
+  }
+
+  private void unlockAllRows() {
+    for (int s = this.rowLocks.length - 1; s >= 0; s--) {
+      this.rowLocks[s].readLock().unlock();
+    }
+  }
+
+  // write locks of all row stripes and then all column stripes, in increasing order
+  private void lockAll() {
+    for (ReadWriteLock lock : this.rowLocks) {
+      lock.writeLock().lock();
+    }
+    for (ReadWriteLock lock : this.colLocks) {
+      lock.writeLock().lock();
+    }
+  }
+
+  private void unlockAll() {
+    for (int s = this.colLocks.length - 1; s >= 0; s--) {
+      this.colLocks[s].writeLock().unlock();
+    }
+    for (int s = this.rowLocks.length - 1; s >= 0; s--) {
+      this.rowLocks[s].writeLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package mat;
+
+/**
+ * This class represents the preconditioned conjugate gradient method. It solves systems whose
+ * matrix is symmetric positive definite, and the preconditioner should be symmetric positive
+ * definite too. A solver keeps its work vectors between solves, hence a single instance should not
+ * be used by multiple threads at the same time.
+ */
+public class ConjugateGradientSolver extends AbstractIterativeSolver {
+
+  private float[] r;
+  private float[] z;
+  private float[] p;
+  private float[] q;
+
+  /**
+   * Constructs a conjugate gradient solver without a preconditioner.
+   *
+   * @param tolerance     the relative residual ||b - A * x|| / ||b|| at which to stop
+   * @param maxIterations the maximum number of iterations
+   * @throws IllegalArgumentException if the tolerance or the number of iterations is not positive
+   */
+  public ConjugateGradientSolver(double tolerance, int maxIterations)
+      throws IllegalArgumentException {
+    this(tolerance, maxIterations, null, false);
+  }
+
+  /**
+   * Constructs a conjugate gradient solver.
+   *
+   * @param tolerance      the relative residual ||b - A * x|| / ||b|| at which to stop
+   * @param maxIterations  the maximum number of iterations
+   * @param preconditioner the preconditioner, or null for none
+   * @param parallel       true to split the matrix-vector products and dot products between
+   *                       threads
+   * @throws IllegalArgumentException if the tolerance or the number of iterations is not positive
+   */
+  public ConjugateGradientSolver(double tolerance, int maxIterations,
+      Preconditioner preconditioner, boolean parallel) throws IllegalArgumentException {
+    super(tolerance, maxIterations, preconditioner, parallel);
+  }
+
+  @Override
+  void ensureCapacity(int n) {
+    if (tooShort(this.r, n)) {
+      this.r = new float[n];
+      this.z = new float[n];
+      this.p = new float[n];
+      this.q = new float[n];
+    }
+  }
+
+  @Override
+  SolverStats iterate(AbstractMatrix matrix, float[] b, float[] x, int n, long start) {
+    double rhsNorm = norm(b, n);
+    double target = this.tolerance * (rhsNorm == 0 ? 1 : rhsNorm);
+
+    double initialResidual = trueResidual(matrix, b, x, this.r, n);
+    double residual = initialResidual;
+    if (residual <= target) {
+      return stats(true, 0, initialResidual, residual, rhsNorm, start);
+    }
+
+    precondition(this.r, this.z, n);
+    System.arraycopy(this.z, 0, this.p, 0, n);
+    double rz = dot(this.r, this.z, n);
+
+    int iteration = 0;
+    while (iteration < this.maxIterations) {
+      iteration++;
+      multiply(matrix, this.p, this.q);
+      double pq = dot(this.p, this.q, n);
+      if (pq == 0) {
+        // breakdown, the matrix is not positive definite in the search direction
+        break;
+      }
+
+      double alpha = rz / pq;
+      Vectors.axpy(alpha, this.p, x, n);
+      Vectors.axpy(-alpha, this.q, this.r, n);
+
+      residual = norm(this.r, n);
+      if (residual <= target) {
+        residual = trueResidual(matrix, b, x, this.r, n);
+        if (residual <= target) {
+          return stats(true, iteration, initialResidual, residual, rhsNorm, start);
+        }
+        // the recurrence drifted, restart the search directions from the true residual
+        precondition(this.r, this.z, n);
+        System.arraycopy(this.z, 0, this.p, 0, n);
+        rz = dot(this.r, this.z, n);
+        continue;
+      }
+
+      precondition(this.r, this.z, n);
+      double rzNext = dot(this.r, this.z, n);
+      // p = z + beta * p
+      Vectors.xpby(this.z, rzNext / rz, this.p, n);
+      rz = rzNext;
+    }
+    return stats(false, iteration, initialResidual, residual, rhsNorm, start);
+  }
+}
@@ -13,6 +13,20 @@ class DataNode<T> extends AbstractNode<T> {
     this.data = data;
   }
 
+  // a node that is not linked into any list yet, used by the node pool
+  DataNode() {
+    super();
+  }
+
+  /**
+   * Replace the data stored in this node.
+   *
+   * @param data the new data item
+   */
+  void setData(T data) {
+    this.data = data;
+  }
+
   /**
    * Get the data stored in this node.
    *
@@ -0,0 +1,42 @@
+package mat;
+
+/**
+ * This interface represents a cursor over the non-zero entries of a single row or column of a
+ * matrix, as returned by {@link SquareMatrix#rowCursor(int)} and
+ * {@link SquareMatrix#columnCursor(int)}. The cursor starts before the first entry, and every call
+ * of next moves it to the following one. The entries are read as primitives, so no object is
+ * created for them.
+ */
+public interface EntryCursor {
+
+  /**
+   * Move this cursor to the next entry.
+   *
+   * @return true if the cursor is on an entry, false if there are no more entries
+   * @throws java.util.ConcurrentModificationException if the matrix was changed since the cursor
+   *                                                   was created, for cursors that cannot go on
+   *                                                   after a change
+   */
+  boolean next();
+
+  /**
+   * Get the row of the current entry.
+   *
+   * @return the row of the entry
+   */
+  int getRow();
+
+  /**
+   * Get the column of the current entry.
+   *
+   * @return the column of the entry
+   */
+  int getColumn();
+
+  /**
+   * Get the value of the current entry.
+   *
+   * @return the value of the entry
+   */
+  float getValue();
+}
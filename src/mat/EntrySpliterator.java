@@ -0,0 +1,126 @@
+package mat;
+
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * This class represents a spliterator over the non-zero entries of a range of rows of a matrix,
+ * row by row and by column within a row. It splits the range where the work of the rows is cut in
+ * half, the same work the row-parallel kernels are split by, so the hub rows of a power-law matrix
+ * do not leave one half of a parallel stream with most of the entries.
+ *
+ * <p>Entries are read through the cursors of the rows one at a time, and through the rows of the
+ * matrix directly by forEachRemaining. The spliterator fails if the matrix is changed after it is
+ * created.
+ */
+final class EntrySpliterator implements Spliterator<MatrixEntry> {
+
+  private static final int SPLIT_CHARACTERISTICS = ORDERED | DISTINCT | NONNULL;
+
+  private final AbstractMatrix matrix;
+  private final long modificationCount;
+  private int characteristics;
+  private final int end;
+  // the next row to be read, after the row of the cursor
+  private int row;
+  // the row being read, or null if none is
+  private EntryCursor cursor;
+  // the prefix sums of the work of the rows, shared by all the splits, computed on first split
+  private long[] work;
+  private long estimate;
+
+  /**
+   * Constructs a spliterator over every entry of the given matrix.
+   *
+   * @param matrix          the matrix
+   * @param characteristics the characteristics of the entries besides ordered, distinct and
+   *                        non-null, e.g. immutable
+   */
+  EntrySpliterator(AbstractMatrix matrix, int characteristics) {
+    this(matrix, 0, matrix.size(), null, matrix.nnz(),
+        SPLIT_CHARACTERISTICS | SIZED | characteristics);
+  }
+
+  private EntrySpliterator(AbstractMatrix matrix, int from, int to, long[] work, long estimate,
+      int characteristics) {
+    this.matrix = matrix;
+    this.modificationCount = matrix.modificationCount();
+    this.characteristics = characteristics;
+    this.row = from;
+    this.end = to;
+    this.work = work;
+    this.estimate = estimate;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super MatrixEntry> action) {
+    checkUnchanged();
+    while (this.cursor == null || !this.cursor.next()) {
+      if (this.row >= this.end) {
+        this.cursor = null;
+        return false;
+      }
+      this.cursor = this.matrix.rowCursor(this.row++);
+    }
+    action.accept(new MatrixEntry(this.cursor.getRow(), this.cursor.getColumn(),
+        this.cursor.getValue()));
+    return true;
+  }
+
+  @Override
+  public void forEachRemaining(Consumer<? super MatrixEntry> action) {
+    checkUnchanged();
+    IntIntFloatConsumer entries = (i, j, value) -> action.accept(new MatrixEntry(i, j, value));
+    if (this.cursor != null) {
+      while (this.cursor.next()) {
+        entries.accept(this.cursor.getRow(), this.cursor.getColumn(), this.cursor.getValue());
+      }
+      this.cursor = null;
+    }
+    int from = this.row;
+    this.row = this.end;
+    this.matrix.forEachInRows(from, this.end, entries);
+    checkUnchanged();
+  }
+
+  @Override
+  public Spliterator<MatrixEntry> trySplit() {
+    // the entries left in the row of the cursor come before every other row
+    if (this.cursor != null || this.end - this.row < 2) {
+      return null;
+    }
+    if (this.work == null) {
+      this.work = this.matrix.rowWork();
+    }
+    long[] work = this.work;
+    int from = this.row;
+    int mid = RowScheduler.firstAtLeast(work, work[from] + (work[this.end] - work[from]) / 2);
+    mid = Math.max(from + 1, Math.min(mid, this.end - 1));
+    long total = work[this.end] - work[from];
+    long prefix = total == 0 ? this.estimate / 2
+        : (long) ((double) this.estimate * (work[mid] - work[from]) / total);
+
+    // the sizes of the halves are estimated from their work, so neither is exact
+    this.characteristics &= ~SIZED;
+    this.row = mid;
+    this.estimate -= prefix;
+    return new EntrySpliterator(this.matrix, from, mid, work, prefix, this.characteristics);
+  }
+
+  @Override
+  public long estimateSize() {
+    return this.estimate;
+  }
+
+  @Override
+  public int characteristics() {
+    return this.characteristics;
+  }
+
+  private void checkUnchanged() {
+    if (this.matrix.modificationCount() != this.modificationCount) {
+      throw new ConcurrentModificationException("The matrix was changed during the iteration");
+    }
+  }
+}
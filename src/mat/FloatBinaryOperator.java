@@ -0,0 +1,19 @@
+package mat;
+
+/**
+ * This interface represents a function of two floating point numbers, applied to every pair of
+ * entries at the same position of two matrices by
+ * {@link SquareMatrix#map(SquareMatrix, FloatBinaryOperator)}.
+ */
+@FunctionalInterface
+public interface FloatBinaryOperator {
+
+  /**
+   * Apply this function to the given values.
+   *
+   * @param left  the value of the first matrix
+   * @param right the value of the second matrix
+   * @return the result of the function
+   */
+  float apply(float left, float right);
+}
@@ -0,0 +1,17 @@
+package mat;
+
+/**
+ * This interface represents a function of a single floating point number, applied to every entry
+ * of a matrix by {@link SquareMatrix#map(FloatUnaryOperator)}.
+ */
+@FunctionalInterface
+public interface FloatUnaryOperator {
+
+  /**
+   * Apply this function to the given value.
+   *
+   * @param value the value
+   * @return the result of the function
+   */
+  float apply(float value);
+}
@@ -0,0 +1,174 @@
+package mat;
+
+/**
+ * This class represents the restarted, right-preconditioned generalized minimal residual method
+ * GMRES(m). It solves systems with general non-symmetric matrices and never increases the residual,
+ * at the cost of storing m + 1 basis vectors. A solver keeps its work vectors between solves, hence
+ * a single instance should not be used by multiple threads at the same time.
+ */
+public class GmresSolver extends AbstractIterativeSolver {
+
+  private final int restart;
+
+  // orthonormal basis of the Krylov subspace, one vector per row
+  private float[][] basis;
+  private float[] w;
+  private float[] preconditioned;
+  // Hessenberg matrix, Givens rotations and the rotated right hand side of the least squares
+  // problem. These only depend on the restart length, hence are allocated once.
+  private final double[][] hessenberg;
+  private final double[] cos;
+  private final double[] sin;
+  private final double[] g;
+  private final double[] y;
+
+  /**
+   * Constructs a GMRES solver without a preconditioner.
+   *
+   * @param tolerance     the relative residual ||b - A * x|| / ||b|| at which to stop
+   * @param maxIterations the maximum number of iterations, counting every inner iteration
+   * @param restart       the number of iterations after which the method restarts
+   * @throws IllegalArgumentException if the tolerance, the number of iterations or the restart
+   *                                  length is not positive
+   */
+  public GmresSolver(double tolerance, int maxIterations, int restart)
+      throws IllegalArgumentException {
+    this(tolerance, maxIterations, restart, null, false);
+  }
+
+  /**
+   * Constructs a GMRES solver.
+   *
+   * @param tolerance      the relative residual ||b - A * x|| / ||b|| at which to stop
+   * @param maxIterations  the maximum number of iterations, counting every inner iteration
+   * @param restart        the number of iterations after which the method restarts
+   * @param preconditioner the preconditioner, or null for none
+   * @param parallel       true to split the matrix-vector products and dot products between
+   *                       threads
+   * @throws IllegalArgumentException if the tolerance, the number of iterations or the restart
+   *                                  length is not positive
+   */
+  public GmresSolver(double tolerance, int maxIterations, int restart,
+      Preconditioner preconditioner, boolean parallel) throws IllegalArgumentException {
+    super(tolerance, maxIterations, preconditioner, parallel);
+    if (restart <= 0) {
+      throw new IllegalArgumentException("The restart length of GMRES must be positive");
+    }
+
+    this.restart = restart;
+    this.hessenberg = new double[restart + 1][restart];
+    this.cos = new double[restart];
+    this.sin = new double[restart];
+    this.g = new double[restart + 1];
+    this.y = new double[restart];
+  }
+
+  @Override
+  void ensureCapacity(int n) {
+    if (tooShort(this.w, n)) {
+      this.basis = new float[this.restart + 1][n];
+      this.w = new float[n];
+      this.preconditioned = new float[n];
+    }
+  }
+
+  @Override
+  SolverStats iterate(AbstractMatrix matrix, float[] b, float[] x, int n, long start) {
+    double rhsNorm = norm(b, n);
+    double target = this.tolerance * (rhsNorm == 0 ? 1 : rhsNorm);
+    double initialResidual = -1;
+    double residual = 0;
+    int iteration = 0;
+
+    while (true) {
+      // r = b - A * x, stored as the first basis vector
+      float[] first = this.basis[0];
+      residual = trueResidual(matrix, b, x, first, n);
+      if (initialResidual < 0) {
+        initialResidual = residual;
+      }
+      if (residual <= target) {
+        return stats(true, iteration, initialResidual, residual, rhsNorm, start);
+      }
+      if (iteration >= this.maxIterations) {
+        return stats(false, iteration, initialResidual, residual, rhsNorm, start);
+      }
+
+      scale(first, 1 / residual, n);
+      this.g[0] = residual;
+      int steps = 0;
+
+      while (steps < this.restart && iteration < this.maxIterations) {
+        int j = steps;
+        iteration++;
+        steps++;
+
+        // w = A * inverse(M) * v_j
+        precondition(this.basis[j], this.preconditioned, n);
+        multiply(matrix, this.preconditioned, this.w);
+
+        // modified Gram-Schmidt against the previous basis vectors
+        for (int i = 0; i <= j; i++) {
+          double h = dot(this.w, this.basis[i], n);
+          this.hessenberg[i][j] = h;
+          Vectors.axpy(-h, this.basis[i], this.w, n);
+        }
+        double wNorm = norm(this.w, n);
+        this.hessenberg[j + 1][j] = wNorm;
+
+        // apply the previous rotations to the new column, then eliminate its sub-diagonal
+        for (int i = 0; i < j; i++) {
+          double upper = this.hessenberg[i][j];
+          double lower = this.hessenberg[i + 1][j];
+          this.hessenberg[i][j] = this.cos[i] * upper + this.sin[i] * lower;
+          this.hessenberg[i + 1][j] = -this.sin[i] * upper + this.cos[i] * lower;
+        }
+        double diag = this.hessenberg[j][j];
+        double radius = Math.hypot(diag, wNorm);
+        this.cos[j] = radius == 0 ? 1 : diag / radius;
+        this.sin[j] = radius == 0 ? 0 : wNorm / radius;
+        this.hessenberg[j][j] = radius;
+        this.hessenberg[j + 1][j] = 0;
+        this.g[j + 1] = -this.sin[j] * this.g[j];
+        this.g[j] = this.cos[j] * this.g[j];
+
+        // happy breakdown, the solution lies in the current subspace
+        if (wNorm == 0 || Math.abs(this.g[j + 1]) <= target) {
+          break;
+        }
+        System.arraycopy(this.w, 0, this.basis[j + 1], 0, n);
+        scale(this.basis[j + 1], 1 / wNorm, n);
+      }
+
+      updateSolution(x, steps, n);
+    }
+  }
+
+  // solve the triangular least squares system and add the correction inverse(M) * V * y to x
+  private void updateSolution(float[] x, int steps, int n) {
+    for (int i = steps - 1; i >= 0; i--) {
+      double sum = this.g[i];
+      for (int k = i + 1; k < steps; k++) {
+        sum -= this.hessenberg[i][k] * this.y[k];
+      }
+      this.y[i] = sum / this.hessenberg[i][i];
+    }
+
+    for (int i = 0; i < n; i++) {
+      this.w[i] = 0f;
+    }
+    for (int i = 0; i < steps; i++) {
+      Vectors.axpy(this.y[i], this.basis[i], this.w, n);
+    }
+    precondition(this.w, this.preconditioned, n);
+    Vectors.axpy(1, this.preconditioned, x, n);
+  }
+
+  // x = alpha * x
+  private static void scale(float[] x, double alpha, int n) {
+    float a = (float) alpha;
+    for (int i = 0; i < n; i++) {
+      x[i] *= a;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package mat;
+
+/**
+ * This class represents the incomplete LU preconditioner with zero fill-in, ILU(0). The factors L
+ * and U keep exactly the sparsity pattern of the original matrix, so building and applying the
+ * preconditioner costs time proportional to the number of non-zero entries.
+ */
+public class Ilu0Preconditioner implements Preconditioner {
+
+  private final int size;
+  private final int[] rowStart;
+  private final int[] colIndex;
+  // strictly lower part holds L (unit diagonal implied), the rest holds U
+  private final double[] factors;
+  // position of the diagonal entry of every row
+  private final int[] diagonal;
+
+  /**
+   * Constructs the ILU(0) factorization of the given matrix.
+   *
+   * @param matrix the matrix of the system to be solved
+   * @throws IllegalArgumentException if a zero pivot is found during the factorization
+   */
+  public Ilu0Preconditioner(SquareMatrix matrix) throws IllegalArgumentException {
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows csr = ((AbstractMatrix) matrix).compressRows();
+    this.size = csr.size;
+    this.rowStart = csr.rowStart;
+    this.colIndex = csr.colIndex;
+    this.factors = new double[csr.nnz()];
+    for (int p = 0; p < this.factors.length; p++) {
+      this.factors[p] = csr.values[p];
+    }
+    this.diagonal = new int[this.size];
+    factorize();
+  }
+
+  // in-place IKJ variant of Gaussian elimination restricted to the pattern of the matrix
+  private void factorize() {
+    // position of column j in the current row, -1 if the row has no entry there
+    int[] positionOf = new int[this.size];
+    for (int j = 0; j < this.size; j++) {
+      positionOf[j] = -1;
+    }
+
+    for (int i = 0; i < this.size; i++) {
+      int start = this.rowStart[i];
+      int end = this.rowStart[i + 1];
+      for (int p = start; p < end; p++) {
+        positionOf[this.colIndex[p]] = p;
+      }
+
+      int p = start;
+      // eliminate every entry left of the diagonal using the rows above
+      while (p < end && this.colIndex[p] < i) {
+        int k = this.colIndex[p];
+        double multiplier = this.factors[p] / this.factors[this.diagonal[k]];
+        this.factors[p] = multiplier;
+
+        for (int q = this.diagonal[k] + 1; q < this.rowStart[k + 1]; q++) {
+          int target = positionOf[this.colIndex[q]];
+          // fill-in outside the pattern is dropped
+          if (target != -1) {
+            this.factors[target] -= multiplier * this.factors[q];
+          }
+        }
+        p++;
+      }
+
+      if (p == end || this.colIndex[p] != i || this.factors[p] == 0) {
+        throw new IllegalArgumentException("ILU(0) found a zero pivot at row " + i);
+      }
+      this.diagonal[i] = p;
+
+      for (int q = start; q < end; q++) {
+        positionOf[this.colIndex[q]] = -1;
+      }
+    }
+  }
+
+  @Override
+  public void apply(float[] r, float[] z) throws IllegalArgumentException {
+    if (r.length < this.size || z.length < this.size) {
+      throw new IllegalArgumentException("The vectors are shorter than the preconditioner");
+    }
+
+    // forward substitution with the unit lower triangle
+    for (int i = 0; i < this.size; i++) {
+      double sum = r[i];
+      for (int p = this.rowStart[i]; p < this.diagonal[i]; p++) {
+        sum -= this.factors[p] * z[this.colIndex[p]];
+      }
+      z[i] = (float) sum;
+    }
+
+    // backward substitution with the upper triangle
+    for (int i = this.size - 1; i >= 0; i--) {
+      double sum = z[i];
+      for (int p = this.diagonal[i] + 1; p < this.rowStart[i + 1]; p++) {
+        sum -= this.factors[p] * z[this.colIndex[p]];
+      }
+      z[i] = (float) (sum / this.factors[this.diagonal[i]]);
+    }
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+}
@@ -0,0 +1,464 @@
+package mat;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+
+/**
+ * This class represents a read-only sparse matrix. Every row is stored as a pair of compact arrays
+ * of columns and values, which are never modified after construction, hence any number of threads
+ * can read the matrix without taking locks. Instances are made by {@link SparseMatrix#freeze()} or
+ * published by a {@link VersionedSparseMatrix}, in which case unchanged rows are shared with the
+ * previous versions.
+ */
+public final class ImmutableSparseMatrix extends AbstractMatrix {
+
+  private final PersistentRows rows;
+  private final long nnz;
+  private final long version;
+
+  // compacted copy used by the kernels of SparseMatrix, built on first use
+  private volatile SparseMatrix compact;
+  // split of the rows for the parallel products, built on first use
+  private volatile RowScheduler scheduler;
+
+  ImmutableSparseMatrix(PersistentRows rows, long nnz, long version) {
+    this.rows = rows;
+    this.nnz = nnz;
+    this.version = version;
+  }
+
+  /**
+   * Return an immutable matrix with the entries of the given compressed rows. The arrays of every
+   * row are copied.
+   *
+   * @param matrix the entries of the matrix
+   * @return the immutable matrix
+   */
+  static ImmutableSparseMatrix of(CompressedRows matrix) {
+    PersistentRows.Builder builder = PersistentRows.empty(matrix.size).toBuilder();
+    for (int i = 0; i < matrix.size; i++) {
+      int start = matrix.rowStart[i];
+      int end = matrix.rowStart[i + 1];
+      if (start < end) {
+        int[] cols = new int[end - start];
+        float[] vals = new float[end - start];
+        System.arraycopy(matrix.colIndex, start, cols, 0, cols.length);
+        System.arraycopy(matrix.values, start, vals, 0, vals.length);
+        builder.set(i, new PersistentRows.Row(cols, vals));
+      }
+    }
+    return new ImmutableSparseMatrix(builder.build(), matrix.nnz(), 0);
+  }
+
+  /**
+   * Get the version of this matrix. Matrices made by freeze() are version 0, and every publish of
+   * a VersionedSparseMatrix increases the version by one.
+   *
+   * @return the version of this matrix
+   */
+  public long version() {
+    return this.version;
+  }
+
+  @Override
+  public long nnz() {
+    return this.nnz;
+  }
+
+  /**
+   * Get the number of changes made to this matrix, which is always 0.
+   *
+   * @return 0
+   */
+  @Override
+  public long modificationCount() {
+    return 0;
+  }
+
+  @Override
+  public long estimatedBytes() {
+    // the compacted copy is counted too once it is built
+    SparseMatrix copy = this.compact;
+    return 40 + this.rows.estimatedBytes() + (copy == null ? 0 : copy.estimatedBytes());
+  }
+
+  /**
+   * Return a new mutable matrix with the same entries as this.
+   *
+   * @return a sparse matrix equal to this
+   */
+  public SparseMatrix toSparseMatrix() {
+    return SparseMatrix.compacted(compressRows());
+  }
+
+  /**
+   * An immutable matrix cannot be modified.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void setIdentity() {
+    throw new UnsupportedOperationException("An immutable matrix cannot be modified");
+  }
+
+  /**
+   * An immutable matrix cannot be modified.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void set(int i, int j, float value) {
+    throw new UnsupportedOperationException("An immutable matrix cannot be modified");
+  }
+
+  /**
+   * An immutable matrix cannot be modified.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void setAll(int[] rows, int[] cols, float[] values) {
+    throw new UnsupportedOperationException("An immutable matrix cannot be modified");
+  }
+
+  /**
+   * An immutable matrix cannot be modified.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void scale(float alpha) {
+    throw new UnsupportedOperationException("An immutable matrix cannot be modified");
+  }
+
+  /**
+   * An immutable matrix cannot be modified.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void axpy(float alpha, SquareMatrix other) {
+    throw new UnsupportedOperationException("An immutable matrix cannot be modified");
+  }
+
+  @Override
+  public void multiply(float alpha, float[] x, float beta, float[] y)
+      throws IllegalArgumentException {
+    if (x.length != this.rows.size || y.length != this.rows.size) {
+      throw new IllegalArgumentException(
+          "The length of the vector does not match the size of the matrix");
+    }
+    for (int i = 0; i < this.rows.size; i++) {
+      float sum = alpha * rowDot(i, x);
+      y[i] = beta == 0f ? sum : sum + beta * y[i];
+    }
+  }
+
+  @Override
+  public float get(int i, int j) throws IllegalArgumentException {
+    if ((i < 0) || (i >= this.rows.size)) {
+      throw new IllegalArgumentException(
+          "Row number in get cannot be beyond the bounds of the matrix");
+    }
+
+    if ((j < 0) || (j >= this.rows.size)) {
+      throw new IllegalArgumentException(
+          "Column number in get cannot be beyond the bounds of the matrix");
+    }
+
+    return this.rows.get(i).get(j);
+  }
+
+  /**
+   * Get the given row of this matrix.
+   *
+   * @param i the index of the row
+   * @return the row
+   */
+  PersistentRows.Row row(int i) {
+    return this.rows.get(i);
+  }
+
+  PersistentRows rows() {
+    return this.rows;
+  }
+
+  @Override
+  public SquareMatrix add(SquareMatrix other) throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be added together");
+    }
+    return compacted().add(other);
+  }
+
+  @Override
+  public SquareMatrix premul(SquareMatrix other) throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException(
+          "The size of this matrix is not the same as the size of the other matrix,"
+              + " hence they cannot be multiplied together");
+    }
+    return compacted().premul(other);
+  }
+
+  @Override
+  public SquareMatrix postmul(SquareMatrix other) throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException(
+          "The size of this matrix is not the same as the size of the other matrix,"
+              + " hence they cannot be multiplied together");
+    }
+    return compacted().postmul(other);
+  }
+
+  @Override
+  public SquareMatrix hadamard(SquareMatrix other) throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be multiplied entry by entry");
+    }
+    return compacted().hadamard(other);
+  }
+
+  @Override
+  public SquareMatrix kronecker(SquareMatrix other) throws IllegalArgumentException {
+    return compacted().kronecker(other);
+  }
+
+  @Override
+  public SquareMatrix map(FloatUnaryOperator function) {
+    return compacted().map(function);
+  }
+
+  @Override
+  public SquareMatrix map(SquareMatrix other, FloatBinaryOperator function)
+      throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be mapped entry by entry");
+    }
+    return compacted().map(other, function);
+  }
+
+  @Override
+  public int size() {
+    return this.rows.size;
+  }
+
+  // The products and sums reuse the compact kernels of SparseMatrix on a compacted copy of this
+  // matrix. The copy is private, so it is never modified and never expanded once built.
+
+  @Override
+  protected SquareMatrix addSparseMatrix(SparseMatrix other) {
+    return compacted().addSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix postmulSparseMatrix(SparseMatrix other) {
+    return compacted().postmulSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix premulSparseMatrix(SparseMatrix other) {
+    return compacted().premulSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix addArrayMatrix(ArrayMatrix other) {
+    return compacted().addArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix postmulArrayMatrix(ArrayMatrix other) {
+    return compacted().postmulArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix premulArrayMatrix(ArrayMatrix other) {
+    return compacted().premulArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix hadamardSparseMatrix(SparseMatrix other) {
+    return compacted().hadamardSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix hadamardArrayMatrix(ArrayMatrix other) {
+    return compacted().hadamardArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix kroneckerSparseMatrix(SparseMatrix other)
+      throws IllegalArgumentException {
+    return compacted().kroneckerSparseMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix kroneckerArrayMatrix(ArrayMatrix other)
+      throws IllegalArgumentException {
+    return compacted().kroneckerArrayMatrix(other);
+  }
+
+  @Override
+  protected SquareMatrix mapSparseMatrix(SparseMatrix other, FloatBinaryOperator function) {
+    return compacted().mapSparseMatrix(other, function);
+  }
+
+  @Override
+  protected SquareMatrix mapArrayMatrix(ArrayMatrix other, FloatBinaryOperator function) {
+    return compacted().mapArrayMatrix(other, function);
+  }
+
+  // racing threads may each build a copy, any of them is correct
+  private SparseMatrix compacted() {
+    SparseMatrix result = this.compact;
+    if (result == null) {
+      MatrixConstructionEvent event = new MatrixConstructionEvent();
+      event.start();
+      try {
+        result = SparseMatrix.compacted(compressRows());
+        event.finish("compact", result, this.nnz);
+      } finally {
+        event.release();
+      }
+      this.compact = result;
+    }
+    return result;
+  }
+
+  @Override
+  void multiplyVector(float[] x, float[] y, boolean parallel) {
+    if (parallel) {
+      scheduler().run((t, from, to) -> {
+        for (int i = (int) from; i < to; i++) {
+          y[i] = rowDot(i, x);
+        }
+      });
+    } else {
+      for (int i = 0; i < this.rows.size; i++) {
+        y[i] = rowDot(i, x);
+      }
+    }
+  }
+
+  // racing threads may each build a split, any of them is correct
+  private RowScheduler scheduler() {
+    RowScheduler result = this.scheduler;
+    if (result == null) {
+      long[] prefix = new long[this.rows.size + 1];
+      for (int i = 0; i < this.rows.size; i++) {
+        prefix[i + 1] = prefix[i] + this.rows.get(i).cols.length;
+      }
+      result = RowScheduler.byRows(prefix);
+      this.scheduler = result;
+    }
+    return result;
+  }
+
+  // dot product of the given row of this matrix with the vector x
+  private float rowDot(int i, float[] x) {
+    PersistentRows.Row row = this.rows.get(i);
+    float sum = 0f;
+    for (int p = 0; p < row.cols.length; p++) {
+      sum += row.vals[p] * x[row.cols[p]];
+    }
+    return sum;
+  }
+
+  @Override
+  void diagonal(float[] out) {
+    for (int i = 0; i < this.rows.size; i++) {
+      out[i] = this.rows.get(i).get(i);
+    }
+  }
+
+  @Override
+  CompressedRows compressRows() {
+    int size = this.rows.size;
+    int[] rowStart = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      rowStart[i + 1] = rowStart[i] + this.rows.get(i).cols.length;
+    }
+
+    int[] colIndex = new int[rowStart[size]];
+    float[] values = new float[rowStart[size]];
+    for (int i = 0; i < size; i++) {
+      PersistentRows.Row row = this.rows.get(i);
+      System.arraycopy(row.cols, 0, colIndex, rowStart[i], row.cols.length);
+      System.arraycopy(row.vals, 0, values, rowStart[i], row.vals.length);
+    }
+    return new CompressedRows(size, rowStart, colIndex, values);
+  }
+
+  @Override
+  long countEntries(int[] rowCounts, int[] colCounts) {
+    for (int i = 0; i < this.rows.size; i++) {
+      PersistentRows.Row row = this.rows.get(i);
+      if (rowCounts != null) {
+        rowCounts[i] = row.cols.length;
+      }
+      if (colCounts != null) {
+        for (int j : row.cols) {
+          colCounts[j]++;
+        }
+      }
+    }
+    return this.nnz;
+  }
+
+  @Override
+  void forEachInRows(int from, int to, IntIntFloatConsumer action) {
+    for (int i = from; i < to; i++) {
+      PersistentRows.Row row = this.rows.get(i);
+      for (int p = 0; p < row.cols.length; p++) {
+        action.accept(i, row.cols[p], row.vals[p]);
+      }
+    }
+  }
+
+  @Override
+  public EntryCursor rowCursor(int i) throws IllegalArgumentException {
+    checkIndex(i, "Row");
+    PersistentRows.Row row = this.rows.get(i);
+    return new SliceCursor(i, true, row.cols, row.vals, 0, row.cols.length);
+  }
+
+  // the rows are not indexed by column, so the column is gathered by a search of every row
+  @Override
+  public EntryCursor columnCursor(int j) throws IllegalArgumentException {
+    checkIndex(j, "Column");
+    int[] rowIndex = new int[this.rows.size];
+    float[] values = new float[this.rows.size];
+    int count = 0;
+    for (int i = 0; i < this.rows.size; i++) {
+      PersistentRows.Row row = this.rows.get(i);
+      int p = Arrays.binarySearch(row.cols, j);
+      if (p >= 0) {
+        rowIndex[count] = i;
+        values[count] = row.vals[p];
+        count++;
+      }
+    }
+    return new SliceCursor(j, false, rowIndex, values, 0, count);
+  }
+
+  @Override
+  public Spliterator<MatrixEntry> spliterator() {
+    return new EntrySpliterator(this, Spliterator.IMMUTABLE);
+  }
+
+  @Override
+  void bandwidth(int[] out) {
+    out[0] = 0;
+    out[1] = 0;
+    for (int i = 0; i < this.rows.size; i++) {
+      int[] cols = this.rows.get(i).cols;
+      if (cols.length > 0) {
+        out[0] = Math.max(out[0], i - cols[0]);
+        out[1] = Math.max(out[1], cols[cols.length - 1] - i);
+      }
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package mat;
+
+/**
+ * This interface represents an action on the non-zero entries of a matrix, given as their row,
+ * column and value, as done by {@link SquareMatrix#forEachNonZero(IntIntFloatConsumer)}. The
+ * entries are passed as primitives, so no object is created for them.
+ */
+@FunctionalInterface
+public interface IntIntFloatConsumer {
+
+  /**
+   * Perform this action on the given entry.
+   *
+   * @param i     the row of the entry
+   * @param j     the column of the entry
+   * @param value the value of the entry
+   */
+  void accept(int i, int j, float value);
+}
@@ -0,0 +1,21 @@
+package mat;
+
+/**
+ * This interface represents an iterative solver for the linear system A * x = b, where A is a
+ * square matrix.
+ */
+public interface IterativeSolver {
+
+  /**
+   * Solve the system matrix * x = b. The given x is used as the initial guess and is overwritten
+   * with the solution. Neither the matrix nor b should be mutated.
+   *
+   * @param matrix the matrix of the system
+   * @param b      the right hand side, of length matrix.size()
+   * @param x      the initial guess, of length matrix.size(), overwritten with the solution
+   * @return the convergence and iteration metrics of this solve
+   * @throws IllegalArgumentException if the lengths of the vectors do not match the matrix, or if
+   *                                  the preconditioner was built for a different size
+   */
+  SolverStats solve(SquareMatrix matrix, float[] b, float[] x) throws IllegalArgumentException;
+}
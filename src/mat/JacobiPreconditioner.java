@@ -0,0 +1,46 @@
+package mat;
+
+/**
+ * This class represents the Jacobi (diagonal) preconditioner, i.e. M = diag(A). It is cheap to
+ * build and apply and works well for diagonally dominant matrices.
+ */
+public class JacobiPreconditioner implements Preconditioner {
+
+  private final float[] inverseDiagonal;
+
+  /**
+   * Constructs a Jacobi preconditioner for the given matrix.
+   *
+   * @param matrix the matrix of the system to be solved
+   * @throws IllegalArgumentException if the matrix has a zero on its diagonal
+   */
+  public JacobiPreconditioner(SquareMatrix matrix) throws IllegalArgumentException {
+    this.inverseDiagonal = new float[matrix.size()];
+
+    // assumption - all implementations extend AbstractMatrix
+    ((AbstractMatrix) matrix).diagonal(this.inverseDiagonal);
+    for (int i = 0; i < this.inverseDiagonal.length; i++) {
+      if (this.inverseDiagonal[i] == 0f) {
+        throw new IllegalArgumentException(
+            "The Jacobi preconditioner needs a non-zero diagonal, found zero at row " + i);
+      }
+      this.inverseDiagonal[i] = 1f / this.inverseDiagonal[i];
+    }
+  }
+
+  @Override
+  public void apply(float[] r, float[] z) throws IllegalArgumentException {
+    if (r.length < this.inverseDiagonal.length || z.length < this.inverseDiagonal.length) {
+      throw new IllegalArgumentException("The vectors are shorter than the preconditioner");
+    }
+
+    for (int i = 0; i < this.inverseDiagonal.length; i++) {
+      z[i] = this.inverseDiagonal[i] * r[i];
+    }
+  }
+
+  @Override
+  public int size() {
+    return this.inverseDiagonal.length;
+  }
+}
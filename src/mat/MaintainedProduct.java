@@ -0,0 +1,235 @@
+package mat;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This class represents the product C = A * B of two sparse matrices that is kept up to date while
+ * A and B change. It observes every set of A and B, and only notes which rows of A and B changed.
+ * On the next refresh, it recomputes the rows of C that depend on them: row i of C for every
+ * changed row i of A, and for every changed row k of B, the rows i of C where A(i, k) is not 0.
+ * The cost of a refresh is therefore proportional to the work of the changed rows of C, not to the
+ * work of the whole product. If more than a quarter of the rows of C are affected, or an operand
+ * was reset with setIdentity, C is recomputed as a whole.
+ *
+ * <p>Rows are recomputed from the current A and B rather than patched with the difference, so C
+ * is always exactly A * B, with no rounding error building up over many refreshes.
+ *
+ * <p>This class is not thread safe. A and B must not be changed while a refresh runs, hence
+ * neither of them can be a ConcurrentSparseMatrix, whose rows and columns would be read here
+ * without its locks while other threads relink them.
+ */
+public final class MaintainedProduct {
+
+  private final SparseMatrix a;
+  private final SparseMatrix b;
+  private final int size;
+  private final MatrixListener leftListener;
+  private final MatrixListener rightListener;
+  private SparseMatrix product;
+
+  // rows of A and B that changed since the last refresh
+  private final BitSet changedRowsOfA = new BitSet();
+  private final BitSet changedRowsOfB = new BitSet();
+  private boolean reset;
+
+  // scratch space of the row products, see SparseMatrix.multiplyRow
+  private final float[] sums;
+  private final int[] touched;
+  private final int[] mark;
+  private final int[] entries;
+  private int stamp;
+
+  private long refreshes;
+  private long fullRecomputes;
+  private long recomputedRows;
+
+  /**
+   * Constructs the product of the given matrices, and starts observing them.
+   *
+   * @param a the left operand
+   * @param b the right operand
+   * @throws IllegalArgumentException if the sizes of the matrices do not match, or either of them
+   *                                  is a ConcurrentSparseMatrix
+   */
+  public MaintainedProduct(SparseMatrix a, SparseMatrix b) throws IllegalArgumentException {
+    if (a.size() != b.size()) {
+      throw new IllegalArgumentException(
+          "The size of this matrix is not the same as the size of the other matrix,"
+              + " hence they cannot be multiplied together");
+    }
+    if (a instanceof ConcurrentSparseMatrix || b instanceof ConcurrentSparseMatrix) {
+      throw new IllegalArgumentException(
+          "A concurrent matrix cannot be an operand of a maintained product");
+    }
+    this.a = a;
+    this.b = b;
+    this.size = a.size();
+    this.sums = new float[this.size];
+    this.touched = new int[this.size];
+    this.mark = new int[this.size];
+    this.entries = new int[this.size];
+
+    this.leftListener = new MatrixListener() {
+      @Override
+      public void entryChanged(int i, int j) {
+        changedRowsOfA.set(i);
+      }
+
+      @Override
+      public void matrixReset() {
+        reset = true;
+      }
+    };
+    this.rightListener = new MatrixListener() {
+      @Override
+      public void entryChanged(int i, int j) {
+        changedRowsOfB.set(i);
+      }
+
+      @Override
+      public void matrixReset() {
+        reset = true;
+      }
+    };
+    a.addListener(this.leftListener);
+    b.addListener(this.rightListener);
+    recomputeAll();
+  }
+
+  /**
+   * Return the product A * B for the current A and B, refreshing it first if needed. The result
+   * belongs to this product and must not be modified. It is not a snapshot: the next refresh
+   * either updates the changed rows of the same matrix in place or replaces it with a new one, so
+   * a caller that needs the product as it is now across later changes of A or B must copy it.
+   *
+   * @return the product
+   */
+  public SparseMatrix get() {
+    refresh();
+    return this.product;
+  }
+
+  /**
+   * Check whether A or B changed since the last refresh.
+   *
+   * @return true if the product is out of date
+   */
+  public boolean isStale() {
+    return this.reset || !this.changedRowsOfA.isEmpty() || !this.changedRowsOfB.isEmpty();
+  }
+
+  /**
+   * Bring the product up to date with the changes of A and B made since the last refresh.
+   */
+  public void refresh() {
+    if (!isStale()) {
+      return;
+    }
+    this.refreshes++;
+
+    // the affected rows of C, starting with the changed rows of A
+    BitSet affected = this.changedRowsOfA;
+    int[] rows = this.entries;
+    for (int k = this.changedRowsOfB.nextSetBit(0); k >= 0 && !this.reset;
+        k = this.changedRowsOfB.nextSetBit(k + 1)) {
+      int count = this.a.rowsOfColumn(k, rows);
+      for (int c = 0; c < count; c++) {
+        affected.set(rows[c]);
+      }
+    }
+
+    if (this.reset || affected.cardinality() > this.size / 4) {
+      recomputeAll();
+    } else {
+      for (int i = affected.nextSetBit(0); i >= 0; i = affected.nextSetBit(i + 1)) {
+        recomputeRow(i);
+      }
+      this.recomputedRows += affected.cardinality();
+    }
+    this.changedRowsOfA.clear();
+    this.changedRowsOfB.clear();
+    this.reset = false;
+  }
+
+  /**
+   * Stop observing A and B. The product is not updated any more after this.
+   */
+  public void close() {
+    this.a.removeListener(this.leftListener);
+    this.b.removeListener(this.rightListener);
+  }
+
+  /**
+   * Get the number of refreshes that found A or B changed.
+   *
+   * @return the number of refreshes
+   */
+  public long getRefreshes() {
+    return this.refreshes;
+  }
+
+  /**
+   * Get the number of times the product was computed as a whole, including the first time.
+   *
+   * @return the number of full products
+   */
+  public long getFullRecomputes() {
+    return this.fullRecomputes;
+  }
+
+  /**
+   * Get the number of rows of the product recomputed one at a time by refreshes.
+   *
+   * @return the number of rows
+   */
+  public long getRecomputedRows() {
+    return this.recomputedRows;
+  }
+
+  private void recomputeAll() {
+    SparseMatrix result = new SparseMatrix(this.size);
+    for (int i = 0; i < this.size; i++) {
+      int count = this.a.multiplyRow(i, this.b, this.sums, this.touched, this.mark, nextStamp());
+      // rows of the result are built in order, so its entries go at the end of their lists
+      Arrays.sort(this.touched, 0, count);
+      for (int c = 0; c < count; c++) {
+        int j = this.touched[c];
+        if (this.sums[j] != 0f) {
+          result.append(i, j, this.sums[j]);
+        }
+      }
+    }
+    this.product = result;
+    this.fullRecomputes++;
+  }
+
+  // replace row i of the product with row i of A times B
+  private void recomputeRow(int i) {
+    int stamp = nextStamp();
+    int count = this.a.multiplyRow(i, this.b, this.sums, this.touched, this.mark, stamp);
+
+    // drop the entries that are now 0, then set the others, which overwrites existing entries
+    int old = this.product.columnsOfRow(i, this.entries);
+    for (int c = 0; c < old; c++) {
+      int j = this.entries[c];
+      if (this.mark[j] != stamp || this.sums[j] == 0f) {
+        this.product.set(i, j, 0f);
+      }
+    }
+    for (int c = 0; c < count; c++) {
+      int j = this.touched[c];
+      if (this.sums[j] != 0f) {
+        this.product.set(i, j, this.sums[j]);
+      }
+    }
+  }
+
+  private int nextStamp() {
+    if (this.stamp == Integer.MAX_VALUE) {
+      Arrays.fill(this.mark, 0);
+      this.stamp = 0;
+    }
+    return ++this.stamp;
+  }
+}
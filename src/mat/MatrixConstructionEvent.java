@@ -0,0 +1,48 @@
+package mat;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class represents the Java Flight Recorder event of building a whole matrix at once, e.g.
+ * a permutation, a copy or a snapshot of another matrix.
+ */
+@Name("mat.MatrixConstruction")
+@Label("Matrix Construction")
+@Category("Matrix")
+@Description("A matrix built in bulk from another matrix")
+final class MatrixConstructionEvent extends MatrixEvent {
+
+  @Label("Kind")
+  @Description("How the matrix was built, e.g. permute, copy or freeze")
+  String kind;
+
+  @Label("Type")
+  String type;
+
+  @Label("Size")
+  int size;
+
+  @Label("Non-Zeros")
+  long nnz;
+
+  /**
+   * Finish this event and commit it, if it is enabled and passes the threshold.
+   *
+   * @param kind   how the matrix was built
+   * @param result the matrix that was built
+   * @param nnz    the number of non-zero entries of the matrix
+   */
+  void finish(String kind, SquareMatrix result, long nnz) {
+    if (!stop()) {
+      return;
+    }
+    this.kind = kind;
+    this.type = result.getClass().getSimpleName();
+    this.size = result.size();
+    this.nnz = nnz;
+    commit();
+  }
+}
@@ -0,0 +1,74 @@
+package mat;
+
+/**
+ * This class represents a single non-zero entry of a matrix, i.e. its row, its column and its
+ * value. It is the element of the streams of {@link SquareMatrix#nonZeros()}. Code that does not
+ * need the entries as objects should use {@link SquareMatrix#forEachNonZero(IntIntFloatConsumer)}
+ * or the cursors instead, which create none.
+ */
+public final class MatrixEntry {
+
+  private final int row;
+  private final int column;
+  private final float value;
+
+  /**
+   * Constructs an entry.
+   *
+   * @param row    the row of the entry
+   * @param column the column of the entry
+   * @param value  the value of the entry
+   */
+  public MatrixEntry(int row, int column, float value) {
+    this.row = row;
+    this.column = column;
+    this.value = value;
+  }
+
+  /**
+   * Get the row of this entry.
+   *
+   * @return the row of this entry
+   */
+  public int getRow() {
+    return this.row;
+  }
+
+  /**
+   * Get the column of this entry.
+   *
+   * @return the column of this entry
+   */
+  public int getColumn() {
+    return this.column;
+  }
+
+  /**
+   * Get the value of this entry.
+   *
+   * @return the value of this entry
+   */
+  public float getValue() {
+    return this.value;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof MatrixEntry)) {
+      return false;
+    }
+    MatrixEntry entry = (MatrixEntry) other;
+    return this.row == entry.row && this.column == entry.column
+        && Float.compare(this.value, entry.value) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return (this.row * 31 + this.column) * 31 + Float.hashCode(this.value);
+  }
+
+  @Override
+  public String toString() {
+    return "(" + this.row + ", " + this.column + ") = " + this.value;
+  }
+}
@@ -0,0 +1,109 @@
+package mat;
+
+import java.lang.management.ManagementFactory;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * This abstract class represents the common aspects of the Java Flight Recorder events of this
+ * package. Besides the duration and the thread recorded by every event, it records the bytes
+ * allocated by the thread during the event. The events are turned on and off, and given
+ * thresholds, through the standard JFR settings of their names, e.g.
+ * -XX:StartFlightRecording:settings=profile,mat.MatrixOperation#threshold=10ms.
+ */
+abstract class MatrixEvent extends Event {
+
+  private static final com.sun.management.ThreadMXBean THREADS = threads();
+  // the innermost enabled event started on each thread, which the parallel kernels report to
+  private static final ThreadLocal<MatrixEvent> CURRENT = new ThreadLocal<MatrixEvent>();
+
+  @Label("Threads")
+  @Description("Number of threads the work was split across")
+  int threads = 1;
+
+  @Label("Allocated")
+  @Description("Bytes allocated by the calling thread during the event, -1 if not supported")
+  @DataAmount
+  long allocatedBytes = -1;
+
+  private transient long allocatedAtStart;
+  private transient boolean running;
+  private transient MatrixEvent outer;
+
+  /**
+   * Begin timing this event, if it is enabled.
+   */
+  void start() {
+    if (isEnabled()) {
+      this.allocatedAtStart = allocatedBytes();
+      this.outer = CURRENT.get();
+      this.running = true;
+      CURRENT.set(this);
+      begin();
+    }
+  }
+
+  /**
+   * End timing this event, and decide whether it is committed.
+   *
+   * @return true if the event should be filled in and committed
+   */
+  boolean stop() {
+    end();
+    release();
+    if (!shouldCommit()) {
+      return false;
+    }
+    long allocated = allocatedBytes();
+    if (allocated >= 0 && this.allocatedAtStart >= 0) {
+      this.allocatedBytes = allocated - this.allocatedAtStart;
+    }
+    return true;
+  }
+
+  /**
+   * Stop collecting the threads of the kernels run on the calling thread, if stop has not done so
+   * already. Every event that is started must be released in a finally block, so that a kernel
+   * that throws does not leave this event as the current event of the thread.
+   */
+  void release() {
+    if (this.running) {
+      CURRENT.set(this.outer);
+      this.outer = null;
+      this.running = false;
+    }
+  }
+
+  /**
+   * Record that the work of the innermost event running on the calling thread was split across
+   * the given number of threads. The largest number recorded during an event is kept. This does
+   * nothing if no enabled event is running.
+   *
+   * @param threads the number of threads that took part in a parallel kernel
+   */
+  static void recordThreads(int threads) {
+    MatrixEvent event = CURRENT.get();
+    if (event != null) {
+      event.threads = Math.max(event.threads, threads);
+    }
+  }
+
+  // bytes allocated by the current thread so far, -1 if the JVM does not count them
+  private static long allocatedBytes() {
+    if (THREADS == null || !THREADS.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    return THREADS.getCurrentThreadAllocatedBytes();
+  }
+
+  private static com.sun.management.ThreadMXBean threads() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+      return (com.sun.management.ThreadMXBean) bean;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,21 @@
+package mat;
+
+/**
+ * This interface represents an observer of the changes of a SparseMatrix. It is called by the
+ * thread that changes the matrix, once the change is complete.
+ */
+interface MatrixListener {
+
+  /**
+   * Called when the entry (i, j) of the matrix was set to a new value.
+   *
+   * @param i the row of the entry
+   * @param j the column of the entry
+   */
+  void entryChanged(int i, int j);
+
+  /**
+   * Called when any number of entries of the matrix may have changed, e.g. by setIdentity.
+   */
+  void matrixReset();
+}
@@ -0,0 +1,257 @@
+package mat;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class records the add, premul, postmul, hadamard, kronecker and map operations of all
+ * matrices, for every pair of operand types: the number of calls, a histogram of their latencies,
+ * the non-zero entries of the operands and of the results, and the floating point operations on
+ * non-zero entries. The map of a single matrix is recorded as mapUnary, with the matrix as both
+ * operands. Recording is off by default. While it is off, an operation only reads a volatile flag.
+ * It can be turned on with setEnabled, through JMX after calling register, or by starting the JVM
+ * with -Dmat.metrics=true, which also registers the MXBean.
+ *
+ * <p>The flops of a product A * B are 2 * sum over k of nnz(column k of A) * nnz(row k of B), and
+ * those of a sum, a Hadamard product or a map of two matrices are nnz(A) + nnz(B), those of a map
+ * of a single matrix nnz(A), and those of a Kronecker product nnz(A) * nnz(B). Counting the entries
+ * of the operands and the result takes a pass over each of them, which is not included in the
+ * latency.
+ */
+public final class MatrixMetrics implements MatrixMetricsMXBean {
+
+  /**
+   * The name the metrics are registered under.
+   */
+  public static final String OBJECT_NAME = "mat:type=MatrixMetrics";
+
+  // operations that are not timed because recording was off when they started
+  private static final long NOT_TIMED = Long.MIN_VALUE;
+  private static final MatrixMetrics INSTANCE = new MatrixMetrics();
+
+  private static volatile boolean enabled;
+
+  static {
+    if (Boolean.getBoolean("mat.metrics")) {
+      enabled = true;
+      register();
+    }
+  }
+
+  private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+  private MatrixMetrics() {
+  }
+
+  /**
+   * Get the metrics of this JVM.
+   *
+   * @return the metrics
+   */
+  public static MatrixMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Register the metrics with the platform MBean server, if they are not registered yet.
+   *
+   * @return the name the metrics are registered under
+   * @throws IllegalStateException if the registration fails
+   */
+  public static ObjectName register() throws IllegalStateException {
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      synchronized (INSTANCE) {
+        if (!server.isRegistered(name)) {
+          server.registerMBean(INSTANCE, name);
+        }
+      }
+      return name;
+    } catch (JMException e) {
+      throw new IllegalStateException("The matrix metrics could not be registered", e);
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    MatrixMetrics.enabled = enabled;
+  }
+
+  @Override
+  public void reset() {
+    this.counters.clear();
+  }
+
+  @Override
+  public long getOperationCount() {
+    long total = 0;
+    for (Counters c : this.counters.values()) {
+      total += c.count.sum();
+    }
+    return total;
+  }
+
+  @Override
+  public List<MatrixOperationStats> getOperations() {
+    List<MatrixOperationStats> result = new ArrayList<>();
+    for (Counters c : this.counters.values()) {
+      result.add(c.snapshot());
+    }
+    result.sort(Comparator.comparing(MatrixOperationStats::getOperation)
+        .thenComparing(MatrixOperationStats::getReceiverType)
+        .thenComparing(MatrixOperationStats::getArgumentType));
+    return result;
+  }
+
+  @Override
+  public List<MatrixOperationStats> getOperationTotals() {
+    Map<String, MatrixOperationStats> totals = new LinkedHashMap<>();
+    for (MatrixOperationStats stats : getOperations()) {
+      MatrixOperationStats total = totals.computeIfAbsent(stats.getOperation(),
+          op -> MatrixOperationStats.empty(op, "*", "*"));
+      totals.put(stats.getOperation(), total.merge(stats, "*", "*"));
+    }
+    return new ArrayList<>(totals.values());
+  }
+
+  /**
+   * Get the metrics of the given operation and operand types.
+   *
+   * @param operation    the name of the operation, e.g. add, premul or postmul
+   * @param receiverType the simple name of the type of the matrix the operation was called on
+   * @param argumentType the simple name of the type of the matrix given to the operation
+   * @return the metrics, with a count of 0 if no such operation was recorded
+   */
+  public MatrixOperationStats get(String operation, String receiverType, String argumentType) {
+    Counters c = this.counters.get(key(operation, receiverType, argumentType));
+    if (c == null) {
+      return MatrixOperationStats.empty(operation, receiverType, argumentType);
+    }
+    return c.snapshot();
+  }
+
+  /**
+   * Start timing an operation.
+   *
+   * @return the start time, or a marker that the operation is not recorded
+   */
+  static long start() {
+    return enabled ? System.nanoTime() : NOT_TIMED;
+  }
+
+  /**
+   * Record an operation that was started with start().
+   *
+   * @param operation the name of the operation, e.g. add, premul or postmul
+   * @param receiver  the matrix the operation was called on
+   * @param argument  the matrix given to the operation
+   * @param result    the result of the operation
+   * @param start     the value returned by start()
+   */
+  static void record(String operation, SquareMatrix receiver, SquareMatrix argument,
+      SquareMatrix result, long start) {
+    if (start == NOT_TIMED) {
+      return;
+    }
+    long elapsed = System.nanoTime() - start;
+
+    // assumption - all implementations extend AbstractMatrix
+    AbstractMatrix self = (AbstractMatrix) receiver;
+    AbstractMatrix other = (AbstractMatrix) argument;
+    long flops;
+    long inputNnz;
+    if ("add".equals(operation) || "hadamard".equals(operation) || "map".equals(operation)) {
+      inputNnz = self.countEntries(null, null) + other.countEntries(null, null);
+      flops = inputNnz;
+    } else if ("mapUnary".equals(operation)) {
+      // the argument is the receiver itself
+      inputNnz = self.countEntries(null, null);
+      flops = inputNnz;
+    } else if ("kronecker".equals(operation)) {
+      long left = self.countEntries(null, null);
+      long right = other.countEntries(null, null);
+      inputNnz = left + right;
+      flops = left * right;
+    } else {
+      // premul computes other * this, postmul this * other
+      AbstractMatrix left = "premul".equals(operation) ? other : self;
+      AbstractMatrix right = "premul".equals(operation) ? self : other;
+      int[] leftCols = new int[left.size()];
+      int[] rightRows = new int[right.size()];
+      inputNnz = left.countEntries(null, leftCols) + right.countEntries(rightRows, null);
+      flops = 0;
+      for (int k = 0; k < leftCols.length; k++) {
+        flops += 2L * leftCols[k] * rightRows[k];
+      }
+    }
+    long outputNnz = ((AbstractMatrix) result).countEntries(null, null);
+
+    String key = key(operation, receiver.getClass().getSimpleName(),
+        argument.getClass().getSimpleName());
+    INSTANCE.counters.computeIfAbsent(key, k -> new Counters(operation,
+            receiver.getClass().getSimpleName(), argument.getClass().getSimpleName()))
+        .add(elapsed, inputNnz, outputNnz, flops);
+  }
+
+  private static String key(String operation, String receiverType, String argumentType) {
+    return operation + " " + receiverType + " " + argumentType;
+  }
+
+  // counters of one operation and pair of types, updated by many threads without locks
+  private static final class Counters {
+
+    private final String operation;
+    private final String receiverType;
+    private final String argumentType;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(MatrixOperationStats.BUCKETS);
+    private final LongAdder inputNnz = new LongAdder();
+    private final LongAdder outputNnz = new LongAdder();
+    private final LongAdder flops = new LongAdder();
+
+    private Counters(String operation, String receiverType, String argumentType) {
+      this.operation = operation;
+      this.receiverType = receiverType;
+      this.argumentType = argumentType;
+    }
+
+    private void add(long nanos, long inputNnz, long outputNnz, long flops) {
+      this.count.increment();
+      this.totalNanos.add(nanos);
+      this.maxNanos.accumulate(nanos);
+      this.histogram.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+      this.inputNnz.add(inputNnz);
+      this.outputNnz.add(outputNnz);
+      this.flops.add(flops);
+    }
+
+    private MatrixOperationStats snapshot() {
+      long[] buckets = new long[this.histogram.length()];
+      for (int k = 0; k < buckets.length; k++) {
+        buckets[k] = this.histogram.get(k);
+      }
+      return new MatrixOperationStats(this.operation, this.receiverType, this.argumentType,
+          this.count.sum(), this.totalNanos.sum(), this.maxNanos.get(), buckets,
+          this.inputNnz.sum(), this.outputNnz.sum(), this.flops.sum());
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package mat;
+
+import java.util.List;
+
+/**
+ * This interface represents the management interface of the metrics of matrix operations, as seen
+ * through JMX. The metrics are registered under the name mat:type=MatrixMetrics.
+ */
+public interface MatrixMetricsMXBean {
+
+  /**
+   * Check whether operations are being recorded.
+   *
+   * @return true if operations are recorded
+   */
+  boolean isEnabled();
+
+  /**
+   * Start or stop recording operations. Metrics recorded so far are kept.
+   *
+   * @param enabled true to record operations
+   */
+  void setEnabled(boolean enabled);
+
+  /**
+   * Discard all the metrics recorded so far.
+   */
+  void reset();
+
+  /**
+   * Get the total number of operations recorded.
+   *
+   * @return the number of operations
+   */
+  long getOperationCount();
+
+  /**
+   * Get the metrics of every operation and pair of operand types that was recorded, e.g. postmul
+   * of a SparseMatrix with an ArrayMatrix.
+   *
+   * @return the metrics of every operation and pair of types
+   */
+  List<MatrixOperationStats> getOperations();
+
+  /**
+   * Get the metrics of every operation that was recorded, over all pairs of operand types. The
+   * types of these entries are "*".
+   *
+   * @return the metrics of every operation
+   */
+  List<MatrixOperationStats> getOperationTotals();
+}
@@ -0,0 +1,70 @@
+package mat;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class represents the Java Flight Recorder event of an operation on two matrices, e.g. an
+ * add, premul or postmul, with the kernel that computed it, the sizes and non-zero entries of the
+ * operands and of the result. The entries are only counted for events that pass the threshold of
+ * the recording.
+ */
+@Name("mat.MatrixOperation")
+@Label("Matrix Operation")
+@Category("Matrix")
+@Description("An add, product, or entry by entry operation of two matrices")
+final class MatrixOperationEvent extends MatrixEvent {
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Kernel")
+  @Description("The implementation that computed the result")
+  String kernel;
+
+  @Label("Receiver Type")
+  String receiverType;
+
+  @Label("Argument Type")
+  String argumentType;
+
+  @Label("Size")
+  int size;
+
+  @Label("Receiver Non-Zeros")
+  long receiverNnz;
+
+  @Label("Argument Non-Zeros")
+  long argumentNnz;
+
+  @Label("Result Non-Zeros")
+  long resultNnz;
+
+  /**
+   * Finish this event and commit it, if it is enabled and passes the threshold.
+   *
+   * @param operation the name of the operation, e.g. add, premul or postmul
+   * @param hook      the method of the argument that computed the result
+   * @param receiver  the matrix the operation was called on
+   * @param argument  the matrix given to the operation
+   * @param result    the result of the operation
+   */
+  void finish(String operation, String hook, SquareMatrix receiver, SquareMatrix argument,
+      SquareMatrix result) {
+    if (!stop()) {
+      return;
+    }
+    this.operation = operation;
+    this.kernel = argument.getClass().getSimpleName() + "." + hook;
+    this.receiverType = receiver.getClass().getSimpleName();
+    this.argumentType = argument.getClass().getSimpleName();
+    this.size = receiver.size();
+    // assumption - all implementations extend AbstractMatrix
+    this.receiverNnz = ((AbstractMatrix) receiver).countEntries(null, null);
+    this.argumentNnz = ((AbstractMatrix) argument).countEntries(null, null);
+    this.resultNnz = ((AbstractMatrix) result).countEntries(null, null);
+    commit();
+  }
+}
@@ -0,0 +1,215 @@
+package mat;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * This class represents a snapshot of the metrics of one kind of matrix operation, e.g. every
+ * postmul of a SparseMatrix with an ArrayMatrix. Latencies are kept in a histogram of powers of
+ * two, so percentiles are accurate to within a factor of two.
+ */
+public final class MatrixOperationStats {
+
+  // one bucket of the histogram for every power of two of a long
+  static final int BUCKETS = 64;
+
+  private final String operation;
+  private final String receiverType;
+  private final String argumentType;
+  private final long count;
+  private final long totalNanos;
+  private final long maxNanos;
+  private final long[] latencyHistogram;
+  private final long inputNnz;
+  private final long outputNnz;
+  private final long flops;
+
+  /**
+   * Constructs a snapshot of the metrics of an operation.
+   *
+   * @param operation        the name of the operation, e.g. add, premul or postmul
+   * @param receiverType     the type of the matrix the operation was called on
+   * @param argumentType     the type of the matrix given to the operation
+   * @param count            the number of calls
+   * @param totalNanos       the total time of the calls in nanoseconds
+   * @param maxNanos         the time of the slowest call in nanoseconds
+   * @param latencyHistogram the number of calls that took [2^k, 2^(k+1)) nanoseconds for every k
+   * @param inputNnz         the total number of non-zero entries of the operands
+   * @param outputNnz        the total number of non-zero entries of the results
+   * @param flops            the total number of floating point operations on non-zero entries
+   */
+  @ConstructorParameters({"operation", "receiverType", "argumentType", "count", "totalNanos",
+      "maxNanos", "latencyHistogram", "inputNnz", "outputNnz", "flops"})
+  public MatrixOperationStats(String operation, String receiverType, String argumentType,
+      long count, long totalNanos, long maxNanos, long[] latencyHistogram, long inputNnz,
+      long outputNnz, long flops) {
+    this.operation = operation;
+    this.receiverType = receiverType;
+    this.argumentType = argumentType;
+    this.count = count;
+    this.totalNanos = totalNanos;
+    this.maxNanos = maxNanos;
+    this.latencyHistogram = latencyHistogram.clone();
+    this.inputNnz = inputNnz;
+    this.outputNnz = outputNnz;
+    this.flops = flops;
+  }
+
+  /**
+   * Get the name of the operation, e.g. add, premul or postmul.
+   *
+   * @return the name of the operation
+   */
+  public String getOperation() {
+    return this.operation;
+  }
+
+  /**
+   * Get the type of the matrix the operation was called on.
+   *
+   * @return the simple name of the class of the receiver
+   */
+  public String getReceiverType() {
+    return this.receiverType;
+  }
+
+  /**
+   * Get the type of the matrix given to the operation.
+   *
+   * @return the simple name of the class of the argument
+   */
+  public String getArgumentType() {
+    return this.argumentType;
+  }
+
+  /**
+   * Get the number of calls.
+   *
+   * @return the number of calls
+   */
+  public long getCount() {
+    return this.count;
+  }
+
+  /**
+   * Get the total time of the calls.
+   *
+   * @return the total time in nanoseconds
+   */
+  public long getTotalNanos() {
+    return this.totalNanos;
+  }
+
+  /**
+   * Get the time of the slowest call.
+   *
+   * @return the time of the slowest call in nanoseconds
+   */
+  public long getMaxNanos() {
+    return this.maxNanos;
+  }
+
+  /**
+   * Get the histogram of the times of the calls. Entry k is the number of calls that took
+   * [2^k, 2^(k+1)) nanoseconds.
+   *
+   * @return a copy of the histogram, of 64 buckets
+   */
+  public long[] getLatencyHistogram() {
+    return this.latencyHistogram.clone();
+  }
+
+  /**
+   * Get the total number of non-zero entries of the operands of the calls.
+   *
+   * @return the non-zero entries of the operands
+   */
+  public long getInputNnz() {
+    return this.inputNnz;
+  }
+
+  /**
+   * Get the total number of non-zero entries of the results of the calls.
+   *
+   * @return the non-zero entries of the results
+   */
+  public long getOutputNnz() {
+    return this.outputNnz;
+  }
+
+  /**
+   * Get the total number of floating point operations on non-zero entries of the calls.
+   *
+   * @return the floating point operations
+   */
+  public long getFlops() {
+    return this.flops;
+  }
+
+  /**
+   * Get the mean time of a call.
+   *
+   * @return the mean time in nanoseconds, 0 if there were no calls
+   */
+  public long getMeanNanos() {
+    return this.count == 0 ? 0 : this.totalNanos / this.count;
+  }
+
+  /**
+   * Get the median time of a call, as the upper bound of its bucket of the histogram.
+   *
+   * @return the median time in nanoseconds
+   */
+  public long getP50Nanos() {
+    return percentile(0.5);
+  }
+
+  /**
+   * Get the 99th percentile of the time of a call, as the upper bound of its bucket of the
+   * histogram.
+   *
+   * @return the 99th percentile in nanoseconds
+   */
+  public long getP99Nanos() {
+    return percentile(0.99);
+  }
+
+  // upper bound of the bucket holding the given fraction of the calls, at most the slowest call
+  private long percentile(double fraction) {
+    long rank = (long) Math.ceil(fraction * this.count);
+    long seen = 0;
+    for (int k = 0; k < this.latencyHistogram.length; k++) {
+      seen += this.latencyHistogram[k];
+      if (seen >= rank && seen > 0) {
+        long bound = k >= 62 ? Long.MAX_VALUE : (1L << (k + 1)) - 1;
+        return Math.min(bound, this.maxNanos);
+      }
+    }
+    return 0;
+  }
+
+  // snapshot of an operation that was never recorded
+  static MatrixOperationStats empty(String operation, String receiverType, String argumentType) {
+    return new MatrixOperationStats(operation, receiverType, argumentType, 0, 0, 0,
+        new long[BUCKETS], 0, 0, 0);
+  }
+
+  // merge of this and the other snapshot, with the given types
+  MatrixOperationStats merge(MatrixOperationStats other, String receiver, String argument) {
+    long[] histogram = this.latencyHistogram.clone();
+    for (int k = 0; k < histogram.length; k++) {
+      histogram[k] += other.latencyHistogram[k];
+    }
+    return new MatrixOperationStats(this.operation, receiver, argument,
+        this.count + other.count, this.totalNanos + other.totalNanos,
+        Math.max(this.maxNanos, other.maxNanos), histogram, this.inputNnz + other.inputNnz,
+        this.outputNnz + other.outputNnz, this.flops + other.flops);
+  }
+
+  @Override
+  public String toString() {
+    return this.operation + "(" + this.receiverType + ", " + this.argumentType + "): count="
+        + this.count + " mean=" + getMeanNanos() + "ns p99=" + getP99Nanos() + "ns max="
+        + this.maxNanos + "ns nnz in=" + this.inputNnz + " out=" + this.outputNnz + " flops="
+        + this.flops;
+  }
+}
@@ -0,0 +1,168 @@
+package mat;
+
+/**
+ * This class represents the structure of a matrix at one point in time: its number of non-zero
+ * entries, how they are spread over the rows and the columns, and how far they lie from the
+ * diagonal. It can be used to pick a storage format, a kernel or a number of threads.
+ */
+public final class MatrixStats {
+
+  private final int size;
+  private final long nnz;
+  private final int[] rowLengthHistogram;
+  private final int[] columnLengthHistogram;
+  private final int lowerBandwidth;
+  private final int upperBandwidth;
+
+  /**
+   * Constructs the statistics of a matrix.
+   *
+   * @param size           the size of the matrix
+   * @param nnz            the number of non-zero entries
+   * @param rowCounts      the number of non-zero entries of every row
+   * @param colCounts      the number of non-zero entries of every column
+   * @param lowerBandwidth the largest i - j of an entry (i, j), 0 if there is none
+   * @param upperBandwidth the largest j - i of an entry (i, j), 0 if there is none
+   */
+  MatrixStats(int size, long nnz, int[] rowCounts, int[] colCounts, int lowerBandwidth,
+      int upperBandwidth) {
+    this.size = size;
+    this.nnz = nnz;
+    this.rowLengthHistogram = histogram(rowCounts);
+    this.columnLengthHistogram = histogram(colCounts);
+    this.lowerBandwidth = lowerBandwidth;
+    this.upperBandwidth = upperBandwidth;
+  }
+
+  // h[k] is the number of counts equal to k
+  private static int[] histogram(int[] counts) {
+    int max = 0;
+    for (int count : counts) {
+      max = Math.max(max, count);
+    }
+    int[] h = new int[max + 1];
+    for (int count : counts) {
+      h[count]++;
+    }
+    return h;
+  }
+
+  /**
+   * Get the size of the matrix.
+   *
+   * @return the number of rows of the matrix
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+  /**
+   * Get the number of non-zero entries of the matrix.
+   *
+   * @return the number of non-zero entries
+   */
+  public long getNnz() {
+    return this.nnz;
+  }
+
+  /**
+   * Get the fraction of the entries of the matrix that are not zero.
+   *
+   * @return the density, between 0 and 1
+   */
+  public double getDensity() {
+    return this.size == 0 ? 0 : this.nnz / ((double) this.size * this.size);
+  }
+
+  /**
+   * Get the histogram of the lengths of the rows, where entry k is the number of rows with k
+   * non-zero entries.
+   *
+   * @return the histogram, of length getMaxRowLength() + 1
+   */
+  public int[] getRowLengthHistogram() {
+    return this.rowLengthHistogram.clone();
+  }
+
+  /**
+   * Get the histogram of the lengths of the columns, where entry k is the number of columns with k
+   * non-zero entries.
+   *
+   * @return the histogram, of length getMaxColumnLength() + 1
+   */
+  public int[] getColumnLengthHistogram() {
+    return this.columnLengthHistogram.clone();
+  }
+
+  /**
+   * Get the largest number of non-zero entries of a row.
+   *
+   * @return the length of the longest row
+   */
+  public int getMaxRowLength() {
+    return this.rowLengthHistogram.length - 1;
+  }
+
+  /**
+   * Get the largest number of non-zero entries of a column.
+   *
+   * @return the length of the longest column
+   */
+  public int getMaxColumnLength() {
+    return this.columnLengthHistogram.length - 1;
+  }
+
+  /**
+   * Get the mean number of non-zero entries of a row.
+   *
+   * @return the mean length of a row
+   */
+  public double getMeanRowLength() {
+    return this.size == 0 ? 0 : (double) this.nnz / this.size;
+  }
+
+  /**
+   * Get the number of rows without non-zero entries.
+   *
+   * @return the number of empty rows
+   */
+  public int getEmptyRows() {
+    return this.rowLengthHistogram[0];
+  }
+
+  /**
+   * Get the number of diagonals below the main diagonal that hold non-zero entries, i.e. the
+   * largest i - j of an entry (i, j).
+   *
+   * @return the lower bandwidth
+   */
+  public int getLowerBandwidth() {
+    return this.lowerBandwidth;
+  }
+
+  /**
+   * Get the number of diagonals above the main diagonal that hold non-zero entries, i.e. the
+   * largest j - i of an entry (i, j).
+   *
+   * @return the upper bandwidth
+   */
+  public int getUpperBandwidth() {
+    return this.upperBandwidth;
+  }
+
+  /**
+   * Get the largest distance |i - j| of an entry (i, j) from the main diagonal.
+   *
+   * @return the bandwidth
+   */
+  public int getBandwidth() {
+    return Math.max(this.lowerBandwidth, this.upperBandwidth);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("size=%d nnz=%d density=%.3e maxRow=%d maxColumn=%d bandwidth=%d/%d",
+        this.size, this.nnz, getDensity(), getMaxRowLength(), getMaxColumnLength(),
+        this.lowerBandwidth, this.upperBandwidth);
+  }
+}
@@ -0,0 +1,255 @@
+package mat;
+
+import java.util.Arrays;
+
+/**
+ * This class computes a fill-reducing ordering of a matrix with the approximate minimum degree
+ * heuristic. The pattern of A + transpose(A) is eliminated one variable at a time, always picking
+ * a variable of least (approximate) degree. The elimination is simulated on a quotient graph, where
+ * every eliminated variable becomes an element that stands for the clique it creates, so the
+ * memory used never exceeds that of the original graph by much.
+ *
+ * <p>This follows the approximate degree bound and element absorption of AMD, but does not detect
+ * indistinguishable supervariables.
+ */
+final class MinimumDegree {
+
+  // states of a node of the quotient graph
+  private static final int VARIABLE = 0;
+  private static final int ELEMENT = 1;
+  private static final int ABSORBED = 2;
+
+  private final int size;
+  private final int[] state;
+  // adjacent variables of every variable and their count
+  private final int[][] vars;
+  private final int[] varCount;
+  // adjacent elements of every variable and their count
+  private final int[][] elems;
+  private final int[] elemCount;
+  // variables of every element and their count
+  private final int[][] members;
+  private final int[] memberCount;
+
+  // degree lists, a doubly linked list of variables for every degree
+  private final int[] degree;
+  private final int[] head;
+  private final int[] next;
+  private final int[] prev;
+  private int minDegree;
+
+  // scratch space for marking nodes, a node is marked if its stamp equals the current stamp
+  private final int[] mark;
+  private int stamp;
+  // |L_e \ L_p| of the elements touched by the current elimination
+  private final int[] external;
+  private final int[] externalMark;
+
+  private MinimumDegree(CompressedRows matrix) {
+    this.size = matrix.size;
+    this.state = new int[this.size];
+    this.vars = symmetricPattern(matrix);
+    this.varCount = new int[this.size];
+    this.elems = new int[this.size][];
+    this.elemCount = new int[this.size];
+    this.members = new int[this.size][];
+    this.memberCount = new int[this.size];
+    this.degree = new int[this.size];
+    this.head = new int[this.size + 1];
+    this.next = new int[this.size];
+    this.prev = new int[this.size];
+    this.mark = new int[this.size];
+    this.external = new int[this.size];
+    this.externalMark = new int[this.size];
+
+    Arrays.fill(this.head, -1);
+    for (int i = 0; i < this.size; i++) {
+      this.varCount[i] = this.vars[i].length;
+      this.elems[i] = new int[4];
+      this.degree[i] = this.varCount[i];
+      insert(i);
+    }
+    this.minDegree = 0;
+  }
+
+  /**
+   * Compute a fill-reducing ordering of the given matrix. Only the pattern of the matrix is used,
+   * and it is symmetrized first.
+   *
+   * @param matrix the matrix to be ordered
+   * @return the ordering, where the k-th entry is the index of the row and column eliminated k-th
+   */
+  static int[] order(CompressedRows matrix) {
+    return new MinimumDegree(matrix).eliminateAll();
+  }
+
+  // adjacency lists of the pattern of A + transpose(A), without the diagonal
+  private static int[][] symmetricPattern(CompressedRows matrix) {
+    CompressedRows pattern = matrix.symmetricPattern();
+    int[][] adjacency = new int[pattern.size][];
+    for (int i = 0; i < pattern.size; i++) {
+      adjacency[i] = Arrays.copyOfRange(pattern.colIndex, pattern.rowStart[i],
+          pattern.rowStart[i + 1]);
+    }
+    return adjacency;
+  }
+
+  private int[] eliminateAll() {
+    int[] order = new int[this.size];
+    for (int k = 0; k < this.size; k++) {
+      while (this.head[this.minDegree] == -1) {
+        this.minDegree++;
+      }
+      int pivot = this.head[this.minDegree];
+      remove(pivot);
+      order[k] = pivot;
+      eliminate(pivot, this.size - k - 1);
+    }
+    return order;
+  }
+
+  // turn the variable p into an element and update the degrees of its neighbours
+  private void eliminate(int p, int remaining) {
+    int stampLp = nextStamp();
+    this.mark[p] = stampLp;
+
+    // L_p = adjacent variables plus the variables of all adjacent elements, which get absorbed
+    int[] lp = new int[this.varCount[p]];
+    int lpCount = 0;
+    for (int q = 0; q < this.varCount[p]; q++) {
+      int v = this.vars[p][q];
+      if (this.state[v] == VARIABLE && this.mark[v] != stampLp) {
+        this.mark[v] = stampLp;
+        lp[lpCount++] = v;
+      }
+    }
+    for (int q = 0; q < this.elemCount[p]; q++) {
+      int e = this.elems[p][q];
+      if (this.state[e] != ELEMENT) {
+        continue;
+      }
+      for (int r = 0; r < this.memberCount[e]; r++) {
+        int v = this.members[e][r];
+        if (this.state[v] == VARIABLE && this.mark[v] != stampLp) {
+          this.mark[v] = stampLp;
+          if (lpCount == lp.length) {
+            lp = Arrays.copyOf(lp, Math.max(4, lpCount * 2));
+          }
+          lp[lpCount++] = v;
+        }
+      }
+      this.state[e] = ABSORBED;
+      this.members[e] = null;
+    }
+
+    this.state[p] = ELEMENT;
+    this.members[p] = lp;
+    this.memberCount[p] = lpCount;
+    this.vars[p] = null;
+    this.elems[p] = null;
+
+    // prune the lists of every i in L_p and compute |L_e \ L_p| of the elements next to them
+    int stampExternal = nextStamp();
+    for (int q = 0; q < lpCount; q++) {
+      int i = lp[q];
+      remove(i);
+
+      int count = 0;
+      for (int r = 0; r < this.elemCount[i]; r++) {
+        int e = this.elems[i][r];
+        if (this.state[e] != ELEMENT) {
+          continue;
+        }
+        this.elems[i][count++] = e;
+        if (this.externalMark[e] != stampExternal) {
+          this.externalMark[e] = stampExternal;
+          this.external[e] = liveMembers(e);
+        }
+        this.external[e]--;
+      }
+      if (count == this.elems[i].length) {
+        this.elems[i] = Arrays.copyOf(this.elems[i], count * 2);
+      }
+      this.elems[i][count++] = p;
+      this.elemCount[i] = count;
+
+      // variables of L_p are now reached through the element p
+      count = 0;
+      for (int r = 0; r < this.varCount[i]; r++) {
+        int v = this.vars[i][r];
+        if (this.state[v] == VARIABLE && this.mark[v] != stampLp) {
+          this.vars[i][count++] = v;
+        }
+      }
+      this.varCount[i] = count;
+    }
+
+    // approximate degree bound of AMD, absorbing elements that are subsets of L_p
+    for (int q = 0; q < lpCount; q++) {
+      int i = lp[q];
+      int bound = this.varCount[i] + lpCount - 1;
+      int count = 0;
+      for (int r = 0; r < this.elemCount[i]; r++) {
+        int e = this.elems[i][r];
+        if (e != p && this.external[e] == 0) {
+          this.state[e] = ABSORBED;
+          this.members[e] = null;
+        }
+        if (this.state[e] != ELEMENT) {
+          continue;
+        }
+        this.elems[i][count++] = e;
+        if (e != p) {
+          bound += this.external[e];
+        }
+      }
+      this.elemCount[i] = count;
+
+      this.degree[i] = Math.min(remaining - 1, Math.min(this.degree[i] + lpCount - 1, bound));
+      this.degree[i] = Math.max(this.degree[i], 0);
+      insert(i);
+      this.minDegree = Math.min(this.minDegree, this.degree[i]);
+    }
+  }
+
+  // number of members of the element that are still variables, compacting its list
+  private int liveMembers(int e) {
+    int count = 0;
+    for (int r = 0; r < this.memberCount[e]; r++) {
+      int v = this.members[e][r];
+      if (this.state[v] == VARIABLE) {
+        this.members[e][count++] = v;
+      }
+    }
+    this.memberCount[e] = count;
+    return count;
+  }
+
+  private int nextStamp() {
+    this.stamp++;
+    return this.stamp;
+  }
+
+  // add the variable to the list of its degree
+  private void insert(int i) {
+    int d = this.degree[i];
+    this.prev[i] = -1;
+    this.next[i] = this.head[d];
+    if (this.head[d] != -1) {
+      this.prev[this.head[d]] = i;
+    }
+    this.head[d] = i;
+  }
+
+  // remove the variable from the list of its degree
+  private void remove(int i) {
+    if (this.prev[i] != -1) {
+      this.next[this.prev[i]] = this.next[i];
+    } else {
+      this.head[this.degree[i]] = this.next[i];
+    }
+    if (this.next[i] != -1) {
+      this.prev[this.next[i]] = this.prev[i];
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package mat;
+
+/**
+ * This class represents a pool of the data nodes of a single matrix. Nodes of removed entries are
+ * kept on a free list and reused by later entries, and when the list runs out, a whole chunk of
+ * nodes is allocated at once so that nodes created together sit next to each other in memory.
+ * A pool is not thread safe.
+ */
+final class NodePool {
+
+  // estimated size of a data node on a 64-bit JVM with compressed references
+  private static final long NODE_BYTES = 40;
+
+  private final int chunkSize;
+  // free nodes, linked through their right link
+  private DataNode<Float> free;
+  private int available;
+
+  /**
+   * Constructs an empty pool.
+   *
+   * @param chunkSize the number of nodes allocated at once when the pool is empty
+   */
+  NodePool(int chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Take a node from the pool. The node is not linked into any list.
+   *
+   * @return a free node
+   */
+  @SuppressWarnings("unchecked")
+  DataNode<Float> obtain() {
+    if (this.free == null) {
+      for (int k = 0; k < this.chunkSize; k++) {
+        DataNode<Float> node = new DataNode<Float>();
+        node.right = this.free;
+        this.free = node;
+      }
+      this.available += this.chunkSize;
+    }
+    DataNode<Float> node = this.free;
+    this.free = (DataNode<Float>) node.right;
+    node.right = null;
+    this.available--;
+    return node;
+  }
+
+  /**
+   * Return a node that was removed from its lists to the pool.
+   *
+   * @param node the node, which must not be used by its matrix any more
+   */
+  void release(AbstractNode<Float> node) {
+    DataNode<Float> dataNode = (DataNode<Float>) node;
+    // drop the references, so that the pool does not keep other nodes or values alive
+    dataNode.setData(null);
+    dataNode.left = null;
+    dataNode.top = null;
+    dataNode.bottom = null;
+    dataNode.right = this.free;
+    this.free = dataNode;
+    this.available++;
+  }
+
+  /**
+   * Get the number of free nodes in the pool.
+   *
+   * @return the number of free nodes
+   */
+  int available() {
+    return this.available;
+  }
+
+  /**
+   * Get an estimate of the memory used by the free nodes of this pool.
+   *
+   * @return the estimated size in bytes
+   */
+  long estimatedBytes() {
+    return 24 + this.available * NODE_BYTES;
+  }
+}
@@ -0,0 +1,142 @@
+package mat;
+
+/**
+ * This class represents a permutation of the rows or columns of a matrix of a given size. Entry k
+ * of the permutation is the original index that is moved to position k. The inverse is kept along
+ * with it, so that results computed on a permuted matrix can be mapped back to the original
+ * ordering. A permutation is immutable.
+ */
+public final class Permutation {
+
+  private final int[] forward;
+  private final int[] inverse;
+
+  /**
+   * Constructs a permutation from the given ordering. The array is copied.
+   *
+   * @param order order[k] is the original index moved to position k
+   * @throws IllegalArgumentException if the array is not a permutation of 0 to order.length - 1
+   */
+  public Permutation(int[] order) throws IllegalArgumentException {
+    this(order.clone(), true);
+  }
+
+  // constructs a permutation that takes ownership of the given array
+  Permutation(int[] order, boolean validate) throws IllegalArgumentException {
+    this.forward = order;
+    this.inverse = new int[order.length];
+    for (int k = 0; k < order.length; k++) {
+      this.inverse[k] = -1;
+    }
+    for (int k = 0; k < order.length; k++) {
+      int i = order[k];
+      if (validate && (i < 0 || i >= order.length || this.inverse[i] != -1)) {
+        throw new IllegalArgumentException("The given order is not a permutation, index " + i
+            + " at position " + k + " is out of bounds or repeated");
+      }
+      this.inverse[i] = k;
+    }
+  }
+
+  /**
+   * Return the identity permutation of the given size.
+   *
+   * @param size the number of indices
+   * @return the identity permutation
+   */
+  public static Permutation identity(int size) {
+    int[] order = new int[size];
+    for (int k = 0; k < size; k++) {
+      order[k] = k;
+    }
+    return new Permutation(order, false);
+  }
+
+  /**
+   * Get the original index that is moved to the given position.
+   *
+   * @param position the position after permuting
+   * @return the original index
+   */
+  public int get(int position) {
+    return this.forward[position];
+  }
+
+  /**
+   * Get the position that the given original index is moved to.
+   *
+   * @param index the original index
+   * @return the position after permuting
+   */
+  public int positionOf(int index) {
+    return this.inverse[index];
+  }
+
+  /**
+   * Get the number of indices permuted.
+   *
+   * @return the size of this permutation
+   */
+  public int size() {
+    return this.forward.length;
+  }
+
+  /**
+   * Return the inverse of this permutation.
+   *
+   * @return the permutation that undoes this one
+   */
+  public Permutation inverse() {
+    return new Permutation(this.inverse.clone(), false);
+  }
+
+  /**
+   * Return a copy of the ordering of this permutation.
+   *
+   * @return the array where entry k is the original index moved to position k
+   */
+  public int[] toArray() {
+    return this.forward.clone();
+  }
+
+  /**
+   * Permute the given vector i.e. out[k] = x[get(k)]. x and out must not be the same array.
+   *
+   * @param x   the vector in the original ordering
+   * @param out the array to store the permuted vector in
+   * @throws IllegalArgumentException if the length of the vectors does not match this permutation
+   */
+  public void apply(float[] x, float[] out) throws IllegalArgumentException {
+    checkLengths(x, out);
+    for (int k = 0; k < this.forward.length; k++) {
+      out[k] = x[this.forward[k]];
+    }
+  }
+
+  /**
+   * Map the given permuted vector back to the original ordering i.e. out[get(k)] = x[k]. x and out
+   * must not be the same array.
+   *
+   * @param x   the vector in the permuted ordering
+   * @param out the array to store the vector in the original ordering in
+   * @throws IllegalArgumentException if the length of the vectors does not match this permutation
+   */
+  public void applyInverse(float[] x, float[] out) throws IllegalArgumentException {
+    checkLengths(x, out);
+    for (int k = 0; k < this.forward.length; k++) {
+      out[this.forward[k]] = x[k];
+    }
+  }
+
+  private void checkLengths(float[] x, float[] out) throws IllegalArgumentException {
+    if (x.length != this.forward.length || out.length != this.forward.length) {
+      throw new IllegalArgumentException(
+          "The length of the vectors does not match the size of the permutation");
+    }
+  }
+
+  // the inverse array, shared with the caller to avoid a copy
+  int[] inverseArray() {
+    return this.inverse;
+  }
+}
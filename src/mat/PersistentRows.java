@@ -0,0 +1,208 @@
+package mat;
+
+/**
+ * This class represents an immutable table of the rows of a sparse matrix, stored as a 32-way
+ * radix trie. Empty rows and empty ranges of rows take no space. A new version of the table is made
+ * through a Builder, which copies only the trie nodes on the paths to the rows that change, so that
+ * every unchanged row and subtree is shared between the versions.
+ */
+final class PersistentRows {
+
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+
+  /**
+   * This class represents a single immutable row, its columns in increasing order and the
+   * matching values.
+   */
+  static final class Row {
+
+    static final Row EMPTY = new Row(new int[0], new float[0]);
+
+    final int[] cols;
+    final float[] vals;
+
+    Row(int[] cols, float[] vals) {
+      this.cols = cols;
+      this.vals = vals;
+    }
+
+    /**
+     * Get the value at the given column of this row.
+     *
+     * @param j the column
+     * @return the value, 0 if the row has no entry at the column
+     */
+    float get(int j) {
+      int low = 0;
+      int high = this.cols.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (this.cols[mid] < j) {
+          low = mid + 1;
+        } else if (this.cols[mid] > j) {
+          high = mid - 1;
+        } else {
+          return this.vals[mid];
+        }
+      }
+      return 0f;
+    }
+  }
+
+  // a node of the trie, the slots of a leaf hold rows and the others hold nodes
+  private static final class Node {
+
+    // the builder that created this node, which may still modify it in place
+    private final Object owner;
+    private final Object[] slots;
+
+    private Node(Object owner, Object[] slots) {
+      this.owner = owner;
+      this.slots = slots;
+    }
+  }
+
+  final int size;
+  private final int shift;
+  private final Node root;
+
+  private PersistentRows(int size, int shift, Node root) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+  }
+
+  /**
+   * Return a table of the given number of rows, all of them empty.
+   *
+   * @param size the number of rows
+   * @return the empty table
+   */
+  static PersistentRows empty(int size) {
+    int shift = 0;
+    while (shift < 30 && (long) size > (1L << (shift + BITS))) {
+      shift += BITS;
+    }
+    return new PersistentRows(size, shift, null);
+  }
+
+  /**
+   * Get the given row.
+   *
+   * @param i the index of the row
+   * @return the row, Row.EMPTY if it has no entries
+   */
+  Row get(int i) {
+    Node node = this.root;
+    for (int level = this.shift; level > 0 && node != null; level -= BITS) {
+      node = (Node) node.slots[(i >>> level) & MASK];
+    }
+    if (node == null) {
+      return Row.EMPTY;
+    }
+    Row row = (Row) node.slots[i & MASK];
+    return row == null ? Row.EMPTY : row;
+  }
+
+  /**
+   * Get an estimate of the memory used by this table, counting every row and trie node it can
+   * reach, including those shared with other versions.
+   *
+   * @return the estimated size in bytes
+   */
+  long estimatedBytes() {
+    return 24 + estimatedBytes(this.root, this.shift);
+  }
+
+  private static long estimatedBytes(Node node, int level) {
+    if (node == null) {
+      return 0;
+    }
+    // the node and its array of slots
+    long bytes = 16 + 16 + 4 * WIDTH;
+    for (Object slot : node.slots) {
+      if (slot == null) {
+        continue;
+      }
+      if (level > 0) {
+        bytes += estimatedBytes((Node) slot, level - BITS);
+      } else {
+        // the row and its two arrays
+        bytes += 16 + 2 * (16 + 4L * ((Row) slot).cols.length);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Return a builder for a new version of this table.
+   *
+   * @return a builder starting from this table
+   */
+  Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  /**
+   * This class builds a new version of a table. Nodes copied by the builder are modified in place
+   * until the table is built, so that changing many rows under the same node copies it once.
+   */
+  static final class Builder {
+
+    private final int size;
+    private final int shift;
+    private Object owner;
+    private Node root;
+
+    private Builder(PersistentRows base) {
+      this.size = base.size;
+      this.shift = base.shift;
+      this.owner = new Object();
+      this.root = base.root;
+    }
+
+    /**
+     * Replace the given row.
+     *
+     * @param i   the index of the row
+     * @param row the new row
+     */
+    void set(int i, Row row) {
+      Object value = row.cols.length == 0 ? null : row;
+      this.root = editable(this.root);
+      Node node = this.root;
+      for (int level = this.shift; level > 0; level -= BITS) {
+        int slot = (i >>> level) & MASK;
+        Node child = editable((Node) node.slots[slot]);
+        node.slots[slot] = child;
+        node = child;
+      }
+      node.slots[i & MASK] = value;
+    }
+
+    /**
+     * Return the table with the changes made so far. Later changes to this builder do not affect
+     * the returned table.
+     *
+     * @return the new table
+     */
+    PersistentRows build() {
+      // nodes of the built table must never be modified again
+      this.owner = new Object();
+      return new PersistentRows(this.size, this.shift, this.root);
+    }
+
+    // the node itself if this builder owns it, otherwise a copy that this builder owns
+    private Node editable(Node node) {
+      if (node == null) {
+        return new Node(this.owner, new Object[WIDTH]);
+      }
+      if (node.owner == this.owner) {
+        return node;
+      }
+      return new Node(this.owner, node.slots.clone());
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package mat;
+
+/**
+ * This interface represents a preconditioner M for an iterative solver. Applying the
+ * preconditioner approximates solving M * z = r, and should be much cheaper than solving the
+ * original system.
+ */
+public interface Preconditioner {
+
+  /**
+   * Apply this preconditioner to the given vector i.e. z = inverse(M) * r. The previous contents of
+   * z are overwritten. r must not be mutated.
+   *
+   * @param r the vector to be preconditioned
+   * @param z the vector to store the result in
+   * @throws IllegalArgumentException if the length of the vectors does not match this
+   *                                  preconditioner
+   */
+  void apply(float[] r, float[] z) throws IllegalArgumentException;
+
+  /**
+   * Get the size of the matrix this preconditioner was built for.
+   *
+   * @return the number of rows of the matrix
+   */
+  int size();
+}
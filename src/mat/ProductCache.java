@@ -0,0 +1,295 @@
+package mat;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class represents a cache of the results of add, premul and postmul, for services that
+ * compute the same sums and products of the same matrices over and over. Results are found by the
+ * identity of the operands, and are only served while the modification counts of both operands,
+ * and of the result itself, are the same as when the result was computed. A change of a matrix
+ * through set or setIdentity therefore makes every result computed from it invisible at once.
+ *
+ * <p>The cache holds at most a given number of results taking at most a given estimated number of
+ * bytes, and evicts the least recently used results first. It only holds weak references to the
+ * operands, so results of matrices that are no longer used are dropped. A cache can be shared by
+ * any number of threads. Results are computed outside of its lock, hence two threads missing the
+ * same result at the same time may both compute it.
+ */
+public final class ProductCache {
+
+  // estimated size of an entry of the cache, with its key and weak references
+  private static final long ENTRY_BYTES = 160;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  // iteration order is from the least to the most recently used
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f,
+      true);
+  private final ReferenceQueue<SquareMatrix> collected = new ReferenceQueue<SquareMatrix>();
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Constructs an empty cache.
+   *
+   * @param maxEntries the largest number of results to keep
+   * @param maxBytes   the largest estimated size of the results to keep, in bytes
+   * @throws IllegalArgumentException if either bound is not positive
+   */
+  public ProductCache(int maxEntries, long maxBytes) throws IllegalArgumentException {
+    if (maxEntries <= 0 || maxBytes <= 0) {
+      throw new IllegalArgumentException("The bounds of a cache must be positive");
+    }
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Return the sum of the given matrices i.e. a.add(b), from the cache if it is up to date. The
+   * result must not be modified, otherwise it is dropped from the cache.
+   *
+   * @param a the matrix to add to
+   * @param b the matrix to be added
+   * @return the sum of a and b
+   * @throws IllegalArgumentException if the sizes of the matrices do not match
+   */
+  public SquareMatrix add(SquareMatrix a, SquareMatrix b) throws IllegalArgumentException {
+    return get(Operation.ADD, a, b);
+  }
+
+  /**
+   * Return the product b * a i.e. a.premul(b), from the cache if it is up to date. The result must
+   * not be modified, otherwise it is dropped from the cache.
+   *
+   * @param a the matrix to be pre-multiplied
+   * @param b the matrix to pre-multiply with
+   * @return the product b * a
+   * @throws IllegalArgumentException if the sizes of the matrices do not match
+   */
+  public SquareMatrix premul(SquareMatrix a, SquareMatrix b) throws IllegalArgumentException {
+    return get(Operation.PREMUL, a, b);
+  }
+
+  /**
+   * Return the product a * b i.e. a.postmul(b), from the cache if it is up to date. The result
+   * must not be modified, otherwise it is dropped from the cache.
+   *
+   * @param a the matrix to be post-multiplied
+   * @param b the matrix to post-multiply with
+   * @return the product a * b
+   * @throws IllegalArgumentException if the sizes of the matrices do not match
+   */
+  public SquareMatrix postmul(SquareMatrix a, SquareMatrix b) throws IllegalArgumentException {
+    return get(Operation.POSTMUL, a, b);
+  }
+
+  /**
+   * Drop every result from this cache. The hit and miss counts are kept.
+   */
+  public synchronized void clear() {
+    this.entries.clear();
+    this.bytes = 0;
+  }
+
+  /**
+   * Get the number of calls that were served from this cache.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Get the number of calls that computed their result, because it was not cached or out of date.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Get the number of results dropped to stay within the bounds of this cache.
+   *
+   * @return the number of evictions
+   */
+  public synchronized long getEvictions() {
+    return this.evictions;
+  }
+
+  /**
+   * Get the number of results held by this cache.
+   *
+   * @return the number of results
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Get the estimated size of the results held by this cache.
+   *
+   * @return the estimated size in bytes
+   */
+  public synchronized long estimatedBytes() {
+    return this.bytes;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "entries=" + this.entries.size() + " bytes=" + this.bytes + " hits=" + this.hits
+        + " misses=" + this.misses + " evictions=" + this.evictions;
+  }
+
+  private SquareMatrix get(Operation operation, SquareMatrix a, SquareMatrix b) {
+    // the counts are read before the result is looked up or computed, so a change made meanwhile
+    // always makes the result out of date
+    long versionA = a.modificationCount();
+    long versionB = b.modificationCount();
+    Key key = new Key(operation, a, b, null);
+    synchronized (this) {
+      Entry entry = this.entries.get(key);
+      if (entry != null) {
+        if (entry.versionA == versionA && entry.versionB == versionB
+            && entry.result.modificationCount() == entry.versionResult) {
+          this.hits++;
+          return entry.result;
+        }
+        remove(key);
+      }
+      this.misses++;
+    }
+
+    SquareMatrix result;
+    switch (operation) {
+      case ADD:
+        result = a.add(b);
+        break;
+      case PREMUL:
+        result = a.premul(b);
+        break;
+      default:
+        result = a.postmul(b);
+        break;
+    }
+
+    Entry entry = new Entry(result, versionA, versionB);
+    if (entry.bytes <= this.maxBytes && a.modificationCount() == versionA
+        && b.modificationCount() == versionB) {
+      synchronized (this) {
+        dropCollected();
+        Key stored = new Key(operation, a, b, this.collected);
+        remove(stored);
+        this.entries.put(stored, entry);
+        this.bytes += entry.bytes;
+        evict();
+      }
+    }
+    return result;
+  }
+
+  // drop the least recently used results until this cache is within its bounds
+  private void evict() {
+    Iterator<Map.Entry<Key, Entry>> it = this.entries.entrySet().iterator();
+    while (it.hasNext()
+        && (this.entries.size() > this.maxEntries || this.bytes > this.maxBytes)) {
+      this.bytes -= it.next().getValue().bytes;
+      it.remove();
+      this.evictions++;
+    }
+  }
+
+  // drop the results of operands that were garbage collected
+  private void dropCollected() {
+    Object ref;
+    while ((ref = this.collected.poll()) != null) {
+      remove(((Operand) ref).key);
+    }
+  }
+
+  private void remove(Key key) {
+    Entry entry = this.entries.remove(key);
+    if (entry != null) {
+      this.bytes -= entry.bytes;
+    }
+  }
+
+  private enum Operation {
+    ADD, PREMUL, POSTMUL
+  }
+
+  // a cached result, with the modification counts it was computed at
+  private static final class Entry {
+
+    private final SquareMatrix result;
+    private final long versionA;
+    private final long versionB;
+    private final long versionResult;
+    private final long bytes;
+
+    private Entry(SquareMatrix result, long versionA, long versionB) {
+      this.result = result;
+      this.versionA = versionA;
+      this.versionB = versionB;
+      this.versionResult = result.modificationCount();
+      this.bytes = ENTRY_BYTES + result.estimatedBytes();
+    }
+  }
+
+  // a weak reference to an operand, that knows the key it belongs to
+  private static final class Operand extends WeakReference<SquareMatrix> {
+
+    private final Key key;
+
+    private Operand(SquareMatrix matrix, Key key, ReferenceQueue<SquareMatrix> queue) {
+      super(matrix, queue);
+      this.key = key;
+    }
+  }
+
+  // the operation and the identity of its operands. A key whose operands were collected is only
+  // equal to itself
+  private static final class Key {
+
+    private final Operation operation;
+    private final Operand a;
+    private final Operand b;
+    private final int hash;
+
+    private Key(Operation operation, SquareMatrix a, SquareMatrix b,
+        ReferenceQueue<SquareMatrix> queue) {
+      this.operation = operation;
+      this.a = new Operand(a, this, queue);
+      this.b = new Operand(b, this, queue);
+      this.hash = (operation.hashCode() * 31 + System.identityHashCode(a)) * 31
+          + System.identityHashCode(b);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      SquareMatrix a = this.a.get();
+      SquareMatrix b = this.b.get();
+      return this.operation == other.operation && a != null && b != null
+          && a == other.a.get() && b == other.b.get();
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package mat;
+
+import java.util.Arrays;
+
+/**
+ * This class computes the product of two matrices in compressed row form, one row of the result
+ * at a time. Rows of a product range from a handful of entries to nearly dense, and no single
+ * accumulator suits all of them, so every row is classified by an upper bound of its entries: the
+ * number of products summed into it, capped at the size of the matrix. Rows picked from at most two
+ * rows of the right operand are merged directly from those sorted rows. Rows with a small bound are
+ * summed in a small open addressing hash table that stays in cache, and rows with a large bound in
+ * a dense array, whose bitmap of touched columns yields the columns already sorted. The rows are
+ * bucketed by class, and every class runs its own loop over its rows.
+ */
+final class ProductRows {
+
+  // a row whose bound, times this, reaches the size of the matrix is summed in a dense array
+  private static final int DENSE_FACTOR = 64;
+
+  private final CompressedRows a;
+  private final CompressedRows b;
+  private final int size;
+
+  // the entries of every row of the result, in the order the rows were computed
+  private int[] index;
+  private float[] values;
+  private int count;
+  private final int[] rowOffset;
+  private final int[] rowLength;
+
+  private ProductRows(CompressedRows a, CompressedRows b) {
+    this.a = a;
+    this.b = b;
+    this.size = a.size;
+    this.index = new int[16];
+    this.values = new float[16];
+    this.rowOffset = new int[this.size];
+    this.rowLength = new int[this.size];
+  }
+
+  /**
+   * Compute the product a * b. Entries that sum up to 0 are not stored.
+   *
+   * @param a the left operand
+   * @param b the right operand, of the same size
+   * @return the non-zero entries of the product
+   */
+  static CompressedRows multiply(CompressedRows a, CompressedRows b) {
+    ProductRows product = new ProductRows(a, b);
+    int size = a.size;
+
+    // bucket the rows by class: rows of a with at most two entries, then small and large bounds
+    long totalBound = 0;
+    int[] merged = new int[size];
+    int[] hashed = new int[size];
+    int[] dense = new int[size];
+    int mergedCount = 0;
+    int hashedCount = 0;
+    int denseCount = 0;
+    int largestHashed = 0;
+    int[] bounds = new int[size];
+    for (int i = 0; i < size; i++) {
+      int entries = a.rowStart[i + 1] - a.rowStart[i];
+      if (entries == 0) {
+        continue;
+      }
+      long bound = 0;
+      for (int p = a.rowStart[i]; p < a.rowStart[i + 1]; p++) {
+        int k = a.colIndex[p];
+        bound += b.rowStart[k + 1] - b.rowStart[k];
+      }
+      totalBound += Math.min(bound, size);
+      if (entries <= 2) {
+        merged[mergedCount++] = i;
+      } else if (bound * DENSE_FACTOR >= size) {
+        dense[denseCount++] = i;
+      } else {
+        hashed[hashedCount++] = i;
+        bounds[i] = (int) bound;
+        largestHashed = Math.max(largestHashed, bounds[i]);
+      }
+    }
+
+    // pre-size the result from the bounds, which only overestimate where rows of b overlap. A bound
+    // far beyond the size of the operands is not trusted, and the result grows as needed instead
+    product.ensureCapacity((int) Math.min(totalBound, 4L * (a.nnz() + b.nnz()) + size));
+    for (int c = 0; c < mergedCount; c++) {
+      product.mergeRow(merged[c]);
+    }
+    if (hashedCount > 0) {
+      int[] keys = new int[tableSize(largestHashed)];
+      Arrays.fill(keys, -1);
+      float[] sums = new float[keys.length];
+      long[] sorted = new long[largestHashed];
+      for (int c = 0; c < hashedCount; c++) {
+        int i = hashed[c];
+        product.hashRow(i, tableSize(bounds[i]), keys, sums, sorted);
+      }
+    }
+    if (denseCount > 0) {
+      float[] sums = new float[size];
+      long[] touched = new long[(size + 63) >>> 6];
+      for (int c = 0; c < denseCount; c++) {
+        product.denseRow(dense[c], sums, touched);
+      }
+    }
+    return product.toCompressedRows();
+  }
+
+  // a power of two of at least twice the bound, so that probes stay short
+  private static int tableSize(int bound) {
+    return Integer.highestOneBit(Math.max(1, 2 * bound - 1)) << 1;
+  }
+
+  // row i of a has one or two entries, hence the row of the result scales or merges rows of b
+  private void mergeRow(int i) {
+    int start = this.count;
+    int p = this.a.rowStart[i];
+    int k = this.a.colIndex[p];
+    float scale = this.a.values[p];
+    if (p + 1 == this.a.rowStart[i + 1]) {
+      ensureCapacity(this.b.rowStart[k + 1] - this.b.rowStart[k]);
+      for (int q = this.b.rowStart[k]; q < this.b.rowStart[k + 1]; q++) {
+        emit(this.b.colIndex[q], scale * this.b.values[q]);
+      }
+    } else {
+      int l = this.a.colIndex[p + 1];
+      float otherScale = this.a.values[p + 1];
+      int q = this.b.rowStart[k];
+      int r = this.b.rowStart[l];
+      ensureCapacity(this.b.rowStart[k + 1] - q + this.b.rowStart[l + 1] - r);
+      while (q < this.b.rowStart[k + 1] || r < this.b.rowStart[l + 1]) {
+        int jq = q < this.b.rowStart[k + 1] ? this.b.colIndex[q] : Integer.MAX_VALUE;
+        int jr = r < this.b.rowStart[l + 1] ? this.b.colIndex[r] : Integer.MAX_VALUE;
+        if (jq == jr) {
+          emit(jq, scale * this.b.values[q++] + otherScale * this.b.values[r++]);
+        } else if (jq < jr) {
+          emit(jq, scale * this.b.values[q++]);
+        } else {
+          emit(jr, otherScale * this.b.values[r++]);
+        }
+      }
+    }
+    endRow(i, start);
+  }
+
+  // sum row i in the first slots of the hash table, as many as the given capacity, then sort its
+  // columns, each packed with its slot. A table that fits the row stays in the fastest cache
+  private void hashRow(int i, int capacity, int[] keys, float[] sums, long[] sorted) {
+    int mask = capacity - 1;
+    // multiplicative hashing, taking the high bits of the product
+    int shift = Integer.numberOfLeadingZeros(mask);
+    int used = 0;
+    for (int p = this.a.rowStart[i]; p < this.a.rowStart[i + 1]; p++) {
+      int k = this.a.colIndex[p];
+      float scale = this.a.values[p];
+      for (int q = this.b.rowStart[k]; q < this.b.rowStart[k + 1]; q++) {
+        int j = this.b.colIndex[q];
+        int slot = (j * 0x9E3779B9) >>> shift;
+        while (keys[slot] != j) {
+          if (keys[slot] == -1) {
+            keys[slot] = j;
+            sums[slot] = 0f;
+            sorted[used++] = (long) j << 32 | slot;
+            break;
+          }
+          slot = (slot + 1) & mask;
+        }
+        sums[slot] += scale * this.b.values[q];
+      }
+    }
+
+    Arrays.sort(sorted, 0, used);
+    int start = this.count;
+    ensureCapacity(used);
+    for (int c = 0; c < used; c++) {
+      int slot = (int) sorted[c];
+      emit(keys[slot], sums[slot]);
+      keys[slot] = -1;
+    }
+    endRow(i, start);
+  }
+
+  // sum row i in the dense array, then read it back in the order of the touched columns
+  private void denseRow(int i, float[] sums, long[] touched) {
+    int first = Integer.MAX_VALUE;
+    int last = -1;
+    for (int p = this.a.rowStart[i]; p < this.a.rowStart[i + 1]; p++) {
+      int k = this.a.colIndex[p];
+      float scale = this.a.values[p];
+      for (int q = this.b.rowStart[k]; q < this.b.rowStart[k + 1]; q++) {
+        int j = this.b.colIndex[q];
+        sums[j] += scale * this.b.values[q];
+        touched[j >>> 6] |= 1L << j;
+      }
+      if (this.b.rowStart[k] < this.b.rowStart[k + 1]) {
+        first = Math.min(first, this.b.colIndex[this.b.rowStart[k]]);
+        last = Math.max(last, this.b.colIndex[this.b.rowStart[k + 1] - 1]);
+      }
+    }
+
+    int start = this.count;
+    for (int w = first >>> 6; last >= 0 && w <= last >>> 6; w++) {
+      long word = touched[w];
+      if (word == 0) {
+        continue;
+      }
+      touched[w] = 0;
+      ensureCapacity(Long.bitCount(word));
+      while (word != 0) {
+        int j = (w << 6) + Long.numberOfTrailingZeros(word);
+        emit(j, sums[j]);
+        sums[j] = 0f;
+        word &= word - 1;
+      }
+    }
+    endRow(i, start);
+  }
+
+  // store an entry of the current row, the capacity must have been ensured
+  private void emit(int j, float value) {
+    if (value != 0f) {
+      this.index[this.count] = j;
+      this.values[this.count++] = value;
+    }
+  }
+
+  private void endRow(int i, int start) {
+    this.rowOffset[i] = start;
+    this.rowLength[i] = this.count - start;
+  }
+
+  private void ensureCapacity(int entries) {
+    if (this.count + entries > this.index.length) {
+      int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+          Math.max(2L * this.index.length, (long) this.count + entries));
+      this.index = Arrays.copyOf(this.index, capacity);
+      this.values = Arrays.copyOf(this.values, capacity);
+    }
+  }
+
+  // gather the rows in order
+  private CompressedRows toCompressedRows() {
+    int[] start = new int[this.size + 1];
+    int[] colIndex = new int[this.count];
+    float[] data = new float[this.count];
+    for (int i = 0; i < this.size; i++) {
+      int length = this.rowLength[i];
+      System.arraycopy(this.index, this.rowOffset[i], colIndex, start[i], length);
+      System.arraycopy(this.values, this.rowOffset[i], data, start[i], length);
+      start[i + 1] = start[i] + length;
+    }
+    return new CompressedRows(this.size, start, colIndex, data);
+  }
+}
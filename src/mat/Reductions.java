@@ -0,0 +1,190 @@
+package mat;
+
+/**
+ * This class represents the sums, norms and extremes of the entries of a matrix, all computed in a
+ * single pass over its non-zero entries. The rows are split between threads by their entries, each
+ * task sums the rows it holds directly into the row sums and the columns into sums of its own, and
+ * the columns are added up once all tasks are done.
+ *
+ * <p>The values are a snapshot of the matrix at the given modification count, so a matrix keeps
+ * the last one and only computes it again once it has changed. The sums are accumulated in double
+ * precision.
+ */
+final class Reductions {
+
+  private final long modificationCount;
+  private final float[] rowSums;
+  private final float[] columnSums;
+  private final float trace;
+  private final float frobeniusNorm;
+  private final float oneNorm;
+  private final float infinityNorm;
+  private final float min;
+  private final float max;
+
+  private Reductions(long modificationCount, float[] rowSums, float[] columnSums, float trace,
+      float frobeniusNorm, float oneNorm, float infinityNorm, float min, float max) {
+    this.modificationCount = modificationCount;
+    this.rowSums = rowSums;
+    this.columnSums = columnSums;
+    this.trace = trace;
+    this.frobeniusNorm = frobeniusNorm;
+    this.oneNorm = oneNorm;
+    this.infinityNorm = infinityNorm;
+    this.min = min;
+    this.max = max;
+  }
+
+  /**
+   * Compute the reductions of the given matrix. The matrix must not change while they are
+   * computed.
+   *
+   * @param matrix            the matrix
+   * @param modificationCount the modification count of the matrix before the pass
+   * @return the reductions of the matrix
+   */
+  static Reductions of(AbstractMatrix matrix, long modificationCount) {
+    int size = matrix.size();
+    double[] rowSums = new double[size];
+    double[] rowAbsSums = new double[size];
+    RowScheduler scheduler = RowScheduler.byRows(matrix.rowWork());
+    Partial[] partials = new Partial[scheduler.tasks()];
+    scheduler.run((t, from, to) -> {
+      partials[t] = new Partial(rowSums, rowAbsSums);
+      matrix.forEachInRows((int) from, (int) to, partials[t]);
+    });
+
+    Partial total = partials[0];
+    for (int t = 1; t < partials.length; t++) {
+      total.merge(partials[t]);
+    }
+    float[] rows = new float[size];
+    float[] columns = new float[size];
+    double infinityNorm = 0;
+    double oneNorm = 0;
+    for (int i = 0; i < size; i++) {
+      rows[i] = (float) rowSums[i];
+      infinityNorm = Math.max(infinityNorm, rowAbsSums[i]);
+      columns[i] = total.columnSum(i);
+      oneNorm = Math.max(oneNorm, total.columnAbsSum(i));
+    }
+    float min = total.min;
+    float max = total.max;
+    // the entries that are not stored are 0
+    if (total.entries < (long) size * size) {
+      min = total.entries == 0 ? 0f : Math.min(min, 0f);
+      max = total.entries == 0 ? 0f : Math.max(max, 0f);
+    }
+    return new Reductions(modificationCount, rows, columns, (float) total.trace,
+        (float) Math.sqrt(total.squares), (float) oneNorm, (float) infinityNorm, min, max);
+  }
+
+  long modificationCount() {
+    return this.modificationCount;
+  }
+
+  // the arrays are copied, since they are kept for later calls
+
+  float[] rowSums() {
+    return this.rowSums.clone();
+  }
+
+  float[] columnSums() {
+    return this.columnSums.clone();
+  }
+
+  float trace() {
+    return this.trace;
+  }
+
+  float frobeniusNorm() {
+    return this.frobeniusNorm;
+  }
+
+  float oneNorm() {
+    return this.oneNorm;
+  }
+
+  float infinityNorm() {
+    return this.infinityNorm;
+  }
+
+  float min() {
+    return this.min;
+  }
+
+  float max() {
+    return this.max;
+  }
+
+  /**
+   * The sums of the entries of one task. The rows of a task are not shared with any other task,
+   * so their sums are stored directly, but every task keeps the sums of the columns it touched.
+   */
+  private static final class Partial implements IntIntFloatConsumer {
+
+    private final double[] rowSums;
+    private final double[] rowAbsSums;
+    // sums of the columns, allocated when the first entry is visited
+    private double[] columnSums;
+    private double[] columnAbsSums;
+    private double trace;
+    private double squares;
+    private float min = Float.POSITIVE_INFINITY;
+    private float max = Float.NEGATIVE_INFINITY;
+    private long entries;
+
+    private Partial(double[] rowSums, double[] rowAbsSums) {
+      this.rowSums = rowSums;
+      this.rowAbsSums = rowAbsSums;
+    }
+
+    // add the entry (i, j) to the sums
+    @Override
+    public void accept(int i, int j, float value) {
+      if (this.columnSums == null) {
+        this.columnSums = new double[this.rowSums.length];
+        this.columnAbsSums = new double[this.rowSums.length];
+      }
+      float abs = Math.abs(value);
+      this.rowSums[i] += value;
+      this.rowAbsSums[i] += abs;
+      this.columnSums[j] += value;
+      this.columnAbsSums[j] += abs;
+      this.squares += (double) value * value;
+      if (i == j) {
+        this.trace += value;
+      }
+      this.min = Math.min(this.min, value);
+      this.max = Math.max(this.max, value);
+      this.entries++;
+    }
+
+    private void merge(Partial other) {
+      if (other.columnSums != null) {
+        if (this.columnSums == null) {
+          this.columnSums = other.columnSums;
+          this.columnAbsSums = other.columnAbsSums;
+        } else {
+          for (int j = 0; j < this.columnSums.length; j++) {
+            this.columnSums[j] += other.columnSums[j];
+            this.columnAbsSums[j] += other.columnAbsSums[j];
+          }
+        }
+      }
+      this.trace += other.trace;
+      this.squares += other.squares;
+      this.min = Math.min(this.min, other.min);
+      this.max = Math.max(this.max, other.max);
+      this.entries += other.entries;
+    }
+
+    private float columnSum(int j) {
+      return this.columnSums == null ? 0f : (float) this.columnSums[j];
+    }
+
+    private double columnAbsSum(int j) {
+      return this.columnAbsSums == null ? 0 : this.columnAbsSums[j];
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package mat;
+
+/**
+ * This class computes orderings of the rows and columns of a matrix. Bandwidth-reducing orderings
+ * move the non-zero entries of every row close to the diagonal, so that the entries of a vector
+ * read by a row, and the rows that share a column, sit close together in memory. Fill-reducing
+ * orderings keep the factors of a matrix sparse. All orderings only use the pattern of A +
+ * transpose(A), and can be applied with {@link SparseMatrix#permute(Permutation)}.
+ */
+public final class Reordering {
+
+  private Reordering() {
+  }
+
+  /**
+   * Compute the reverse Cuthill-McKee ordering of the given matrix. Every connected component is
+   * ordered by a breadth first search from a pseudo-peripheral node, visiting neighbours by
+   * increasing degree, and the resulting order is reversed.
+   *
+   * @param matrix the matrix to be ordered
+   * @return the bandwidth-reducing permutation
+   */
+  public static Permutation reverseCuthillMcKee(SquareMatrix matrix) {
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows graph = ((AbstractMatrix) matrix).compressRows().symmetricPattern();
+    int n = graph.size;
+    int[] degree = degrees(graph);
+    int[] order = new int[n];
+    boolean[] visited = new boolean[n];
+    LevelSearch search = new LevelSearch(n);
+
+    int count = 0;
+    for (int start : byDegree(degree)) {
+      if (visited[start]) {
+        continue;
+      }
+      int root = pseudoPeripheral(graph, degree, start, search);
+
+      // breadth first search, the queue is the order itself
+      int head = count;
+      order[count++] = root;
+      visited[root] = true;
+      while (head < count) {
+        int node = order[head++];
+        int first = count;
+        for (int p = graph.rowStart[node]; p < graph.rowStart[node + 1]; p++) {
+          int neighbour = graph.colIndex[p];
+          if (!visited[neighbour]) {
+            visited[neighbour] = true;
+            order[count++] = neighbour;
+          }
+        }
+        sortByDegree(order, first, count, degree);
+      }
+    }
+
+    // reverse
+    for (int i = 0, j = n - 1; i < j; i++, j--) {
+      int swap = order[i];
+      order[i] = order[j];
+      order[j] = swap;
+    }
+    return new Permutation(order, false);
+  }
+
+  /**
+   * Compute the ordering of the rows and columns of the given matrix by increasing degree, i.e.
+   * number of neighbours in the graph of A + transpose(A). Ties keep their original order.
+   *
+   * @param matrix the matrix to be ordered
+   * @return the permutation by degree
+   */
+  public static Permutation degree(SquareMatrix matrix) {
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows graph = ((AbstractMatrix) matrix).compressRows().symmetricPattern();
+    return new Permutation(byDegree(degrees(graph)), false);
+  }
+
+  /**
+   * Compute the approximate minimum degree ordering of the given matrix, which reduces the fill-in
+   * of its Cholesky and LU factors.
+   *
+   * @param matrix the matrix to be ordered
+   * @return the fill-reducing permutation
+   */
+  public static Permutation minimumDegree(SquareMatrix matrix) {
+    // assumption - all implementations extend AbstractMatrix
+    return new Permutation(MinimumDegree.order(((AbstractMatrix) matrix).compressRows()), false);
+  }
+
+  /**
+   * Compute the bandwidth of the given matrix, the largest distance |i - j| of a non-zero entry
+   * (i, j) from the diagonal.
+   *
+   * @param matrix the matrix
+   * @return the bandwidth, 0 for a diagonal or empty matrix
+   */
+  public static int bandwidth(SquareMatrix matrix) {
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows rows = ((AbstractMatrix) matrix).compressRows();
+    int bandwidth = 0;
+    for (int i = 0; i < rows.size; i++) {
+      for (int p = rows.rowStart[i]; p < rows.rowStart[i + 1]; p++) {
+        bandwidth = Math.max(bandwidth, Math.abs(i - rows.colIndex[p]));
+      }
+    }
+    return bandwidth;
+  }
+
+  private static int[] degrees(CompressedRows graph) {
+    int[] degree = new int[graph.size];
+    for (int i = 0; i < graph.size; i++) {
+      degree[i] = graph.rowStart[i + 1] - graph.rowStart[i];
+    }
+    return degree;
+  }
+
+  // the nodes sorted by increasing degree with a counting sort, ties in index order
+  private static int[] byDegree(int[] degree) {
+    int n = degree.length;
+    int[] start = new int[n + 1];
+    for (int d : degree) {
+      start[d + 1]++;
+    }
+    for (int d = 0; d < n; d++) {
+      start[d + 1] += start[d];
+    }
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[start[degree[i]]++] = i;
+    }
+    return order;
+  }
+
+  // insertion sort of order[from..to) by degree, neighbour lists are short
+  private static void sortByDegree(int[] order, int from, int to, int[] degree) {
+    for (int i = from + 1; i < to; i++) {
+      int node = order[i];
+      int j = i - 1;
+      while (j >= from && degree[order[j]] > degree[node]) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = node;
+    }
+  }
+
+  // George-Liu search for a node of (nearly) maximal eccentricity in the component of start
+  private static int pseudoPeripheral(CompressedRows graph, int[] degree, int start,
+      LevelSearch search) {
+    int root = start;
+    int eccentricity = -1;
+    while (true) {
+      int depth = search.run(graph, root);
+      if (depth <= eccentricity) {
+        return root;
+      }
+      eccentricity = depth;
+      // restart from the node of least degree in the last level
+      int candidate = search.leastDegreeInLastLevel(degree);
+      if (candidate == root) {
+        return root;
+      }
+      root = candidate;
+    }
+  }
+
+  /**
+   * This class holds the scratch space of the breadth first searches that build the level
+   * structures, so that searching many small components does not allocate.
+   */
+  private static final class LevelSearch {
+
+    private final int[] queue;
+    private final int[] depth;
+    private final int[] mark;
+    private int stamp;
+    private int size;
+
+    LevelSearch(int n) {
+      this.queue = new int[n];
+      this.depth = new int[n];
+      this.mark = new int[n];
+    }
+
+    // breadth first search from root, returns the depth of the deepest level
+    int run(CompressedRows graph, int root) {
+      this.stamp++;
+      int head = 0;
+      this.size = 0;
+      this.queue[this.size++] = root;
+      this.mark[root] = this.stamp;
+      this.depth[root] = 0;
+      while (head < this.size) {
+        int node = this.queue[head++];
+        for (int p = graph.rowStart[node]; p < graph.rowStart[node + 1]; p++) {
+          int neighbour = graph.colIndex[p];
+          if (this.mark[neighbour] != this.stamp) {
+            this.mark[neighbour] = this.stamp;
+            this.depth[neighbour] = this.depth[node] + 1;
+            this.queue[this.size++] = neighbour;
+          }
+        }
+      }
+      return this.depth[this.queue[this.size - 1]];
+    }
+
+    // the node of least degree in the deepest level of the last search
+    int leastDegreeInLastLevel(int[] degree) {
+      int last = this.queue[this.size - 1];
+      int best = last;
+      for (int t = this.size - 1; t >= 0 && this.depth[this.queue[t]] == this.depth[last]; t--) {
+        if (degree[this.queue[t]] < degree[best]) {
+          best = this.queue[t];
+        }
+      }
+      return best;
+    }
+  }
+}
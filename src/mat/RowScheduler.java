@@ -0,0 +1,213 @@
+package mat;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class represents a split of the rows of a matrix into tasks of about equal work, for the
+ * row-parallel kernels. The work of the rows is given by the prefix sums of their weights, e.g. the
+ * row starts of the compressed rows for the entries, or the running total of the multiply-adds of
+ * the rows of a product. Splitting by equal row counts would leave the thread that gets the hub
+ * rows of a power-law matrix working long after the others are done.
+ *
+ * <p>Tasks either end at row boundaries, in which case a row heavier than a task makes a task of
+ * its own, or cut the weight into equal ranges, in which case the heavy rows are split between
+ * tasks and the kernel combines the partial results of their pieces. There are several tasks per
+ * thread, and they are run as a binary tree of fork join tasks, so that threads that run out of
+ * work steal the remaining halves from the busy ones.
+ */
+final class RowScheduler {
+
+  // tasks per thread, so that stealing can even out tasks that take longer than their weight
+  private static final int TASKS_PER_THREAD = 4;
+  // work below this is not worth a task of its own
+  private static final long MIN_TASK_WEIGHT = 1 << 12;
+
+  /**
+   * The work of a kernel over a range of rows or weights.
+   */
+  interface Task {
+
+    /**
+     * Run the given task.
+     *
+     * @param task the index of the task
+     * @param from the first row, or weight, of the task
+     * @param to   the row, or weight, after the last one of the task
+     */
+    void run(int task, long from, long to);
+  }
+
+  private final long[] prefix;
+  private final boolean splitRows;
+  // the task t covers from bounds[t] to bounds[t + 1], in rows or in weight
+  private final long[] bounds;
+
+  private RowScheduler(long[] prefix, boolean splitRows, long[] bounds) {
+    this.prefix = prefix;
+    this.splitRows = splitRows;
+    this.bounds = bounds;
+  }
+
+  /**
+   * Split the rows into tasks that end at row boundaries.
+   *
+   * @param prefix the prefix sums of the weights of the rows, prefix[i] is the weight of the rows
+   *               before row i and prefix[rows] is the total weight
+   * @return the split of the rows
+   */
+  static RowScheduler byRows(long[] prefix) {
+    int rows = prefix.length - 1;
+    long total = prefix[rows];
+    int tasks = taskCount(total);
+    long[] bounds = new long[tasks + 1];
+    int count = 0;
+    for (int t = 1; t < tasks; t++) {
+      // the first row that starts at or after the ideal start of the task
+      int row = firstAtLeast(prefix, total / tasks * t + Math.min(t, total % tasks));
+      if (row > bounds[count] && row < rows) {
+        bounds[++count] = row;
+      }
+    }
+    bounds[++count] = rows;
+    return new RowScheduler(prefix, false, Arrays.copyOf(bounds, count + 1));
+  }
+
+  /**
+   * Split the total weight of the rows into tasks of equal weight, regardless of the rows. The
+   * kernel must handle rows that are split between tasks.
+   *
+   * @param rowStart the prefix sums of the weights of the rows, e.g. the row starts of compressed
+   *                 rows
+   * @return the split of the weight
+   */
+  static RowScheduler byWeight(int[] rowStart) {
+    long[] prefix = new long[rowStart.length];
+    for (int i = 0; i < rowStart.length; i++) {
+      prefix[i] = rowStart[i];
+    }
+    long total = prefix[prefix.length - 1];
+    int tasks = taskCount(total);
+    long[] bounds = new long[tasks + 1];
+    for (int t = 0; t <= tasks; t++) {
+      bounds[t] = total / tasks * t + Math.min(t, total % tasks);
+    }
+    return new RowScheduler(prefix, true, bounds);
+  }
+
+  /**
+   * Get the number of tasks.
+   *
+   * @return the number of tasks
+   */
+  int tasks() {
+    return this.bounds.length - 1;
+  }
+
+  /**
+   * Find the first row whose prefix is at least the given weight, i.e. the row that starts at or
+   * after the given weight.
+   *
+   * @param prefix the prefix sums of the weights of the rows
+   * @param weight the weight
+   * @return the row, or the number of rows if there is none
+   */
+  static int firstAtLeast(long[] prefix, long weight) {
+    int low = 0;
+    int high = prefix.length - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (prefix[mid] < weight) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Get the prefix sums of the weights of the rows this split was built from.
+   *
+   * @return the prefix sums, they must not be modified
+   */
+  long[] prefix() {
+    return this.prefix;
+  }
+
+  /**
+   * Run the given kernel over every task, on the common fork join pool, and wait for it to finish.
+   * The number of threads that took part is recorded on the event running on the calling thread.
+   *
+   * @param task the kernel
+   * @return the load of the threads that ran the tasks
+   */
+  ScheduleStats run(Task task) {
+    Map<Thread, long[]> loads = new ConcurrentHashMap<Thread, long[]>();
+    long start = System.nanoTime();
+    if (tasks() == 1) {
+      runTask(task, 0, loads);
+    } else {
+      ForkJoinPool.commonPool().invoke(new Split(task, 0, tasks(), loads));
+    }
+    long wall = System.nanoTime() - start;
+
+    long[] busy = new long[loads.size()];
+    long[] weights = new long[loads.size()];
+    int t = 0;
+    for (long[] load : loads.values()) {
+      busy[t] = load[0];
+      weights[t++] = load[1];
+    }
+    ScheduleStats stats = new ScheduleStats(tasks(), wall, busy, weights);
+    MatrixEvent.recordThreads(stats.getThreads());
+    return stats;
+  }
+
+  private void runTask(Task task, int t, Map<Thread, long[]> loads) {
+    long start = System.nanoTime();
+    task.run(t, this.bounds[t], this.bounds[t + 1]);
+    long[] load = loads.computeIfAbsent(Thread.currentThread(), thread -> new long[2]);
+    load[0] += System.nanoTime() - start;
+    load[1] += this.splitRows ? this.bounds[t + 1] - this.bounds[t]
+        : this.prefix[(int) this.bounds[t + 1]] - this.prefix[(int) this.bounds[t]];
+  }
+
+  private static int taskCount(long total) {
+    long tasks = Math.min(TASKS_PER_THREAD * (long) ForkJoinPool.getCommonPoolParallelism(),
+        total / MIN_TASK_WEIGHT);
+    return (int) Math.max(1, tasks);
+  }
+
+  // runs the tasks from lo to hi, forking off half of them while there is more than one
+  private final class Split extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Task task;
+    private final int lo;
+    private final int hi;
+    private final Map<Thread, long[]> loads;
+
+    private Split(Task task, int lo, int hi, Map<Thread, long[]> loads) {
+      this.task = task;
+      this.lo = lo;
+      this.hi = hi;
+      this.loads = loads;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.hi - this.lo == 1) {
+        runTask(this.task, this.lo, this.loads);
+        return;
+      }
+      int mid = (this.lo + this.hi) >>> 1;
+      invokeAll(new Split(this.task, this.lo, mid, this.loads),
+          new Split(this.task, mid, this.hi, this.loads));
+    }
+  }
+}
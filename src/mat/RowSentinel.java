@@ -10,6 +10,9 @@ import java.util.List;
  */
 class RowSentinel<T> extends AbstractNode<T> {
 
+  // number of data nodes in this row, kept up to date by the matrix
+  int count;
+
   RowSentinel() {
     super();
     this.left = this;
@@ -126,8 +129,9 @@ class RowSentinel<T> extends AbstractNode<T> {
    *
    * @param rowIndex row index
    * @param colIndex col index
+   * @return the removed node, or null if there was no such node
    */
-  void removeNodeIfExists(int rowIndex, int colIndex) {
+  AbstractNode<T> removeNodeIfExists(int rowIndex, int colIndex) {
     // assumption - this is the correct row sentinel
     AbstractNode<T> currRow;
 
@@ -135,9 +139,11 @@ class RowSentinel<T> extends AbstractNode<T> {
     while (currRow != this) {
       if (currRow.rowIndex == rowIndex && currRow.colIndex == colIndex) {
         currRow.remove();
-        break;
+        this.count--;
+        return currRow;
       }
       currRow = currRow.right;
     }
+    return null;
   }
 }
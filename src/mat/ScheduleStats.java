@@ -0,0 +1,107 @@
+package mat;
+
+/**
+ * This class represents the outcome of a single run of a row-parallel kernel: how the work was
+ * spread over the threads that took part, and how busy they were while the kernel ran. The weight
+ * of a task is the measure used to balance the tasks, the entries for a matrix-vector product and
+ * the multiply-adds for a matrix product.
+ */
+public final class ScheduleStats {
+
+  private final int tasks;
+  private final long wallNanos;
+  private final long[] busyNanos;
+  private final long[] weights;
+
+  ScheduleStats(int tasks, long wallNanos, long[] busyNanos, long[] weights) {
+    this.tasks = tasks;
+    this.wallNanos = wallNanos;
+    this.busyNanos = busyNanos;
+    this.weights = weights;
+  }
+
+  /**
+   * Get the number of tasks the work was split into.
+   *
+   * @return the number of tasks
+   */
+  public int getTasks() {
+    return this.tasks;
+  }
+
+  /**
+   * Get the number of threads that ran at least one task.
+   *
+   * @return the number of threads
+   */
+  public int getThreads() {
+    return this.busyNanos.length;
+  }
+
+  /**
+   * Get the wall clock time taken by the kernel.
+   *
+   * @return the elapsed time in nanoseconds
+   */
+  public long getWallNanos() {
+    return this.wallNanos;
+  }
+
+  /**
+   * Get the time the given thread spent running tasks.
+   *
+   * @param thread the thread, from 0 to getThreads() - 1
+   * @return the busy time in nanoseconds
+   */
+  public long getBusyNanos(int thread) {
+    return this.busyNanos[thread];
+  }
+
+  /**
+   * Get the weight of the tasks run by the given thread.
+   *
+   * @param thread the thread, from 0 to getThreads() - 1
+   * @return the weight of the work done by the thread
+   */
+  public long getWeight(int thread) {
+    return this.weights[thread];
+  }
+
+  /**
+   * Get the share of the wall clock time the given thread spent running tasks.
+   *
+   * @param thread the thread, from 0 to getThreads() - 1
+   * @return the utilization of the thread, between 0 and 1
+   */
+  public double getUtilization(int thread) {
+    return this.wallNanos == 0 ? 0 : Math.min(1.0, (double) this.busyNanos[thread]
+        / this.wallNanos);
+  }
+
+  /**
+   * Get the largest weight done by a thread, relative to the mean weight of the threads. A
+   * perfectly balanced run has an imbalance of 1.
+   *
+   * @return the imbalance of the weights, or 1 if no work was done
+   */
+  public double getImbalance() {
+    long total = 0;
+    long largest = 0;
+    for (long weight : this.weights) {
+      total += weight;
+      largest = Math.max(largest, weight);
+    }
+    return total == 0 ? 1 : (double) largest * this.weights.length / total;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder(String.format("tasks=%d threads=%d time=%.3fms "
+        + "imbalance=%.2f utilization=", this.tasks, getThreads(), this.wallNanos / 1e6,
+        getImbalance()));
+    for (int t = 0; t < getThreads(); t++) {
+      builder.append(t == 0 ? "[" : ", ").append(String.format("%.2f", getUtilization(t)));
+    }
+    return builder.append(getThreads() == 0 ? "[]" : "]").toString();
+  }
+}
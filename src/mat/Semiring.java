@@ -0,0 +1,581 @@
+package mat;
+
+import java.util.BitSet;
+
+/**
+ * This class represents the algebra used by a semiring product of matrices and vectors: an
+ * associative and commutative add with an identity, and a multiply. With plus-times, the semiring
+ * product is the ordinary product. With other semirings, graph algorithms become products, e.g. one
+ * step of a breadth-first search is the product of the frontier with the adjacency matrix over
+ * lor-land, and one step of Bellman-Ford is a product over min-plus.
+ *
+ * <p>As in GraphBLAS, sparsity is structural: only the entries that are stored take part in a
+ * product, and an entry of the result is stored if at least one pair of stored entries meets there.
+ * Since a matrix cannot store the value 0, a result that comes out as exactly 0 is not stored. The
+ * vector products either take a vector entry of 0 to be not present, or take the entries that are
+ * present from a separate BitSet, in which case 0 is a value like any other, e.g. the distance of
+ * the source of a shortest path search.
+ *
+ * <p>The built-in semirings have their own loops with the operations inlined. A custom semiring
+ * overrides add, multiply and zero, and is run by shared loops that call them, which the JIT
+ * inlines as long as only one or two custom semirings are used at a time. The vector products
+ * with a BitSet of present entries use the shared loops for every semiring.
+ */
+public abstract class Semiring {
+
+  /**
+   * The ordinary algebra of real numbers: add is +, multiply is *.
+   */
+  public static final Semiring PLUS_TIMES = new PlusTimes();
+
+  /**
+   * Shortest paths: add is min, multiply is +, and the identity of add is +infinity.
+   */
+  public static final Semiring MIN_PLUS = new MinPlus();
+
+  /**
+   * Longest or critical paths: add is max, multiply is +, and the identity of add is -infinity.
+   */
+  public static final Semiring MAX_PLUS = new MaxPlus();
+
+  /**
+   * Most reliable paths: add is max, multiply is *, and the identity of add is -infinity.
+   */
+  public static final Semiring MAX_TIMES = new MaxTimes();
+
+  /**
+   * Reachability: every stored entry is true, add is logical or and multiply is logical and.
+   * Results are 1 where an entry is reached.
+   */
+  public static final Semiring LOR_LAND = new LorLand();
+
+  /**
+   * Structure only: multiply returns 1 for any pair of stored entries, and add returns any of its
+   * arguments. Results are 1 where an entry is reached, and a dot product stops at the first pair.
+   */
+  public static final Semiring ANY_PAIR = new AnyPair();
+
+  /**
+   * Constructs a semiring. Subclasses override add, multiply and zero.
+   */
+  protected Semiring() {
+  }
+
+  /**
+   * Add two values of this semiring. This must be associative and commutative.
+   *
+   * @param a the first value
+   * @param b the second value
+   * @return the sum of a and b
+   */
+  public abstract float add(float a, float b);
+
+  /**
+   * Multiply two values of this semiring.
+   *
+   * @param a the value from the left operand
+   * @param b the value from the right operand
+   * @return the product of a and b
+   */
+  public abstract float multiply(float a, float b);
+
+  /**
+   * Get the identity of add, i.e. the value of a sum of nothing.
+   *
+   * @return the identity of add
+   */
+  public abstract float zero();
+
+  /**
+   * Compute the sum over p in [from, to) with x[index[p]] != 0 of values[p] * x[index[p]].
+   *
+   * @param index  the columns of the entries
+   * @param values the values of the entries
+   * @param from   the first entry
+   * @param to     the end of the entries
+   * @param x      the vector
+   * @return the sum, or 0 if no entry met a non-zero entry of x
+   */
+  float dot(int[] index, float[] values, int from, int to, float[] x) {
+    float sum = zero();
+    boolean found = false;
+    for (int p = from; p < to; p++) {
+      float xj = x[index[p]];
+      if (xj != 0f) {
+        sum = found ? add(sum, multiply(values[p], xj)) : multiply(values[p], xj);
+        found = true;
+      }
+    }
+    return found ? sum : 0f;
+  }
+
+  /**
+   * Compute the sum over p in [from, to) with present.get(index[p]) of values[p] * x[index[p]],
+   * and store it in y[i] if there is at least one such p. y[i] is not changed otherwise.
+   *
+   * @param index   the columns of the entries
+   * @param values  the values of the entries
+   * @param from    the first entry
+   * @param to      the end of the entries
+   * @param x       the vector
+   * @param present the entries of x that are present
+   * @param y       the vector to store the sum in
+   * @param i       the entry of y to store the sum in
+   * @return whether an entry met a present entry of x, i.e. whether y[i] was stored
+   */
+  boolean dot(int[] index, float[] values, int from, int to, float[] x, BitSet present, float[] y,
+      int i) {
+    float sum = zero();
+    boolean found = false;
+    for (int p = from; p < to; p++) {
+      int j = index[p];
+      if (present.get(j)) {
+        sum = found ? add(sum, multiply(values[p], x[j])) : multiply(values[p], x[j]);
+        found = true;
+      }
+    }
+    if (found) {
+      y[i] = sum;
+    }
+    return found;
+  }
+
+  /**
+   * Compute the sum of valuesA[p] * valuesB[q] over the pairs of entries with indexA[p] ==
+   * indexB[q], where p is in [fromA, toA) and q in [fromB, toB), and both index ranges are sorted.
+   *
+   * @param indexA  the indices of the first entries
+   * @param valuesA the values of the first entries
+   * @param fromA   the first of the first entries
+   * @param toA     the end of the first entries
+   * @param indexB  the indices of the second entries
+   * @param valuesB the values of the second entries
+   * @param fromB   the first of the second entries
+   * @param toB     the end of the second entries
+   * @return the sum, or 0 if no pair of entries meets
+   */
+  float dot(int[] indexA, float[] valuesA, int fromA, int toA, int[] indexB, float[] valuesB,
+      int fromB, int toB) {
+    float sum = zero();
+    boolean found = false;
+    int p = fromA;
+    int q = fromB;
+    while (p < toA && q < toB) {
+      if (indexA[p] == indexB[q]) {
+        float product = multiply(valuesA[p++], valuesB[q++]);
+        sum = found ? add(sum, product) : product;
+        found = true;
+      } else if (indexA[p] < indexB[q]) {
+        p++;
+      } else {
+        q++;
+      }
+    }
+    return found ? sum : 0f;
+  }
+
+  /**
+   * Add scale * values[p] to sums[index[p]] for every p in [from, to). A column j is new if
+   * mark[j] != stamp, in which case it is marked, added to touched and its sum started.
+   *
+   * @param scale   the value of the left operand
+   * @param index   the columns of the entries
+   * @param values  the values of the entries
+   * @param from    the first entry
+   * @param to      the end of the entries
+   * @param sums    the sums of the columns
+   * @param touched the columns touched so far
+   * @param count   the number of columns touched so far
+   * @param mark    the marks of the touched columns
+   * @param stamp   the mark of the current row
+   * @return the new number of touched columns
+   */
+  int scatter(float scale, int[] index, float[] values, int from, int to, float[] sums,
+      int[] touched, int count, int[] mark, int stamp) {
+    for (int p = from; p < to; p++) {
+      int j = index[p];
+      float product = multiply(scale, values[p]);
+      if (mark[j] != stamp) {
+        mark[j] = stamp;
+        touched[count++] = j;
+        sums[j] = product;
+      } else {
+        sums[j] = add(sums[j], product);
+      }
+    }
+    return count;
+  }
+
+  // The built-in semirings repeat the loops above with their operations written out.
+
+  private static final class PlusTimes extends Semiring {
+
+    @Override
+    public float add(float a, float b) {
+      return a + b;
+    }
+
+    @Override
+    public float multiply(float a, float b) {
+      return a * b;
+    }
+
+    @Override
+    public float zero() {
+      return 0f;
+    }
+
+    @Override
+    float dot(int[] index, float[] values, int from, int to, float[] x) {
+      // x[j] = 0 adds nothing, so there is no need to skip it
+      float sum = 0f;
+      for (int p = from; p < to; p++) {
+        sum += values[p] * x[index[p]];
+      }
+      return sum;
+    }
+
+    @Override
+    float dot(int[] indexA, float[] valuesA, int fromA, int toA, int[] indexB, float[] valuesB,
+        int fromB, int toB) {
+      float sum = 0f;
+      int p = fromA;
+      int q = fromB;
+      while (p < toA && q < toB) {
+        if (indexA[p] == indexB[q]) {
+          sum += valuesA[p++] * valuesB[q++];
+        } else if (indexA[p] < indexB[q]) {
+          p++;
+        } else {
+          q++;
+        }
+      }
+      return sum;
+    }
+
+    @Override
+    int scatter(float scale, int[] index, float[] values, int from, int to, float[] sums,
+        int[] touched, int count, int[] mark, int stamp) {
+      for (int p = from; p < to; p++) {
+        int j = index[p];
+        if (mark[j] != stamp) {
+          mark[j] = stamp;
+          touched[count++] = j;
+          sums[j] = 0f;
+        }
+        sums[j] += scale * values[p];
+      }
+      return count;
+    }
+  }
+
+  private static final class MinPlus extends Semiring {
+
+    @Override
+    public float add(float a, float b) {
+      return Math.min(a, b);
+    }
+
+    @Override
+    public float multiply(float a, float b) {
+      return a + b;
+    }
+
+    @Override
+    public float zero() {
+      return Float.POSITIVE_INFINITY;
+    }
+
+    @Override
+    float dot(int[] index, float[] values, int from, int to, float[] x) {
+      float sum = Float.POSITIVE_INFINITY;
+      for (int p = from; p < to; p++) {
+        float xj = x[index[p]];
+        if (xj != 0f) {
+          sum = Math.min(sum, values[p] + xj);
+        }
+      }
+      return sum == Float.POSITIVE_INFINITY ? 0f : sum;
+    }
+
+    @Override
+    float dot(int[] indexA, float[] valuesA, int fromA, int toA, int[] indexB, float[] valuesB,
+        int fromB, int toB) {
+      float sum = Float.POSITIVE_INFINITY;
+      int p = fromA;
+      int q = fromB;
+      while (p < toA && q < toB) {
+        if (indexA[p] == indexB[q]) {
+          sum = Math.min(sum, valuesA[p++] + valuesB[q++]);
+        } else if (indexA[p] < indexB[q]) {
+          p++;
+        } else {
+          q++;
+        }
+      }
+      return sum == Float.POSITIVE_INFINITY ? 0f : sum;
+    }
+
+    @Override
+    int scatter(float scale, int[] index, float[] values, int from, int to, float[] sums,
+        int[] touched, int count, int[] mark, int stamp) {
+      for (int p = from; p < to; p++) {
+        int j = index[p];
+        if (mark[j] != stamp) {
+          mark[j] = stamp;
+          touched[count++] = j;
+          sums[j] = Float.POSITIVE_INFINITY;
+        }
+        sums[j] = Math.min(sums[j], scale + values[p]);
+      }
+      return count;
+    }
+  }
+
+  private static final class MaxPlus extends Semiring {
+
+    @Override
+    public float add(float a, float b) {
+      return Math.max(a, b);
+    }
+
+    @Override
+    public float multiply(float a, float b) {
+      return a + b;
+    }
+
+    @Override
+    public float zero() {
+      return Float.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    float dot(int[] index, float[] values, int from, int to, float[] x) {
+      float sum = Float.NEGATIVE_INFINITY;
+      for (int p = from; p < to; p++) {
+        float xj = x[index[p]];
+        if (xj != 0f) {
+          sum = Math.max(sum, values[p] + xj);
+        }
+      }
+      return sum == Float.NEGATIVE_INFINITY ? 0f : sum;
+    }
+
+    @Override
+    float dot(int[] indexA, float[] valuesA, int fromA, int toA, int[] indexB, float[] valuesB,
+        int fromB, int toB) {
+      float sum = Float.NEGATIVE_INFINITY;
+      int p = fromA;
+      int q = fromB;
+      while (p < toA && q < toB) {
+        if (indexA[p] == indexB[q]) {
+          sum = Math.max(sum, valuesA[p++] + valuesB[q++]);
+        } else if (indexA[p] < indexB[q]) {
+          p++;
+        } else {
+          q++;
+        }
+      }
+      return sum == Float.NEGATIVE_INFINITY ? 0f : sum;
+    }
+
+    @Override
+    int scatter(float scale, int[] index, float[] values, int from, int to, float[] sums,
+        int[] touched, int count, int[] mark, int stamp) {
+      for (int p = from; p < to; p++) {
+        int j = index[p];
+        if (mark[j] != stamp) {
+          mark[j] = stamp;
+          touched[count++] = j;
+          sums[j] = Float.NEGATIVE_INFINITY;
+        }
+        sums[j] = Math.max(sums[j], scale + values[p]);
+      }
+      return count;
+    }
+  }
+
+  private static final class MaxTimes extends Semiring {
+
+    @Override
+    public float add(float a, float b) {
+      return Math.max(a, b);
+    }
+
+    @Override
+    public float multiply(float a, float b) {
+      return a * b;
+    }
+
+    @Override
+    public float zero() {
+      return Float.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    float dot(int[] index, float[] values, int from, int to, float[] x) {
+      float sum = Float.NEGATIVE_INFINITY;
+      for (int p = from; p < to; p++) {
+        float xj = x[index[p]];
+        if (xj != 0f) {
+          sum = Math.max(sum, values[p] * xj);
+        }
+      }
+      return sum == Float.NEGATIVE_INFINITY ? 0f : sum;
+    }
+
+    @Override
+    float dot(int[] indexA, float[] valuesA, int fromA, int toA, int[] indexB, float[] valuesB,
+        int fromB, int toB) {
+      float sum = Float.NEGATIVE_INFINITY;
+      int p = fromA;
+      int q = fromB;
+      while (p < toA && q < toB) {
+        if (indexA[p] == indexB[q]) {
+          sum = Math.max(sum, valuesA[p++] * valuesB[q++]);
+        } else if (indexA[p] < indexB[q]) {
+          p++;
+        } else {
+          q++;
+        }
+      }
+      return sum == Float.NEGATIVE_INFINITY ? 0f : sum;
+    }
+
+    @Override
+    int scatter(float scale, int[] index, float[] values, int from, int to, float[] sums,
+        int[] touched, int count, int[] mark, int stamp) {
+      for (int p = from; p < to; p++) {
+        int j = index[p];
+        if (mark[j] != stamp) {
+          mark[j] = stamp;
+          touched[count++] = j;
+          sums[j] = Float.NEGATIVE_INFINITY;
+        }
+        sums[j] = Math.max(sums[j], scale * values[p]);
+      }
+      return count;
+    }
+  }
+
+  private static final class LorLand extends Semiring {
+
+    @Override
+    public float add(float a, float b) {
+      return a != 0f || b != 0f ? 1f : 0f;
+    }
+
+    @Override
+    public float multiply(float a, float b) {
+      return a != 0f && b != 0f ? 1f : 0f;
+    }
+
+    @Override
+    public float zero() {
+      return 0f;
+    }
+
+    @Override
+    float dot(int[] index, float[] values, int from, int to, float[] x) {
+      // stored entries are all true, so the first non-zero entry of x decides
+      for (int p = from; p < to; p++) {
+        if (x[index[p]] != 0f) {
+          return 1f;
+        }
+      }
+      return 0f;
+    }
+
+    @Override
+    float dot(int[] indexA, float[] valuesA, int fromA, int toA, int[] indexB, float[] valuesB,
+        int fromB, int toB) {
+      // the first pair decides
+      int p = fromA;
+      int q = fromB;
+      while (p < toA && q < toB) {
+        if (indexA[p] == indexB[q]) {
+          return 1f;
+        } else if (indexA[p] < indexB[q]) {
+          p++;
+        } else {
+          q++;
+        }
+      }
+      return 0f;
+    }
+
+    @Override
+    int scatter(float scale, int[] index, float[] values, int from, int to, float[] sums,
+        int[] touched, int count, int[] mark, int stamp) {
+      for (int p = from; p < to; p++) {
+        int j = index[p];
+        if (mark[j] != stamp) {
+          mark[j] = stamp;
+          touched[count++] = j;
+          sums[j] = 1f;
+        }
+      }
+      return count;
+    }
+  }
+
+  private static final class AnyPair extends Semiring {
+
+    @Override
+    public float add(float a, float b) {
+      return a;
+    }
+
+    @Override
+    public float multiply(float a, float b) {
+      return 1f;
+    }
+
+    @Override
+    public float zero() {
+      return 0f;
+    }
+
+    @Override
+    float dot(int[] index, float[] values, int from, int to, float[] x) {
+      for (int p = from; p < to; p++) {
+        if (x[index[p]] != 0f) {
+          return 1f;
+        }
+      }
+      return 0f;
+    }
+
+    @Override
+    float dot(int[] indexA, float[] valuesA, int fromA, int toA, int[] indexB, float[] valuesB,
+        int fromB, int toB) {
+      // the first pair decides
+      int p = fromA;
+      int q = fromB;
+      while (p < toA && q < toB) {
+        if (indexA[p] == indexB[q]) {
+          return 1f;
+        } else if (indexA[p] < indexB[q]) {
+          p++;
+        } else {
+          q++;
+        }
+      }
+      return 0f;
+    }
+
+    @Override
+    int scatter(float scale, int[] index, float[] values, int from, int to, float[] sums,
+        int[] touched, int count, int[] mark, int stamp) {
+      for (int p = from; p < to; p++) {
+        int j = index[p];
+        if (mark[j] != stamp) {
+          mark[j] = stamp;
+          touched[count++] = j;
+          sums[j] = 1f;
+        }
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package mat;
+
+/**
+ * This class represents a sparse array of the sentinels of a matrix, indexed by row or column.
+ * Slots are grouped in pages of 64 that are only allocated once they hold a sentinel. A bitmap of
+ * the occupied slots of every page, and a summary bitmap of the pages with occupied slots, find the
+ * next occupied slot quickly. An empty index of size n takes about n / 5 bytes, and getting or
+ * putting a slot takes constant time.
+ *
+ * @param <T> the type of the sentinels
+ */
+final class SentinelIndex<T> {
+
+  private static final int PAGE_BITS = 6;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  private final int size;
+  private final Object[][] pages;
+  // occupied slots of every page, and the pages with at least one occupied slot
+  private final long[] pageBits;
+  private final long[] summary;
+  private int count;
+
+  /**
+   * Constructs an empty index of the given size.
+   *
+   * @param size the number of slots
+   */
+  SentinelIndex(int size) {
+    int pageCount = (size + PAGE_SIZE - 1) >>> PAGE_BITS;
+    this.size = size;
+    this.pages = new Object[pageCount][];
+    this.pageBits = new long[pageCount];
+    this.summary = new long[(pageCount + 63) >>> 6];
+  }
+
+  /**
+   * Get the sentinel at the given slot.
+   *
+   * @param i the slot
+   * @return the sentinel, or null if the slot is empty
+   */
+  @SuppressWarnings("unchecked")
+  T get(int i) {
+    Object[] page = this.pages[i >>> PAGE_BITS];
+    return page == null ? null : (T) page[i & PAGE_MASK];
+  }
+
+  /**
+   * Put a sentinel in the given slot, replacing the sentinel in it, if any.
+   *
+   * @param i        the slot
+   * @param sentinel the sentinel, not null
+   */
+  void put(int i, T sentinel) {
+    int p = i >>> PAGE_BITS;
+    if (this.pages[p] == null) {
+      this.pages[p] = new Object[Math.min(PAGE_SIZE, this.size - (p << PAGE_BITS))];
+      this.summary[p >>> 6] |= 1L << p;
+    }
+    int slot = i & PAGE_MASK;
+    if (this.pages[p][slot] == null) {
+      this.pageBits[p] |= 1L << slot;
+      this.count++;
+    }
+    this.pages[p][slot] = sentinel;
+  }
+
+  /**
+   * Empty the given slot. A page is released once all of its slots are empty.
+   *
+   * @param i the slot
+   */
+  void remove(int i) {
+    int p = i >>> PAGE_BITS;
+    int slot = i & PAGE_MASK;
+    if (this.pages[p] == null || this.pages[p][slot] == null) {
+      return;
+    }
+    this.pages[p][slot] = null;
+    this.pageBits[p] &= ~(1L << slot);
+    this.count--;
+    if (this.pageBits[p] == 0) {
+      this.pages[p] = null;
+      this.summary[p >>> 6] &= ~(1L << p);
+    }
+  }
+
+  /**
+   * Find the first occupied slot at or after the given one.
+   *
+   * @param from the slot to start from
+   * @return the occupied slot, or -1 if there is none
+   */
+  int next(int from) {
+    if (from >= this.size) {
+      return -1;
+    }
+    int p = from >>> PAGE_BITS;
+    long bits = this.pageBits[p] & (-1L << from);
+    if (bits != 0) {
+      return (p << PAGE_BITS) + Long.numberOfTrailingZeros(bits);
+    }
+    p = nextBit(this.summary, p + 1);
+    return p < 0 ? -1 : (p << PAGE_BITS) + Long.numberOfTrailingZeros(this.pageBits[p]);
+  }
+
+  /**
+   * Get the number of occupied slots.
+   *
+   * @return the number of sentinels in this index
+   */
+  int count() {
+    return this.count;
+  }
+
+  /**
+   * Get an estimate of the memory used by this index, not counting the sentinels.
+   *
+   * @return the estimated size in bytes
+   */
+  long estimatedBytes() {
+    long bytes = 32 + (16 + 4L * this.pages.length) + (16 + 8L * this.pageBits.length)
+        + (16 + 8L * this.summary.length);
+    for (Object[] page : this.pages) {
+      if (page != null) {
+        bytes += 16 + 4L * page.length;
+      }
+    }
+    return bytes;
+  }
+
+  // index of the first set bit at or after from, or -1 if there is none
+  private static int nextBit(long[] words, int from) {
+    int w = from >>> 6;
+    if (w >= words.length) {
+      return -1;
+    }
+    long word = words[w] & (-1L << from);
+    while (true) {
+      if (word != 0) {
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+      }
+      if (++w == words.length) {
+        return -1;
+      }
+      word = words[w];
+    }
+  }
+}
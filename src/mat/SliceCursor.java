@@ -0,0 +1,106 @@
+package mat;
+
+import java.util.Arrays;
+
+/**
+ * This class represents a cursor over a range of a pair of arrays of indices and values, e.g. a
+ * row of compressed rows, or a column of compressed columns. The arrays are never modified while
+ * the cursor exists, so it goes on over the same entries whatever happens to the matrix.
+ */
+final class SliceCursor implements EntryCursor {
+
+  // the row of every entry if byRow, else the column of every entry
+  private final int line;
+  private final boolean byRow;
+  private final int[] index;
+  private final float[] values;
+  private final int end;
+  private int p;
+
+  /**
+   * Constructs a cursor over the given range of the arrays.
+   *
+   * @param line   the row, or the column, the entries are in
+   * @param byRow  true if the entries are in a row and index holds their columns, false if they
+   *               are in a column and index holds their rows
+   * @param index  the columns, or rows, of the entries
+   * @param values the values of the entries
+   * @param from   the position of the first entry
+   * @param to     the position after the last entry
+   */
+  SliceCursor(int line, boolean byRow, int[] index, float[] values, int from, int to) {
+    this.line = line;
+    this.byRow = byRow;
+    this.index = index;
+    this.values = values;
+    this.end = to;
+    this.p = from - 1;
+  }
+
+  @Override
+  public boolean next() {
+    if (this.p < this.end) {
+      this.p++;
+    }
+    return this.p < this.end;
+  }
+
+  @Override
+  public int getRow() {
+    return this.byRow ? this.line : this.index[this.p];
+  }
+
+  @Override
+  public int getColumn() {
+    return this.byRow ? this.index[this.p] : this.line;
+  }
+
+  @Override
+  public float getValue() {
+    return this.values[this.p];
+  }
+
+  /**
+   * This class gathers the entries of a single row or column, in order, into a cursor of their
+   * own, e.g. to copy them while a lock is held.
+   */
+  static final class Builder implements IntIntFloatConsumer {
+
+    private final int line;
+    private final boolean byRow;
+    private int[] index = new int[8];
+    private float[] values = new float[8];
+    private int count;
+
+    /**
+     * Constructs a builder of a cursor over the given row or column.
+     *
+     * @param line  the row, or the column, the entries are in
+     * @param byRow true if the entries are in a row, false if they are in a column
+     */
+    Builder(int line, boolean byRow) {
+      this.line = line;
+      this.byRow = byRow;
+    }
+
+    @Override
+    public void accept(int i, int j, float value) {
+      if (this.count == this.index.length) {
+        this.index = Arrays.copyOf(this.index, 2 * this.count);
+        this.values = Arrays.copyOf(this.values, 2 * this.count);
+      }
+      this.index[this.count] = this.byRow ? j : i;
+      this.values[this.count] = value;
+      this.count++;
+    }
+
+    /**
+     * Return a cursor over the entries gathered so far.
+     *
+     * @return the cursor
+     */
+    SliceCursor build() {
+      return new SliceCursor(this.line, this.byRow, this.index, this.values, 0, this.count);
+    }
+  }
+}
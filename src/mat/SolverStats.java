@@ -0,0 +1,119 @@
+package mat;
+
+/**
+ * This class represents the outcome of a single solve by an iterative solver, along with the
+ * metrics needed to tune it: iterations, residuals, time and the number of kernel calls.
+ */
+public final class SolverStats {
+
+  private final boolean converged;
+  private final int iterations;
+  private final double initialResidual;
+  private final double finalResidual;
+  private final double rhsNorm;
+  private final long elapsedNanos;
+  private final long matrixVectorProducts;
+  private final long preconditionerApplications;
+
+  SolverStats(boolean converged, int iterations, double initialResidual, double finalResidual,
+      double rhsNorm, long elapsedNanos, long matrixVectorProducts,
+      long preconditionerApplications) {
+    this.converged = converged;
+    this.iterations = iterations;
+    this.initialResidual = initialResidual;
+    this.finalResidual = finalResidual;
+    this.rhsNorm = rhsNorm;
+    this.elapsedNanos = elapsedNanos;
+    this.matrixVectorProducts = matrixVectorProducts;
+    this.preconditionerApplications = preconditionerApplications;
+  }
+
+  /**
+   * Return whether the solve reached the requested tolerance.
+   *
+   * @return true if the residual dropped below the tolerance
+   */
+  public boolean isConverged() {
+    return this.converged;
+  }
+
+  /**
+   * Get the number of iterations performed.
+   *
+   * @return the number of iterations
+   */
+  public int getIterations() {
+    return this.iterations;
+  }
+
+  /**
+   * Get the 2-norm of the residual b - A * x for the initial guess.
+   *
+   * @return the initial residual norm
+   */
+  public double getInitialResidual() {
+    return this.initialResidual;
+  }
+
+  /**
+   * Get the 2-norm of the residual b - A * x when the solver stopped.
+   *
+   * @return the final residual norm
+   */
+  public double getFinalResidual() {
+    return this.finalResidual;
+  }
+
+  /**
+   * Get the final residual norm relative to the norm of the right hand side.
+   *
+   * @return the relative residual, or the absolute residual if the right hand side is zero
+   */
+  public double getRelativeResidual() {
+    return this.rhsNorm == 0 ? this.finalResidual : this.finalResidual / this.rhsNorm;
+  }
+
+  /**
+   * Get the wall clock time taken by the solve.
+   *
+   * @return the elapsed time in nanoseconds
+   */
+  public long getElapsedNanos() {
+    return this.elapsedNanos;
+  }
+
+  /**
+   * Get the average wall clock time of a single iteration.
+   *
+   * @return the time per iteration in nanoseconds, or 0 if no iteration was performed
+   */
+  public double getNanosPerIteration() {
+    return this.iterations == 0 ? 0 : (double) this.elapsedNanos / this.iterations;
+  }
+
+  /**
+   * Get the number of matrix-vector products performed.
+   *
+   * @return the number of products
+   */
+  public long getMatrixVectorProducts() {
+    return this.matrixVectorProducts;
+  }
+
+  /**
+   * Get the number of times the preconditioner was applied.
+   *
+   * @return the number of applications
+   */
+  public long getPreconditionerApplications() {
+    return this.preconditionerApplications;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("converged=%s iterations=%d residual=%.3e relative=%.3e time=%.3fms "
+            + "spmv=%d precond=%d", this.converged, this.iterations, this.finalResidual,
+        getRelativeResidual(), this.elapsedNanos / 1e6, this.matrixVectorProducts,
+        this.preconditionerApplications);
+  }
+}
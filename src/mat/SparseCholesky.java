@@ -0,0 +1,194 @@
+package mat;
+
+import java.util.Arrays;
+
+/**
+ * This class represents the sparse Cholesky factorization P * A * transpose(P) = L *
+ * transpose(L) of a symmetric positive definite matrix A, where P is a fill-reducing permutation.
+ * The factorization runs in two phases. The symbolic phase orders the matrix and computes the exact
+ * pattern sizes of L, and the numeric phase fills L, stored by columns, without allocating any more
+ * memory. A factorization can solve any number of right hand sides, and can be refactored with new
+ * values as long as the pattern of the matrix stays the same. Solves share scratch space, hence a
+ * single instance should not be used by multiple threads at the same time.
+ */
+public class SparseCholesky {
+
+  private final SymbolicCholesky symbolic;
+  // pattern of the matrix that was analyzed, used to check refactorizations
+  private final int[] analyzedStart;
+  private final int[] analyzedIndex;
+
+  // columns of L, the diagonal entry comes first in every column
+  private final int[] rowIndex;
+  private final double[] values;
+
+  // scratch space of the numeric phase and the solves
+  private final double[] work;
+  private final int[] pattern;
+  private final int[] marked;
+  private final int[] next;
+
+  /**
+   * Constructs the Cholesky factorization of the given matrix. Both triangles of the matrix must
+   * be stored: the ordering moves entries across the diagonal, and the factorization reads the
+   * entries that are in the upper triangle of the permuted matrix, wherever they were in A. A
+   * matrix holding only its upper triangle gives a wrong factor.
+   *
+   * @param matrix a symmetric positive definite matrix, with every entry of both triangles
+   * @throws IllegalArgumentException if the matrix is not positive definite
+   */
+  public SparseCholesky(SquareMatrix matrix) throws IllegalArgumentException {
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows rows = ((AbstractMatrix) matrix).compressRows();
+    this.symbolic = new SymbolicCholesky(rows);
+    this.analyzedStart = rows.rowStart;
+    this.analyzedIndex = rows.colIndex;
+
+    int n = this.symbolic.size;
+    this.rowIndex = new int[this.symbolic.factorEntries()];
+    this.values = new double[this.symbolic.factorEntries()];
+    this.work = new double[n];
+    this.pattern = new int[n];
+    this.marked = new int[n];
+    this.next = new int[n];
+    factorize(rows);
+  }
+
+  /**
+   * Recompute the factorization for new values of a matrix with the same pattern as the one this
+   * was built for. The ordering and the storage of the factor are reused.
+   *
+   * @param matrix a symmetric positive definite matrix with the same pattern
+   * @throws IllegalArgumentException if the pattern of the matrix differs, or if the matrix is not
+   *                                  positive definite
+   */
+  public void refactor(SquareMatrix matrix) throws IllegalArgumentException {
+    if (matrix.size() != this.symbolic.size) {
+      throw new IllegalArgumentException(
+          "The size of the matrix does not match the size of the factorization");
+    }
+
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows rows = ((AbstractMatrix) matrix).compressRows();
+    if (!Arrays.equals(rows.rowStart, this.analyzedStart)
+        || !Arrays.equals(rows.colIndex, this.analyzedIndex)) {
+      throw new IllegalArgumentException(
+          "The pattern of the matrix differs from the pattern of the factorization");
+    }
+    factorize(rows);
+  }
+
+  // up-looking numeric factorization, computing one row of L at a time
+  private void factorize(CompressedRows rows) {
+    int n = this.symbolic.size;
+    CompressedRows upper = this.symbolic.permuteUpper(rows);
+    int[] colStart = this.symbolic.colStart;
+
+    System.arraycopy(colStart, 0, this.next, 0, n);
+    Arrays.fill(this.marked, -1);
+    Arrays.fill(this.work, 0);
+
+    for (int k = 0; k < n; k++) {
+      // scatter column k of the upper triangle into the dense work vector
+      int top = this.symbolic.reach(upper, k, this.pattern, this.marked);
+      this.work[k] = 0;
+      for (int p = upper.rowStart[k]; p < upper.rowStart[k + 1]; p++) {
+        if (upper.colIndex[p] <= k) {
+          this.work[upper.colIndex[p]] += upper.values[p];
+        }
+      }
+
+      double diagonal = this.work[k];
+      this.work[k] = 0;
+      // solve L(0:k-1, 0:k-1) * l = work for the entries of row k of L
+      for (int t = top; t < n; t++) {
+        int i = this.pattern[t];
+        double lki = this.work[i] / this.values[colStart[i]];
+        this.work[i] = 0;
+        for (int p = colStart[i] + 1; p < this.next[i]; p++) {
+          this.work[this.rowIndex[p]] -= this.values[p] * lki;
+        }
+        diagonal -= lki * lki;
+        int q = this.next[i]++;
+        this.rowIndex[q] = k;
+        this.values[q] = lki;
+      }
+
+      if (diagonal <= 0) {
+        throw new IllegalArgumentException(
+            "The matrix is not positive definite, found a non-positive pivot at column "
+                + this.symbolic.perm[k]);
+      }
+      int q = this.next[k]++;
+      this.rowIndex[q] = k;
+      this.values[q] = Math.sqrt(diagonal);
+    }
+
+    // slots reserved for entries that cancelled out in a non-symmetric pattern stay harmless
+    for (int k = 0; k < n; k++) {
+      for (int p = this.next[k]; p < colStart[k + 1]; p++) {
+        this.rowIndex[p] = k;
+        this.values[p] = 0;
+      }
+    }
+  }
+
+  /**
+   * Solve A * x = b using this factorization. b is not mutated.
+   *
+   * @param b the right hand side, of length size()
+   * @param x the array to store the solution in, of length size()
+   * @throws IllegalArgumentException if the length of the vectors does not match the matrix
+   */
+  public void solve(float[] b, float[] x) throws IllegalArgumentException {
+    int n = this.symbolic.size;
+    if (b.length != n || x.length != n) {
+      throw new IllegalArgumentException(
+          "The length of the vectors does not match the size of the factorization");
+    }
+
+    int[] colStart = this.symbolic.colStart;
+    for (int k = 0; k < n; k++) {
+      this.work[k] = b[this.symbolic.perm[k]];
+    }
+
+    // L * y = P * b
+    for (int j = 0; j < n; j++) {
+      this.work[j] /= this.values[colStart[j]];
+      for (int p = colStart[j] + 1; p < colStart[j + 1]; p++) {
+        this.work[this.rowIndex[p]] -= this.values[p] * this.work[j];
+      }
+    }
+
+    // transpose(L) * z = y
+    for (int j = n - 1; j >= 0; j--) {
+      for (int p = colStart[j] + 1; p < colStart[j + 1]; p++) {
+        this.work[j] -= this.values[p] * this.work[this.rowIndex[p]];
+      }
+      this.work[j] /= this.values[colStart[j]];
+    }
+
+    for (int k = 0; k < n; k++) {
+      x[this.symbolic.perm[k]] = (float) this.work[k];
+      this.work[k] = 0;
+    }
+  }
+
+  /**
+   * Get the number of entries of the factor L, including the fill-in.
+   *
+   * @return the number of entries of L
+   */
+  public int factorEntries() {
+    return this.symbolic.factorEntries();
+  }
+
+  /**
+   * Get the size of the matrix this factorization was built for.
+   *
+   * @return the number of rows of the matrix
+   */
+  public int size() {
+    return this.symbolic.size;
+  }
+}
@@ -0,0 +1,295 @@
+package mat;
+
+import java.util.Arrays;
+
+/**
+ * This class represents the sparse LU factorization P * A * Q = L * U of a general square matrix
+ * A, where Q is a fill-reducing column ordering and P is chosen by partial pivoting. The symbolic
+ * phase computes the ordering and sizes the storage of L and U from the symbolic Cholesky
+ * factorization of A + transpose(A), which is exact when no row interchanges are needed. The
+ * numeric phase computes one column of L and U at a time by a sparse triangular solve on
+ * compressed column storage, and only grows the storage if pivoting creates more fill-in. A
+ * factorization can solve any number of right hand sides, and can be refactored with new values
+ * as long as the pattern of the matrix stays the same. Solves share scratch space, hence a single
+ * instance should not be used by multiple threads at the same time.
+ */
+public class SparseLu {
+
+  private final int size;
+  // column ordering, q[k] is the column of A placed k-th
+  private final int[] q;
+  // row permutation, pinv[i] is the position of row i of A, -1 while i is not a pivot row
+  private final int[] pinv;
+  // pattern of the matrix that was analyzed, used to check refactorizations
+  private final int[] analyzedStart;
+  private final int[] analyzedIndex;
+
+  // columns of L (unit diagonal stored first) and U (diagonal stored last)
+  private final int[] lowerStart;
+  private int[] lowerIndex;
+  private double[] lowerValues;
+  private final int[] upperStart;
+  private int[] upperIndex;
+  private double[] upperValues;
+
+  // scratch space of the numeric phase and the solves
+  private final double[] work;
+  private final int[] reach;
+  private final int[] stack;
+  private final int[] stackPosition;
+  private final int[] marked;
+
+  /**
+   * Constructs the LU factorization of the given matrix.
+   *
+   * @param matrix a square matrix
+   * @throws IllegalArgumentException if the matrix is singular
+   */
+  public SparseLu(SquareMatrix matrix) throws IllegalArgumentException {
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows rows = ((AbstractMatrix) matrix).compressRows();
+    SymbolicCholesky symbolic = new SymbolicCholesky(rows);
+
+    this.size = rows.size;
+    this.q = symbolic.perm;
+    this.pinv = new int[this.size];
+    this.analyzedStart = rows.rowStart;
+    this.analyzedIndex = rows.colIndex;
+
+    int capacity = symbolic.factorEntries();
+    this.lowerStart = new int[this.size + 1];
+    this.lowerIndex = new int[capacity];
+    this.lowerValues = new double[capacity];
+    this.upperStart = new int[this.size + 1];
+    this.upperIndex = new int[capacity];
+    this.upperValues = new double[capacity];
+
+    this.work = new double[this.size];
+    this.reach = new int[this.size];
+    this.stack = new int[this.size];
+    this.stackPosition = new int[this.size];
+    this.marked = new int[this.size];
+    factorize(rows);
+  }
+
+  /**
+   * Recompute the factorization for new values of a matrix with the same pattern as the one this
+   * was built for. The column ordering and the storage of the factors are reused, while the row
+   * pivots are chosen again for the new values.
+   *
+   * @param matrix a square matrix with the same pattern
+   * @throws IllegalArgumentException if the pattern of the matrix differs, or if the matrix is
+   *                                  singular
+   */
+  public void refactor(SquareMatrix matrix) throws IllegalArgumentException {
+    if (matrix.size() != this.size) {
+      throw new IllegalArgumentException(
+          "The size of the matrix does not match the size of the factorization");
+    }
+
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows rows = ((AbstractMatrix) matrix).compressRows();
+    if (!Arrays.equals(rows.rowStart, this.analyzedStart)
+        || !Arrays.equals(rows.colIndex, this.analyzedIndex)) {
+      throw new IllegalArgumentException(
+          "The pattern of the matrix differs from the pattern of the factorization");
+    }
+    factorize(rows);
+  }
+
+  // left-looking Gilbert-Peierls factorization, one column at a time
+  private void factorize(CompressedRows rows) {
+    int n = this.size;
+    CompressedRows columns = rows.transpose();
+    Arrays.fill(this.pinv, -1);
+    Arrays.fill(this.marked, -1);
+    Arrays.fill(this.work, 0);
+    int lowerCount = 0;
+    int upperCount = 0;
+
+    for (int k = 0; k < n; k++) {
+      this.lowerStart[k] = lowerCount;
+      this.upperStart[k] = upperCount;
+      // a column adds at most n entries to either factor
+      if (lowerCount + n > this.lowerIndex.length) {
+        int grown = Math.max(2 * this.lowerIndex.length, lowerCount + n);
+        this.lowerIndex = Arrays.copyOf(this.lowerIndex, grown);
+        this.lowerValues = Arrays.copyOf(this.lowerValues, grown);
+      }
+      if (upperCount + n > this.upperIndex.length) {
+        int grown = Math.max(2 * this.upperIndex.length, upperCount + n);
+        this.upperIndex = Arrays.copyOf(this.upperIndex, grown);
+        this.upperValues = Arrays.copyOf(this.upperValues, grown);
+      }
+
+      // work = L \ A(:, q[k]), the pattern of the result is reach[top..n-1]
+      int column = this.q[k];
+      int top = solveLower(columns, column, k);
+
+      // entries in pivot rows belong to U, the largest remaining entry becomes the pivot
+      int pivotRow = -1;
+      double largest = -1;
+      for (int t = top; t < n; t++) {
+        int i = this.reach[t];
+        if (this.pinv[i] < 0) {
+          if (Math.abs(this.work[i]) > largest) {
+            largest = Math.abs(this.work[i]);
+            pivotRow = i;
+          }
+        } else {
+          this.upperIndex[upperCount] = this.pinv[i];
+          this.upperValues[upperCount++] = this.work[i];
+        }
+      }
+      if (pivotRow == -1 || largest <= 0) {
+        throw new IllegalArgumentException(
+            "The matrix is singular, found no pivot for column " + column);
+      }
+      // keep the diagonal if it is as large as the best pivot, this keeps the symbolic estimate
+      if (this.pinv[column] < 0 && Math.abs(this.work[column]) >= largest) {
+        pivotRow = column;
+      }
+
+      double pivot = this.work[pivotRow];
+      this.upperIndex[upperCount] = k;
+      this.upperValues[upperCount++] = pivot;
+      this.pinv[pivotRow] = k;
+      this.lowerIndex[lowerCount] = pivotRow;
+      this.lowerValues[lowerCount++] = 1;
+      for (int t = top; t < n; t++) {
+        int i = this.reach[t];
+        if (this.pinv[i] < 0) {
+          this.lowerIndex[lowerCount] = i;
+          this.lowerValues[lowerCount++] = this.work[i] / pivot;
+        }
+        this.work[i] = 0;
+      }
+    }
+    this.lowerStart[n] = lowerCount;
+    this.upperStart[n] = upperCount;
+
+    // rows of L were recorded before they became pivots, map them to their final positions
+    for (int p = 0; p < lowerCount; p++) {
+      this.lowerIndex[p] = this.pinv[this.lowerIndex[p]];
+    }
+  }
+
+  // sparse triangular solve of the columns of L computed so far against column j of A
+  private int solveLower(CompressedRows columns, int j, int k) {
+    int top = this.size;
+    for (int p = columns.rowStart[j]; p < columns.rowStart[j + 1]; p++) {
+      int i = columns.colIndex[p];
+      if (this.marked[i] != k) {
+        top = depthFirst(i, top, k);
+      }
+    }
+
+    for (int p = columns.rowStart[j]; p < columns.rowStart[j + 1]; p++) {
+      this.work[columns.colIndex[p]] = columns.values[p];
+    }
+    for (int t = top; t < this.size; t++) {
+      int i = this.reach[t];
+      int col = this.pinv[i];
+      if (col < 0) {
+        continue;
+      }
+      // unit diagonal, skip it and update the rows below
+      double xi = this.work[i];
+      for (int p = this.lowerStart[col] + 1; p < this.lowerStart[col + 1]; p++) {
+        this.work[this.lowerIndex[p]] -= this.lowerValues[p] * xi;
+      }
+    }
+    return top;
+  }
+
+  // non-recursive depth first search in the graph of L from row i, in reverse topological order
+  private int depthFirst(int start, int top, int k) {
+    int head = 0;
+    this.stack[0] = start;
+    while (head >= 0) {
+      int i = this.stack[head];
+      int col = this.pinv[i];
+      if (this.marked[i] != k) {
+        this.marked[i] = k;
+        this.stackPosition[head] = col < 0 ? 0 : this.lowerStart[col];
+      }
+
+      boolean done = true;
+      int end = col < 0 ? 0 : this.lowerStart[col + 1];
+      for (int p = this.stackPosition[head]; p < end; p++) {
+        int child = this.lowerIndex[p];
+        if (this.marked[child] == k) {
+          continue;
+        }
+        // pause i and descend into the child
+        this.stackPosition[head] = p;
+        this.stack[++head] = child;
+        done = false;
+        break;
+      }
+      if (done) {
+        head--;
+        this.reach[--top] = i;
+      }
+    }
+    return top;
+  }
+
+  /**
+   * Solve A * x = b using this factorization. b is not mutated.
+   *
+   * @param b the right hand side, of length size()
+   * @param x the array to store the solution in, of length size()
+   * @throws IllegalArgumentException if the length of the vectors does not match the matrix
+   */
+  public void solve(float[] b, float[] x) throws IllegalArgumentException {
+    int n = this.size;
+    if (b.length != n || x.length != n) {
+      throw new IllegalArgumentException(
+          "The length of the vectors does not match the size of the factorization");
+    }
+
+    for (int i = 0; i < n; i++) {
+      this.work[this.pinv[i]] = b[i];
+    }
+
+    // L * y = P * b
+    for (int j = 0; j < n; j++) {
+      for (int p = this.lowerStart[j] + 1; p < this.lowerStart[j + 1]; p++) {
+        this.work[this.lowerIndex[p]] -= this.lowerValues[p] * this.work[j];
+      }
+    }
+
+    // U * z = y
+    for (int j = n - 1; j >= 0; j--) {
+      int diagonal = this.upperStart[j + 1] - 1;
+      this.work[j] /= this.upperValues[diagonal];
+      for (int p = this.upperStart[j]; p < diagonal; p++) {
+        this.work[this.upperIndex[p]] -= this.upperValues[p] * this.work[j];
+      }
+    }
+
+    for (int k = 0; k < n; k++) {
+      x[this.q[k]] = (float) this.work[k];
+      this.work[k] = 0;
+    }
+  }
+
+  /**
+   * Get the number of entries of the factors L and U, including the fill-in.
+   *
+   * @return the number of entries of L and U
+   */
+  public int factorEntries() {
+    return this.lowerStart[this.size] + this.upperStart[this.size];
+  }
+
+  /**
+   * Get the size of the matrix this factorization was built for.
+   *
+   * @return the number of rows of the matrix
+   */
+  public int size() {
+    return this.size;
+  }
+}
@@ -1,16 +1,51 @@
 package mat;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
 import java.util.List;
 
 /**
  * This class represents a 2D matrix of numbers using a 2D doubly linked list. It uses the Sentinel
  * representation i.e. a circular implementation of a linked list.
+ *
+ * <p>The sentinel of a row or column is only created when the first entry is set in it, and is
+ * dropped again when its last entry is removed, so empty rows and columns take no space and the
+ * kernels only visit the rows and columns that hold entries.
+ *
+ * <p>A matrix that is built once and then read many times can be compacted, which replaces the
+ * lists with contiguous arrays of its rows and of its columns. All operations work on either form,
+ * and the first change of a compacted matrix links its entries again.
  */
 public class SparseMatrix extends AbstractMatrix {
 
-  private List<RowSentinel<Float>> rows;
-  private List<ColumnSentinel<Float>> cols;
+  // estimated sizes on a 64-bit JVM with compressed references: this matrix, a sentinel, and a
+  // data node with its boxed value
+  private static final long MATRIX_BYTES = 40;
+  private static final long SENTINEL_BYTES = 40;
+  private static final long ENTRY_BYTES = 40 + 16;
+
+  // stands in for every row without entries, it is never modified
+  private static final RowSentinel<Float> EMPTY_ROW = new RowSentinel<Float>();
+  private static final MatrixListener[] NO_LISTENERS = new MatrixListener[0];
+
+  private final int size;
+  // true if every sentinel exists from the start and is never dropped
+  private final boolean eager;
+  private SentinelIndex<RowSentinel<Float>> rows;
+  private SentinelIndex<ColumnSentinel<Float>> cols;
+  // number of data nodes, kept up to date by every change of the lists
+  private long nnz;
+  // number of calls of set and setIdentity that changed this matrix
+  private long modifications;
+  // observers of the changes, replaced rather than modified when one is added or removed
+  private MatrixListener[] listeners = NO_LISTENERS;
+  // recycles the nodes of removed entries, null if nodes are not pooled
+  private NodePool pool;
+  // the entries in compressed row and column form while this matrix is compacted, else null.
+  // while compacted, the sentinels are empty and these arrays are never modified
+  private CompressedRows compactRows;
+  private CompressedRows compactCols;
 
   /**
    * Constructs a new matrix of the given dimensions. All entries of this matrix are by default, 0.
@@ -19,84 +54,559 @@ public class SparseMatrix extends AbstractMatrix {
    * @throws IllegalArgumentException if the size is a non-positive number
    */
   public SparseMatrix(int size) throws IllegalArgumentException {
+    this(size, false);
+  }
+
+  /**
+   * Constructs a new matrix of the given dimensions. If eager, the sentinels of all rows and
+   * columns are created up front and kept even when they are empty, so that setting an entry never
+   * changes the index of the sentinels. This lets threads set entries of different rows and
+   * columns at the same time.
+   *
+   * @param size  the number of rows and columns in this matrix
+   * @param eager true if all the sentinels should exist from the start
+   * @throws IllegalArgumentException if the size is a non-positive number
+   */
+  SparseMatrix(int size, boolean eager) throws IllegalArgumentException {
     if (size < 0) {
       throw new IllegalArgumentException("The size of a matrix cannot be non-positive");
     }
 
-    this.rows = new ArrayList<RowSentinel<Float>>(size);
-    this.cols = new ArrayList<ColumnSentinel<Float>>(size);
-    initializeSentinels(size);
+    this.size = size;
+    this.eager = eager;
+    initializeSentinels();
   }
 
   // initialize the sentinels of a new matrix.
-  private void initializeSentinels(int size) {
-    for (int i = 0; i < size; i++) {
-      this.rows.add(new RowSentinel<Float>());
-      this.cols.add(new ColumnSentinel<Float>());
+  private void initializeSentinels() {
+    this.rows = new SentinelIndex<RowSentinel<Float>>(this.size);
+    this.cols = new SentinelIndex<ColumnSentinel<Float>>(this.size);
+    if (this.eager) {
+      for (int i = 0; i < this.size; i++) {
+        this.rows.put(i, new RowSentinel<Float>());
+        this.cols.put(i, new ColumnSentinel<Float>());
+      }
     }
   }
 
-  @Override
-  public void setIdentity() {
-    // rest the sentinels to effectively create a new matrix
-    int size = this.rows.size();
-    this.rows = new ArrayList<RowSentinel<Float>>(size);
-    this.cols = new ArrayList<ColumnSentinel<Float>>(size);
+  /**
+   * Reuse the nodes of removed entries for the entries set later, instead of leaving them to the
+   * garbage collector, and allocate new nodes in chunks of the given size. This cuts the garbage
+   * created by workloads that keep setting entries to zero and back. The free nodes are kept by
+   * this matrix until disableNodePool is called.
+   *
+   * @param chunkSize the number of nodes allocated at once when there are no free nodes
+   * @throws IllegalArgumentException if the chunk size is not positive
+   */
+  public void enableNodePool(int chunkSize) throws IllegalArgumentException {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("The chunk size of a node pool must be positive");
+    }
+    this.pool = new NodePool(chunkSize);
+  }
 
-    initializeSentinels(size);
+  /**
+   * Stop reusing the nodes of removed entries, and release the free nodes kept so far.
+   */
+  public void disableNodePool() {
+    this.pool = null;
+  }
+
+  /**
+   * Get the number of free nodes kept for reuse by this matrix.
+   *
+   * @return the number of free nodes, 0 if nodes are not pooled
+   */
+  public int pooledNodes() {
+    return this.pool == null ? 0 : this.pool.available();
+  }
 
-    for (int i = 0; i < this.rows.size(); i++) {
+  /**
+   * Get the pool that recycles the nodes of the given row.
+   *
+   * @param i the row
+   * @return the pool, or null if nodes are not pooled
+   */
+  NodePool pool(int i) {
+    return this.pool;
+  }
+
+  @Override
+  public void setIdentity() {
+    clear();
+    for (int i = 0; i < this.size; i++) {
       // In Identity matrix i==j
       set(i, i, 1f);
     }
+    reset();
+  }
+
+  // remove every entry, without recording a change
+  private void clear() {
+    // recycle every node before the lists are dropped
+    for (int i = this.rows.next(0); i >= 0; i = this.rows.next(i + 1)) {
+      NodePool pool = pool(i);
+      if (pool == null) {
+        continue;
+      }
+      RowSentinel<Float> headRow = this.rows.get(i);
+      AbstractNode<Float> node = headRow.right;
+      while (node != headRow) {
+        AbstractNode<Float> next = node.right;
+        pool.release(node);
+        node = next;
+      }
+    }
+    // rest the sentinels to effectively create a new matrix
+    this.compactRows = null;
+    this.compactCols = null;
+    initializeSentinels();
+    entriesChanged(-nnz());
+  }
+
+  // record a completed change of any number of entries
+  private void reset() {
+    modified();
+    for (MatrixListener listener : this.listeners) {
+      listener.matrixReset();
+    }
   }
 
   @Override
   public void set(int i, int j, float value) throws IllegalArgumentException {
-    if ((i < 0) || (i >= this.rows.size())) {
+    if ((i < 0) || (i >= this.size)) {
       throw new IllegalArgumentException(
           "Row number in get cannot be beyond the bounds of the matrix");
     }
 
-    if ((j < 0) || (j >= this.cols.size())) {
+    if ((j < 0) || (j >= this.size)) {
       throw new IllegalArgumentException(
           "Column number in get cannot be beyond the bounds of the matrix");
     }
-
-    RowSentinel<Float> headRow = this.rows.get(i);
-    ColumnSentinel<Float> headCol = this.cols.get(j);
+    expand();
 
     if (value == 0f) {
-      headRow.removeNodeIfExists(i, j);
+      RowSentinel<Float> headRow = this.rows.get(i);
+      AbstractNode<Float> removed = headRow == null ? null : headRow.removeNodeIfExists(i, j);
+      if (removed != null) {
+        ColumnSentinel<Float> headCol = this.cols.get(j);
+        headCol.count--;
+        entriesChanged(-1);
+        releaseIfEmpty(i, headRow, j, headCol);
+        NodePool pool = pool(i);
+        if (pool != null) {
+          pool.release(removed);
+        }
+        changed(i, j);
+      }
     } else {
-      // add a node by getting the links
+      RowSentinel<Float> headRow = rowSentinel(i);
       List<AbstractNode<Float>> leftRightLinks = headRow.getHorizontalLinks(i, j);
+      AbstractNode<Float> left = leftRightLinks.get(0);
+      if (left.right != leftRightLinks.get(1)) {
+        // the links surround the node already at the cell, only its value changes
+        ((DataNode<Float>) left.right).setData(value);
+        changed(i, j);
+        return;
+      }
+
+      // add a node by getting the links
+      ColumnSentinel<Float> headCol = columnSentinel(j);
       List<AbstractNode<Float>> topBottomLinks = headCol.getVerticalLinks(i, j);
+      addNode(headRow, value, i, j, left, leftRightLinks.get(1), topBottomLinks.get(0),
+          topBottomLinks.get(1));
+      headRow.count++;
+      headCol.count++;
+      entriesChanged(1);
+      changed(i, j);
+    }
+  }
+
+  /**
+   * Set the given cells to the given values. The cells are grouped by row and sorted by column,
+   * so every row touched is walked once from its sentinel, and every column once from the top,
+   * instead of once per cell.
+   *
+   * @param rows   the rows of the cells
+   * @param cols   the columns of the cells
+   * @param values the values of the cells
+   * @throws IllegalArgumentException if the arrays are not of the same length, or a cell does not
+   *                                  exist in the matrix
+   */
+  @Override
+  public void setAll(int[] rows, int[] cols, float[] values) throws IllegalArgumentException {
+    checkBatch(rows, cols, values.length);
+    if (rows.length == 0) {
+      return;
+    }
+    expand();
+    long[] order = byRowAndColumn(rows, cols);
+    // the last node of every column above the current row, allocated on the first new entry
+    AbstractNode<Float>[] above = null;
+    int p = 0;
+    while (p < order.length) {
+      int i = rows[(int) order[p]];
+      RowSentinel<Float> headRow = rowSentinel(i);
+      AbstractNode<Float> curr = headRow.right;
+      for (; p < order.length && rows[(int) order[p]] == i; p++) {
+        int k = (int) order[p];
+        int j = cols[k];
+        // a later value of the same cell replaces this one
+        if (p + 1 < order.length && (int) (order[p + 1] >>> 32) == j
+            && rows[(int) order[p + 1]] == i) {
+          continue;
+        }
+        float value = values[k];
+        while (curr != headRow && curr.colIndex < j) {
+          curr = curr.right;
+        }
+        if (curr != headRow && curr.colIndex == j) {
+          if (value != 0f) {
+            ((DataNode<Float>) curr).setData(value);
+          } else {
+            AbstractNode<Float> next = curr.right;
+            removeNode(headRow, curr);
+            curr = next;
+          }
+          changed(i, j);
+        } else if (value != 0f) {
+          if (above == null) {
+            above = nodes(this.size);
+          }
+          ColumnSentinel<Float> headCol = columnSentinel(j);
+          // a column emptied by this call got a new sentinel, and starts over from it
+          AbstractNode<Float> top = above[j];
+          if (top == null || (top.rowIndex < 0 && top != headCol)) {
+            top = headCol;
+          }
+          while (top.bottom != headCol && top.bottom.rowIndex < i) {
+            top = top.bottom;
+          }
+          above[j] = top;
+          addNode(headRow, value, i, j, curr.left, curr, top, top.bottom);
+          headRow.count++;
+          headCol.count++;
+          entriesChanged(1);
+          changed(i, j);
+        }
+      }
+      releaseIfEmpty(i, headRow);
+    }
+  }
+
+  /**
+   * Retrieve the values at the given cells. The cells are grouped by row and sorted by column, so
+   * every row asked for is walked once, instead of once per cell.
+   *
+   * @param rows the rows of the cells
+   * @param cols the columns of the cells
+   * @param out  the array to store the values in
+   * @throws IllegalArgumentException if the arrays are not of the same length, or a cell is not
+   *                                  within the bounds of the matrix
+   */
+  @Override
+  public void getAll(int[] rows, int[] cols, float[] out) throws IllegalArgumentException {
+    checkBatch(rows, cols, out.length);
+    long[] order = byRowAndColumn(rows, cols);
+    CompressedRows compact = this.compactRows;
+    int p = 0;
+    while (p < order.length) {
+      int i = rows[(int) order[p]];
+      if (compact != null) {
+        int q = compact.rowStart[i];
+        int end = compact.rowStart[i + 1];
+        for (; p < order.length && rows[(int) order[p]] == i; p++) {
+          int k = (int) order[p];
+          while (q < end && compact.colIndex[q] < cols[k]) {
+            q++;
+          }
+          out[k] = q < end && compact.colIndex[q] == cols[k] ? compact.values[q] : 0f;
+        }
+      } else {
+        RowSentinel<Float> headRow = rowOrEmpty(i);
+        AbstractNode<Float> curr = headRow.right;
+        for (; p < order.length && rows[(int) order[p]] == i; p++) {
+          int k = (int) order[p];
+          while (curr != headRow && curr.colIndex < cols[k]) {
+            curr = curr.right;
+          }
+          out[k] = curr != headRow && curr.colIndex == cols[k] ? curr.getDataAtNode() : 0f;
+        }
+      }
+    }
+  }
+
+  // the positions of the cells of a batch, grouped by row and sorted by column within a row, the
+  // positions of the same cell in increasing order. Every entry holds the column in its upper
+  // half and the position in its lower half
+  private static long[] byRowAndColumn(int[] rows, int[] cols) {
+    long[] order = new long[rows.length];
+    for (int k = 0; k < rows.length; k++) {
+      order[k] = (long) rows[k] << 32 | k;
+    }
+    Arrays.sort(order);
+    int start = 0;
+    while (start < order.length) {
+      int i = rows[(int) order[start]];
+      int end = start;
+      while (end < order.length && rows[(int) order[end]] == i) {
+        int k = (int) order[end];
+        order[end] = (long) cols[k] << 32 | k;
+        end++;
+      }
+      Arrays.sort(order, start, end);
+      start = end;
+    }
+    return order;
+  }
+
+  /**
+   * Multiply every entry of this matrix by the given scalar, in place. The values are rewritten
+   * in their nodes, or in new arrays of values sharing the pattern of a compacted matrix, so no
+   * node is created or moved. Entries whose product is 0 are removed, so scaling by 0 clears this
+   * matrix.
+   *
+   * @param alpha the scalar
+   */
+  @Override
+  public void scale(float alpha) {
+    if (alpha == 0f) {
+      clear();
+      reset();
+      return;
+    }
+    if (this.compactRows != null) {
+      float[] rowValues = scaled(this.compactRows.values, alpha);
+      float[] colValues = scaled(this.compactCols.values, alpha);
+      if (rowValues != null && colValues != null) {
+        this.compactRows = new CompressedRows(this.size, this.compactRows.rowStart,
+            this.compactRows.colIndex, rowValues);
+        this.compactCols = new CompressedRows(this.size, this.compactCols.rowStart,
+            this.compactCols.colIndex, colValues);
+        reset();
+        return;
+      }
+      // some product is too small to be stored, so its entry has to be removed from the lists
+      expand();
+    }
+    for (int i = this.rows.next(0); i >= 0; i = this.rows.next(i + 1)) {
+      RowSentinel<Float> headRow = this.rows.get(i);
+      AbstractNode<Float> curr = headRow.right;
+      while (curr != headRow) {
+        AbstractNode<Float> next = curr.right;
+        float value = alpha * curr.getDataAtNode();
+        if (value != 0f) {
+          ((DataNode<Float>) curr).setData(value);
+        } else {
+          removeNode(headRow, curr);
+        }
+        curr = next;
+      }
+      releaseIfEmpty(i, headRow);
+    }
+    reset();
+  }
+
+  // the given values times alpha, or null if any product is 0
+  private static float[] scaled(float[] values, float alpha) {
+    float[] result = new float[values.length];
+    for (int p = 0; p < values.length; p++) {
+      result[p] = alpha * values[p];
+      if (result[p] == 0f) {
+        return null;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Add the other matrix, multiplied by the given scalar, to this matrix in place. Every row of
+   * this is merged with the sorted row of other in one pass: entries at the same position are
+   * updated in their nodes, entries that cancel out are removed, and new entries are linked in
+   * place. The columns are linked from a cursor per column that only moves down, so each column
+   * of this is walked at most once. A compacted matrix is merged into new arrays and stays
+   * compacted.
+   *
+   * @param alpha the scalar
+   * @param other the matrix to add to this
+   * @throws IllegalArgumentException if the num of rows and cols of the two matrices do not match
+   */
+  @Override
+  public void axpy(float alpha, SquareMatrix other) throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be added together");
+    }
+    if (alpha == 0f) {
+      return;
+    }
+    // assumption - all implementations extend AbstractMatrix
+    // the rows of other are read before this is changed, so other may be this
+    addScaled(alpha, ((AbstractMatrix) other).compressRows());
+  }
+
+  /**
+   * Add the given entries, multiplied by the given scalar, to this matrix in place.
+   *
+   * @param alpha the scalar, not 0
+   * @param x     the entries to add, of the size of this matrix
+   */
+  void addScaled(float alpha, CompressedRows x) {
+    if (this.compactRows != null) {
+      CompressedRows merged = addScaledCompressed(alpha, x, this.compactRows);
+      entriesChanged(merged.nnz() - this.compactRows.nnz());
+      this.compactRows = merged;
+      this.compactCols = merged.transpose();
+      reset();
+      return;
+    }
+    // the last node of every column above the current row, allocated on the first new entry
+    AbstractNode<Float>[] above = null;
+    for (int i = 0; i < this.size; i++) {
+      if (x.rowStart[i] == x.rowStart[i + 1]) {
+        continue;
+      }
+      RowSentinel<Float> headRow = rowSentinel(i);
+      AbstractNode<Float> curr = headRow.right;
+      for (int p = x.rowStart[i]; p < x.rowStart[i + 1]; p++) {
+        int j = x.colIndex[p];
+        while (curr != headRow && curr.colIndex < j) {
+          curr = curr.right;
+        }
+        float value = alpha * x.values[p];
+        if (curr != headRow && curr.colIndex == j) {
+          AbstractNode<Float> next = curr.right;
+          float sum = curr.getDataAtNode() + value;
+          if (sum != 0f) {
+            ((DataNode<Float>) curr).setData(sum);
+          } else {
+            removeNode(headRow, curr);
+          }
+          curr = next;
+        } else if (value != 0f) {
+          if (above == null) {
+            above = nodes(this.size);
+          }
+          ColumnSentinel<Float> headCol = columnSentinel(j);
+          // a column emptied by this call got a new sentinel, and starts over from it
+          AbstractNode<Float> top = above[j];
+          if (top == null || (top.rowIndex < 0 && top != headCol)) {
+            top = headCol;
+          }
+          while (top.bottom != headCol && top.bottom.rowIndex < i) {
+            top = top.bottom;
+          }
+          above[j] = top;
+          addNode(headRow, value, i, j, curr.left, curr, top, top.bottom);
+          headRow.count++;
+          headCol.count++;
+          entriesChanged(1);
+        }
+      }
+      releaseIfEmpty(i, headRow);
+    }
+    reset();
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static AbstractNode<Float>[] nodes(int length) {
+    return new AbstractNode[length];
+  }
+
+  // unlink the given node of the given row from its row and column. The sentinel of the row is
+  // kept even if the row is left empty, so that the caller can go on walking the row
+  private void removeNode(RowSentinel<Float> headRow, AbstractNode<Float> node) {
+    int j = node.colIndex;
+    node.remove();
+    headRow.count--;
+    ColumnSentinel<Float> headCol = this.cols.get(j);
+    headCol.count--;
+    entriesChanged(-1);
+    if (headCol.count == 0 && !this.eager) {
+      this.cols.remove(j);
+    }
+    NodePool pool = pool(node.rowIndex);
+    if (pool != null) {
+      pool.release(node);
+    }
+  }
+
+  // record a completed change of the entry (i, j)
+  private void changed(int i, int j) {
+    modified();
+    for (MatrixListener listener : this.listeners) {
+      listener.entryChanged(i, j);
+    }
+  }
 
+  /**
+   * Start calling the given listener on every change of this matrix.
+   *
+   * @param listener the listener
+   */
+  void addListener(MatrixListener listener) {
+    MatrixListener[] result = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+    result[this.listeners.length] = listener;
+    this.listeners = result;
+  }
+
+  /**
+   * Stop calling the given listener. Nothing happens if it was not added.
+   *
+   * @param listener the listener
+   */
+  void removeListener(MatrixListener listener) {
+    for (int k = 0; k < this.listeners.length; k++) {
+      if (this.listeners[k] == listener) {
+        MatrixListener[] result = new MatrixListener[this.listeners.length - 1];
+        System.arraycopy(this.listeners, 0, result, 0, k);
+        System.arraycopy(this.listeners, k + 1, result, k, result.length - k);
+        this.listeners = result;
+        return;
+      }
+    }
+  }
+
+  // link a node for the entry between the given links, taken from the pool if there is one
+  private void addNode(RowSentinel<Float> headRow, float value, int i, int j,
+      AbstractNode<Float> left, AbstractNode<Float> right, AbstractNode<Float> top,
+      AbstractNode<Float> bottom) {
+    NodePool pool = pool(i);
+    if (pool == null) {
       // can call addNode from any sentinel. since it has all the links passed.
-      headRow.addNode(value, i, j, leftRightLinks.get(0), leftRightLinks.get(1),
-          topBottomLinks.get(0), topBottomLinks.get(1));
+      headRow.addNode(value, i, j, left, right, top, bottom);
+    } else {
+      DataNode<Float> node = pool.obtain();
+      node.setData(value);
+      node.link(i, j, left, right, top, bottom);
     }
   }
 
   @Override
   public float get(int i, int j) throws IllegalArgumentException {
-    if ((i < 0) || (i >= this.rows.size())) {
+    if ((i < 0) || (i >= this.size)) {
       throw new IllegalArgumentException(
           "Row number in get cannot be beyond the bounds of the matrix");
     }
 
-    if ((j < 0) || (j >= this.cols.size())) {
+    if ((j < 0) || (j >= this.size)) {
       throw new IllegalArgumentException(
           "Column number in get cannot be beyond the bounds of the matrix");
     }
 
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      int p = Arrays.binarySearch(compact.colIndex, compact.rowStart[i], compact.rowStart[i + 1],
+          j);
+      return p < 0 ? 0f : compact.values[p];
+    }
+
     // compromise - I always pick the row sentinel to access a node
     // Instead of  maintaining the count of nodes in each sentinel
     // and deciding between row/column sentinel based on that.
-    RowSentinel<Float> head = this.rows.get(i);
+    RowSentinel<Float> head = rowOrEmpty(i);
 
-    Float nullableFloat = head.get(i, j, this.rows.size());
+    Float nullableFloat = head.get(i, j, this.size);
     return nullableFloat == null ? 0f : nullableFloat;
   }
 
@@ -109,7 +619,17 @@ public class SparseMatrix extends AbstractMatrix {
     }
 
     // assumption - all implementations extend AbstractMatrix
-    return ((AbstractMatrix) other).addSparseMatrix(this);
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).addSparseMatrix(this);
+      MatrixMetrics.record("add", this, other, result, start);
+      event.finish("add", "addSparseMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
   }
 
   @Override
@@ -122,7 +642,17 @@ public class SparseMatrix extends AbstractMatrix {
 
     // assumption - all implementations extend AbstractMatrix
     // need to achieve other * this
-    return ((AbstractMatrix) other).postmulSparseMatrix(this);
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).postmulSparseMatrix(this);
+      MatrixMetrics.record("premul", this, other, result, start);
+      event.finish("premul", "postmulSparseMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
   }
 
   @Override
@@ -135,303 +665,1774 @@ public class SparseMatrix extends AbstractMatrix {
 
     // assumption - all implementations extend AbstractMatrix
     // need to achieve this * other
-    return ((AbstractMatrix) other).premulSparseMatrix(this);
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).premulSparseMatrix(this);
+      MatrixMetrics.record("postmul", this, other, result, start);
+      event.finish("postmul", "premulSparseMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
   }
 
   @Override
-  public int size() {
-    return this.rows.size();
+  public SquareMatrix hadamard(SquareMatrix other) throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be multiplied entry by entry");
+    }
+
+    // assumption - all implementations extend AbstractMatrix
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).hadamardSparseMatrix(this);
+      MatrixMetrics.record("hadamard", this, other, result, start);
+      event.finish("hadamard", "hadamardSparseMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
   }
 
-  // Overrides of AbstractMatrix for the Sparse OP Sparse case.
+  @Override
+  public SquareMatrix kronecker(SquareMatrix other) throws IllegalArgumentException {
+    kroneckerSize(this.size(), other.size());
+
+    // assumption - all implementations extend AbstractMatrix
+    // need to achieve this (x) other
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).kroneckerSparseMatrix(this);
+      MatrixMetrics.record("kronecker", this, other, result, start);
+      event.finish("kronecker", "kroneckerSparseMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
+  }
 
   /**
-   * This implementation adds a SparseMatrix with a SparseMatrix.
+   * Apply the given function to every entry of this matrix and return the result. If the function
+   * maps 0 to 0, the function is applied to the non-zero entries of this only, and the result is
+   * a sparse matrix with at most as many entries as this. Otherwise every entry of the result is
+   * non-zero wherever the function is, so the result is an ArrayMatrix.
    *
-   * @param other a sparse matrix
+   * @param function the function to apply
+   * @return the matrix of the values of the function
    */
   @Override
-  protected SquareMatrix addSparseMatrix(SparseMatrix other) {
-    SparseMatrix result = new SparseMatrix(this.rows.size());
-    // pick row from both matrices
-    // go right
-    // check the 4 cases
-    RowSentinel<Float> headRowA;
-    RowSentinel<Float> headRowB;
-    AbstractNode<Float> rowA;
-    AbstractNode<Float> rowB;
-
-    for (int i = 0; i < this.rows.size(); i++) {
-      headRowA = this.rows.get(i);
-      rowA = headRowA.right;
-
-      headRowB = other.rows.get(i);
-      rowB = headRowB.right;
+  public SquareMatrix map(FloatUnaryOperator function) {
+    // the matrix stands for both operands, so it is recorded once
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = mapEntries(function);
+      MatrixMetrics.record("mapUnary", this, this, result, start);
+      event.finish("mapUnary", "map", this, this, result);
+      return result;
+    } finally {
+      event.release();
+    }
+  }
 
-      // if both rows have elements
-      while (rowA != headRowA && rowB != headRowB) {
-        // check if indices match
-        if (rowA.colIndex == rowB.colIndex) {
-          // add them and store at the index of any 1
-          float resultAdd = rowA.getDataAtNode() + rowB.getDataAtNode();
-          result.set(rowA.rowIndex, rowA.colIndex, resultAdd);
-          rowA = rowA.right;
-          rowB = rowB.right;
-        } else if (rowA.colIndex < rowB.colIndex) {
-          // rowA element is before rowB
-          result.set(rowA.rowIndex, rowA.colIndex, rowA.getDataAtNode());
-          rowA = rowA.right;
-        } else {
-          // rowB element is before rowA
-          result.set(rowB.rowIndex, rowB.colIndex, rowB.getDataAtNode());
-          rowB = rowB.right;
+  private SquareMatrix mapEntries(FloatUnaryOperator function) {
+    CompressedRows a = compressRows();
+    float zero = function.apply(0f);
+    if (zero != 0f) {
+      float[][] result = filled(this.size, zero);
+      for (int i = 0; i < this.size; i++) {
+        for (int p = a.rowStart[i]; p < a.rowStart[i + 1]; p++) {
+          result[i][a.colIndex[p]] = function.apply(a.values[p]);
         }
       }
-
-      // Add remaining elements from rowA
-      while (rowA != headRowA) {
-        result.set(rowA.rowIndex, rowA.colIndex, rowA.getDataAtNode());
-        rowA = rowA.right;
+      return new ArrayMatrix(result);
+    }
+    SparseMatrix result = new SparseMatrix(this.size);
+    for (int i = 0; i < this.size; i++) {
+      for (int p = a.rowStart[i]; p < a.rowStart[i + 1]; p++) {
+        float value = function.apply(a.values[p]);
+        if (value != 0f) {
+          result.append(i, a.colIndex[p], value);
+        }
       }
+    }
+    return result;
+  }
 
-      // Add remaining elements from rowB
-      while (rowB != headRowB) {
-        result.set(rowB.rowIndex, rowB.colIndex, rowB.getDataAtNode());
-        rowB = rowB.right;
-      }
+  @Override
+  public SquareMatrix map(SquareMatrix other, FloatBinaryOperator function)
+      throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be mapped entry by entry");
     }
 
-    return result;
+    // assumption - all implementations extend AbstractMatrix
+    // need to achieve function(this, other)
+    MatrixOperationEvent event = new MatrixOperationEvent();
+    event.start();
+    try {
+      long start = MatrixMetrics.start();
+      SquareMatrix result = ((AbstractMatrix) other).mapSparseMatrix(this, function);
+      MatrixMetrics.record("map", this, other, result, start);
+      event.finish("map", "mapSparseMatrix", this, other, result);
+      return result;
+    } finally {
+      event.release();
+    }
   }
 
   /**
-   * This implementation post-multiplies a SparseMatrix with a SparseMatrix. i.e. SparseMatrix-this
-   * * SparseMatrix-other
+   * Multiply this matrix with the other matrix over the given semiring i.e. result(i, j) is the
+   * semiring sum over k of this(i, k) times other(k, j), taken over the stored entries only.
+   * Neither this nor the other matrix is mutated. On a matrix that is not compacted, the entries
+   * are first copied into arrays, so matrices used in many products should be compacted.
    *
-   * @param other a sparse matrix
+   * @param other    the right operand
+   * @param semiring the algebra of the product
+   * @return the product of this and other
+   * @throws IllegalArgumentException if the size of the other matrix does not match this matrix
    */
-  @Override
-  protected SquareMatrix postmulSparseMatrix(SparseMatrix other) {
-    SparseMatrix result = new SparseMatrix(this.rows.size());
-    // vars to traverse rows of this matrix and cols of other matrix
-    RowSentinel<Float> headRowA;
-    ColumnSentinel<Float> headColB;
-    AbstractNode<Float> rowA;
-    AbstractNode<Float> colB;
+  public SparseMatrix multiply(SquareMatrix other, Semiring semiring)
+      throws IllegalArgumentException {
+    if (this.size() != other.size()) {
+      throw new IllegalArgumentException(
+          "The size of this matrix is not the same as the size of the other matrix,"
+              + " hence they cannot be multiplied together");
+    }
+    // assumption - all implementations extend AbstractMatrix
+    return multiplyCompressed(compressRows(), ((AbstractMatrix) other).compressRows(), semiring);
+  }
 
-    for (int i = 0; i < this.rows.size(); i++) {
-      headRowA = this.rows.get(i);
-      rowA = headRowA.right;
+  /**
+   * Multiply this matrix with the other matrix over the given semiring, but only compute the
+   * entries (i, j) that are stored in the mask. Every such entry is the merge of row i of this
+   * with column j of other, driven by the rows of the mask, so the work is proportional to the
+   * entries of the mask and the rows and columns they meet, not to the whole product. This is what
+   * triangle counting, k-truss and sampled products need.
+   *
+   * @param other    the right operand
+   * @param mask     the entries to compute, only its structure is used
+   * @param semiring the algebra of the product
+   * @return the entries of the product of this and other that are in the mask
+   * @throws IllegalArgumentException if the size of the other matrix or the mask does not match
+   */
+  public SparseMatrix multiplyMasked(SquareMatrix other, SparseMatrix mask, Semiring semiring)
+      throws IllegalArgumentException {
+    checkMask(other, mask);
+    CompressedRows rows = compressRows();
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows columns = other instanceof SparseMatrix
+        ? ((SparseMatrix) other).compressColumns()
+        : ((AbstractMatrix) other).compressRows().transpose();
 
-      // if row has no elements skip row iteration
-      if (rowA == headRowA) {
+    // the mask is read through its compact form, which a concurrent mask takes under its locks
+    CompressedRows entries = mask.compressRows();
+
+    SparseMatrix result = new SparseMatrix(this.size);
+    for (int i = 0; i < this.size; i++) {
+      if (entries.rowStart[i] == entries.rowStart[i + 1]
+          || rows.rowStart[i] == rows.rowStart[i + 1]) {
         continue;
       }
-
-      for (int j = 0; j < other.cols.size(); j++) {
-        // Reset row head on every iteration
-        headRowA = this.rows.get(i);
-        rowA = headRowA.right;
-        headColB = other.cols.get(j);
-        colB = headColB.bottom;
-
-        // if col has no elements skip col iteration
-        if (colB == headColB) {
-          continue;
+      for (int c = entries.rowStart[i]; c < entries.rowStart[i + 1]; c++) {
+        int j = entries.colIndex[c];
+        float value = semiring.dot(rows.colIndex, rows.values, rows.rowStart[i],
+            rows.rowStart[i + 1], columns.colIndex, columns.values, columns.rowStart[j],
+            columns.rowStart[j + 1]);
+        if (value != 0f) {
+          result.append(i, j, value);
         }
+      }
+    }
+    return result;
+  }
 
-        // multiplication value at (i,j)
-        float sum = 0f;
+  /**
+   * Multiply this matrix with the other matrix over the given semiring, but only keep the entries
+   * (i, j) that are not stored in the mask, e.g. the new vertices reached by a search when the mask
+   * holds the visited ones. The rows of the product are accumulated as usual, and the entries of
+   * the mask are dropped before they are stored.
+   *
+   * @param other    the right operand
+   * @param mask     the entries not to keep, only its structure is used
+   * @param semiring the algebra of the product
+   * @return the entries of the product of this and other that are not in the mask
+   * @throws IllegalArgumentException if the size of the other matrix or the mask does not match
+   */
+  public SparseMatrix multiplyMaskedComplement(SquareMatrix other, SparseMatrix mask,
+      Semiring semiring) throws IllegalArgumentException {
+    checkMask(other, mask);
+    CompressedRows a = compressRows();
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows b = ((AbstractMatrix) other).compressRows();
+    // the mask is read through its compact form, which a concurrent mask takes under its locks
+    CompressedRows entries = mask.compressRows();
+
+    SparseMatrix result = new SparseMatrix(this.size);
+    float[] sums = new float[this.size];
+    int[] touched = new int[this.size];
+    int[] mark = new int[this.size];
+    int[] masked = new int[this.size];
+    // marks start at 0, so rows are stamped from 1
+    for (int i = 0; i < this.size; i++) {
+      int count = 0;
+      for (int p = a.rowStart[i]; p < a.rowStart[i + 1]; p++) {
+        int k = a.colIndex[p];
+        count = semiring.scatter(a.values[p], b.colIndex, b.values, b.rowStart[k],
+            b.rowStart[k + 1], sums, touched, count, mark, i + 1);
+      }
+      if (count == 0) {
+        continue;
+      }
+      for (int c = entries.rowStart[i]; c < entries.rowStart[i + 1]; c++) {
+        masked[entries.colIndex[c]] = i + 1;
+      }
+      Arrays.sort(touched, 0, count);
+      for (int c = 0; c < count; c++) {
+        int j = touched[c];
+        if (masked[j] != i + 1 && sums[j] != 0f) {
+          result.append(i, j, sums[j]);
+        }
+      }
+    }
+    return result;
+  }
 
-        // While both row and column have elements
-        while (rowA != headRowA && colB != headColB) {
-          // indices match multiply and add to the sum
-          if (rowA.colIndex == colB.rowIndex) {
-            sum += rowA.getDataAtNode() * colB.getDataAtNode();
-            rowA = rowA.right;
-            colB = colB.bottom;
-          } else if (rowA.colIndex < colB.rowIndex) {
-            // skip row elements
-            rowA = rowA.right;
-          } else {
-            // skip col elements
-            colB = colB.bottom;
+  private void checkMask(SquareMatrix other, SparseMatrix mask) throws IllegalArgumentException {
+    if (this.size() != other.size() || this.size() != mask.size()) {
+      throw new IllegalArgumentException(
+          "The size of this matrix is not the same as the size of the other matrix,"
+              + " hence they cannot be multiplied together");
+    }
+  }
+
+  /**
+   * Multiply this matrix with the given vector and add the result to the other given vector, each
+   * multiplied by the given scalars i.e. y = alpha * this * x + beta * y. Every row is summed
+   * over its entries and combined with y in the same pass, so no vector is allocated.
+   *
+   * @param alpha the scalar of the product
+   * @param x     the vector to be multiplied, of length size()
+   * @param beta  the scalar of the previous contents of y, which are not read if it is 0
+   * @param y     the vector to add the product to, of length size(), not the same array as x
+   * @throws IllegalArgumentException if the length of a vector does not match this matrix
+   */
+  @Override
+  public void multiply(float alpha, float[] x, float beta, float[] y)
+      throws IllegalArgumentException {
+    checkVectors(x, y);
+    for (int i = 0; i < this.size; i++) {
+      float sum = alpha * rowDot(i, x);
+      y[i] = beta == 0f ? sum : sum + beta * y[i];
+    }
+  }
+
+  /**
+   * Multiply this matrix with the given vector i.e. y = this * x, splitting the rows between the
+   * threads of the common fork join pool. The work is split by the number of entries rather than
+   * the number of rows, so a few very long rows do not leave one thread working while the others
+   * wait. In compact form, a row longer than a share of the work is itself split between threads.
+   * The previous contents of y are overwritten.
+   *
+   * @param x the vector to be multiplied, of length size()
+   * @param y the vector to store the result in, of length size(), not the same array as x
+   * @return how the work was spread over the threads
+   * @throws IllegalArgumentException if the length of a vector does not match this matrix
+   */
+  public ScheduleStats multiplyParallel(float[] x, float[] y) throws IllegalArgumentException {
+    checkVectors(x, y);
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      return compact.multiply(x, y, RowScheduler.byWeight(compact.rowStart));
+    }
+    return RowScheduler.byRows(rowPrefix(1)).run((t, from, to) -> {
+      for (int i = (int) from; i < to; i++) {
+        y[i] = rowDot(i, x);
+      }
+    });
+  }
+
+  /**
+   * Multiply this matrix with the given vector over the given semiring i.e. y(i) is the semiring
+   * sum over j of this(i, j) times x(j), where entries of x that are 0 are not present. y(i) is 0
+   * if row i meets no entry of x, or if the sum is 0, so when 0 is a value of x or y, e.g. over
+   * min-plus, use the product with a BitSet of the entries of x that are present. The previous
+   * contents of y are overwritten.
+   *
+   * @param x        the vector to be multiplied, of length size()
+   * @param y        the vector to store the result in, of length size(), not the same array as x
+   * @param semiring the algebra of the product
+   * @throws IllegalArgumentException if the length of a vector does not match this matrix
+   */
+  public void multiply(float[] x, float[] y, Semiring semiring) throws IllegalArgumentException {
+    checkVectors(x, y);
+    CompressedRows rows = compressRows();
+    for (int i = 0; i < this.size; i++) {
+      y[i] = semiring.dot(rows.colIndex, rows.values, rows.rowStart[i], rows.rowStart[i + 1], x);
+    }
+  }
+
+  /**
+   * Multiply this matrix with the given vector over the given semiring i.e. y(i) is the semiring
+   * sum over j in present of this(i, j) times x(j). Since the entries of x that are present are
+   * given apart from their values, an entry of x or of y may be 0, e.g. the distance of the source
+   * of a shortest path search over min-plus. The rows that meet an entry of x are stored in
+   * reached, and y(i) is 0 for the other rows. The previous contents of y and reached are
+   * overwritten.
+   *
+   * @param x        the vector to be multiplied, of length size()
+   * @param present  the entries of x that are present, all less than size()
+   * @param y        the vector to store the result in, of length size(), not the same array as x
+   * @param reached  the set to store the entries of y that are present in, not the same set as
+   *                 present
+   * @param semiring the algebra of the product
+   * @throws IllegalArgumentException if the length of a vector does not match this matrix, or
+   *                                  present has an entry that is not less than size()
+   */
+  public void multiply(float[] x, BitSet present, float[] y, BitSet reached, Semiring semiring)
+      throws IllegalArgumentException {
+    checkVectors(x, y);
+    checkPresent(present);
+    CompressedRows rows = compressRows();
+    reached.clear();
+    for (int i = 0; i < this.size; i++) {
+      if (semiring.dot(rows.colIndex, rows.values, rows.rowStart[i], rows.rowStart[i + 1], x,
+          present, y, i)) {
+        reached.set(i);
+      } else {
+        y[i] = 0f;
+      }
+    }
+  }
+
+  /**
+   * Multiply the given row vector with this matrix over the given semiring i.e. y(j) is the
+   * semiring sum over i of x(i) times this(i, j), where entries of x that are 0 are not present.
+   * y(j) is 0 if column j meets no entry of x, or if the sum is 0. This is a shorthand for the
+   * product with a BitSet of the non-zero entries of x, see there. The previous contents of y are
+   * overwritten.
+   *
+   * @param x        the vector to be multiplied, of length size()
+   * @param y        the vector to store the result in, of length size(), not the same array as x
+   * @param semiring the algebra of the product
+   * @throws IllegalArgumentException if the length of a vector does not match this matrix
+   */
+  public void multiplyTransposed(float[] x, float[] y, Semiring semiring)
+      throws IllegalArgumentException {
+    checkVectors(x, y);
+    BitSet present = new BitSet(this.size);
+    for (int i = 0; i < this.size; i++) {
+      if (x[i] != 0f) {
+        present.set(i);
+      }
+    }
+    multiplyTransposed(x, present, y, new BitSet(this.size), semiring);
+  }
+
+  /**
+   * Multiply the given row vector with this matrix over the given semiring i.e. y(j) is the
+   * semiring sum over i in present of x(i) times this(i, j). Since the entries of x that are
+   * present are given apart from their values, an entry of x or of y may be 0, so with x the
+   * distances found so far, present the vertices whose distance changed and this the weighted
+   * adjacency matrix of a graph, this is one step of Bellman-Ford over min-plus, starting from a
+   * source at distance 0. The columns that meet an entry of x are stored in reached, and y(j) is 0
+   * for the other columns. The previous contents of y and reached are overwritten.
+   *
+   * <p>Only the rows in present are visited. The rows are read through the compact form, which
+   * is built in time proportional to nnz() unless this matrix is compacted, and two work arrays of
+   * size() entries are allocated and y is cleared, so a step always takes time proportional to
+   * size() plus the entries of the rows in present.
+   *
+   * @param x        the vector to be multiplied, of length size()
+   * @param present  the entries of x that are present, all less than size()
+   * @param y        the vector to store the result in, of length size(), not the same array as x
+   * @param reached  the set to store the entries of y that are present in, not the same set as
+   *                 present
+   * @param semiring the algebra of the product
+   * @throws IllegalArgumentException if the length of a vector does not match this matrix, or
+   *                                  present has an entry that is not less than size()
+   */
+  public void multiplyTransposed(float[] x, BitSet present, float[] y, BitSet reached,
+      Semiring semiring) throws IllegalArgumentException {
+    checkVectors(x, y);
+    checkPresent(present);
+    CompressedRows rows = compressRows();
+    int[] touched = new int[this.size];
+    int[] mark = new int[this.size];
+    int count = 0;
+    for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+      count = semiring.scatter(x[i], rows.colIndex, rows.values, rows.rowStart[i],
+          rows.rowStart[i + 1], y, touched, count, mark, 1);
+    }
+    reached.clear();
+    for (int k = 0; k < count; k++) {
+      reached.set(touched[k]);
+    }
+    // columns that were not reached keep no value
+    for (int j = 0; j < this.size; j++) {
+      if (mark[j] != 1) {
+        y[j] = 0f;
+      }
+    }
+  }
+
+  private void checkPresent(BitSet present) throws IllegalArgumentException {
+    if (present.length() > this.size) {
+      throw new IllegalArgumentException(
+          "The set of present entries has an entry past the size of the matrix");
+    }
+  }
+
+  private void checkVectors(float[] x, float[] y) throws IllegalArgumentException {
+    if (x.length != this.size || y.length != this.size) {
+      throw new IllegalArgumentException(
+          "The length of the vector does not match the size of the matrix");
+    }
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public long nnz() {
+    return this.nnz;
+  }
+
+  @Override
+  public long estimatedBytes() {
+    if (this.compactRows != null) {
+      // two arrays of starts, two of indices and two of values, plus the empty sentinel indices
+      return MATRIX_BYTES + this.rows.estimatedBytes() + this.cols.estimatedBytes()
+          + 2 * (24 + 16 + 4L * (this.size + 1)) + 4 * (16 + 4 * nnz());
+    }
+    return MATRIX_BYTES + this.rows.estimatedBytes() + this.cols.estimatedBytes()
+        + (long) (this.rows.count() + this.cols.count()) * SENTINEL_BYTES + nnz() * ENTRY_BYTES
+        + (this.pool == null ? 0 : this.pool.estimatedBytes());
+  }
+
+  // the sentinel of row i, or a stand-in without entries that must not be modified
+  private RowSentinel<Float> rowOrEmpty(int i) {
+    RowSentinel<Float> headRow = this.rows.get(i);
+    return headRow == null ? EMPTY_ROW : headRow;
+  }
+
+  // the sentinel of row i, created if the row has none yet
+  private RowSentinel<Float> rowSentinel(int i) {
+    RowSentinel<Float> headRow = this.rows.get(i);
+    if (headRow == null) {
+      headRow = new RowSentinel<Float>();
+      this.rows.put(i, headRow);
+    }
+    return headRow;
+  }
+
+  // the sentinel of column j, created if the column has none yet
+  private ColumnSentinel<Float> columnSentinel(int j) {
+    ColumnSentinel<Float> headCol = this.cols.get(j);
+    if (headCol == null) {
+      headCol = new ColumnSentinel<Float>();
+      this.cols.put(j, headCol);
+    }
+    return headCol;
+  }
+
+  // drop the sentinel of row i if its last entry was removed
+  private void releaseIfEmpty(int i, RowSentinel<Float> headRow) {
+    if (!this.eager && headRow.count == 0) {
+      this.rows.remove(i);
+    }
+  }
+
+  // drop the sentinels of row i and column j if their last entry was removed
+  private void releaseIfEmpty(int i, RowSentinel<Float> headRow, int j,
+      ColumnSentinel<Float> headCol) {
+    if (this.eager) {
+      return;
+    }
+    if (headRow.count == 0) {
+      this.rows.remove(i);
+    }
+    if (headCol.count == 0) {
+      this.cols.remove(j);
+    }
+  }
+
+  @Override
+  public long modificationCount() {
+    return this.modifications;
+  }
+
+  /**
+   * Record that this matrix was changed. This is called once a change is complete, so that a
+   * computation that sees the old count never caches a result that misses the change.
+   */
+  void modified() {
+    this.modifications++;
+  }
+
+  /**
+   * Record that the given number of entries were added to this matrix, or removed if negative.
+   *
+   * @param delta the change of the number of entries
+   */
+  void entriesChanged(long delta) {
+    this.nnz += delta;
+  }
+
+  /**
+   * Return a new matrix with the rows and columns of this matrix reordered by the given
+   * permutation i.e. result(i, j) = this(p.get(i), p.get(j)). This matrix is not mutated. The
+   * result is built in a single pass over the non-zero entries, and the permutation can be used to
+   * map vectors of the result back to the ordering of this matrix.
+   *
+   * @param p the permutation of the rows and columns
+   * @return the permuted matrix
+   * @throws IllegalArgumentException if the size of the permutation does not match this matrix
+   */
+  public SparseMatrix permute(Permutation p) throws IllegalArgumentException {
+    return permute(p, p);
+  }
+
+  /**
+   * Return a new matrix with the rows and columns of this matrix reordered by the given
+   * permutations i.e. result(i, j) = this(rowPerm.get(i), colPerm.get(j)). This matrix is not
+   * mutated. The result is built in a single pass over the non-zero entries.
+   *
+   * @param rowPerm the permutation of the rows
+   * @param colPerm the permutation of the columns
+   * @return the permuted matrix
+   * @throws IllegalArgumentException if the size of a permutation does not match this matrix
+   */
+  public SparseMatrix permute(Permutation rowPerm, Permutation colPerm)
+      throws IllegalArgumentException {
+    if (rowPerm.size() != this.size() || colPerm.size() != this.size()) {
+      throw new IllegalArgumentException(
+          "The size of the permutation does not match the size of the matrix");
+    }
+
+    MatrixConstructionEvent event = new MatrixConstructionEvent();
+    event.start();
+    try {
+      SparseMatrix result = new SparseMatrix(this.size);
+      long nnz = 0;
+      int[] colPosition = colPerm.inverseArray();
+      long[] keys = new long[16];
+      float[] values = new float[16];
+      RowSentinel<Float> headRow;
+      AbstractNode<Float> curr;
+
+      // new positions of the rows with entries, in increasing order
+      int[] rowPosition = rowPerm.inverseArray();
+      CompressedRows compact = this.compactRows;
+      int[] targets;
+      int occupied = 0;
+      if (compact != null) {
+        targets = new int[this.size];
+        for (int r = 0; r < this.size; r++) {
+          if (compact.rowStart[r] < compact.rowStart[r + 1]) {
+            targets[occupied++] = rowPosition[r];
           }
         }
+      } else {
+        targets = new int[this.rows.count()];
+        for (int r = this.rows.next(0); r >= 0; r = this.rows.next(r + 1)) {
+          targets[occupied++] = rowPosition[r];
+        }
+      }
+      Arrays.sort(targets, 0, occupied);
+
+      for (int t = 0; t < occupied; t++) {
+        int i = targets[t];
+        int r = rowPerm.get(i);
+
+        // sort the entries of the row by their new column, packed with their position in the row
+        int count = 0;
+        if (compact != null) {
+          count = compact.rowStart[r + 1] - compact.rowStart[r];
+          if (count > keys.length) {
+            keys = new long[count];
+            values = new float[count];
+          }
+          for (int k = 0; k < count; k++) {
+            keys[k] = ((long) colPosition[compact.colIndex[compact.rowStart[r] + k]] << 32) | k;
+            values[k] = compact.values[compact.rowStart[r] + k];
+          }
+        } else {
+          headRow = this.rows.get(r);
+          for (curr = headRow.right; curr != headRow; curr = curr.right) {
+            if (count == keys.length) {
+              keys = Arrays.copyOf(keys, 2 * count);
+              values = Arrays.copyOf(values, 2 * count);
+            }
+            keys[count] = ((long) colPosition[curr.colIndex] << 32) | count;
+            values[count] = curr.getDataAtNode();
+            count++;
+          }
+        }
+        Arrays.sort(keys, 0, count);
+
+        // rows of the result are visited in order, so every entry goes at the end of its lists
+        for (int k = 0; k < count; k++) {
+          result.append(i, (int) (keys[k] >>> 32), values[(int) keys[k]]);
+        }
+        nnz += count;
+      }
+      event.finish("permute", result, nnz);
+      return result;
+    } finally {
+      event.release();
+    }
+  }
+
+  /**
+   * Return a read-only snapshot of this matrix, stored in compact arrays. Later changes to this
+   * matrix do not affect the snapshot, and the snapshot can be read by any number of threads
+   * without locks.
+   *
+   * @return an immutable copy of this matrix
+   */
+  public ImmutableSparseMatrix freeze() {
+    MatrixConstructionEvent event = new MatrixConstructionEvent();
+    event.start();
+    try {
+      ImmutableSparseMatrix result = ImmutableSparseMatrix.of(compressRows());
+      event.finish("freeze", result, result.nnz());
+      return result;
+    } finally {
+      event.release();
+    }
+  }
+
+  /**
+   * Convert this matrix into its read-optimized form, in a single pass over its entries. The
+   * linked lists are replaced by contiguous arrays of the entries of every row and of every
+   * column, which take less space and are traversed much faster by the products, sums and
+   * solvers. The matrix stays fully usable: the next call to set or setIdentity links its entries
+   * again, so compacting pays off for a matrix that is built once and then read many times.
+   * Compacting a compacted matrix does nothing.
+   */
+  public void compact() {
+    if (this.compactRows != null) {
+      return;
+    }
+    MatrixConstructionEvent event = new MatrixConstructionEvent();
+    event.start();
+    try {
+      this.compactRows = compressRows();
+      this.compactCols = this.compactRows.transpose();
+      // the nodes are dropped, but this matrix keeps counting its entries
+      this.rows = new SentinelIndex<RowSentinel<Float>>(this.size);
+      this.cols = new SentinelIndex<ColumnSentinel<Float>>(this.size);
+      event.finish("compact", this, nnz());
+    } finally {
+      event.release();
+    }
+  }
+
+  /**
+   * Return a new matrix in read-optimized form that holds the given entries. The arrays are used
+   * as they are, so they must not be modified afterwards.
+   *
+   * @param rows the non-zero entries in compressed row form
+   * @return the compacted matrix
+   */
+  static SparseMatrix compacted(CompressedRows rows) {
+    SparseMatrix result = new SparseMatrix(rows.size);
+    result.compactRows = rows;
+    result.compactCols = rows.transpose();
+    result.entriesChanged(rows.nnz());
+    return result;
+  }
+
+  /**
+   * Check whether this matrix is in its read-optimized form.
+   *
+   * @return true if this matrix was compacted and has not been changed since
+   */
+  public boolean isCompact() {
+    return this.compactRows != null;
+  }
+
+  // link the entries of a compacted matrix again, so that it can be changed
+  private void expand() {
+    CompressedRows compact = this.compactRows;
+    if (compact == null) {
+      return;
+    }
+    this.compactRows = null;
+    this.compactCols = null;
+    initializeSentinels();
+    entriesChanged(-nnz());
+    for (int i = 0; i < this.size; i++) {
+      for (int p = compact.rowStart[i]; p < compact.rowStart[i + 1]; p++) {
+        append(i, compact.colIndex[p], compact.values[p]);
+      }
+    }
+  }
+
+  /**
+   * Return a copy of this matrix. The copy is built in a single pass over the rows of this matrix.
+   *
+   * @return a new matrix with the same entries as this
+   */
+  SparseMatrix copy() {
+    MatrixConstructionEvent event = new MatrixConstructionEvent();
+    event.start();
+    try {
+      SparseMatrix result = new SparseMatrix(this.size);
+      long nnz = 0;
+      RowSentinel<Float> headRow;
+      AbstractNode<Float> curr;
+
+      if (this.compactRows != null) {
+        CompressedRows compact = this.compactRows;
+        for (int i = 0; i < this.size; i++) {
+          for (int p = compact.rowStart[i]; p < compact.rowStart[i + 1]; p++) {
+            result.append(i, compact.colIndex[p], compact.values[p]);
+          }
+        }
+        nnz = compact.nnz();
+      }
+      for (int i = this.rows.next(0); i >= 0; i = this.rows.next(i + 1)) {
+        headRow = this.rows.get(i);
+        for (curr = headRow.right; curr != headRow; curr = curr.right) {
+          result.append(i, curr.colIndex, curr.getDataAtNode());
+          nnz++;
+        }
+      }
+      event.finish("copy", result, nnz);
+      return result;
+    } finally {
+      event.release();
+    }
+  }
+
+  /**
+   * Add a non-zero entry at the end of its row and column. This takes constant time, but requires
+   * that no entry of row i lies at or right of column j, and no entry of column j lies at or
+   * below row i, e.g. when entries are added in row major order.
+   *
+   * @param i     the row of the entry
+   * @param j     the column of the entry
+   * @param value the non-zero value of the entry
+   */
+  void append(int i, int j, float value) {
+    expand();
+    RowSentinel<Float> headRow = rowSentinel(i);
+    ColumnSentinel<Float> headCol = columnSentinel(j);
+    addNode(headRow, value, i, j, headRow.left, headRow, headCol.top, headCol);
+    headRow.count++;
+    headCol.count++;
+    entriesChanged(1);
+  }
+
+  // Overrides of AbstractMatrix for the Sparse OP Sparse case.
+
+  /**
+   * This implementation adds a SparseMatrix with a SparseMatrix.
+   *
+   * @param other a sparse matrix
+   */
+  @Override
+  protected SquareMatrix addSparseMatrix(SparseMatrix other) {
+    if (this.compactRows != null || other.compactRows != null) {
+      return addCompressed(this.compressRows(), other.compressRows());
+    }
+    SparseMatrix result = new SparseMatrix(this.size);
+    // pick row from both matrices
+    // go right
+    // check the 4 cases
+    RowSentinel<Float> headRowA;
+    RowSentinel<Float> headRowB;
+    AbstractNode<Float> rowA;
+    AbstractNode<Float> rowB;
+
+    // visit the rows that have entries in either matrix
+    int nextA = this.rows.next(0);
+    int nextB = other.rows.next(0);
+    while (nextA >= 0 || nextB >= 0) {
+      int i = nextB < 0 || (nextA >= 0 && nextA < nextB) ? nextA : nextB;
+      if (nextA == i) {
+        nextA = this.rows.next(i + 1);
+      }
+      if (nextB == i) {
+        nextB = other.rows.next(i + 1);
+      }
+
+      headRowA = this.rowOrEmpty(i);
+      rowA = headRowA.right;
+
+      headRowB = other.rowOrEmpty(i);
+      rowB = headRowB.right;
+
+      // if both rows have elements
+      while (rowA != headRowA && rowB != headRowB) {
+        // check if indices match
+        if (rowA.colIndex == rowB.colIndex) {
+          // add them and store at the index of any 1
+          float resultAdd = rowA.getDataAtNode() + rowB.getDataAtNode();
+          result.set(rowA.rowIndex, rowA.colIndex, resultAdd);
+          rowA = rowA.right;
+          rowB = rowB.right;
+        } else if (rowA.colIndex < rowB.colIndex) {
+          // rowA element is before rowB
+          result.set(rowA.rowIndex, rowA.colIndex, rowA.getDataAtNode());
+          rowA = rowA.right;
+        } else {
+          // rowB element is before rowA
+          result.set(rowB.rowIndex, rowB.colIndex, rowB.getDataAtNode());
+          rowB = rowB.right;
+        }
+      }
+
+      // Add remaining elements from rowA
+      while (rowA != headRowA) {
+        result.set(rowA.rowIndex, rowA.colIndex, rowA.getDataAtNode());
+        rowA = rowA.right;
+      }
+
+      // Add remaining elements from rowB
+      while (rowB != headRowB) {
+        result.set(rowB.rowIndex, rowB.colIndex, rowB.getDataAtNode());
+        rowB = rowB.right;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * This implementation post-multiplies a SparseMatrix with a SparseMatrix. i.e. SparseMatrix-this
+   * * SparseMatrix-other
+   *
+   * @param other a sparse matrix
+   */
+  @Override
+  protected SquareMatrix postmulSparseMatrix(SparseMatrix other) {
+    return multiplyCompressed(this.compressRows(), other.compressRows());
+  }
+
+  /**
+   * This implementation pre-multiplies a SparseMatrix with a SparseMatrix. i.e. SparseMatrix-other
+   * * SparseMatrix-this
+   *
+   * @param other a sparse matrix
+   */
+  @Override
+  protected SquareMatrix premulSparseMatrix(SparseMatrix other) {
+    return multiplyCompressed(other.compressRows(), this.compressRows());
+  }
+
+  /**
+   * This implementation adds a SparseMatrix with an ArrayMatrix. The rows of other are copied
+   * once, and the entries of this are added into the copy, so the work is a copy of other and one
+   * step per entry of this. The result is dense.
+   *
+   * @param other an array matrix
+   */
+  @Override
+  protected SquareMatrix addArrayMatrix(ArrayMatrix other) {
+    float[][] rowsOfOther = other.rows();
+    float[][] result = new float[this.size][];
+    for (int i = 0; i < this.size; i++) {
+      result[i] = rowsOfOther[i].clone();
+    }
+    for (int i = nextRow(0); i >= 0; i = nextRow(i + 1)) {
+      scatterRow(i, 1f, result[i]);
+    }
+    return new ArrayMatrix(result);
+  }
+
+  /**
+   * Add this matrix to the given dense matrix in place i.e. target = target + this. Only the
+   * entries of this are visited, so this takes time proportional to the entries of this, and
+   * allocates nothing.
+   *
+   * @param target the matrix to add this matrix to
+   * @throws IllegalArgumentException if the size of the target does not match this matrix
+   */
+  public void addTo(ArrayMatrix target) throws IllegalArgumentException {
+    if (this.size() != target.size()) {
+      throw new IllegalArgumentException("The dimensions of the two matrices do not match "
+          + "and therefore cannot be added together");
+    }
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      for (int i = 0; i < this.size; i++) {
+        for (int p = compact.rowStart[i]; p < compact.rowStart[i + 1]; p++) {
+          target.addAt(i, compact.colIndex[p], compact.values[p]);
+        }
+      }
+      return;
+    }
+    for (int i = this.rows.next(0); i >= 0; i = this.rows.next(i + 1)) {
+      RowSentinel<Float> headRow = this.rows.get(i);
+      for (AbstractNode<Float> curr = headRow.right; curr != headRow; curr = curr.right) {
+        target.addAt(i, curr.colIndex, curr.getDataAtNode());
+      }
+    }
+  }
+
+  /**
+   * This implementation post-multiplies a SparseMatrix with an ArrayMatrix, i.e. SparseMatrix-this
+   * * ArrayMatrix-other. Every row of the result is the sum of the rows of other picked by the
+   * entries of the row of this, so the work is proportional to the entries of this times the size,
+   * and the result is dense.
+   *
+   * @param other an array matrix
+   */
+  @Override
+  protected SquareMatrix postmulArrayMatrix(ArrayMatrix other) {
+    float[][] result = new float[this.size][this.size];
+    float[][] rowsOfOther = other.rows();
+    RowScheduler.byRows(rowPrefix(this.size)).run((t, from, to) ->
+        multiplyRows((int) from, (int) to, rowsOfOther, result));
+    return new ArrayMatrix(result);
+  }
+
+  /**
+   * This implementation pre-multiplies a SparseMatrix with an ArrayMatrix, i.e. ArrayMatrix-other
+   * * SparseMatrix-this. Row i of the result is the sum of the rows of this, scaled by the entries
+   * of row i of other, so the work is proportional to the size times the entries of this, on top
+   * of reading other once. The result is dense. The rows are split between threads by count, as
+   * the work of a row depends on which entries of other are zero, and finding that out would take
+   * a pass over other as long as the product itself.
+   *
+   * @param other an array matrix
+   */
+  @Override
+  protected SquareMatrix premulArrayMatrix(ArrayMatrix other) {
+    float[][] result = new float[this.size][this.size];
+    float[][] rowsOfOther = other.rows();
+    // every row reads a whole row of other
+    long[] prefix = new long[this.size + 1];
+    for (int i = 0; i < this.size; i++) {
+      prefix[i + 1] = prefix[i] + this.size;
+    }
+    RowScheduler.byRows(prefix).run((t, from, to) -> {
+      for (int i = (int) from; i < to; i++) {
+        float[] row = rowsOfOther[i];
+        for (int k = 0; k < this.size; k++) {
+          if (row[k] != 0f) {
+            scatterRow(k, row[k], result[i]);
+          }
+        }
+      }
+    });
+    return new ArrayMatrix(result);
+  }
 
-        if (sum != 0f) {
-          result.set(i, j, sum);
+  /**
+   * This implementation computes the Hadamard product of a SparseMatrix with a SparseMatrix. The
+   * sorted rows of both are intersected, so the work is proportional to their entries and the
+   * result only holds the positions where both have an entry.
+   *
+   * @param other a sparse matrix
+   */
+  @Override
+  protected SquareMatrix hadamardSparseMatrix(SparseMatrix other) {
+    return hadamardCompressed(other.compressRows(), this.compressRows());
+  }
+
+  /**
+   * This implementation computes the Hadamard product of an ArrayMatrix with a SparseMatrix. Only
+   * the entries of this are visited, each reading the entry of other at its position, so the
+   * result is sparse.
+   *
+   * @param other an array matrix
+   */
+  @Override
+  protected SquareMatrix hadamardArrayMatrix(ArrayMatrix other) {
+    CompressedRows a = compressRows();
+    float[][] rowsOfOther = other.rows();
+    SparseMatrix result = new SparseMatrix(this.size);
+    for (int i = 0; i < this.size; i++) {
+      for (int p = a.rowStart[i]; p < a.rowStart[i + 1]; p++) {
+        float value = rowsOfOther[i][a.colIndex[p]] * a.values[p];
+        if (value != 0f) {
+          result.append(i, a.colIndex[p], value);
         }
       }
     }
-
     return result;
   }
 
   /**
-   * This implementation pre-multiplies a SparseMatrix with a SparseMatrix. i.e. SparseMatrix-other
-   * * SparseMatrix-this
+   * This implementation computes the Kronecker product of a SparseMatrix with a SparseMatrix i.e.
+   * SparseMatrix-other (x) SparseMatrix-this.
    *
    * @param other a sparse matrix
    */
   @Override
-  protected SquareMatrix premulSparseMatrix(SparseMatrix other) {
-    SparseMatrix result = new SparseMatrix(other.rows.size());
-    // vars to traverse rows of other matrix and cols of this matrix
-    RowSentinel<Float> headRowA;
-    ColumnSentinel<Float> headColB;
-    AbstractNode<Float> rowA;
-    AbstractNode<Float> colB;
+  protected SquareMatrix kroneckerSparseMatrix(SparseMatrix other)
+      throws IllegalArgumentException {
+    return kronecker(other.compressRows(), this.compressRows());
+  }
 
-    for (int i = 0; i < this.rows.size(); i++) {
-      headRowA = other.rows.get(i);
-      rowA = headRowA.right;
+  /**
+   * This implementation computes the Kronecker product of an ArrayMatrix with a SparseMatrix i.e.
+   * ArrayMatrix-other (x) SparseMatrix-this. Every block of the result is a scaled copy of this,
+   * so the result is sparse.
+   *
+   * @param other an array matrix
+   */
+  @Override
+  protected SquareMatrix kroneckerArrayMatrix(ArrayMatrix other)
+      throws IllegalArgumentException {
+    return kronecker(other.compressRows(), this.compressRows());
+  }
 
-      // if row has no elements skip row iteration
-      if (rowA == headRowA) {
-        continue;
+  /**
+   * This implementation maps a SparseMatrix and a SparseMatrix entry by entry, merging the sorted
+   * rows of both, i.e. function(SparseMatrix-other, SparseMatrix-this).
+   *
+   * @param other    a sparse matrix
+   * @param function the function of the pairs of entries
+   */
+  @Override
+  protected SquareMatrix mapSparseMatrix(SparseMatrix other, FloatBinaryOperator function) {
+    return mapCompressed(other.compressRows(), this.compressRows(), function);
+  }
+
+  /**
+   * This implementation maps an ArrayMatrix and a SparseMatrix entry by entry, i.e.
+   * function(ArrayMatrix-other, SparseMatrix-this). Every entry of other is visited, so the result
+   * is dense.
+   *
+   * @param other    an array matrix
+   * @param function the function of the pairs of entries
+   */
+  @Override
+  protected SquareMatrix mapArrayMatrix(ArrayMatrix other, FloatBinaryOperator function) {
+    CompressedRows b = compressRows();
+    float[][] rowsOfOther = other.rows();
+    float[][] result = new float[this.size][this.size];
+    for (int i = 0; i < this.size; i++) {
+      float[] row = rowsOfOther[i];
+      for (int j = 0; j < this.size; j++) {
+        result[i][j] = function.apply(row[j], 0f);
+      }
+      for (int p = b.rowStart[i]; p < b.rowStart[i + 1]; p++) {
+        result[i][b.colIndex[p]] = function.apply(row[b.colIndex[p]], b.values[p]);
       }
+    }
+    return new ArrayMatrix(result);
+  }
 
-      for (int j = 0; j < other.cols.size(); j++) {
-        // Reset row head on every iteration
-        headRowA = other.rows.get(i);
-        rowA = headRowA.right;
-        headColB = this.cols.get(j);
-        colB = headColB.bottom;
+  /**
+   * Multiply this matrix with a dense block of vectors i.e. y = this * x, where x and y are tall
+   * and skinny matrices given by their rows: x[k] is row k of x. This is the product with many
+   * vectors at once, and reads every entry of this once for all of them, instead of once per
+   * vector. The previous contents of y are overwritten.
+   *
+   * @param x the rows of the block to be multiplied, size() rows of the same length
+   * @param y the rows of the block to store the result in, size() rows of the length of the rows of
+   *          x, not sharing any row with x
+   * @throws IllegalArgumentException if the shape of a block does not match this matrix
+   */
+  public void multiply(float[][] x, float[][] y) throws IllegalArgumentException {
+    checkBlocks(x, y);
+    for (float[] row : y) {
+      Arrays.fill(row, 0f);
+    }
+    multiplyRows(0, this.size, x, y);
+  }
 
-        // if col has no elements skip col iteration
-        if (colB == headColB) {
-          continue;
+  /**
+   * Multiply this matrix with a dense block of vectors i.e. y = this * x, as multiply does, but
+   * split the rows between the threads of the common fork join pool, by their number of entries.
+   *
+   * @param x the rows of the block to be multiplied, size() rows of the same length
+   * @param y the rows of the block to store the result in, size() rows of the length of the rows of
+   *          x, not sharing any row with x
+   * @return how the work was spread over the threads
+   * @throws IllegalArgumentException if the shape of a block does not match this matrix
+   */
+  public ScheduleStats multiplyParallel(float[][] x, float[][] y)
+      throws IllegalArgumentException {
+    checkBlocks(x, y);
+    int width = this.size == 0 ? 0 : x[0].length;
+    return RowScheduler.byRows(rowPrefix(width)).run((t, from, to) -> {
+      for (int i = (int) from; i < to; i++) {
+        Arrays.fill(y[i], 0f);
+      }
+      multiplyRows((int) from, (int) to, x, y);
+    });
+  }
+
+  private void checkBlocks(float[][] x, float[][] y) throws IllegalArgumentException {
+    if (x.length != this.size || y.length != this.size) {
+      throw new IllegalArgumentException(
+          "The number of rows of the block does not match the size of the matrix");
+    }
+    for (int i = 0; i < this.size; i++) {
+      if (x[i].length != x[0].length || y[i].length != x[0].length) {
+        throw new IllegalArgumentException("The rows of the blocks must have the same length");
+      }
+    }
+  }
+
+  // add this(i, k) * x[k] to y[i] for every entry of the rows from to to. x and y are the rows of
+  // dense blocks of the same width
+  private void multiplyRows(int from, int to, float[][] x, float[][] y) {
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      for (int i = from; i < to; i++) {
+        for (int p = compact.rowStart[i]; p < compact.rowStart[i + 1]; p++) {
+          axpy(compact.values[p], x[compact.colIndex[p]], y[i]);
         }
+      }
+      return;
+    }
+    for (int i = this.rows.next(from); i >= 0 && i < to; i = this.rows.next(i + 1)) {
+      RowSentinel<Float> headRow = this.rows.get(i);
+      for (AbstractNode<Float> curr = headRow.right; curr != headRow; curr = curr.right) {
+        axpy(curr.getDataAtNode(), x[curr.colIndex], y[i]);
+      }
+    }
+  }
+
+  // add scale times row k of this to the dense row out
+  private void scatterRow(int k, float scale, float[] out) {
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      for (int p = compact.rowStart[k]; p < compact.rowStart[k + 1]; p++) {
+        out[compact.colIndex[p]] += scale * compact.values[p];
+      }
+      return;
+    }
+    RowSentinel<Float> headRow = this.rows.get(k);
+    if (headRow != null) {
+      for (AbstractNode<Float> curr = headRow.right; curr != headRow; curr = curr.right) {
+        out[curr.colIndex] += scale * curr.getDataAtNode();
+      }
+    }
+  }
 
-        // multiplication value at (i,j)
-        float sum = 0f;
+  // y = y + a * x
+  private static void axpy(float a, float[] x, float[] y) {
+    for (int j = 0; j < x.length; j++) {
+      y[j] += a * x[j];
+    }
+  }
 
-        // While both row and column have elements
-        while (rowA != headRowA && colB != headColB) {
-          // indices match multiply and add to the sum
-          if (rowA.colIndex == colB.rowIndex) {
-            sum += rowA.getDataAtNode() * colB.getDataAtNode();
-            rowA = rowA.right;
-            colB = colB.bottom;
-          } else if (rowA.colIndex < colB.rowIndex) {
-            // skip row elements
-            rowA = rowA.right;
-          } else {
-            // skip col elements
-            colB = colB.bottom;
-          }
+  // prefix sums of the entries of the rows, every entry weighing the given amount of work
+  private long[] rowPrefix(long weight) {
+    long[] prefix = new long[this.size + 1];
+    if (this.compactRows != null) {
+      for (int i = 0; i < this.size; i++) {
+        prefix[i + 1] = this.compactRows.rowStart[i + 1] * weight;
+      }
+      return prefix;
+    }
+    for (int i = this.rows.next(0); i >= 0; i = this.rows.next(i + 1)) {
+      prefix[i + 1] = this.rows.get(i).count * weight;
+    }
+    for (int i = 0; i < this.size; i++) {
+      prefix[i + 1] += prefix[i];
+    }
+    return prefix;
+  }
+
+  // Kernels of the compacted form. They walk the arrays of the rows, and the arrays of the columns
+  // where a column is needed. Rows of the result are produced in order, so its entries are
+  // appended to the end of their lists.
+
+  // a + b, merging the sorted rows of both
+  private static SparseMatrix addCompressed(CompressedRows a, CompressedRows b) {
+    SparseMatrix result = new SparseMatrix(a.size);
+    for (int i = 0; i < a.size; i++) {
+      int p = a.rowStart[i];
+      int q = b.rowStart[i];
+      while (p < a.rowStart[i + 1] || q < b.rowStart[i + 1]) {
+        int ja = p < a.rowStart[i + 1] ? a.colIndex[p] : Integer.MAX_VALUE;
+        int jb = q < b.rowStart[i + 1] ? b.colIndex[q] : Integer.MAX_VALUE;
+        float sum;
+        if (ja == jb) {
+          sum = a.values[p++] + b.values[q++];
+        } else if (ja < jb) {
+          sum = a.values[p++];
+        } else {
+          sum = b.values[q++];
         }
+        if (sum != 0f) {
+          result.append(i, Math.min(ja, jb), sum);
+        }
+      }
+    }
+    return result;
+  }
 
+  // alpha * x + y, merging the sorted rows of both
+  private static CompressedRows addScaledCompressed(float alpha, CompressedRows x,
+      CompressedRows y) {
+    int[] rowStart = new int[y.size + 1];
+    int[] colIndex = new int[x.nnz() + y.nnz()];
+    float[] values = new float[colIndex.length];
+    int count = 0;
+    for (int i = 0; i < y.size; i++) {
+      int p = x.rowStart[i];
+      int q = y.rowStart[i];
+      while (p < x.rowStart[i + 1] || q < y.rowStart[i + 1]) {
+        int jx = p < x.rowStart[i + 1] ? x.colIndex[p] : Integer.MAX_VALUE;
+        int jy = q < y.rowStart[i + 1] ? y.colIndex[q] : Integer.MAX_VALUE;
+        float sum;
+        if (jx == jy) {
+          sum = alpha * x.values[p++] + y.values[q++];
+        } else if (jx < jy) {
+          sum = alpha * x.values[p++];
+        } else {
+          sum = y.values[q++];
+        }
         if (sum != 0f) {
-          result.set(i, j, sum);
+          colIndex[count] = Math.min(jx, jy);
+          values[count++] = sum;
         }
       }
+      rowStart[i + 1] = count;
     }
+    return new CompressedRows(y.size, rowStart, Arrays.copyOf(colIndex, count),
+        Arrays.copyOf(values, count));
+  }
 
+  // a .* b, intersecting the sorted rows of both
+  private static SparseMatrix hadamardCompressed(CompressedRows a, CompressedRows b) {
+    SparseMatrix result = new SparseMatrix(a.size);
+    for (int i = 0; i < a.size; i++) {
+      int p = a.rowStart[i];
+      int q = b.rowStart[i];
+      while (p < a.rowStart[i + 1] && q < b.rowStart[i + 1]) {
+        int ja = a.colIndex[p];
+        int jb = b.colIndex[q];
+        if (ja == jb) {
+          float product = a.values[p++] * b.values[q++];
+          if (product != 0f) {
+            result.append(i, ja, product);
+          }
+        } else if (ja < jb) {
+          p++;
+        } else {
+          q++;
+        }
+      }
+    }
     return result;
   }
 
-  @Override
-  protected SquareMatrix addArrayMatrix(ArrayMatrix other) {
-    SparseMatrix result = new SparseMatrix(this.rows.size());
-    // pick row from both matrices
-    // go right
-    // check the 4 cases
-    RowSentinel<Float> headRowA;
-    AbstractNode<Float> rowA;
+  // function(a, b), merging the sorted rows of both. The result is dense unless the function maps
+  // (0, 0) to 0
+  private static SquareMatrix mapCompressed(CompressedRows a, CompressedRows b,
+      FloatBinaryOperator function) {
+    float zero = function.apply(0f, 0f);
+    float[][] dense = zero != 0f ? filled(a.size, zero) : null;
+    SparseMatrix result = dense == null ? new SparseMatrix(a.size) : null;
+    for (int i = 0; i < a.size; i++) {
+      int p = a.rowStart[i];
+      int q = b.rowStart[i];
+      while (p < a.rowStart[i + 1] || q < b.rowStart[i + 1]) {
+        int ja = p < a.rowStart[i + 1] ? a.colIndex[p] : Integer.MAX_VALUE;
+        int jb = q < b.rowStart[i + 1] ? b.colIndex[q] : Integer.MAX_VALUE;
+        float value;
+        if (ja == jb) {
+          value = function.apply(a.values[p++], b.values[q++]);
+        } else if (ja < jb) {
+          value = function.apply(a.values[p++], 0f);
+        } else {
+          value = function.apply(0f, b.values[q++]);
+        }
+        if (dense != null) {
+          dense[i][Math.min(ja, jb)] = value;
+        } else if (value != 0f) {
+          result.append(i, Math.min(ja, jb), value);
+        }
+      }
+    }
+    return dense != null ? new ArrayMatrix(dense) : result;
+  }
 
-    for (int i = 0; i < this.rows.size(); i++) {
-      headRowA = this.rows.get(i);
-      rowA = headRowA.right;
+  /**
+   * Return the Kronecker product a (x) b in compact form. Row i * b.size + k of the product holds
+   * row k of b, scaled by every entry of row i of a and shifted to the block of its column. The
+   * entries of row i of a are sorted, and the blocks do not overlap, so the entries of every row
+   * are produced in sorted order and stored directly in their final place.
+   *
+   * @param a the left operand
+   * @param b the right operand
+   * @return the Kronecker product
+   * @throws IllegalArgumentException if the product has too many rows or entries to be stored
+   */
+  static SparseMatrix kronecker(CompressedRows a, CompressedRows b)
+      throws IllegalArgumentException {
+    int size = kroneckerSize(a.size, b.size);
+    long entries = (long) a.nnz() * b.nnz();
+    if (entries > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException(
+          "The Kronecker product of the two matrices has too many entries to be stored");
+    }
+    int[] rowStart = new int[size + 1];
+    int[] colIndex = new int[(int) entries];
+    float[] values = new float[(int) entries];
+    int count = 0;
+    int row = 0;
+    for (int i = 0; i < a.size; i++) {
+      for (int k = 0; k < b.size; k++) {
+        for (int p = a.rowStart[i]; p < a.rowStart[i + 1]; p++) {
+          int offset = a.colIndex[p] * b.size;
+          float scale = a.values[p];
+          for (int q = b.rowStart[k]; q < b.rowStart[k + 1]; q++) {
+            // a product of two non-zero floats may still underflow to 0
+            float value = scale * b.values[q];
+            if (value != 0f) {
+              colIndex[count] = offset + b.colIndex[q];
+              values[count++] = value;
+            }
+          }
+        }
+        rowStart[++row] = count;
+      }
+    }
+    if (count < entries) {
+      colIndex = Arrays.copyOf(colIndex, count);
+      values = Arrays.copyOf(values, count);
+    }
+    return compacted(new CompressedRows(size, rowStart, colIndex, values));
+  }
 
-      for (int j = 0; j < other.size(); j++) {
-        // if indices match add elements and store sum at index of any 1
-        if (rowA.colIndex == j) {
-          float resultAdd = rowA.getDataAtNode() + other.get(i, j);
-          result.set(i, j, resultAdd);
-          rowA = rowA.right;
-        } else { // add elements of B
-          // if (rowA.colIndex > j) condition will always be true if indices don't match
-          result.set(i, j, other.get(i, j));
+  // a size by size array with every entry set to the given value
+  private static float[][] filled(int size, float value) {
+    float[][] result = new float[size][size];
+    for (float[] row : result) {
+      Arrays.fill(row, value);
+    }
+    return result;
+  }
+
+  // a * b, accumulating every row of the result from the rows of b picked by the row of a, in the
+  // accumulator that suits the row
+  private static SparseMatrix multiplyCompressed(CompressedRows a, CompressedRows b) {
+    CompressedRows product = ProductRows.multiply(a, b);
+    SparseMatrix result = new SparseMatrix(a.size);
+    for (int i = 0; i < a.size; i++) {
+      for (int p = product.rowStart[i]; p < product.rowStart[i + 1]; p++) {
+        result.append(i, product.colIndex[p], product.values[p]);
+      }
+    }
+    return result;
+  }
+
+  // a * b over the given semiring
+  private static SparseMatrix multiplyCompressed(CompressedRows a, CompressedRows b,
+      Semiring semiring) {
+    if (semiring == Semiring.PLUS_TIMES) {
+      return multiplyCompressed(a, b);
+    }
+    int size = a.size;
+    SparseMatrix result = new SparseMatrix(size);
+    float[] sums = new float[size];
+    // the row of the result that last touched every column, and the touched columns of this row
+    int[] touchedBy = new int[size];
+    Arrays.fill(touchedBy, -1);
+    int[] touched = new int[size];
+
+    for (int i = 0; i < size; i++) {
+      int count = 0;
+      for (int p = a.rowStart[i]; p < a.rowStart[i + 1]; p++) {
+        int k = a.colIndex[p];
+        count = semiring.scatter(a.values[p], b.colIndex, b.values, b.rowStart[k],
+            b.rowStart[k + 1], sums, touched, count, touchedBy, i);
+      }
+      Arrays.sort(touched, 0, count);
+      for (int c = 0; c < count; c++) {
+        if (sums[touched[c]] != 0f) {
+          result.append(i, touched[c], sums[touched[c]]);
         }
       }
     }
     return result;
   }
 
-  @Override
-  protected SquareMatrix postmulArrayMatrix(ArrayMatrix other) {
-    SparseMatrix result = new SparseMatrix(this.rows.size());
-    // vars to traverse rows of this matrix and cols of other matrix
-    RowSentinel<Float> headRowA;
-    AbstractNode<Float> rowA;
+  // Single rows and columns, used to keep a product up to date without recomputing all of it.
 
-    for (int i = 0; i < this.rows.size(); i++) {
-      headRowA = this.rows.get(i);
-      rowA = headRowA.right;
+  /**
+   * Compute row i of this * other. The columns of the row are stored in touched, in no particular
+   * order, and the value of every such column j in sums[j]. mark[j] is set to stamp for every
+   * touched column, and must not hold stamp for any column before the call.
+   *
+   * @param i       the row
+   * @param other   the matrix to post-multiply with
+   * @param sums    the values of the row, of length size()
+   * @param touched the columns of the row, of length size()
+   * @param mark    the marks of the touched columns, of length size()
+   * @param stamp   the mark of this call
+   * @return the number of touched columns
+   */
+  int multiplyRow(int i, SparseMatrix other, float[] sums, int[] touched, int[] mark, int stamp) {
+    int count = 0;
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      for (int p = compact.rowStart[i]; p < compact.rowStart[i + 1]; p++) {
+        count = other.accumulateRow(compact.colIndex[p], compact.values[p], sums, touched, count,
+            mark, stamp);
+      }
+    } else {
+      RowSentinel<Float> headRow = rowOrEmpty(i);
+      for (AbstractNode<Float> curr = headRow.right; curr != headRow; curr = curr.right) {
+        count = other.accumulateRow(curr.colIndex, curr.getDataAtNode(), sums, touched, count,
+            mark, stamp);
+      }
+    }
+    return count;
+  }
 
-      // if row has no elements skip row iteration for all cols in result
-      if (rowA == headRowA) {
-        continue;
+  // add value * row k of this matrix to the sums, returning the new number of touched columns
+  private int accumulateRow(int k, float value, float[] sums, int[] touched, int count,
+      int[] mark, int stamp) {
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      for (int q = compact.rowStart[k]; q < compact.rowStart[k + 1]; q++) {
+        count = accumulate(compact.colIndex[q], value * compact.values[q], sums, touched, count,
+            mark, stamp);
+      }
+    } else {
+      RowSentinel<Float> headRow = rowOrEmpty(k);
+      for (AbstractNode<Float> curr = headRow.right; curr != headRow; curr = curr.right) {
+        count = accumulate(curr.colIndex, value * curr.getDataAtNode(), sums, touched, count,
+            mark, stamp);
       }
+    }
+    return count;
+  }
 
-      for (int j = 0; j < this.cols.size(); j++) {
-        // multiplication value at (i,j)
-        float sum = 0f;
+  private static int accumulate(int j, float product, float[] sums, int[] touched, int count,
+      int[] mark, int stamp) {
+    if (mark[j] != stamp) {
+      mark[j] = stamp;
+      touched[count++] = j;
+      sums[j] = 0f;
+    }
+    sums[j] += product;
+    return count;
+  }
 
-        for (int k = 0; k < this.rows.size(); k++) {
-          // indices match multiply and add to the sum
-          if (rowA.colIndex == k) {
-            sum += rowA.getDataAtNode() * other.get(k, j); // rowA data at (i,k)
-            rowA = rowA.right;
-          }
+  // the first row at or after from that has entries, or -1 if there is none
+  private int nextRow(int from) {
+    if (this.compactRows != null) {
+      for (int i = from; i < this.size; i++) {
+        if (this.compactRows.rowStart[i] < this.compactRows.rowStart[i + 1]) {
+          return i;
         }
+      }
+      return -1;
+    }
+    return this.rows.next(from);
+  }
 
-        if (sum != 0f) {
-          result.set(i, j, sum);
-        }
+  /**
+   * Return the non-zero entries of this matrix in compressed column form, i.e. the compressed rows
+   * of its transpose. The arrays may be shared with this matrix, so they must not be modified.
+   *
+   * @return the compressed columns of this matrix
+   */
+  CompressedRows compressColumns() {
+    return this.compactCols != null ? this.compactCols : compressRows().transpose();
+  }
+
+  /**
+   * Copy the columns of the entries of row i into the given array, in increasing order.
+   *
+   * @param i   the row
+   * @param out the array to store the columns in, of length size()
+   * @return the number of entries of the row
+   */
+  int columnsOfRow(int i, int[] out) {
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      int count = compact.rowStart[i + 1] - compact.rowStart[i];
+      System.arraycopy(compact.colIndex, compact.rowStart[i], out, 0, count);
+      return count;
+    }
+    int count = 0;
+    RowSentinel<Float> headRow = rowOrEmpty(i);
+    for (AbstractNode<Float> curr = headRow.right; curr != headRow; curr = curr.right) {
+      out[count++] = curr.colIndex;
+    }
+    return count;
+  }
+
+  /**
+   * Copy the rows of the entries of column j into the given array, in increasing order.
+   *
+   * @param j   the column
+   * @param out the array to store the rows in, of length size()
+   * @return the number of entries of the column
+   */
+  int rowsOfColumn(int j, int[] out) {
+    if (this.compactCols != null) {
+      CompressedRows compact = this.compactCols;
+      int count = compact.rowStart[j + 1] - compact.rowStart[j];
+      System.arraycopy(compact.colIndex, compact.rowStart[j], out, 0, count);
+      return count;
+    }
+    int count = 0;
+    ColumnSentinel<Float> headCol = this.cols.get(j);
+    if (headCol != null) {
+      for (AbstractNode<Float> curr = headCol.bottom; curr != headCol; curr = curr.bottom) {
+        out[count++] = curr.rowIndex;
       }
     }
+    return count;
+  }
 
-    return result;
+  @Override
+  void multiplyVector(float[] x, float[] y, boolean parallel) {
+    if (parallel) {
+      multiplyParallel(x, y);
+    } else {
+      for (int i = 0; i < this.size; i++) {
+        y[i] = rowDot(i, x);
+      }
+    }
+  }
+
+  // dot product of the given row of this matrix with the vector x
+  private float rowDot(int i, float[] x) {
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      float sum = 0f;
+      for (int p = compact.rowStart[i]; p < compact.rowStart[i + 1]; p++) {
+        sum += compact.values[p] * x[compact.colIndex[p]];
+      }
+      return sum;
+    }
+    RowSentinel<Float> headRow = rowOrEmpty(i);
+    AbstractNode<Float> curr = headRow.right;
+    float sum = 0f;
+
+    while (curr != headRow) {
+      sum += curr.getDataAtNode() * x[curr.colIndex];
+      curr = curr.right;
+    }
+    return sum;
   }
 
   @Override
-  protected SquareMatrix premulArrayMatrix(ArrayMatrix other) {
-    SparseMatrix result = new SparseMatrix(this.rows.size());
-    // vars to traverse rows of this matrix and cols of other matrix
-    ColumnSentinel<Float> headColB;
-    AbstractNode<Float> colB;
-
-    // computing result (i,j)
-    for (int j = 0; j < this.cols.size(); j++) {
-      headColB = this.cols.get(j);
-      colB = headColB.bottom;
-
-      // if col has no elements skip col iteration for all rows in result
-      if (colB == headColB) {
-        continue;
+  void diagonal(float[] out) {
+    for (int i = 0; i < this.size; i++) {
+      out[i] = get(i, i);
+    }
+  }
+
+  @Override
+  CompressedRows compressRows() {
+    if (this.compactRows != null) {
+      // the arrays of a compacted matrix are never modified, so they can be shared
+      return this.compactRows;
+    }
+    int size = this.size;
+    int[] rowStart = new int[size + 1];
+    RowSentinel<Float> headRow;
+    AbstractNode<Float> curr;
+
+    // the sentinels count the entries of every row
+    for (int i = this.rows.next(0); i >= 0; i = this.rows.next(i + 1)) {
+      rowStart[i + 1] = this.rows.get(i).count;
+    }
+    for (int i = 0; i < size; i++) {
+      rowStart[i + 1] += rowStart[i];
+    }
+
+    // rows are already sorted by column
+    int[] colIndex = new int[rowStart[size]];
+    float[] values = new float[rowStart[size]];
+    for (int i = this.rows.next(0); i >= 0; i = this.rows.next(i + 1)) {
+      headRow = this.rows.get(i);
+      int pos = rowStart[i];
+      for (curr = headRow.right; curr != headRow; curr = curr.right) {
+        colIndex[pos] = curr.colIndex;
+        values[pos] = curr.getDataAtNode();
+        pos++;
       }
+    }
+    return new CompressedRows(size, rowStart, colIndex, values);
+  }
 
-      for (int i = 0; i < this.rows.size(); i++) {
-        // multiplication value at (i,j)
-        float sum = 0f;
+  @Override
+  long countEntries(int[] rowCounts, int[] colCounts) {
+    if (this.compactRows != null) {
+      for (int i = 0; i < this.size; i++) {
+        if (rowCounts != null) {
+          rowCounts[i] = this.compactRows.rowStart[i + 1] - this.compactRows.rowStart[i];
+        }
+        if (colCounts != null) {
+          colCounts[i] = this.compactCols.rowStart[i + 1] - this.compactCols.rowStart[i];
+        }
+      }
+      return nnz();
+    }
+    // the sentinels keep their counts, so no entry is visited
+    if (rowCounts != null) {
+      for (int i = this.rows.next(0); i >= 0; i = this.rows.next(i + 1)) {
+        rowCounts[i] = this.rows.get(i).count;
+      }
+    }
+    if (colCounts != null) {
+      for (int j = this.cols.next(0); j >= 0; j = this.cols.next(j + 1)) {
+        colCounts[j] = this.cols.get(j).count;
+      }
+    }
+    return nnz();
+  }
 
-        for (int k = 0; k < this.cols.size(); k++) {
-          // indices match multiply and add to the sum
-          if (colB.rowIndex == k) {
-            sum += other.get(i, k) * colB.getDataAtNode(); // colB data at rowIndex k i.e (k,j)
-            colB = colB.bottom;
-          }
+  @Override
+  void forEachInRows(int from, int to, IntIntFloatConsumer action) {
+    if (this.compactRows != null) {
+      CompressedRows compact = this.compactRows;
+      for (int i = from; i < to; i++) {
+        for (int p = compact.rowStart[i]; p < compact.rowStart[i + 1]; p++) {
+          action.accept(i, compact.colIndex[p], compact.values[p]);
         }
+      }
+      return;
+    }
+    for (int i = this.rows.next(from); i >= 0 && i < to; i = this.rows.next(i + 1)) {
+      RowSentinel<Float> headRow = this.rows.get(i);
+      for (AbstractNode<Float> curr = headRow.right; curr != headRow; curr = curr.right) {
+        action.accept(i, curr.colIndex, curr.getDataAtNode());
+      }
+    }
+  }
 
-        if (sum != 0f) {
-          result.set(i, j, sum);
+  /**
+   * Perform the given action on the non-zero entries of the given column of this matrix, by row.
+   *
+   * @param j      the column
+   * @param action the action to perform on the entries
+   */
+  void forEachInColumn(int j, IntIntFloatConsumer action) {
+    if (this.compactCols != null) {
+      CompressedRows compact = this.compactCols;
+      for (int p = compact.rowStart[j]; p < compact.rowStart[j + 1]; p++) {
+        action.accept(compact.colIndex[p], j, compact.values[p]);
+      }
+      return;
+    }
+    ColumnSentinel<Float> headCol = this.cols.get(j);
+    if (headCol != null) {
+      for (AbstractNode<Float> curr = headCol.bottom; curr != headCol; curr = curr.bottom) {
+        action.accept(curr.rowIndex, j, curr.getDataAtNode());
+      }
+    }
+  }
+
+  // The cursors of a compacted matrix read its arrays, which are kept as they are even if the
+  // matrix is changed afterwards. The cursors of the lists walk the nodes, which a change may
+  // unlink or recycle, so they fail once the matrix is changed.
+
+  @Override
+  public EntryCursor rowCursor(int i) throws IllegalArgumentException {
+    checkIndex(i, "Row");
+    CompressedRows compact = this.compactRows;
+    if (compact != null) {
+      return new SliceCursor(i, true, compact.colIndex, compact.values, compact.rowStart[i],
+          compact.rowStart[i + 1]);
+    }
+    return new LinkedCursor(this, rowOrEmpty(i), true);
+  }
+
+  @Override
+  public EntryCursor columnCursor(int j) throws IllegalArgumentException {
+    checkIndex(j, "Column");
+    CompressedRows compact = this.compactCols;
+    if (compact != null) {
+      return new SliceCursor(j, false, compact.colIndex, compact.values, compact.rowStart[j],
+          compact.rowStart[j + 1]);
+    }
+    // the stand-in of the empty rows links to itself in every direction, so it stands in for an
+    // empty column too
+    AbstractNode<Float> headCol = this.cols.get(j);
+    return new LinkedCursor(this, headCol == null ? EMPTY_ROW : headCol, false);
+  }
+
+  @Override
+  void bandwidth(int[] out) {
+    out[0] = 0;
+    out[1] = 0;
+    // rows are sorted, so their first and last entries are the farthest from the diagonal
+    CompressedRows compact = this.compactRows;
+    if (compact != null) {
+      for (int i = 0; i < this.size; i++) {
+        if (compact.rowStart[i] < compact.rowStart[i + 1]) {
+          out[0] = Math.max(out[0], i - compact.colIndex[compact.rowStart[i]]);
+          out[1] = Math.max(out[1], compact.colIndex[compact.rowStart[i + 1] - 1] - i);
         }
       }
+      return;
+    }
+    for (int i = this.rows.next(0); i >= 0; i = this.rows.next(i + 1)) {
+      RowSentinel<Float> headRow = this.rows.get(i);
+      if (headRow.right != headRow) {
+        out[0] = Math.max(out[0], i - headRow.right.colIndex);
+        out[1] = Math.max(out[1], headRow.left.colIndex - i);
+      }
     }
+  }
 
-    return result;
+  /**
+   * A cursor over the nodes of a row, to the right, or of a column, downwards.
+   */
+  private static final class LinkedCursor implements EntryCursor {
+
+    private final SparseMatrix matrix;
+    private final long modificationCount;
+    private final AbstractNode<Float> head;
+    private final boolean byRow;
+    private AbstractNode<Float> curr;
+
+    private LinkedCursor(SparseMatrix matrix, AbstractNode<Float> head, boolean byRow) {
+      this.matrix = matrix;
+      this.modificationCount = matrix.modificationCount();
+      this.head = head;
+      this.byRow = byRow;
+      this.curr = head;
+    }
+
+    @Override
+    public boolean next() {
+      if (this.matrix.modificationCount() != this.modificationCount) {
+        throw new ConcurrentModificationException("The matrix was changed during the iteration");
+      }
+      AbstractNode<Float> next = this.byRow ? this.curr.right : this.curr.bottom;
+      if (next == this.head) {
+        return false;
+      }
+      this.curr = next;
+      return true;
+    }
+
+    @Override
+    public int getRow() {
+      return this.curr.rowIndex;
+    }
+
+    @Override
+    public int getColumn() {
+      return this.curr.colIndex;
+    }
+
+    @Override
+    public float getValue() {
+      return this.curr.getDataAtNode();
+    }
   }
 }
@@ -0,0 +1,224 @@
+package mat;
+
+import java.util.Arrays;
+
+/**
+ * This class represents the product C = A * B of two sparse matrices, computed in two phases. The
+ * symbolic phase only reads the patterns of A and B, and finds the exact number of entries of every
+ * row of C and their columns. The numeric phase then fills the values of C into arrays of exactly
+ * that size, every row by itself, so the rows are computed in parallel without any locking and the
+ * result never grows one entry at a time.
+ *
+ * <p>The symbolic phase only depends on the patterns, hence it is done once, and the numeric phase
+ * can be run again for any matrices with the same patterns as A and B, e.g. at every step of a
+ * time-stepping scheme where only the values change. The products are returned in compact form,
+ * and share the pattern arrays of this product.
+ *
+ * <p>Both phases split the rows between threads by their multiply-adds, not by their number, so
+ * the hub rows of a power-law matrix are spread over tasks of about equal work.
+ */
+public class SparseProduct {
+
+  private final int size;
+  // patterns of the operands that were analyzed, used to check the numeric phase
+  private final int[] analyzedStartA;
+  private final int[] analyzedIndexA;
+  private final int[] analyzedStartB;
+  private final int[] analyzedIndexB;
+
+  // pattern of the product, the columns of every row are sorted
+  private final int[] rowStart;
+  private final int[] colIndex;
+
+  // split of the rows between threads, by the multiply-adds of every row
+  private final RowScheduler scheduler;
+  private ScheduleStats scheduleStats;
+
+  /**
+   * Constructs the symbolic product of the given matrices. Only the patterns of the matrices are
+   * used.
+   *
+   * @param a the left operand
+   * @param b the right operand
+   * @throws IllegalArgumentException if the sizes of the matrices do not match, or if the product
+   *                                  has too many entries to be stored
+   */
+  public SparseProduct(SquareMatrix a, SquareMatrix b) throws IllegalArgumentException {
+    if (a.size() != b.size()) {
+      throw new IllegalArgumentException(
+          "The size of this matrix is not the same as the size of the other matrix,"
+              + " hence they cannot be multiplied together");
+    }
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows left = ((AbstractMatrix) a).compressRows();
+    CompressedRows right = ((AbstractMatrix) b).compressRows();
+    this.size = a.size();
+    this.analyzedStartA = left.rowStart;
+    this.analyzedIndexA = left.colIndex;
+    this.analyzedStartB = right.rowStart;
+    this.analyzedIndexB = right.colIndex;
+
+    long[] flops = new long[this.size + 1];
+    for (int i = 0; i < this.size; i++) {
+      flops[i + 1] = flops[i];
+      for (int p = left.rowStart[i]; p < left.rowStart[i + 1]; p++) {
+        int k = left.colIndex[p];
+        flops[i + 1] += right.rowStart[k + 1] - right.rowStart[k];
+      }
+    }
+    this.scheduler = RowScheduler.byRows(flops);
+
+    // count the distinct columns of every row of the product
+    this.rowStart = new int[this.size + 1];
+    this.scheduler.run((t, from, to) -> {
+      int[] mark = new int[this.size];
+      Arrays.fill(mark, -1);
+      for (int i = (int) from; i < to; i++) {
+        this.rowStart[i + 1] = columnsOfRow(left, right, i, mark, null, 0);
+      }
+    });
+    long total = 0;
+    for (int i = 0; i < this.size; i++) {
+      total += this.rowStart[i + 1];
+      if (total > Integer.MAX_VALUE - 8) {
+        throw new IllegalArgumentException("The product has too many entries to be stored");
+      }
+      this.rowStart[i + 1] = (int) total;
+    }
+
+    // then store them, every row in its own part of the array
+    this.colIndex = new int[(int) total];
+    this.scheduler.run((t, from, to) -> {
+      int[] mark = new int[this.size];
+      Arrays.fill(mark, -1);
+      for (int i = (int) from; i < to; i++) {
+        columnsOfRow(left, right, i, mark, this.colIndex, this.rowStart[i]);
+        Arrays.sort(this.colIndex, this.rowStart[i], this.rowStart[i + 1]);
+      }
+    });
+  }
+
+  /**
+   * Compute the product of the given matrices, which must have the same patterns as the matrices
+   * this product was built for. The values of entries that cancel out to 0 are not stored.
+   *
+   * @param a the left operand, with the same pattern as the analyzed left operand
+   * @param b the right operand, with the same pattern as the analyzed right operand
+   * @return the product a * b, in compact form
+   * @throws IllegalArgumentException if the size or the pattern of either matrix differs
+   */
+  public SparseMatrix multiply(SquareMatrix a, SquareMatrix b) throws IllegalArgumentException {
+    if (a.size() != this.size || b.size() != this.size) {
+      throw new IllegalArgumentException(
+          "The size of the matrix does not match the size of the product");
+    }
+    // assumption - all implementations extend AbstractMatrix
+    CompressedRows left = ((AbstractMatrix) a).compressRows();
+    CompressedRows right = ((AbstractMatrix) b).compressRows();
+    if (!Arrays.equals(left.rowStart, this.analyzedStartA)
+        || !Arrays.equals(left.colIndex, this.analyzedIndexA)
+        || !Arrays.equals(right.rowStart, this.analyzedStartB)
+        || !Arrays.equals(right.colIndex, this.analyzedIndexB)) {
+      throw new IllegalArgumentException(
+          "The pattern of the matrix differs from the pattern of the product");
+    }
+
+    float[] values = new float[this.colIndex.length];
+    int[] zeros = new int[this.scheduler.tasks()];
+    this.scheduleStats = this.scheduler.run((t, from, to) -> {
+      float[] sums = new float[this.size];
+      for (int i = (int) from; i < to; i++) {
+        for (int p = left.rowStart[i]; p < left.rowStart[i + 1]; p++) {
+          int k = left.colIndex[p];
+          float value = left.values[p];
+          for (int q = right.rowStart[k]; q < right.rowStart[k + 1]; q++) {
+            sums[right.colIndex[q]] += value * right.values[q];
+          }
+        }
+        // gather the row into its slots, and clear the sums for the next row
+        for (int p = this.rowStart[i]; p < this.rowStart[i + 1]; p++) {
+          int j = this.colIndex[p];
+          values[p] = sums[j];
+          sums[j] = 0f;
+          if (values[p] == 0f) {
+            zeros[t]++;
+          }
+        }
+      }
+    });
+
+    if (Arrays.stream(zeros).sum() == 0) {
+      return SparseMatrix.compacted(
+          new CompressedRows(this.size, this.rowStart, this.colIndex, values));
+    }
+    return SparseMatrix.compacted(dropZeros(values));
+  }
+
+  /**
+   * Get the number of entries of the pattern of the product, i.e. an upper bound of the number of
+   * non-zero entries of every product computed.
+   *
+   * @return the number of entries of the pattern
+   */
+  public long nnz() {
+    return this.colIndex.length;
+  }
+
+  /**
+   * Get how the work of the last numeric phase was spread over the threads.
+   *
+   * @return the load of the threads, or null if multiply was never called
+   */
+  public ScheduleStats getScheduleStats() {
+    return this.scheduleStats;
+  }
+
+  /**
+   * Get the number of rows and columns of the product.
+   *
+   * @return the size of the product
+   */
+  public int size() {
+    return this.size;
+  }
+
+  // the distinct columns of row i of a * b. They are stored from position start of out unless out
+  // is null, and the number of them is returned. mark must not hold i before the call
+  private static int columnsOfRow(CompressedRows a, CompressedRows b, int i, int[] mark, int[] out,
+      int start) {
+    int count = 0;
+    for (int p = a.rowStart[i]; p < a.rowStart[i + 1]; p++) {
+      int k = a.colIndex[p];
+      for (int q = b.rowStart[k]; q < b.rowStart[k + 1]; q++) {
+        int j = b.colIndex[q];
+        if (mark[j] != i) {
+          mark[j] = i;
+          if (out != null) {
+            out[start + count] = j;
+          }
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  // the entries of the product without the values that cancelled out
+  private CompressedRows dropZeros(float[] values) {
+    int[] start = new int[this.size + 1];
+    int[] index = new int[this.colIndex.length];
+    float[] data = new float[this.colIndex.length];
+    int count = 0;
+    for (int i = 0; i < this.size; i++) {
+      for (int p = this.rowStart[i]; p < this.rowStart[i + 1]; p++) {
+        if (values[p] != 0f) {
+          index[count] = this.colIndex[p];
+          data[count++] = values[p];
+        }
+      }
+      start[i + 1] = count;
+    }
+    return new CompressedRows(this.size, start, Arrays.copyOf(index, count),
+        Arrays.copyOf(data, count));
+  }
+}
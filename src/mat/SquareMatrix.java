@@ -1,5 +1,8 @@
 package mat;
 
+import java.util.Spliterator;
+import java.util.stream.Stream;
+
 /**
  * This interface represents a 2D matrix of floating point numbers.
  */
@@ -30,6 +33,30 @@ public interface SquareMatrix {
    */
   float get(int i, int j) throws IllegalArgumentException;
 
+  /**
+   * Set the cells (rows[k], cols[k]) to values[k] for every k, as if set were called for each of
+   * them in order, so the last value given for a cell is kept. Every cell is checked before any is
+   * set, so either all of them are set or none is.
+   *
+   * @param rows   the rows of the cells
+   * @param cols   the columns of the cells
+   * @param values the values of the cells
+   * @throws IllegalArgumentException if the arrays are not of the same length, or a cell does not
+   *                                  exist in the matrix
+   */
+  void setAll(int[] rows, int[] cols, float[] values) throws IllegalArgumentException;
+
+  /**
+   * Retrieve the values at the cells (rows[k], cols[k]) into out[k] for every k.
+   *
+   * @param rows the rows of the cells
+   * @param cols the columns of the cells
+   * @param out  the array to store the values in
+   * @throws IllegalArgumentException if the arrays are not of the same length, or a cell is not
+   *                                  within the bounds of the matrix
+   */
+  void getAll(int[] rows, int[] cols, float[] out) throws IllegalArgumentException;
+
   /**
    * Add this matrix with the other matrix and return the result. Neither this nor the other matrix
    * should be mutated.
@@ -60,6 +87,197 @@ public interface SquareMatrix {
    */
   SquareMatrix postmul(SquareMatrix other) throws IllegalArgumentException;
 
+  /**
+   * Multiply this matrix with the other matrix entry by entry (the Hadamard product, result(i, j)
+   * = this(i, j) * other(i, j)) and return the result. Only the positions where both matrices
+   * have a non-zero entry can be non-zero. Neither this nor the other matrix should be mutated.
+   *
+   * @param other the other matrix
+   * @return the entry by entry product of this and other
+   * @throws IllegalArgumentException if the num of rows and cols of the two matrices do not match
+   */
+  SquareMatrix hadamard(SquareMatrix other) throws IllegalArgumentException;
+
+  /**
+   * Compute the Kronecker product of this matrix with the other matrix (result = this (x) other).
+   * The result has size() * other.size() rows and columns, and its block (i, j) is this(i, j) *
+   * other. The two matrices may be of different sizes. Neither this nor the other matrix should be
+   * mutated.
+   *
+   * @param other the other matrix
+   * @return the Kronecker product of this and other
+   * @throws IllegalArgumentException if the result would have too many rows or too many entries
+   *                                  to be stored
+   */
+  SquareMatrix kronecker(SquareMatrix other) throws IllegalArgumentException;
+
+  /**
+   * Apply the given function to every entry of this matrix and return the result i.e. result(i,
+   * j) = function(this(i, j)). If the function maps 0 to 0, only the non-zero entries of this are
+   * visited and a sparse matrix stays sparse, otherwise every entry of the result is computed.
+   * This matrix should not be mutated.
+   *
+   * @param function the function to apply
+   * @return the matrix of the values of the function
+   */
+  SquareMatrix map(FloatUnaryOperator function);
+
+  /**
+   * Apply the given function to every pair of entries at the same position of this and the other
+   * matrix and return the result i.e. result(i, j) = function(this(i, j), other(i, j)). If the
+   * function maps (0, 0) to 0, only the positions where either matrix has a non-zero entry are
+   * visited and sparse matrices give a sparse result, otherwise every entry of the result is
+   * computed. Neither this nor the other matrix should be mutated.
+   *
+   * @param other    the other matrix
+   * @param function the function to apply
+   * @return the matrix of the values of the function
+   * @throws IllegalArgumentException if the num of rows and cols of the two matrices do not match
+   */
+  SquareMatrix map(SquareMatrix other, FloatBinaryOperator function)
+      throws IllegalArgumentException;
+
+  /**
+   * Multiply every entry of this matrix by the given scalar, in place i.e. this = alpha * this. No
+   * other matrix is created.
+   *
+   * @param alpha the scalar
+   */
+  void scale(float alpha);
+
+  /**
+   * Add the other matrix, multiplied by the given scalar, to this matrix in place i.e. this =
+   * alpha * other + this. No other matrix is created, and the other matrix is not mutated. The
+   * other matrix may be this matrix.
+   *
+   * @param alpha the scalar
+   * @param other the matrix to add to this
+   * @throws IllegalArgumentException if the num of rows and cols of the two matrices do not match
+   */
+  void axpy(float alpha, SquareMatrix other) throws IllegalArgumentException;
+
+  /**
+   * Multiply this matrix with the given vector and add the result to the other given vector, each
+   * multiplied by the given scalars i.e. y = alpha * this * x + beta * y. If beta is 0, the
+   * previous contents of y are not read, so they may be anything.
+   *
+   * @param alpha the scalar of the product
+   * @param x     the vector to be multiplied, of length size()
+   * @param beta  the scalar of the previous contents of y
+   * @param y     the vector to add the product to, of length size(), not the same array as x
+   * @throws IllegalArgumentException if the length of a vector does not match this matrix
+   */
+  void multiply(float alpha, float[] x, float beta, float[] y) throws IllegalArgumentException;
+
+  /**
+   * Get the sum of the entries of every row of this matrix.
+   *
+   * @return a new array of the sums of the rows, of length size()
+   */
+  float[] rowSums();
+
+  /**
+   * Get the sum of the entries of every column of this matrix.
+   *
+   * @return a new array of the sums of the columns, of length size()
+   */
+  float[] columnSums();
+
+  /**
+   * Get the trace of this matrix, i.e. the sum of the entries of its main diagonal.
+   *
+   * @return the trace of this matrix
+   */
+  float trace();
+
+  /**
+   * Get the Frobenius norm of this matrix, i.e. the square root of the sum of the squares of its
+   * entries.
+   *
+   * @return the Frobenius norm of this matrix
+   */
+  float frobeniusNorm();
+
+  /**
+   * Get the 1-norm of this matrix, i.e. the largest sum of the absolute values of the entries of a
+   * column.
+   *
+   * @return the 1-norm of this matrix
+   */
+  float oneNorm();
+
+  /**
+   * Get the infinity norm of this matrix, i.e. the largest sum of the absolute values of the
+   * entries of a row.
+   *
+   * @return the infinity norm of this matrix
+   */
+  float infinityNorm();
+
+  /**
+   * Get the smallest entry of this matrix. The entries that are 0 are included, so this is at
+   * most 0 unless every entry is positive.
+   *
+   * @return the smallest entry
+   */
+  float min();
+
+  /**
+   * Get the largest entry of this matrix. The entries that are 0 are included, so this is at least
+   * 0 unless every entry is negative.
+   *
+   * @return the largest entry
+   */
+  float max();
+
+  /**
+   * Perform the given action on every non-zero entry of this matrix, row by row and by column
+   * within a row. The entries are passed as primitives, and only the stored entries are visited,
+   * so this takes time proportional to nnz() for sparse matrices. The action must not change this
+   * matrix.
+   *
+   * @param action the action to perform on the entries
+   */
+  void forEachNonZero(IntIntFloatConsumer action);
+
+  /**
+   * Get a cursor over the non-zero entries of the given row of this matrix, by column. This matrix
+   * must not be changed while the cursor is used.
+   *
+   * @param i the row
+   * @return the cursor, before the first entry of the row
+   * @throws IllegalArgumentException if the row is not within the bounds of this matrix
+   */
+  EntryCursor rowCursor(int i) throws IllegalArgumentException;
+
+  /**
+   * Get a cursor over the non-zero entries of the given column of this matrix, by row. This
+   * matrix must not be changed while the cursor is used.
+   *
+   * @param j the column
+   * @return the cursor, before the first entry of the column
+   * @throws IllegalArgumentException if the column is not within the bounds of this matrix
+   */
+  EntryCursor columnCursor(int j) throws IllegalArgumentException;
+
+  /**
+   * Get a spliterator over the non-zero entries of this matrix, in the order of forEachNonZero. It
+   * splits the rows into ranges of about equal work, so it can back parallel streams. This matrix
+   * must not be changed while the spliterator is used.
+   *
+   * @return the spliterator over the non-zero entries
+   */
+  Spliterator<MatrixEntry> spliterator();
+
+  /**
+   * Get a sequential stream of the non-zero entries of this matrix, in the order of
+   * forEachNonZero. Call parallel() on it to read the rows on many threads. This matrix must not
+   * be changed while the stream is used.
+   *
+   * @return the stream of the non-zero entries
+   */
+  Stream<MatrixEntry> nonZeros();
+
   /**
    * Get the size of this matrix (number of rows or number of columns).
    *
@@ -67,4 +285,37 @@ public interface SquareMatrix {
    */
   int size();
 
+  /**
+   * Get the number of non-zero entries of this matrix. The count is kept up to date by set, hence
+   * this takes constant time.
+   *
+   * @return the number of non-zero entries
+   */
+  long nnz();
+
+  /**
+   * Get an estimate of the memory used by this matrix, including all the objects it owns, on a
+   * 64-bit JVM with compressed references.
+   *
+   * @return the estimated size of this matrix in bytes
+   */
+  long estimatedBytes();
+
+  /**
+   * Get the structure of this matrix: the number of non-zero entries of its rows and columns, and
+   * its bandwidth. This takes time proportional to the size of the matrix for sparse matrices.
+   *
+   * @return the statistics of this matrix
+   */
+  MatrixStats stats();
+
+  /**
+   * Get the number of changes made to this matrix by set and setIdentity. The count never
+   * decreases, so anything computed from this matrix is still up to date as long as the count is
+   * the same as when the computation started.
+   *
+   * @return the number of changes of this matrix
+   */
+  long modificationCount();
+
 }
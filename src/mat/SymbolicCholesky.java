@@ -0,0 +1,169 @@
+package mat;
+
+/**
+ * This class represents the symbolic analysis of a sparse Cholesky factorization. It holds the
+ * fill-reducing ordering, the elimination tree of the permuted matrix and the exact number of
+ * entries of every column of the factor L, so that the numeric phase can run in storage that is
+ * allocated once. The analysis only depends on the pattern of the matrix, hence it can be shared
+ * by every factorization of matrices with the same pattern.
+ */
+final class SymbolicCholesky {
+
+  final int size;
+  // perm[k] is the row and column of the matrix that is placed k-th, pinv is its inverse
+  final int[] perm;
+  final int[] pinv;
+  // parent of every column in the elimination tree, -1 for a root
+  final int[] parent;
+  // start of every column of L, colStart[size] is the number of entries of L
+  final int[] colStart;
+
+  /**
+   * Analyze the given matrix. Only the pattern of the matrix is used.
+   *
+   * @param matrix the matrix in compressed row form
+   */
+  SymbolicCholesky(CompressedRows matrix) {
+    this.size = matrix.size;
+    this.perm = MinimumDegree.order(matrix);
+    this.pinv = new int[this.size];
+    for (int k = 0; k < this.size; k++) {
+      this.pinv[this.perm[k]] = k;
+    }
+
+    // the pattern must be symmetric, so the analysis is done on A + transpose(A)
+    CompressedRows upper = permuteUpper(matrix.symmetricPattern());
+    this.parent = eliminationTree(upper);
+    this.colStart = columnStarts(upper);
+  }
+
+  /**
+   * Get the number of entries of the factor L.
+   *
+   * @return the number of entries of L, including the diagonal
+   */
+  int factorEntries() {
+    return this.colStart[this.size];
+  }
+
+  /**
+   * Return the upper triangle of P * A * transpose(P) stored by columns, i.e. column k holds the
+   * entries of rows up to k. Entries of A below the diagonal of the permuted matrix are ignored.
+   *
+   * @param matrix the matrix in compressed row form
+   * @return the columns of the permuted upper triangle, as the rows of its transpose
+   */
+  CompressedRows permuteUpper(CompressedRows matrix) {
+    int n = this.size;
+    int[] start = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      for (int p = matrix.rowStart[i]; p < matrix.rowStart[i + 1]; p++) {
+        int row = this.pinv[i];
+        int col = this.pinv[matrix.colIndex[p]];
+        if (row <= col) {
+          start[col + 1]++;
+        }
+      }
+    }
+    for (int k = 0; k < n; k++) {
+      start[k + 1] += start[k];
+    }
+
+    int[] next = new int[n];
+    System.arraycopy(start, 0, next, 0, n);
+    int[] index = new int[start[n]];
+    float[] values = new float[start[n]];
+    for (int i = 0; i < n; i++) {
+      for (int p = matrix.rowStart[i]; p < matrix.rowStart[i + 1]; p++) {
+        int row = this.pinv[i];
+        int col = this.pinv[matrix.colIndex[p]];
+        if (row <= col) {
+          int q = next[col]++;
+          index[q] = row;
+          values[q] = matrix.values[p];
+        }
+      }
+    }
+    return new CompressedRows(n, start, index, values);
+  }
+
+  /**
+   * Find the pattern of row k of L, which is the set of nodes reachable in the elimination tree
+   * from the entries of column k of the permuted upper triangle. The pattern is stored in
+   * pattern[top..size-1] in topological order.
+   *
+   * @param upper   the permuted upper triangle by columns
+   * @param k       the row of L
+   * @param pattern the array to store the pattern in
+   * @param marked  scratch array of size n, marked[i] == k means node i was visited
+   * @return the index top of the first entry of the pattern
+   */
+  int reach(CompressedRows upper, int k, int[] pattern, int[] marked) {
+    int top = this.size;
+    marked[k] = k;
+    for (int p = upper.rowStart[k]; p < upper.rowStart[k + 1]; p++) {
+      int i = upper.colIndex[p];
+      if (i > k) {
+        continue;
+      }
+      // walk up the tree until an already visited node, then push the path on the stack
+      int length = 0;
+      while (marked[i] != k) {
+        pattern[length++] = i;
+        marked[i] = k;
+        i = this.parent[i];
+      }
+      while (length > 0) {
+        pattern[--top] = pattern[--length];
+      }
+    }
+    return top;
+  }
+
+  // elimination tree of the matrix given by its upper triangle, using path compression
+  private int[] eliminationTree(CompressedRows upper) {
+    int n = this.size;
+    int[] tree = new int[n];
+    int[] ancestor = new int[n];
+    for (int k = 0; k < n; k++) {
+      tree[k] = -1;
+      ancestor[k] = -1;
+      for (int p = upper.rowStart[k]; p < upper.rowStart[k + 1]; p++) {
+        int i = upper.colIndex[p];
+        // follow the path from i to the root of its subtree, pointing it at k
+        while (i != -1 && i < k) {
+          int nextAncestor = ancestor[i];
+          ancestor[i] = k;
+          if (nextAncestor == -1) {
+            tree[i] = k;
+          }
+          i = nextAncestor;
+        }
+      }
+    }
+    return tree;
+  }
+
+  // start of every column of L, counting the entries of every row pattern
+  private int[] columnStarts(CompressedRows upper) {
+    int n = this.size;
+    int[] counts = new int[n + 1];
+    int[] pattern = new int[n];
+    int[] marked = new int[n];
+    for (int k = 0; k < n; k++) {
+      marked[k] = -1;
+    }
+    for (int k = 0; k < n; k++) {
+      // L(k, i) is non-zero for every i in the pattern, plus the diagonal
+      int top = reach(upper, k, pattern, marked);
+      for (int p = top; p < n; p++) {
+        counts[pattern[p] + 1]++;
+      }
+      counts[k + 1]++;
+    }
+    for (int k = 0; k < n; k++) {
+      counts[k + 1] += counts[k];
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,101 @@
+package mat;
+
+import java.util.stream.IntStream;
+
+/**
+ * This class contains the dense vector kernels shared by the solvers. Sums are accumulated in
+ * double precision to limit the round-off of long float vectors.
+ */
+final class Vectors {
+
+  // vectors shorter than this are never split between threads
+  static final int PARALLEL_THRESHOLD = 1 << 14;
+  // length of the block of a vector handled by a single task
+  private static final int BLOCK = 1 << 12;
+
+  private Vectors() {
+  }
+
+  /**
+   * Return the dot product of the first n entries of x and y.
+   *
+   * @param x        the first vector
+   * @param y        the second vector
+   * @param n        the number of entries to use
+   * @param parallel true if the sum may be split between multiple threads
+   * @return the dot product x . y
+   */
+  static double dot(float[] x, float[] y, int n, boolean parallel) {
+    if (parallel && n >= PARALLEL_THRESHOLD) {
+      int blocks = (n + BLOCK - 1) / BLOCK;
+      return IntStream.range(0, blocks).parallel()
+          .mapToDouble(b -> dot(x, y, b * BLOCK, Math.min(n, (b + 1) * BLOCK)))
+          .sum();
+    }
+    return dot(x, y, 0, n);
+  }
+
+  // dot product of x and y over the range [from, to)
+  private static double dot(float[] x, float[] y, int from, int to) {
+    double sum = 0;
+    for (int i = from; i < to; i++) {
+      sum += (double) x[i] * y[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Return the euclidean norm of the first n entries of x.
+   *
+   * @param x        the vector
+   * @param n        the number of entries to use
+   * @param parallel true if the sum may be split between multiple threads
+   * @return the 2-norm of x
+   */
+  static double norm(float[] x, int n, boolean parallel) {
+    return Math.sqrt(dot(x, x, n, parallel));
+  }
+
+  /**
+   * Compute y = y + alpha * x over the first n entries.
+   *
+   * @param alpha the scalar
+   * @param x     the vector to be scaled
+   * @param y     the vector to be updated
+   * @param n     the number of entries to use
+   */
+  static void axpy(double alpha, float[] x, float[] y, int n) {
+    float a = (float) alpha;
+    for (int i = 0; i < n; i++) {
+      y[i] += a * x[i];
+    }
+  }
+
+  /**
+   * Compute y = x + beta * y over the first n entries.
+   *
+   * @param x    the vector to be added
+   * @param beta the scalar applied to y
+   * @param y    the vector to be updated
+   * @param n    the number of entries to use
+   */
+  static void xpby(float[] x, double beta, float[] y, int n) {
+    float b = (float) beta;
+    for (int i = 0; i < n; i++) {
+      y[i] = x[i] + b * y[i];
+    }
+  }
+
+  /**
+   * Compute r = b - r over the first n entries, where r holds a product A * x on entry.
+   *
+   * @param b the right hand side
+   * @param r the vector holding A * x, overwritten with the residual
+   * @param n the number of entries to use
+   */
+  static void residual(float[] b, float[] r, int n) {
+    for (int i = 0; i < n; i++) {
+      r[i] = b[i] - r[i];
+    }
+  }
+}
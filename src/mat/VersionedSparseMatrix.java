@@ -0,0 +1,210 @@
+package mat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class represents a sparse matrix that is updated by writers and read by readers through
+ * immutable versions. Writers stage changes with set, and publish them as a new version with
+ * publish. Readers get the latest published version with current, which never takes a lock, and
+ * keep reading a consistent version for as long as they hold on to it.
+ *
+ * <p>Versions are copy-on-write: a new version shares every row that did not change with the
+ * previous one, so publishing costs time proportional to the size of the changed rows (plus a
+ * logarithmic factor per row), not to the number of non-zero entries of the matrix.
+ */
+public class VersionedSparseMatrix {
+
+  private final int size;
+  private volatile ImmutableSparseMatrix current;
+
+  // rows changed since the last publish, by index
+  private final Map<Integer, RowDraft> drafts;
+
+  /**
+   * Constructs a new versioned matrix of the given dimensions. The first version has all entries
+   * 0.
+   *
+   * @param size the number of rows and columns in this matrix
+   * @throws IllegalArgumentException if the size is a non-positive number
+   */
+  public VersionedSparseMatrix(int size) throws IllegalArgumentException {
+    if (size < 0) {
+      throw new IllegalArgumentException("The size of a matrix cannot be non-positive");
+    }
+
+    this.size = size;
+    this.current = new ImmutableSparseMatrix(PersistentRows.empty(size), 0, 0);
+    this.drafts = new HashMap<Integer, RowDraft>();
+  }
+
+  /**
+   * Constructs a new versioned matrix whose first version has the entries of the given matrix.
+   *
+   * @param initial the matrix to copy the first version from
+   */
+  public VersionedSparseMatrix(SquareMatrix initial) {
+    this.size = initial.size();
+    // assumption - all implementations extend AbstractMatrix
+    this.current = ImmutableSparseMatrix.of(((AbstractMatrix) initial).compressRows());
+    this.drafts = new HashMap<Integer, RowDraft>();
+  }
+
+  /**
+   * Return the latest published version. This never blocks.
+   *
+   * @return the latest version
+   */
+  public ImmutableSparseMatrix current() {
+    return this.current;
+  }
+
+  /**
+   * Stage a change of the given cell. The change becomes visible to readers on the next publish.
+   *
+   * @param i     the row of the cell
+   * @param j     the column of the cell
+   * @param value the floating point value
+   * @throws IllegalArgumentException if the given cell does not exist in matrix
+   */
+  public synchronized void set(int i, int j, float value) throws IllegalArgumentException {
+    checkBounds(i, j);
+
+    RowDraft draft = this.drafts.get(i);
+    if (draft == null) {
+      draft = new RowDraft(this.current.row(i));
+      this.drafts.put(i, draft);
+    }
+    draft.set(j, value);
+  }
+
+  /**
+   * Get the value of the given cell as seen by the writers, including the staged changes.
+   *
+   * @param i the row of the cell
+   * @param j the column of the cell
+   * @return the value at the given row and column
+   * @throws IllegalArgumentException if the given cell does not exist in matrix
+   */
+  public synchronized float get(int i, int j) throws IllegalArgumentException {
+    checkBounds(i, j);
+
+    RowDraft draft = this.drafts.get(i);
+    return draft == null ? this.current.row(i).get(j) : draft.get(j);
+  }
+
+  /**
+   * Publish the staged changes as a new version, which becomes the one returned by current.
+   *
+   * @return the new version
+   */
+  public synchronized ImmutableSparseMatrix publish() {
+    MatrixConstructionEvent event = new MatrixConstructionEvent();
+    event.start();
+    try {
+      ImmutableSparseMatrix previous = this.current;
+      PersistentRows.Builder builder = previous.rows().toBuilder();
+      long nnz = previous.nnz();
+
+      for (Map.Entry<Integer, RowDraft> entry : this.drafts.entrySet()) {
+        int i = entry.getKey();
+        PersistentRows.Row row = entry.getValue().toRow();
+        nnz += row.cols.length - previous.row(i).cols.length;
+        builder.set(i, row);
+      }
+      this.drafts.clear();
+
+      ImmutableSparseMatrix next = new ImmutableSparseMatrix(builder.build(), nnz,
+          previous.version() + 1);
+      this.current = next;
+      event.finish("publish", next, nnz);
+      return next;
+    } finally {
+      event.release();
+    }
+  }
+
+  /**
+   * Get the number of rows with changes that have not been published yet.
+   *
+   * @return the number of changed rows
+   */
+  public synchronized int pendingRows() {
+    return this.drafts.size();
+  }
+
+  /**
+   * Get the size of this matrix (number of rows or number of columns).
+   *
+   * @return the size of this matrix
+   */
+  public int size() {
+    return this.size;
+  }
+
+  private void checkBounds(int i, int j) throws IllegalArgumentException {
+    if ((i < 0) || (i >= this.size)) {
+      throw new IllegalArgumentException(
+          "Row number cannot be beyond the bounds of the matrix");
+    }
+
+    if ((j < 0) || (j >= this.size)) {
+      throw new IllegalArgumentException(
+          "Column number cannot be beyond the bounds of the matrix");
+    }
+  }
+
+  /**
+   * This class represents a private, mutable copy of a row with staged changes. The columns are
+   * kept sorted.
+   */
+  private static final class RowDraft {
+
+    private int[] cols;
+    private float[] vals;
+    private int count;
+
+    RowDraft(PersistentRows.Row row) {
+      this.count = row.cols.length;
+      this.cols = Arrays.copyOf(row.cols, Math.max(4, this.count));
+      this.vals = Arrays.copyOf(row.vals, Math.max(4, this.count));
+    }
+
+    float get(int j) {
+      int p = Arrays.binarySearch(this.cols, 0, this.count, j);
+      return p >= 0 ? this.vals[p] : 0f;
+    }
+
+    void set(int j, float value) {
+      int p = Arrays.binarySearch(this.cols, 0, this.count, j);
+      if (p >= 0) {
+        if (value != 0f) {
+          this.vals[p] = value;
+        } else {
+          // remove the entry
+          System.arraycopy(this.cols, p + 1, this.cols, p, this.count - p - 1);
+          System.arraycopy(this.vals, p + 1, this.vals, p, this.count - p - 1);
+          this.count--;
+        }
+      } else if (value != 0f) {
+        // insert the entry at its sorted position
+        p = -p - 1;
+        if (this.count == this.cols.length) {
+          this.cols = Arrays.copyOf(this.cols, 2 * this.count);
+          this.vals = Arrays.copyOf(this.vals, 2 * this.count);
+        }
+        System.arraycopy(this.cols, p, this.cols, p + 1, this.count - p);
+        System.arraycopy(this.vals, p, this.vals, p + 1, this.count - p);
+        this.cols[p] = j;
+        this.vals[p] = value;
+        this.count++;
+      }
+    }
+
+    PersistentRows.Row toRow() {
+      return new PersistentRows.Row(Arrays.copyOf(this.cols, this.count),
+          Arrays.copyOf(this.vals, this.count));
+    }
+  }
+}
@@ -1,7 +1,10 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.stream.Collectors;
 import mat.ArrayMatrix;
+import mat.EntryCursor;
+import mat.SparseMatrix;
 import mat.SquareMatrix;
 import org.junit.Before;
 import org.junit.Test;
@@ -173,6 +176,134 @@ public class ArrayMatrixTest {
     }
   }
 
+  @Test
+  public void entryByEntryOperations() {
+    SquareMatrix a = new ArrayMatrix(3);
+    SquareMatrix b = new ArrayMatrix(2);
+    for (int i = 0; i < 3; i += 1) {
+      for (int j = 0; j < 3; j += 1) {
+        a.set(i, j, i * 3 + j);
+      }
+    }
+    b.set(0, 1, 2f);
+    b.set(1, 0, -1f);
+
+    SquareMatrix kronecker = a.kronecker(b);
+    assertEquals(6, kronecker.size());
+    assertEquals(16, kronecker.nnz());
+    for (int i = 0; i < 6; i += 1) {
+      for (int j = 0; j < 6; j += 1) {
+        assertEquals(a.get(i / 2, j / 2) * b.get(i % 2, j % 2), kronecker.get(i, j), delta);
+      }
+    }
+
+    SquareMatrix square = a.hadamard(a);
+    SquareMatrix halved = a.map(x -> x / 2);
+    SquareMatrix difference = a.map(square, (x, y) -> x - y);
+    assertEquals(16f, square.get(1, 1), delta);
+    assertEquals(2f, halved.get(1, 1), delta);
+    assertEquals(-12f, difference.get(1, 1), delta);
+    assertEquals(8, square.nnz());
+  }
+
+  @Test
+  public void scaleAndAxpyInPlace() {
+    ArrayMatrix a = new ArrayMatrix(3);
+    SparseMatrix b = new SparseMatrix(3);
+    a.set(0, 0, 1f);
+    a.set(1, 2, 2f);
+    b.set(1, 2, -1f);
+    b.set(2, 0, 4f);
+    a.scale(3f);
+    assertEquals(6f, a.get(1, 2), delta);
+    long count = a.modificationCount();
+    a.axpy(6f, b);
+    assertEquals(0f, a.get(1, 2), delta);
+    assertEquals(24f, a.get(2, 0), delta);
+    assertEquals(2, a.nnz());
+    // one change for the whole call, however many entries the sparse operand has
+    assertEquals(count + 1, a.modificationCount());
+    a.axpy(-1f, a);
+    assertEquals(0, a.nnz());
+    assertEquals(count + 2, a.modificationCount());
+    assertEquals(0, a.stats().getMaxRowLength());
+
+    a.setIdentity();
+    float[] y = {1f, 1f, 1f};
+    a.multiply(2f, new float[] {1f, 2f, 3f}, 0.5f, y);
+    assertEquals(2.5f, y[0], delta);
+    assertEquals(6.5f, y[2], delta);
+  }
+
+  @Test
+  public void reductions() {
+    ArrayMatrix a = new ArrayMatrix(3);
+    a.set(0, 0, 2f);
+    a.set(0, 2, -3f);
+    a.set(2, 1, 6f);
+    assertEquals(-1f, a.rowSums()[0], delta);
+    assertEquals(6f, a.columnSums()[1], delta);
+    assertEquals(2f, a.trace(), delta);
+    assertEquals(7f, a.frobeniusNorm(), delta);
+    assertEquals(6f, a.oneNorm(), delta);
+    assertEquals(6f, a.infinityNorm(), delta);
+    assertEquals(-3f, a.min(), delta);
+    assertEquals(6f, a.max(), delta);
+    a.scale(-1f);
+    assertEquals(3f, a.max(), delta);
+    assertEquals(-2f, a.trace(), delta);
+  }
+
+  @Test
+  public void nonZerosSkipTheZeros() {
+    ArrayMatrix a = new ArrayMatrix(4);
+    SparseMatrix b = new SparseMatrix(4);
+    for (int k = 0; k < 4; k++) {
+      a.set(k, 3 - k, k + 1f);
+      b.set(k, 3 - k, k + 1f);
+    }
+    a.set(2, 2, 7f);
+    b.set(2, 2, 7f);
+    // the entries are the same whatever the format
+    assertEquals(b.nonZeros().collect(Collectors.toList()),
+        a.nonZeros().collect(Collectors.toList()));
+    assertEquals(5, a.nonZeros().parallel().count());
+    float[] sum = new float[1];
+    a.forEachNonZero((i, j, value) -> sum[0] += value);
+    assertEquals(17f, sum[0], delta);
+
+    EntryCursor row = a.rowCursor(2);
+    row.next();
+    assertEquals(1, row.getColumn());
+    assertEquals(3f, row.getValue(), delta);
+    row.next();
+    assertEquals(2, row.getColumn());
+    assertEquals(false, row.next());
+    EntryCursor column = a.columnCursor(0);
+    column.next();
+    assertEquals(3, column.getRow());
+    assertEquals(4f, column.getValue(), delta);
+    assertEquals(false, column.next());
+  }
+
+  @Test
+  public void batchedSetAndGet() {
+    arrayMatrix.setAll(new int[] {0, 3, 0, 99}, new int[] {5, 3, 5, 0},
+        new float[] {1f, 2f, 4f, 0f});
+    assertEquals(4f, arrayMatrix.get(0, 5), delta);
+    assertEquals(2, arrayMatrix.nnz());
+    float[] out = new float[3];
+    arrayMatrix.getAll(new int[] {3, 0, 7}, new int[] {3, 5, 7}, out);
+    assertEquals(2f, out[0], delta);
+    assertEquals(4f, out[1], delta);
+    assertEquals(0f, out[2], delta);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setAllOutOfBounds() {
+    arrayMatrix.setAll(new int[] {0}, new int[] {-1}, new float[] {1f});
+  }
+
   @Test
   public void testLargeIdentities() {
     int dim = 100;
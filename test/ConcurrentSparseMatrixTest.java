@@ -0,0 +1,253 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import mat.ConcurrentSparseMatrix;
+import mat.EntryCursor;
+import mat.SparseMatrix;
+import mat.SquareMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the ConcurrentSparseMatrix class.
+ */
+public class ConcurrentSparseMatrixTest {
+
+  private float delta = 0f;
+
+  // run the given tasks on their own threads and wait for all of them
+  private static void runAll(List<Runnable> tasks) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+    List<Future<?>> futures = new ArrayList<>();
+    for (Runnable task : tasks) {
+      futures.add(pool.submit(task));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 20000)
+  public void concurrentWritersSharingColumns() throws Exception {
+    writeSharingColumns(new ConcurrentSparseMatrix(200, 4));
+  }
+
+  @Test(timeout = 20000)
+  public void pooledWritersSharingColumns() throws Exception {
+    ConcurrentSparseMatrix matrix = new ConcurrentSparseMatrix(200, 4);
+    matrix.enableNodePool(32);
+    writeSharingColumns(matrix);
+    // the entries set to 0 left their nodes in the pools of their stripes
+    assertTrue(matrix.pooledNodes() > 0);
+    matrix.disableNodePool();
+    assertEquals(0, matrix.pooledNodes());
+  }
+
+  // let threads set entries of the given matrix of size 200, and check the result
+  private void writeSharingColumns(ConcurrentSparseMatrix matrix) throws Exception {
+    int size = 200;
+    int threads = 8;
+    float[][] expected = new float[size][size];
+
+    // every thread owns the rows i with i % threads == t but writes to all columns, so the column
+    // lists are updated by all threads at the same time
+    List<Runnable> tasks = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int owner = t;
+      tasks.add(() -> {
+        Random random = new Random(owner);
+        for (int k = 0; k < 20000; k++) {
+          int i = random.nextInt(size / threads) * threads + owner;
+          int j = random.nextInt(size);
+          float value = random.nextInt(4) == 0 ? 0f : random.nextFloat();
+          matrix.set(i, j, value);
+          expected[i][j] = value;
+        }
+      });
+    }
+    runAll(tasks);
+
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        assertEquals(expected[i][j], matrix.get(i, j), delta);
+      }
+    }
+
+    // the column lists are intact, checked through a kernel that walks the columns
+    SparseMatrix identity = new SparseMatrix(size);
+    identity.setIdentity();
+    SquareMatrix product = identity.postmul(matrix);
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        assertEquals(expected[i][j], product.get(i, j), delta);
+      }
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void readersSeeConsistentRows() throws Exception {
+    int size = 64;
+    ConcurrentSparseMatrix matrix = new ConcurrentSparseMatrix(size);
+    List<Runnable> tasks = new ArrayList<>();
+
+    // a writer keeps every row either all 1 or all 2, a reader must never see a torn row sum that
+    // comes from a broken list
+    tasks.add(() -> {
+      for (int round = 0; round < 200; round++) {
+        for (int i = 0; i < size; i++) {
+          for (int j = 0; j < size; j++) {
+            matrix.set(i, j, 1f + (round % 2));
+          }
+        }
+      }
+    });
+    for (int r = 0; r < 3; r++) {
+      tasks.add(() -> {
+        for (int round = 0; round < 2000; round++) {
+          int i = round % size;
+          for (int j = 0; j < size; j++) {
+            float value = matrix.get(i, j);
+            assertTrue(value == 0f || value == 1f || value == 2f);
+          }
+        }
+      });
+    }
+    runAll(tasks);
+
+    for (int j = 0; j < size; j++) {
+      assertEquals(2f, matrix.get(size - 1, j), delta);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void operationsMatchSparseMatrix() {
+    int size = 50;
+    ConcurrentSparseMatrix concurrent = new ConcurrentSparseMatrix(size, 3);
+    SparseMatrix plain = new SparseMatrix(size);
+    Random random = new Random(9);
+    for (int k = 0; k < 200; k++) {
+      int i = random.nextInt(size);
+      int j = random.nextInt(size);
+      float value = random.nextFloat();
+      concurrent.set(i, j, value);
+      plain.set(i, j, value);
+    }
+
+    SquareMatrix sum = concurrent.add(plain);
+    SquareMatrix product = plain.postmul(concurrent);
+    SquareMatrix expectedProduct = plain.postmul(plain);
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        assertEquals(2 * plain.get(i, j), sum.get(i, j), delta);
+        assertEquals(expectedProduct.get(i, j), product.get(i, j), delta);
+      }
+    }
+
+    concurrent.axpy(2f, plain);
+    concurrent.scale(0.5f);
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        assertEquals(1.5f * plain.get(i, j), concurrent.get(i, j), 1e-6f);
+      }
+    }
+    assertEquals(plain.nnz(), concurrent.nnz());
+    assertEquals(1.5f * plain.frobeniusNorm(), concurrent.frobeniusNorm(), 1e-4f);
+
+    concurrent.setIdentity();
+    assertEquals(1f, concurrent.get(7, 7), delta);
+    assertEquals(0f, concurrent.get(7, 8), delta);
+
+    concurrent.setAll(new int[] {7, 7, 2}, new int[] {7, 8, 40}, new float[] {0f, 3f, 4f});
+    float[] out = new float[3];
+    concurrent.getAll(new int[] {7, 7, 2}, new int[] {7, 8, 40}, out);
+    assertEquals(0f, out[0], delta);
+    assertEquals(3f, out[1], delta);
+    assertEquals(4f, out[2], delta);
+    assertEquals(size + 1, concurrent.nnz());
+  }
+
+  @Test(timeout = 10000)
+  public void iterationWorksOnCopies() {
+    ConcurrentSparseMatrix matrix = new ConcurrentSparseMatrix(20, 2);
+    for (int k = 0; k < 20; k++) {
+      matrix.set(k, (3 * k) % 20, k + 1f);
+      matrix.set(k, 5, 1f);
+    }
+    EntryCursor row = matrix.rowCursor(5);
+    EntryCursor column = matrix.columnCursor(5);
+    // the cursors read their own copies, so changes made meanwhile do not stop them
+    matrix.set(5, 0, 9f);
+    int count = 0;
+    while (row.next()) {
+      assertEquals(5, row.getRow());
+      count++;
+    }
+    assertEquals(2, count);
+    count = 0;
+    while (column.next()) {
+      assertEquals(5, column.getColumn());
+      count++;
+    }
+    assertEquals(20, count);
+
+    // no lock is held while the action runs, so it can change the matrix
+    matrix.forEachNonZero((i, j, value) -> matrix.set(i, j, 2 * value));
+    assertEquals(18f, matrix.get(5, 0), delta);
+    assertEquals(matrix.nnz(), matrix.nonZeros().parallel().count());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setOutOfBounds() {
+    new ConcurrentSparseMatrix(10).set(-1, 3, 1f);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveStripes() {
+    new ConcurrentSparseMatrix(10, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nodePoolChunkSize() {
+    new ConcurrentSparseMatrix(10).enableNodePool(0);
+  }
+
+  @Test(timeout = 20000)
+  public void compactedMatrixIsExpandedByTheFirstWriter() throws Exception {
+    int size = 64;
+    ConcurrentSparseMatrix matrix = new ConcurrentSparseMatrix(size, 4);
+    for (int i = 0; i < size; i++) {
+      matrix.set(i, i, 1f);
+    }
+    matrix.compact();
+    assertTrue(matrix.isCompact());
+    assertEquals(1f, matrix.get(5, 5), delta);
+
+    // every thread races to be the one that expands the matrix, then sets the rows it owns
+    int threads = 4;
+    List<Runnable> tasks = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int owner = t;
+      tasks.add(() -> {
+        for (int i = owner; i < size; i += threads) {
+          matrix.set(i, (i + 1) % size, 2f);
+          assertEquals(1f, matrix.get(i, i), delta);
+        }
+      });
+    }
+    runAll(tasks);
+    assertEquals(false, matrix.isCompact());
+    assertEquals(2 * size, matrix.nnz());
+    for (int i = 0; i < size; i++) {
+      assertEquals(1f, matrix.get(i, i), delta);
+      assertEquals(2f, matrix.get(i, (i + 1) % size), delta);
+    }
+  }
+}
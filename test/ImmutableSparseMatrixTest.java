@@ -0,0 +1,180 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import mat.ArrayMatrix;
+import mat.ImmutableSparseMatrix;
+import mat.SparseMatrix;
+import mat.SquareMatrix;
+import mat.VersionedSparseMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the ImmutableSparseMatrix and
+ * VersionedSparseMatrix classes.
+ */
+public class ImmutableSparseMatrixTest {
+
+  private float delta = 0f;
+
+  @Test
+  public void freezeIsASnapshot() {
+    SparseMatrix matrix = new SparseMatrix(100);
+    matrix.set(3, 4, 5f);
+    matrix.set(99, 0, 2f);
+
+    ImmutableSparseMatrix frozen = matrix.freeze();
+    matrix.set(3, 4, 0f);
+    matrix.set(50, 50, 1f);
+
+    assertEquals(5f, frozen.get(3, 4), delta);
+    assertEquals(2f, frozen.get(99, 0), delta);
+    assertEquals(0f, frozen.get(50, 50), delta);
+    assertEquals(2, frozen.nnz());
+    assertEquals(100, frozen.size());
+  }
+
+  @Test(timeout = 10000)
+  public void frozenOperationsMatchSparseMatrix() {
+    int size = 60;
+    SparseMatrix a = new SparseMatrix(size);
+    ArrayMatrix b = new ArrayMatrix(size);
+    Random random = new Random(2);
+    for (int k = 0; k < 300; k++) {
+      a.set(random.nextInt(size), random.nextInt(size), random.nextFloat());
+      b.set(random.nextInt(size), random.nextInt(size), random.nextFloat());
+    }
+    ImmutableSparseMatrix frozen = a.freeze();
+
+    SquareMatrix[] expected = {a.add(a), a.postmul(b), a.premul(b), a.postmul(a),
+        a.hadamard(a)};
+    SquareMatrix[] actual = {frozen.add(a), frozen.postmul(b), frozen.premul(b),
+        a.postmul(frozen), frozen.hadamard(frozen)};
+    for (int m = 0; m < expected.length; m++) {
+      for (int i = 0; i < size; i++) {
+        for (int j = 0; j < size; j++) {
+          assertEquals(expected[m].get(i, j), actual[m].get(i, j), delta);
+        }
+      }
+    }
+
+    SparseMatrix thawed = frozen.toSparseMatrix();
+    thawed.set(0, 0, 42f);
+    assertEquals(42f, thawed.get(0, 0), delta);
+    assertEquals(a.get(0, 0), frozen.get(0, 0), delta);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void frozenSetThrows() {
+    new SparseMatrix(10).freeze().set(1, 1, 1f);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void frozenSetIdentityThrows() {
+    new SparseMatrix(10).freeze().setIdentity();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void frozenScaleThrows() {
+    new SparseMatrix(10).freeze().scale(2f);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void frozenSetAllThrows() {
+    new SparseMatrix(10).freeze().setAll(new int[] {1}, new int[] {1}, new float[] {1f});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void frozenGetOutOfBounds() {
+    new SparseMatrix(10).freeze().get(10, 0);
+  }
+
+  @Test
+  public void publishMakesChangesVisible() {
+    VersionedSparseMatrix versioned = new VersionedSparseMatrix(1000);
+    versioned.set(1, 2, 3f);
+    versioned.set(999, 999, 4f);
+
+    ImmutableSparseMatrix first = versioned.current();
+    assertEquals(0f, first.get(1, 2), delta);
+    assertEquals(3f, versioned.get(1, 2), delta);
+    assertEquals(2, versioned.pendingRows());
+
+    ImmutableSparseMatrix second = versioned.publish();
+    assertEquals(second, versioned.current());
+    assertEquals(first.version() + 1, second.version());
+    assertEquals(3f, second.get(1, 2), delta);
+    assertEquals(4f, second.get(999, 999), delta);
+    assertEquals(2, second.nnz());
+    assertEquals(0, versioned.pendingRows());
+
+    versioned.set(1, 2, 0f);
+    versioned.set(1, 0, 7f);
+    ImmutableSparseMatrix third = versioned.publish();
+    assertEquals(0f, third.get(1, 2), delta);
+    assertEquals(7f, third.get(1, 0), delta);
+    assertEquals(4f, third.get(999, 999), delta);
+    assertEquals(2, third.nnz());
+    // old versions are unaffected
+    assertEquals(3f, second.get(1, 2), delta);
+    assertEquals(0f, second.get(1, 0), delta);
+  }
+
+  @Test(timeout = 10000)
+  public void versionedMatchesReferenceUnderRandomUpdates() {
+    int size = 300;
+    SparseMatrix reference = new SparseMatrix(size);
+    Random random = new Random(5);
+    for (int k = 0; k < 1000; k++) {
+      reference.set(random.nextInt(size), random.nextInt(size), random.nextFloat());
+    }
+    VersionedSparseMatrix versioned = new VersionedSparseMatrix(reference);
+
+    for (int round = 0; round < 20; round++) {
+      for (int k = 0; k < 50; k++) {
+        int i = random.nextInt(size);
+        int j = random.nextInt(size);
+        float value = random.nextInt(3) == 0 ? 0f : random.nextFloat();
+        reference.set(i, j, value);
+        versioned.set(i, j, value);
+      }
+      ImmutableSparseMatrix published = versioned.publish();
+      for (int i = 0; i < size; i++) {
+        for (int j = 0; j < size; j++) {
+          assertEquals(reference.get(i, j), published.get(i, j), delta);
+        }
+      }
+      assertEquals(reference.freeze().nnz(), published.nnz());
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void readersNeverSeePartialPublish() throws Exception {
+    // the writer keeps the two cells equal in every published version
+    VersionedSparseMatrix versioned = new VersionedSparseMatrix(5000);
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<String> failure = new AtomicReference<>();
+
+    Thread reader = new Thread(() -> {
+      while (!done.get()) {
+        ImmutableSparseMatrix snapshot = versioned.current();
+        if (snapshot.get(0, 0) != snapshot.get(4999, 4999)) {
+          failure.set("torn version " + snapshot.version());
+        }
+      }
+    });
+    reader.start();
+    for (int round = 1; round <= 2000; round++) {
+      versioned.set(0, 0, round);
+      versioned.set(4999, 4999, round);
+      versioned.publish();
+    }
+    done.set(true);
+    reader.join();
+
+    assertEquals(null, failure.get());
+    assertTrue(versioned.current().version() >= 2000);
+  }
+}
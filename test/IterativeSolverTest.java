@@ -0,0 +1,197 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import mat.ArrayMatrix;
+import mat.BiCgStabSolver;
+import mat.ConjugateGradientSolver;
+import mat.GmresSolver;
+import mat.Ilu0Preconditioner;
+import mat.IterativeSolver;
+import mat.JacobiPreconditioner;
+import mat.SolverStats;
+import mat.SparseMatrix;
+import mat.SquareMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the iterative solvers and preconditioners.
+ */
+public class IterativeSolverTest {
+
+  private float delta = 1e-3f;
+
+  // 5-point laplacian on a grid x grid mesh, symmetric positive definite
+  private static SquareMatrix laplacian(SquareMatrix matrix, int grid) {
+    for (int r = 0; r < grid; r++) {
+      for (int c = 0; c < grid; c++) {
+        int i = r * grid + c;
+        matrix.set(i, i, 4f);
+        if (r > 0) {
+          matrix.set(i, i - grid, -1f);
+        }
+        if (r < grid - 1) {
+          matrix.set(i, i + grid, -1f);
+        }
+        if (c > 0) {
+          matrix.set(i, i - 1, -1f);
+        }
+        if (c < grid - 1) {
+          matrix.set(i, i + 1, -1f);
+        }
+      }
+    }
+    return matrix;
+  }
+
+  // upwinded convection-diffusion on a line, not symmetric
+  private static SquareMatrix convectionDiffusion(SquareMatrix matrix) {
+    int n = matrix.size();
+    for (int i = 0; i < n; i++) {
+      matrix.set(i, i, 3f);
+      if (i > 0) {
+        matrix.set(i, i - 1, -2f);
+      }
+      if (i < n - 1) {
+        matrix.set(i, i + 1, -0.5f);
+      }
+    }
+    return matrix;
+  }
+
+  // returns the right hand side b = matrix * ones
+  private static float[] rhsForOnes(SquareMatrix matrix) {
+    int n = matrix.size();
+    float[] b = new float[n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        b[i] += matrix.get(i, j);
+      }
+    }
+    return b;
+  }
+
+  private void assertSolvesToOnes(IterativeSolver solver, SquareMatrix matrix) {
+    float[] b = rhsForOnes(matrix);
+    float[] x = new float[matrix.size()];
+    SolverStats stats = solver.solve(matrix, b, x);
+
+    assertTrue(stats.toString(), stats.isConverged());
+    assertTrue(stats.getRelativeResidual() <= 1e-5);
+    assertTrue(stats.getMatrixVectorProducts() > 0);
+    for (float value : x) {
+      assertEquals(1f, value, delta);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void conjugateGradientSparse() {
+    SquareMatrix a = laplacian(new SparseMatrix(400), 20);
+    assertSolvesToOnes(new ConjugateGradientSolver(1e-6, 1000), a);
+  }
+
+  @Test(timeout = 10000)
+  public void conjugateGradientArray() {
+    SquareMatrix a = laplacian(new ArrayMatrix(400), 20);
+    assertSolvesToOnes(new ConjugateGradientSolver(1e-6, 1000), a);
+  }
+
+  @Test(timeout = 10000)
+  public void conjugateGradientJacobiParallel() {
+    SquareMatrix a = laplacian(new SparseMatrix(400), 20);
+    assertSolvesToOnes(
+        new ConjugateGradientSolver(1e-6, 1000, new JacobiPreconditioner(a), true), a);
+  }
+
+  @Test(timeout = 10000)
+  public void conjugateGradientIluConvergesFaster() {
+    SquareMatrix a = laplacian(new SparseMatrix(400), 20);
+    float[] b = rhsForOnes(a);
+
+    SolverStats plain = new ConjugateGradientSolver(1e-6, 1000).solve(a, b, new float[400]);
+    SolverStats ilu = new ConjugateGradientSolver(1e-6, 1000, new Ilu0Preconditioner(a), false)
+        .solve(a, b, new float[400]);
+
+    assertTrue(ilu.isConverged());
+    assertTrue(ilu.getIterations() < plain.getIterations());
+    assertEquals(ilu.getIterations(), ilu.getPreconditionerApplications());
+  }
+
+  @Test(timeout = 10000)
+  public void biCgStabSparse() {
+    SquareMatrix a = convectionDiffusion(new SparseMatrix(300));
+    assertSolvesToOnes(new BiCgStabSolver(1e-6, 1000), a);
+  }
+
+  @Test(timeout = 10000)
+  public void biCgStabIluArray() {
+    SquareMatrix a = convectionDiffusion(new ArrayMatrix(300));
+    assertSolvesToOnes(new BiCgStabSolver(1e-6, 1000, new Ilu0Preconditioner(a), false), a);
+  }
+
+  @Test(timeout = 10000)
+  public void gmresSparse() {
+    SquareMatrix a = convectionDiffusion(new SparseMatrix(300));
+    assertSolvesToOnes(new GmresSolver(1e-6, 2000, 30), a);
+  }
+
+  @Test(timeout = 10000)
+  public void gmresJacobiParallel() {
+    SquareMatrix a = laplacian(new SparseMatrix(400), 20);
+    assertSolvesToOnes(new GmresSolver(1e-6, 2000, 40, new JacobiPreconditioner(a), true), a);
+  }
+
+  @Test
+  public void iluIsExactForTridiagonal() {
+    // ILU(0) of a tridiagonal matrix has no dropped fill-in, so one application solves it
+    SquareMatrix a = convectionDiffusion(new SparseMatrix(50));
+    float[] b = rhsForOnes(a);
+    float[] z = new float[50];
+    new Ilu0Preconditioner(a).apply(b, z);
+
+    for (float value : z) {
+      assertEquals(1f, value, delta);
+    }
+  }
+
+  @Test
+  public void solverReusedAcrossSolves() {
+    SquareMatrix a = laplacian(new SparseMatrix(100), 10);
+    ConjugateGradientSolver solver = new ConjugateGradientSolver(1e-6, 1000);
+    assertSolvesToOnes(solver, a);
+    assertSolvesToOnes(solver, a);
+  }
+
+  @Test
+  public void zeroRightHandSide() {
+    SquareMatrix a = laplacian(new SparseMatrix(100), 10);
+    float[] x = new float[100];
+    SolverStats stats = new ConjugateGradientSolver(1e-6, 1000).solve(a, new float[100], x);
+
+    assertTrue(stats.isConverged());
+    assertEquals(0, stats.getIterations());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void solveVectorSizeMismatch() {
+    SquareMatrix a = laplacian(new SparseMatrix(100), 10);
+    new ConjugateGradientSolver(1e-6, 1000).solve(a, new float[99], new float[100]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void jacobiZeroDiagonal() {
+    new JacobiPreconditioner(new SparseMatrix(10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void iluZeroPivot() {
+    SquareMatrix a = new SparseMatrix(2);
+    a.set(0, 1, 1f);
+    a.set(1, 0, 1f);
+    new Ilu0Preconditioner(a);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveTolerance() {
+    new BiCgStabSolver(0, 10);
+  }
+}
@@ -0,0 +1,126 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import mat.ConcurrentSparseMatrix;
+import mat.MaintainedProduct;
+import mat.SparseMatrix;
+import mat.SquareMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the MaintainedProduct class.
+ */
+public class MaintainedProductTest {
+
+  private float delta = 0f;
+
+  private SparseMatrix randomMatrix(Random random, int size, int entries) {
+    SparseMatrix matrix = new SparseMatrix(size);
+    for (int k = 0; k < entries; k++) {
+      matrix.set(random.nextInt(size), random.nextInt(size), 1 + random.nextInt(4));
+    }
+    return matrix;
+  }
+
+  private void assertProduct(SparseMatrix a, SparseMatrix b, MaintainedProduct product) {
+    SquareMatrix expected = a.postmul(b);
+    SparseMatrix actual = product.get();
+    assertEquals(expected.nnz(), actual.nnz());
+    for (int i = 0; i < a.size(); i++) {
+      for (int j = 0; j < a.size(); j++) {
+        assertEquals(expected.get(i, j), actual.get(i, j), delta);
+      }
+    }
+  }
+
+  @Test
+  public void smallUpdatesRecomputeAffectedRows() {
+    Random random = new Random(5);
+    SparseMatrix a = randomMatrix(random, 60, 200);
+    SparseMatrix b = randomMatrix(random, 60, 200);
+    MaintainedProduct product = new MaintainedProduct(a, b);
+    assertProduct(a, b, product);
+    assertEquals(1, product.getFullRecomputes());
+
+    for (int round = 0; round < 50; round++) {
+      // add, change and remove entries of both operands, including to zero
+      SparseMatrix operand = random.nextBoolean() ? a : b;
+      int i = random.nextInt(60);
+      int j = random.nextInt(60);
+      operand.set(i, j, random.nextInt(3) == 0 ? 0f : 1 + random.nextInt(4));
+      assertProduct(a, b, product);
+    }
+    assertEquals(false, product.isStale());
+    assertEquals(true, product.getRecomputedRows() > 0);
+  }
+
+  @Test
+  public void refreshIsLazy() {
+    Random random = new Random(6);
+    SparseMatrix a = randomMatrix(random, 30, 60);
+    SparseMatrix b = randomMatrix(random, 30, 60);
+    MaintainedProduct product = new MaintainedProduct(a, b);
+    a.set(3, 4, 2f);
+    a.set(3, 5, 2f);
+    assertEquals(true, product.isStale());
+    assertProduct(a, b, product);
+    assertEquals(1, product.getRefreshes());
+    // nothing changed since
+    product.refresh();
+    assertEquals(1, product.getRefreshes());
+  }
+
+  @Test
+  public void resetAndLargeChangesRecomputeEverything() {
+    Random random = new Random(7);
+    SparseMatrix a = randomMatrix(random, 40, 100);
+    SparseMatrix b = randomMatrix(random, 40, 100);
+    MaintainedProduct product = new MaintainedProduct(a, b);
+    b.setIdentity();
+    assertProduct(a, b, product);
+    assertEquals(2, product.getFullRecomputes());
+
+    for (int i = 0; i < 40; i++) {
+      a.set(i, (i * 3) % 40, 2f);
+    }
+    assertProduct(a, b, product);
+    assertEquals(3, product.getFullRecomputes());
+  }
+
+  @Test
+  public void squareOfOneMatrix() {
+    Random random = new Random(8);
+    SparseMatrix a = randomMatrix(random, 50, 150);
+    MaintainedProduct product = new MaintainedProduct(a, a);
+    a.set(7, 9, 3f);
+    a.set(20, 7, 0f);
+    assertProduct(a, a, product);
+
+    a.compact();
+    a.set(1, 2, 4f);
+    assertProduct(a, a, product);
+  }
+
+  @Test
+  public void closedProductStopsObserving() {
+    SparseMatrix a = new SparseMatrix(5);
+    SparseMatrix b = new SparseMatrix(5);
+    a.set(0, 1, 2f);
+    b.set(1, 2, 3f);
+    MaintainedProduct product = new MaintainedProduct(a, b);
+    product.close();
+    a.set(0, 1, 5f);
+    assertEquals(false, product.isStale());
+    assertEquals(6f, product.get().get(0, 2), delta);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sizeMismatch() {
+    new MaintainedProduct(new SparseMatrix(3), new SparseMatrix(4));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void concurrentOperandRejected() {
+    new MaintainedProduct(new SparseMatrix(4), new ConcurrentSparseMatrix(4));
+  }
+}
@@ -0,0 +1,187 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import mat.ArrayMatrix;
+import mat.Permutation;
+import mat.SparseMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the flight recorder events of the matrices.
+ */
+public class MatrixEventTest {
+
+  // run the task under a recording of the given event and return the recorded events
+  private List<RecordedEvent> record(String eventName, Runnable task) throws Exception {
+    Path file = Files.createTempFile("matrix", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(eventName).withoutThreshold();
+      recording.start();
+      task.run();
+      recording.stop();
+      recording.dump(file);
+    }
+    List<RecordedEvent> events = new ArrayList<>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      if (event.getEventType().getName().equals(eventName)) {
+        events.add(event);
+      }
+    }
+    Files.delete(file);
+    return events;
+  }
+
+  // the event that the parallel kernels of the calling thread report to, which is internal
+  private static Object currentEvent() {
+    try {
+      Field field = Class.forName("mat.MatrixEvent").getDeclaredField("CURRENT");
+      field.setAccessible(true);
+      return ((ThreadLocal<?>) field.get(null)).get();
+    } catch (ReflectiveOperationException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void operationEventsCarryOperandsAndKernel() throws Exception {
+    SparseMatrix sparse = new SparseMatrix(4);
+    sparse.set(0, 0, 1f);
+    sparse.set(1, 2, 2f);
+    ArrayMatrix array = new ArrayMatrix(4);
+    array.setIdentity();
+
+    List<RecordedEvent> events = record("mat.MatrixOperation", () -> {
+      sparse.add(sparse);
+      sparse.postmul(array);
+      sparse.map(x -> x + 1f);
+    });
+
+    assertEquals(3, events.size());
+    RecordedEvent add = events.get(0);
+    assertEquals("add", add.getString("operation"));
+    assertEquals("SparseMatrix.addSparseMatrix", add.getString("kernel"));
+    assertEquals("SparseMatrix", add.getString("receiverType"));
+    assertEquals(4, add.getInt("size"));
+    assertEquals(2L, add.getLong("receiverNnz"));
+    assertEquals(2L, add.getLong("argumentNnz"));
+    assertEquals(2L, add.getLong("resultNnz"));
+    assertEquals(1, add.getInt("threads"));
+
+    RecordedEvent product = events.get(1);
+    assertEquals("postmul", product.getString("operation"));
+    assertEquals("ArrayMatrix.premulSparseMatrix", product.getString("kernel"));
+    assertEquals("ArrayMatrix", product.getString("argumentType"));
+    assertEquals(4L, product.getLong("argumentNnz"));
+    assertTrue(product.getLong("allocatedBytes") >= -1);
+
+    RecordedEvent map = events.get(2);
+    assertEquals("mapUnary", map.getString("operation"));
+    assertEquals("SparseMatrix.map", map.getString("kernel"));
+    // 1 at 0 fills every entry of the result
+    assertEquals(16L, map.getLong("resultNnz"));
+  }
+
+  @Test(timeout = 30000)
+  public void parallelKernelsRecordTheirThreads() throws Exception {
+    SparseMatrix sparse = new SparseMatrix(300);
+    ArrayMatrix array = new ArrayMatrix(300);
+    for (int i = 0; i < 300; i++) {
+      sparse.set(i, (i * 7) % 300, 1f);
+      for (int j = 0; j < 300; j++) {
+        array.set(i, j, i + j);
+      }
+    }
+
+    List<RecordedEvent> events = record("mat.MatrixOperation", () -> array.postmul(sparse));
+
+    assertEquals(1, events.size());
+    assertEquals("SparseMatrix.premulArrayMatrix", events.get(0).getString("kernel"));
+    // the rows are split into several tasks, run by the pool and possibly the calling thread
+    int threads = events.get(0).getInt("threads");
+    assertTrue(threads >= 1 && threads <= ForkJoinPool.getCommonPoolParallelism() + 1);
+  }
+
+  @Test(timeout = 30000)
+  public void eventEndedByAnExceptionIsReleased() throws Exception {
+    SparseMatrix sparse = new SparseMatrix(300);
+    ArrayMatrix array = new ArrayMatrix(300);
+    for (int i = 0; i < 300; i++) {
+      sparse.set(i, (i * 7) % 300, 1f);
+      for (int j = 0; j < 300; j++) {
+        array.set(i, j, i + j);
+      }
+    }
+
+    List<RecordedEvent> events = record("mat.MatrixOperation", () -> {
+      try {
+        sparse.map(sparse, (a, b) -> {
+          throw new IllegalStateException("kernel failed");
+        });
+        fail();
+      } catch (IllegalStateException e) {
+        // the event of the failed operation is not committed
+      }
+      assertNull(currentEvent());
+      array.postmul(sparse);
+      sparse.add(sparse);
+    });
+    assertNull(currentEvent());
+
+    assertEquals(2, events.size());
+    assertEquals("SparseMatrix.premulArrayMatrix", events.get(0).getString("kernel"));
+    int threads = events.get(0).getInt("threads");
+    assertTrue(threads >= 1 && threads <= ForkJoinPool.getCommonPoolParallelism() + 1);
+    assertEquals("SparseMatrix.addSparseMatrix", events.get(1).getString("kernel"));
+    assertEquals(1, events.get(1).getInt("threads"));
+  }
+
+  @Test(timeout = 30000)
+  public void constructionEventsCarryKindAndNnz() throws Exception {
+    SparseMatrix sparse = new SparseMatrix(5);
+    sparse.set(0, 4, 1f);
+    sparse.set(3, 1, 2f);
+    sparse.set(4, 4, 3f);
+
+    List<RecordedEvent> events = record("mat.MatrixConstruction", () -> {
+      sparse.permute(Permutation.identity(5));
+      sparse.freeze();
+    });
+
+    assertEquals(2, events.size());
+    assertEquals("permute", events.get(0).getString("kind"));
+    assertEquals("SparseMatrix", events.get(0).getString("type"));
+    assertEquals(3L, events.get(0).getLong("nnz"));
+    assertEquals("freeze", events.get(1).getString("kind"));
+    assertEquals("ImmutableSparseMatrix", events.get(1).getString("type"));
+    assertEquals(5, events.get(1).getInt("size"));
+  }
+
+  @Test(timeout = 30000)
+  public void noEventsWhenDisabled() throws Exception {
+    SparseMatrix sparse = new SparseMatrix(3);
+    sparse.set(1, 1, 1f);
+    Path file = Files.createTempFile("matrix", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.disable("mat.MatrixOperation");
+      recording.start();
+      sparse.add(sparse);
+      recording.stop();
+      recording.dump(file);
+    }
+    for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      assertTrue(!event.getEventType().getName().equals("mat.MatrixOperation"));
+    }
+    Files.delete(file);
+  }
+}
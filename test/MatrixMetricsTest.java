@@ -0,0 +1,170 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import mat.ArrayMatrix;
+import mat.MatrixMetrics;
+import mat.MatrixOperationStats;
+import mat.SparseMatrix;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the MatrixMetrics class.
+ */
+public class MatrixMetricsTest {
+
+  private MatrixMetrics metrics;
+  private SparseMatrix sparse;
+  private ArrayMatrix array;
+
+  @Before
+  public void setUp() {
+    this.metrics = MatrixMetrics.getInstance();
+    this.metrics.reset();
+
+    // row 0 has two entries, column 1 has two entries
+    this.sparse = new SparseMatrix(3);
+    this.sparse.set(0, 0, 1f);
+    this.sparse.set(0, 1, 2f);
+    this.sparse.set(2, 1, 3f);
+
+    this.array = new ArrayMatrix(3);
+    this.array.setIdentity();
+  }
+
+  @After
+  public void tearDown() {
+    this.metrics.setEnabled(false);
+    this.metrics.reset();
+  }
+
+  @Test
+  public void disabledRecordsNothing() {
+    this.metrics.setEnabled(false);
+    this.sparse.add(this.sparse);
+    this.sparse.postmul(this.array);
+    assertEquals(0, this.metrics.getOperationCount());
+    assertTrue(this.metrics.getOperations().isEmpty());
+  }
+
+  @Test
+  public void countsEveryPairOfTypes() {
+    this.metrics.setEnabled(true);
+    this.sparse.add(this.sparse);
+    this.sparse.add(this.sparse);
+    this.sparse.postmul(this.array);
+    this.array.premul(this.sparse);
+    this.array.add(this.array);
+
+    assertEquals(5, this.metrics.getOperationCount());
+    assertEquals(2, this.metrics.get("add", "SparseMatrix", "SparseMatrix").getCount());
+    assertEquals(1, this.metrics.get("postmul", "SparseMatrix", "ArrayMatrix").getCount());
+    assertEquals(1, this.metrics.get("premul", "ArrayMatrix", "SparseMatrix").getCount());
+    assertEquals(1, this.metrics.get("add", "ArrayMatrix", "ArrayMatrix").getCount());
+    assertEquals(0, this.metrics.get("add", "SparseMatrix", "ArrayMatrix").getCount());
+    assertEquals(4, this.metrics.getOperations().size());
+
+    MatrixOperationStats total = null;
+    for (MatrixOperationStats stats : this.metrics.getOperationTotals()) {
+      if (stats.getOperation().equals("add")) {
+        total = stats;
+      }
+    }
+    assertEquals(3, total.getCount());
+    assertEquals("*", total.getReceiverType());
+  }
+
+  @Test
+  public void recordsNnzAndFlops() {
+    this.metrics.setEnabled(true);
+    this.sparse.add(this.sparse);
+    // sparse * sparse: column k of the left times row k of the right
+    // column 0 has 1 entry and row 0 has 2, column 1 has 2 entries and row 1 has none
+    this.sparse.postmul(this.sparse);
+
+    MatrixOperationStats add = this.metrics.get("add", "SparseMatrix", "SparseMatrix");
+    assertEquals(6, add.getInputNnz());
+    assertEquals(3, add.getOutputNnz());
+    assertEquals(6, add.getFlops());
+
+    MatrixOperationStats product = this.metrics.get("postmul", "SparseMatrix", "SparseMatrix");
+    assertEquals(6, product.getInputNnz());
+    assertEquals(2, product.getOutputNnz());
+    assertEquals(4, product.getFlops());
+  }
+
+  @Test
+  public void mapOfOneMatrixIsRecorded() {
+    this.metrics.setEnabled(true);
+    // 1 at 0 makes the result dense, with 0 only where sparse holds -1
+    this.sparse.map(x -> x + 1f);
+    this.array.map(x -> 2f * x);
+
+    MatrixOperationStats sparseMap = this.metrics.get("mapUnary", "SparseMatrix",
+        "SparseMatrix");
+    assertEquals(1, sparseMap.getCount());
+    assertEquals(3, sparseMap.getInputNnz());
+    assertEquals(9, sparseMap.getOutputNnz());
+    assertEquals(3, sparseMap.getFlops());
+    MatrixOperationStats arrayMap = this.metrics.get("mapUnary", "ArrayMatrix", "ArrayMatrix");
+    assertEquals(1, arrayMap.getCount());
+    assertEquals(3, arrayMap.getOutputNnz());
+    assertEquals(0, this.metrics.get("map", "SparseMatrix", "SparseMatrix").getCount());
+  }
+
+  @Test
+  public void premulCountsFlopsOfOtherTimesThis() {
+    this.metrics.setEnabled(true);
+    // identity * sparse has one multiply-add for every entry of sparse
+    this.sparse.premul(this.array);
+    MatrixOperationStats product = this.metrics.get("premul", "SparseMatrix", "ArrayMatrix");
+    assertEquals(6, product.getFlops());
+    assertEquals(6, product.getInputNnz());
+  }
+
+  @Test
+  public void latencyHistogramMatchesCount() {
+    this.metrics.setEnabled(true);
+    for (int k = 0; k < 10; k++) {
+      this.sparse.postmul(this.array);
+    }
+    MatrixOperationStats stats = this.metrics.get("postmul", "SparseMatrix", "ArrayMatrix");
+    long histogramTotal = 0;
+    for (long bucket : stats.getLatencyHistogram()) {
+      histogramTotal += bucket;
+    }
+    assertEquals(10, histogramTotal);
+    assertTrue(stats.getTotalNanos() > 0);
+    assertTrue(stats.getP50Nanos() <= stats.getP99Nanos());
+    assertTrue(stats.getP99Nanos() <= stats.getMaxNanos());
+    assertTrue(stats.getMeanNanos() <= stats.getMaxNanos());
+  }
+
+  @Test
+  public void exposedThroughJmx() throws Exception {
+    ObjectName name = MatrixMetrics.register();
+    // registering twice is harmless
+    assertEquals(name, MatrixMetrics.register());
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.setAttribute(name, new javax.management.Attribute("Enabled", true));
+    assertTrue(this.metrics.isEnabled());
+
+    this.sparse.add(this.array);
+    assertEquals(1L, server.getAttribute(name, "OperationCount"));
+    CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+    assertEquals(1, operations.length);
+    assertEquals("add", operations[0].get("operation"));
+    assertEquals("SparseMatrix", operations[0].get("receiverType"));
+    assertEquals("ArrayMatrix", operations[0].get("argumentType"));
+    assertEquals(1L, operations[0].get("count"));
+
+    server.invoke(name, "reset", null, null);
+    assertEquals(0L, server.getAttribute(name, "OperationCount"));
+  }
+}
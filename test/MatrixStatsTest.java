@@ -0,0 +1,167 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import mat.ArrayMatrix;
+import mat.ConcurrentSparseMatrix;
+import mat.MatrixStats;
+import mat.SparseMatrix;
+import mat.SquareMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the nnz, estimatedBytes and stats operations of the
+ * matrices.
+ */
+public class MatrixStatsTest {
+
+  private void checkCounting(SquareMatrix matrix) {
+    assertEquals(0, matrix.nnz());
+    matrix.set(0, 0, 1f);
+    matrix.set(0, 3, 2f);
+    matrix.set(2, 1, 3f);
+    assertEquals(3, matrix.nnz());
+
+    // overwriting a non-zero entry does not change the count
+    matrix.set(0, 3, 5f);
+    assertEquals(3, matrix.nnz());
+
+    // removing an entry, and removing an entry that does not exist
+    matrix.set(0, 0, 0f);
+    matrix.set(1, 1, 0f);
+    assertEquals(2, matrix.nnz());
+
+    matrix.setIdentity();
+    assertEquals(matrix.size(), matrix.nnz());
+  }
+
+  @Test
+  public void sparseCountsEntries() {
+    checkCounting(new SparseMatrix(4));
+  }
+
+  @Test
+  public void arrayCountsEntries() {
+    checkCounting(new ArrayMatrix(4));
+  }
+
+  @Test
+  public void concurrentCountsEntries() {
+    checkCounting(new ConcurrentSparseMatrix(4, 2));
+  }
+
+  @Test
+  public void resultsCountEntries() {
+    SparseMatrix a = new SparseMatrix(3);
+    a.set(0, 0, 1f);
+    a.set(1, 2, 2f);
+    ArrayMatrix b = new ArrayMatrix(3);
+    b.set(2, 2, 1f);
+
+    assertEquals(2, a.add(a).nnz());
+    assertEquals(3, b.add(a).nnz());
+    assertEquals(1, a.postmul(a).nnz());
+    assertEquals(2, a.permute(mat.Permutation.identity(3)).nnz());
+    assertEquals(2, a.freeze().nnz());
+  }
+
+  @Test
+  public void statsDescribeTheStructure() {
+    SquareMatrix[] matrices = {new SparseMatrix(5), new ArrayMatrix(5)};
+    for (SquareMatrix matrix : matrices) {
+      // row 0 has three entries, rows 2 and 3 one each, column 4 has two entries
+      matrix.set(0, 0, 1f);
+      matrix.set(0, 1, 1f);
+      matrix.set(0, 4, 1f);
+      matrix.set(2, 4, 1f);
+      matrix.set(3, 0, 1f);
+
+      MatrixStats stats = matrix.stats();
+      assertEquals(5, stats.getSize());
+      assertEquals(5, stats.getNnz());
+      assertEquals(0.2, stats.getDensity(), 1e-12);
+      assertArrayEquals(new int[]{2, 2, 0, 1}, stats.getRowLengthHistogram());
+      assertArrayEquals(new int[]{2, 1, 2}, stats.getColumnLengthHistogram());
+      assertEquals(3, stats.getMaxRowLength());
+      assertEquals(2, stats.getMaxColumnLength());
+      assertEquals(2, stats.getEmptyRows());
+      assertEquals(3, stats.getLowerBandwidth());
+      assertEquals(4, stats.getUpperBandwidth());
+      assertEquals(4, stats.getBandwidth());
+    }
+  }
+
+  @Test
+  public void statsOfFrozenMatchLinked() {
+    SparseMatrix matrix = new SparseMatrix(50);
+    Random random = new Random(3);
+    for (int k = 0; k < 200; k++) {
+      matrix.set(random.nextInt(50), random.nextInt(50), 1f + random.nextFloat());
+    }
+    MatrixStats linked = matrix.stats();
+    MatrixStats frozen = matrix.freeze().stats();
+    assertEquals(linked.getNnz(), frozen.getNnz());
+    assertArrayEquals(linked.getRowLengthHistogram(), frozen.getRowLengthHistogram());
+    assertArrayEquals(linked.getColumnLengthHistogram(), frozen.getColumnLengthHistogram());
+    assertEquals(linked.getLowerBandwidth(), frozen.getLowerBandwidth());
+    assertEquals(linked.getUpperBandwidth(), frozen.getUpperBandwidth());
+  }
+
+  @Test
+  public void emptyMatrixStats() {
+    MatrixStats stats = new SparseMatrix(3).stats();
+    assertEquals(0, stats.getNnz());
+    assertEquals(0, stats.getBandwidth());
+    assertArrayEquals(new int[]{3}, stats.getRowLengthHistogram());
+  }
+
+  @Test
+  public void estimatedBytesGrowWithEntries() {
+    SparseMatrix sparse = new SparseMatrix(1000);
+    long empty = sparse.estimatedBytes();
+    // empty rows and columns have no sentinels
+    assertTrue(empty < 1000);
+    sparse.set(5, 5, 1f);
+    sparse.set(6, 5, 1f);
+    assertTrue(sparse.estimatedBytes() > empty);
+
+    ArrayMatrix array = new ArrayMatrix(1000);
+    assertTrue(array.estimatedBytes() >= 4L * 1000 * 1000);
+    assertTrue(new ConcurrentSparseMatrix(1000).estimatedBytes() > empty);
+  }
+
+  @Test(timeout = 20000)
+  public void concurrentCountIsExactAfterParallelWriters() throws Exception {
+    ConcurrentSparseMatrix matrix = new ConcurrentSparseMatrix(400, 8);
+    Thread[] writers = new Thread[4];
+    for (int t = 0; t < writers.length; t++) {
+      int offset = t;
+      writers[t] = new Thread(() -> {
+        // every writer owns its own rows
+        for (int i = offset; i < 400; i += 4) {
+          for (int j = 0; j < 20; j++) {
+            matrix.set(i, (i + j * 7) % 400, 1f);
+          }
+          matrix.set(i, i % 400, 0f);
+        }
+      });
+      writers[t].start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+
+    long expected = matrix.freeze().stats().getNnz();
+    long counted = 0;
+    for (int i = 0; i < 400; i++) {
+      for (int j = 0; j < 400; j++) {
+        if (matrix.get(i, j) != 0f) {
+          counted++;
+        }
+      }
+    }
+    assertEquals(counted, matrix.nnz());
+    assertEquals(counted, expected);
+  }
+}
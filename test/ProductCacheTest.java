@@ -0,0 +1,132 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import mat.ArrayMatrix;
+import mat.ConcurrentSparseMatrix;
+import mat.ProductCache;
+import mat.SparseMatrix;
+import mat.SquareMatrix;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the ProductCache class.
+ */
+public class ProductCacheTest {
+
+  private ProductCache cache;
+  private SparseMatrix a;
+  private SparseMatrix b;
+  private float delta = 0f;
+
+  @Before
+  public void setUp() {
+    cache = new ProductCache(8, 1 << 20);
+    a = new SparseMatrix(10);
+    b = new SparseMatrix(10);
+    a.set(0, 1, 2f);
+    a.set(1, 1, 3f);
+    b.set(1, 4, 5f);
+  }
+
+  @Test
+  public void repeatedProductIsServedFromCache() {
+    SquareMatrix first = cache.postmul(a, b);
+    SquareMatrix second = cache.postmul(a, b);
+    assertSame(first, second);
+    assertEquals(10f, second.get(0, 4), delta);
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    // the operation and the order of the operands are part of the key
+    assertEquals(0f, cache.postmul(b, a).get(0, 4), delta);
+    assertEquals(10f, cache.premul(b, a).get(0, 4), delta);
+    assertEquals(5f, cache.add(a, b).get(1, 4), delta);
+    assertEquals(4, cache.getMisses());
+    assertEquals(4, cache.size());
+  }
+
+  @Test
+  public void changedOperandIsNeverServed() {
+    SquareMatrix first = cache.postmul(a, b);
+    b.set(1, 4, 7f);
+    SquareMatrix second = cache.postmul(a, b);
+    assertNotSame(first, second);
+    assertEquals(14f, second.get(0, 4), delta);
+
+    a.setIdentity();
+    assertEquals(7f, cache.postmul(a, b).get(1, 4), delta);
+    assertEquals(0, cache.getHits());
+    assertEquals(1, cache.size());
+
+    // removing an entry that does not exist changes nothing
+    a.set(5, 6, 0f);
+    assertEquals(7f, cache.postmul(a, b).get(1, 4), delta);
+    assertEquals(1, cache.getHits());
+  }
+
+  @Test
+  public void changedResultIsNeverServed() {
+    SquareMatrix first = cache.add(a, b);
+    first.set(9, 9, 1f);
+    SquareMatrix second = cache.add(a, b);
+    assertNotSame(first, second);
+    assertEquals(0f, second.get(9, 9), delta);
+  }
+
+  @Test
+  public void leastRecentlyUsedIsEvicted() {
+    ProductCache small = new ProductCache(2, 1 << 20);
+    SquareMatrix ab = small.postmul(a, b);
+    SquareMatrix ba = small.postmul(b, a);
+    // use a * b, so that b * a is the least recently used
+    assertSame(ab, small.postmul(a, b));
+    small.add(a, b);
+    assertEquals(2, small.size());
+    assertEquals(1, small.getEvictions());
+    assertSame(ab, small.postmul(a, b));
+    assertNotSame(ba, small.postmul(b, a));
+  }
+
+  @Test
+  public void sizeBoundIsKept() {
+    ProductCache small = new ProductCache(100, 2000);
+    ArrayMatrix dense = new ArrayMatrix(30);
+    // a dense 30 x 30 result takes more than the bound, hence it is not kept
+    small.add(dense, dense);
+    assertEquals(0, small.size());
+    small.postmul(a, b);
+    assertEquals(1, small.size());
+    assertEquals(true, small.estimatedBytes() <= 2000);
+
+    small.clear();
+    assertEquals(0, small.size());
+    assertEquals(0, small.estimatedBytes());
+  }
+
+  @Test
+  public void modificationCounts() {
+    ConcurrentSparseMatrix concurrent = new ConcurrentSparseMatrix(5);
+    ArrayMatrix dense = new ArrayMatrix(5);
+    for (SquareMatrix matrix : new SquareMatrix[] {new SparseMatrix(5), concurrent, dense}) {
+      long count = matrix.modificationCount();
+      matrix.set(1, 2, 3f);
+      assertEquals(true, matrix.modificationCount() > count);
+      count = matrix.modificationCount();
+      matrix.setIdentity();
+      assertEquals(true, matrix.modificationCount() > count);
+    }
+    assertEquals(0, a.freeze().modificationCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveBound() {
+    new ProductCache(0, 100);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sizeMismatch() {
+    cache.postmul(a, new SparseMatrix(3));
+  }
+}
@@ -0,0 +1,129 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import mat.Permutation;
+import mat.Reordering;
+import mat.SparseMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the orderings and permutations.
+ */
+public class ReorderingTest {
+
+  private float delta = 0f;
+
+  // 5-point laplacian on a grid x grid mesh with its nodes numbered randomly
+  private static SparseMatrix scrambledLaplacian(int grid, long seed) {
+    int n = grid * grid;
+    int[] label = new int[n];
+    for (int i = 0; i < n; i++) {
+      label[i] = i;
+    }
+    Random random = new Random(seed);
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = label[i];
+      label[i] = label[j];
+      label[j] = swap;
+    }
+
+    SparseMatrix matrix = new SparseMatrix(n);
+    for (int r = 0; r < grid; r++) {
+      for (int c = 0; c < grid; c++) {
+        int i = label[r * grid + c];
+        matrix.set(i, i, 4f);
+        if (r > 0) {
+          matrix.set(i, label[(r - 1) * grid + c], -1f);
+        }
+        if (r < grid - 1) {
+          matrix.set(i, label[(r + 1) * grid + c], -1f);
+        }
+        if (c > 0) {
+          matrix.set(i, label[r * grid + c - 1], -1f);
+        }
+        if (c < grid - 1) {
+          matrix.set(i, label[r * grid + c + 1], -1f);
+        }
+      }
+    }
+    return matrix;
+  }
+
+  @Test(timeout = 10000)
+  public void reverseCuthillMcKeeReducesBandwidth() {
+    SparseMatrix a = scrambledLaplacian(30, 1);
+    Permutation p = Reordering.reverseCuthillMcKee(a);
+    SparseMatrix reordered = a.permute(p);
+
+    assertTrue(Reordering.bandwidth(a) > 500);
+    // a level structure of the grid has at most 30 nodes per level, hence bandwidth < 60
+    assertTrue(Reordering.bandwidth(reordered) < 60);
+  }
+
+  @Test(timeout = 10000)
+  public void reverseCuthillMcKeeDisconnected() {
+    SparseMatrix a = new SparseMatrix(10);
+    a.set(0, 9, 1f);
+    a.set(9, 0, 1f);
+    a.set(3, 3, 2f);
+    a.set(5, 7, 1f);
+
+    Permutation p = Reordering.reverseCuthillMcKee(a);
+    boolean[] seen = new boolean[10];
+    for (int k = 0; k < 10; k++) {
+      seen[p.get(k)] = true;
+    }
+    for (boolean s : seen) {
+      assertTrue(s);
+    }
+    assertEquals(1, Reordering.bandwidth(a.permute(p)));
+  }
+
+  @Test
+  public void degreeOrdering() {
+    SparseMatrix a = new SparseMatrix(4);
+    // node 0 is a hub, nodes 1 and 2 have one neighbour, node 3 is isolated
+    a.set(0, 1, 1f);
+    a.set(0, 2, 1f);
+    a.set(3, 3, 1f);
+
+    assertArrayEquals(new int[] {3, 1, 2, 0}, Reordering.degree(a).toArray());
+  }
+
+  @Test(timeout = 10000)
+  public void minimumDegreeIsPermutation() {
+    SparseMatrix a = scrambledLaplacian(10, 2);
+    Permutation p = Reordering.minimumDegree(a);
+    for (int k = 0; k < p.size(); k++) {
+      assertEquals(k, p.positionOf(p.get(k)));
+    }
+  }
+
+  @Test
+  public void applyAndApplyInverse() {
+    Permutation p = new Permutation(new int[] {2, 0, 1});
+    float[] x = {10f, 20f, 30f};
+    float[] permuted = new float[3];
+    float[] restored = new float[3];
+    p.apply(x, permuted);
+    p.inverse().apply(permuted, restored);
+
+    assertArrayEquals(new float[] {30f, 10f, 20f}, permuted, delta);
+    assertArrayEquals(x, restored, delta);
+    p.applyInverse(permuted, restored);
+    assertArrayEquals(x, restored, delta);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void repeatedIndexIsNotPermutation() {
+    new Permutation(new int[] {0, 1, 1});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void outOfBoundsIndexIsNotPermutation() {
+    new Permutation(new int[] {0, 3, 1});
+  }
+}
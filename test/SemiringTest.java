@@ -0,0 +1,306 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+import mat.ArrayMatrix;
+import mat.ConcurrentSparseMatrix;
+import mat.Semiring;
+import mat.SparseMatrix;
+import mat.SquareMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the semiring products of SparseMatrix.
+ */
+public class SemiringTest {
+
+  private float delta = 0f;
+
+  // edges 0->1, 0->2, 1->3, 2->3, 3->4 with the given weights, and 5 unreachable
+  private SparseMatrix graph() {
+    SparseMatrix graph = new SparseMatrix(6);
+    graph.set(0, 1, 4f);
+    graph.set(0, 2, 1f);
+    graph.set(1, 3, 1f);
+    graph.set(2, 3, 5f);
+    graph.set(3, 4, 2f);
+    return graph;
+  }
+
+  @Test
+  public void plusTimesIsTheOrdinaryProduct() {
+    Random random = new Random(9);
+    SparseMatrix a = new SparseMatrix(30);
+    ArrayMatrix b = new ArrayMatrix(30);
+    for (int k = 0; k < 100; k++) {
+      a.set(random.nextInt(30), random.nextInt(30), random.nextInt(5) - 2);
+      b.set(random.nextInt(30), random.nextInt(30), random.nextInt(5) - 2);
+    }
+    SquareMatrix expected = new SparseMatrix(30).add(b).premul(a);
+    SparseMatrix actual = a.multiply(b, Semiring.PLUS_TIMES);
+    for (int i = 0; i < 30; i++) {
+      for (int j = 0; j < 30; j++) {
+        assertEquals(expected.get(i, j), actual.get(i, j), delta);
+      }
+    }
+
+    float[] x = new float[30];
+    float[] y = new float[30];
+    for (int i = 0; i < 30; i++) {
+      x[i] = i % 3;
+    }
+    a.multiply(x, y, Semiring.PLUS_TIMES);
+    for (int i = 0; i < 30; i++) {
+      float sum = 0f;
+      for (int j = 0; j < 30; j++) {
+        sum += a.get(i, j) * x[j];
+      }
+      assertEquals(sum, y[i], delta);
+    }
+  }
+
+  @Test
+  public void breadthFirstSearchLevels() {
+    for (Semiring semiring : new Semiring[] {Semiring.LOR_LAND, Semiring.ANY_PAIR}) {
+      SparseMatrix graph = graph();
+      graph.compact();
+      float[] frontier = new float[6];
+      float[] next = new float[6];
+      int[] level = {0, -1, -1, -1, -1, -1};
+      frontier[0] = 1f;
+      for (int depth = 1; depth < 6; depth++) {
+        // one level is one product, then the visited vertices are masked out
+        graph.multiplyTransposed(frontier, next, semiring);
+        for (int v = 0; v < 6; v++) {
+          frontier[v] = next[v] != 0f && level[v] < 0 ? 1f : 0f;
+          if (frontier[v] != 0f) {
+            level[v] = depth;
+          }
+        }
+      }
+      assertArrayEquals(new int[] {0, 1, 1, 2, 3, -1}, level);
+    }
+  }
+
+  @Test
+  public void minPlusShortestPaths() {
+    SparseMatrix graph = graph();
+    // paths of exactly two edges
+    SparseMatrix twoHops = graph.multiply(graph, Semiring.MIN_PLUS);
+    assertEquals(5f, twoHops.get(0, 3), delta);
+    assertEquals(3f, twoHops.get(1, 4), delta);
+    assertEquals(0f, twoHops.get(0, 1), delta);
+    assertEquals(3, twoHops.nnz());
+
+    SparseMatrix longest = graph.multiply(graph, Semiring.MAX_PLUS);
+    assertEquals(6f, longest.get(0, 3), delta);
+  }
+
+  @Test
+  public void bellmanFordFromASourceAtDistanceZero() {
+    SparseMatrix graph = graph();
+    float inf = Float.POSITIVE_INFINITY;
+    float[] distance = {0f, inf, inf, inf, inf, inf};
+    BitSet changed = new BitSet();
+    changed.set(0);
+    float[] next = new float[6];
+    BitSet reached = new BitSet();
+
+    // the first step leaves the source, whose distance is 0
+    graph.multiplyTransposed(distance, changed, next, reached, Semiring.MIN_PLUS);
+    assertEquals(2, reached.cardinality());
+    assertEquals(4f, next[1], delta);
+    assertEquals(1f, next[2], delta);
+
+    // relax from the vertices whose distance changed, until none does
+    int steps = 0;
+    while (!changed.isEmpty()) {
+      graph.multiplyTransposed(distance, changed, next, reached, Semiring.MIN_PLUS);
+      changed.clear();
+      for (int v = reached.nextSetBit(0); v >= 0; v = reached.nextSetBit(v + 1)) {
+        if (next[v] < distance[v]) {
+          distance[v] = next[v];
+          changed.set(v);
+        }
+      }
+      steps++;
+    }
+    assertArrayEquals(new float[] {0f, 4f, 1f, 5f, 7f, inf}, distance, delta);
+    assertEquals(4, steps);
+  }
+
+  @Test
+  public void presentEntriesMayBeZero() {
+    SparseMatrix graph = graph();
+    // the distances to 4, through the rows of the edges into 3 and 4
+    float[] x = {0f, 0f, 0f, 2f, 0f, 0f};
+    BitSet present = new BitSet();
+    present.set(3);
+    present.set(4);
+    float[] y = new float[6];
+    BitSet reached = new BitSet();
+    graph.multiply(x, present, y, reached, Semiring.MIN_PLUS);
+    assertArrayEquals(new float[] {0f, 3f, 7f, 2f, 0f, 0f}, y, delta);
+    assertEquals(3, reached.cardinality());
+    assertFalse(reached.get(0));
+
+    // a sum of exactly 0 is still reached
+    x[4] = -2f;
+    graph.multiply(x, present, y, reached, Semiring.MIN_PLUS);
+    assertEquals(0f, y[3], delta);
+    assertTrue(reached.get(3));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void presentEntryPastTheSize() {
+    BitSet present = new BitSet();
+    present.set(6);
+    graph().multiplyTransposed(new float[6], present, new float[6], new BitSet(),
+        Semiring.MIN_PLUS);
+  }
+
+  @Test
+  public void maxTimesAndVectors() {
+    SparseMatrix graph = graph();
+    float[] x = {0f, 0.5f, 2f, 0f, 0f, 0f};
+    float[] y = new float[6];
+    graph.multiply(x, y, Semiring.MAX_TIMES);
+    assertArrayEquals(new float[] {2f, 0f, 0f, 0f, 0f, 0f}, y, delta);
+    graph.multiply(x, y, Semiring.MIN_PLUS);
+    assertArrayEquals(new float[] {3f, 0f, 0f, 0f, 0f, 0f}, y, delta);
+  }
+
+  @Test
+  public void customSemiring() {
+    // max-min, the widest path algebra
+    Semiring maxMin = new Semiring() {
+      @Override
+      public float add(float a, float b) {
+        return Math.max(a, b);
+      }
+
+      @Override
+      public float multiply(float a, float b) {
+        return Math.min(a, b);
+      }
+
+      @Override
+      public float zero() {
+        return Float.NEGATIVE_INFINITY;
+      }
+    };
+    SparseMatrix graph = graph();
+    SparseMatrix widest = graph.multiply(graph, maxMin);
+    assertEquals(1f, widest.get(0, 3), delta);
+    assertEquals(1f, widest.get(1, 4), delta);
+    SparseMatrix masked = graph.multiplyMasked(graph, widest, maxMin);
+    assertEquals(1f, masked.get(0, 3), delta);
+    assertEquals(1f, masked.get(1, 4), delta);
+
+    float[] x = {0f, 0f, 0f, 3f, 0f, 0f};
+    float[] y = new float[6];
+    graph.multiply(x, y, maxMin);
+    assertArrayEquals(new float[] {0f, 1f, 3f, 0f, 0f, 0f}, y, delta);
+  }
+
+  @Test
+  public void maskedProductsSplitTheProduct() {
+    Random random = new Random(11);
+    SparseMatrix a = new SparseMatrix(40);
+    SparseMatrix b = new SparseMatrix(40);
+    SparseMatrix mask = new SparseMatrix(40);
+    for (int k = 0; k < 200; k++) {
+      a.set(random.nextInt(40), random.nextInt(40), random.nextInt(5) - 2);
+      b.set(random.nextInt(40), random.nextInt(40), random.nextInt(5) - 2);
+      mask.set(random.nextInt(40), random.nextInt(40), 1f);
+    }
+    for (Semiring semiring : new Semiring[] {Semiring.PLUS_TIMES, Semiring.MIN_PLUS,
+        Semiring.LOR_LAND}) {
+      SparseMatrix full = a.multiply(b, semiring);
+      SparseMatrix masked = a.multiplyMasked(b, mask, semiring);
+      SparseMatrix rest = a.multiplyMaskedComplement(b, mask, semiring);
+      for (int i = 0; i < 40; i++) {
+        for (int j = 0; j < 40; j++) {
+          boolean inMask = mask.get(i, j) != 0f;
+          assertEquals(inMask ? full.get(i, j) : 0f, masked.get(i, j), delta);
+          assertEquals(inMask ? 0f : full.get(i, j), rest.get(i, j), delta);
+        }
+      }
+    }
+
+    // the compact form, and a dense right operand, give the same entries
+    SparseMatrix expected = a.multiplyMasked(b, mask, Semiring.PLUS_TIMES);
+    ArrayMatrix dense = new ArrayMatrix(40);
+    for (int i = 0; i < 40; i++) {
+      for (int j = 0; j < 40; j++) {
+        dense.set(i, j, b.get(i, j));
+      }
+    }
+    SparseMatrix fromDense = a.multiplyMasked(dense, mask, Semiring.PLUS_TIMES);
+    a.compact();
+    b.compact();
+    mask.compact();
+    SparseMatrix compact = a.multiplyMasked(b, mask, Semiring.PLUS_TIMES);
+    for (int i = 0; i < 40; i++) {
+      for (int j = 0; j < 40; j++) {
+        assertEquals(expected.get(i, j), compact.get(i, j), delta);
+        assertEquals(expected.get(i, j), fromDense.get(i, j), delta);
+      }
+    }
+  }
+
+  @Test
+  public void concurrentMask() {
+    Random random = new Random(13);
+    SparseMatrix a = new SparseMatrix(30);
+    SparseMatrix mask = new SparseMatrix(30);
+    ConcurrentSparseMatrix concurrentMask = new ConcurrentSparseMatrix(30);
+    for (int k = 0; k < 150; k++) {
+      a.set(random.nextInt(30), random.nextInt(30), random.nextInt(5) - 2);
+      int i = random.nextInt(30);
+      int j = random.nextInt(30);
+      mask.set(i, j, 1f);
+      concurrentMask.set(i, j, 1f);
+    }
+    SparseMatrix masked = a.multiplyMasked(a, concurrentMask, Semiring.MIN_PLUS);
+    SparseMatrix rest = a.multiplyMaskedComplement(a, concurrentMask, Semiring.MIN_PLUS);
+    SparseMatrix expectedMasked = a.multiplyMasked(a, mask, Semiring.MIN_PLUS);
+    SparseMatrix expectedRest = a.multiplyMaskedComplement(a, mask, Semiring.MIN_PLUS);
+    for (int i = 0; i < 30; i++) {
+      for (int j = 0; j < 30; j++) {
+        assertEquals(expectedMasked.get(i, j), masked.get(i, j), delta);
+        assertEquals(expectedRest.get(i, j), rest.get(i, j), delta);
+      }
+    }
+  }
+
+  @Test
+  public void triangleCount() {
+    // triangles 0-1-2 and 1-2-3, as a lower triangular adjacency matrix
+    SparseMatrix lower = new SparseMatrix(5);
+    int[][] edges = {{1, 0}, {2, 0}, {2, 1}, {3, 1}, {3, 2}, {4, 3}};
+    for (int[] edge : edges) {
+      lower.set(edge[0], edge[1], 1f);
+    }
+    // every entry (i, j) of L counts the paths i -> k -> j of L that close a triangle
+    SparseMatrix triangles = lower.multiplyMasked(lower, lower, Semiring.PLUS_TIMES);
+    float count = 0f;
+    for (int[] edge : edges) {
+      count += triangles.get(edge[0], edge[1]);
+    }
+    assertEquals(2f, count, delta);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maskSizeMismatch() {
+    graph().multiplyMasked(graph(), new SparseMatrix(5), Semiring.PLUS_TIMES);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void vectorLengthMismatch() {
+    graph().multiply(new float[5], new float[6], Semiring.PLUS_TIMES);
+  }
+}
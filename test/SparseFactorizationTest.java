@@ -0,0 +1,202 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import mat.ArrayMatrix;
+import mat.SparseCholesky;
+import mat.SparseLu;
+import mat.SparseMatrix;
+import mat.SquareMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the sparse direct factorizations.
+ */
+public class SparseFactorizationTest {
+
+  private float delta = 1e-3f;
+
+  // 5-point laplacian on a grid x grid mesh, scaled by the given factor
+  private static SquareMatrix laplacian(SquareMatrix matrix, int grid, float scale) {
+    for (int r = 0; r < grid; r++) {
+      for (int c = 0; c < grid; c++) {
+        int i = r * grid + c;
+        matrix.set(i, i, 4f * scale);
+        if (r > 0) {
+          matrix.set(i, i - grid, -scale);
+        }
+        if (r < grid - 1) {
+          matrix.set(i, i + grid, -scale);
+        }
+        if (c > 0) {
+          matrix.set(i, i - 1, -scale);
+        }
+        if (c < grid - 1) {
+          matrix.set(i, i + 1, -scale);
+        }
+      }
+    }
+    return matrix;
+  }
+
+  private static float[] multiply(SquareMatrix matrix, float[] x) {
+    int n = matrix.size();
+    float[] b = new float[n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        b[i] += matrix.get(i, j) * x[j];
+      }
+    }
+    return b;
+  }
+
+  private static float[] randomVector(int n, long seed) {
+    Random random = new Random(seed);
+    float[] x = new float[n];
+    for (int i = 0; i < n; i++) {
+      x[i] = random.nextFloat() * 2 - 1;
+    }
+    return x;
+  }
+
+  @Test(timeout = 10000)
+  public void choleskySolvesLaplacian() {
+    SquareMatrix a = laplacian(new SparseMatrix(400), 20, 1f);
+    float[] expected = randomVector(400, 1);
+    float[] x = new float[400];
+
+    SparseCholesky cholesky = new SparseCholesky(a);
+    cholesky.solve(multiply(a, expected), x);
+
+    for (int i = 0; i < 400; i++) {
+      assertEquals(expected[i], x[i], delta);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void choleskyOrderingReducesFill() {
+    // without reordering the band of width 20 fills in completely, about 400 * 21 entries
+    SquareMatrix a = laplacian(new SparseMatrix(400), 20, 1f);
+    SparseCholesky cholesky = new SparseCholesky(a);
+    assertTrue(cholesky.factorEntries() < 400 * 21);
+  }
+
+  @Test(timeout = 10000)
+  public void choleskyManyRightHandSidesAndRefactor() {
+    SquareMatrix a = laplacian(new SparseMatrix(100), 10, 1f);
+    SparseCholesky cholesky = new SparseCholesky(a);
+    for (int seed = 0; seed < 5; seed++) {
+      float[] expected = randomVector(100, seed);
+      float[] x = new float[100];
+      cholesky.solve(multiply(a, expected), x);
+      for (int i = 0; i < 100; i++) {
+        assertEquals(expected[i], x[i], delta);
+      }
+    }
+
+    SquareMatrix scaled = laplacian(new SparseMatrix(100), 10, 3f);
+    cholesky.refactor(scaled);
+    float[] expected = randomVector(100, 7);
+    float[] x = new float[100];
+    cholesky.solve(multiply(scaled, expected), x);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(expected[i], x[i], delta);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void choleskyArrayMatrix() {
+    SquareMatrix a = laplacian(new ArrayMatrix(100), 10, 1f);
+    float[] expected = randomVector(100, 3);
+    float[] x = new float[100];
+    new SparseCholesky(a).solve(multiply(a, expected), x);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(expected[i], x[i], delta);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void choleskyNotPositiveDefinite() {
+    SquareMatrix a = new SparseMatrix(2);
+    a.set(0, 0, 1f);
+    a.set(0, 1, 2f);
+    a.set(1, 0, 2f);
+    a.set(1, 1, 1f);
+    new SparseCholesky(a);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refactorDifferentPattern() {
+    SquareMatrix a = laplacian(new SparseMatrix(100), 10, 1f);
+    SparseCholesky cholesky = new SparseCholesky(a);
+    a.set(0, 99, 0.5f);
+    a.set(99, 0, 0.5f);
+    cholesky.refactor(a);
+  }
+
+  @Test(timeout = 10000)
+  public void luNeedsPivoting() {
+    // random non-symmetric matrix with a zero diagonal
+    int n = 200;
+    SquareMatrix a = new SparseMatrix(n);
+    Random random = new Random(5);
+    for (int i = 0; i < n; i++) {
+      a.set(i, (i + 1) % n, 5f);
+      for (int k = 0; k < 3; k++) {
+        int j = random.nextInt(n);
+        if (j != i && j != (i + 1) % n) {
+          a.set(i, j, random.nextFloat());
+        }
+      }
+    }
+
+    float[] expected = randomVector(n, 11);
+    float[] x = new float[n];
+    SparseLu lu = new SparseLu(a);
+    lu.solve(multiply(a, expected), x);
+    for (int i = 0; i < n; i++) {
+      assertEquals(expected[i], x[i], delta);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void luRefactor() {
+    int n = 100;
+    SquareMatrix a = new SparseMatrix(n);
+    SquareMatrix b = new SparseMatrix(n);
+    for (int i = 0; i < n; i++) {
+      a.set(i, i, 3f);
+      b.set(i, i, 0.001f);
+      if (i > 0) {
+        a.set(i, i - 1, -2f);
+        b.set(i, i - 1, 7f);
+      }
+      if (i < n - 1) {
+        a.set(i, i + 1, -0.5f);
+        b.set(i, i + 1, 0.5f);
+      }
+    }
+
+    // b is close to a scaled cyclic shift, so every column needs a row interchange
+    a.set(0, n - 1, 0.1f);
+    b.set(0, n - 1, 7f);
+
+    SparseLu lu = new SparseLu(a);
+    lu.refactor(b);
+    float[] expected = randomVector(n, 13);
+    float[] x = new float[n];
+    lu.solve(multiply(b, expected), x);
+    for (int i = 0; i < n; i++) {
+      assertEquals(expected[i], x[i], delta);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void luSingular() {
+    SquareMatrix a = new SparseMatrix(3);
+    a.set(0, 0, 1f);
+    a.set(1, 0, 1f);
+    a.set(2, 2, 1f);
+    new SparseLu(a);
+  }
+}
@@ -1,9 +1,25 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 import mat.ArrayMatrix;
+import mat.EntryCursor;
+import mat.ImmutableSparseMatrix;
+import mat.MaintainedProduct;
+import mat.MatrixEntry;
+import mat.Permutation;
+import mat.ScheduleStats;
+import mat.Semiring;
 import mat.SparseMatrix;
+import mat.SquareMatrix;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -324,7 +340,7 @@ public class SparseMatrixTest {
       a.set(rowIndexA, colIndexA, randomValA);
     }
 
-    SparseMatrix c = (SparseMatrix) a.add(b);
+    ArrayMatrix c = (ArrayMatrix) a.add(b);
 
     for (int i = 0; i < size; i++) {
       for (int j = 0; j < size; j++) {
@@ -333,6 +349,25 @@ public class SparseMatrixTest {
         assertEquals(expectedSum, result, delta);
       }
     }
+
+    // in place, in both forms of a
+    a.addTo(b);
+    a.compact();
+    a.addTo(b);
+    long entries = 0;
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        float expectedSum = expectedB[i][j] + expectedA[i][j] * 2;
+        assertEquals(expectedSum, b.get(i, j), 1e-5f);
+        entries += b.get(i, j) != 0f ? 1 : 0;
+      }
+    }
+    assertEquals(entries, b.nnz());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void addToSizeMismatch() {
+    sparseMatrix.addTo(new ArrayMatrix(5));
   }
 
   @Test(timeout = 10000)
@@ -397,16 +432,16 @@ public class SparseMatrixTest {
 
     // 40 percent density
     for (int i = 0; i < 0.4 * size; i++) {
-      // For Matrix B
-      int rowIndexB = new Random().nextInt(size);
-      int colIndexB = new Random().nextInt(size);
-      float randomValB = new Random().nextFloat();
+      // For Matrix A
+      int rowIndexA = new Random().nextInt(size);
+      int colIndexA = new Random().nextInt(size);
+      float randomValA = new Random().nextFloat();
 
-      expectedB[rowIndexB][colIndexB] = randomValB;
-      b.set(rowIndexB, colIndexB, randomValB);
+      expectedA[rowIndexA][colIndexA] = randomValA;
+      a.set(rowIndexA, colIndexA, randomValA);
     }
 
-    SparseMatrix c = (SparseMatrix) a.premul(b);
+    ArrayMatrix c = (ArrayMatrix) a.premul(b);
 
     for (int i = 0; i < size; i++) {
       for (int j = 0; j < size; j++) {
@@ -482,16 +517,16 @@ public class SparseMatrixTest {
 
     // 40 percent density
     for (int i = 0; i < 0.4 * size; i++) {
-      // For Matrix B
-      int rowIndexB = new Random().nextInt(size);
-      int colIndexB = new Random().nextInt(size);
-      float randomValB = new Random().nextFloat();
+      // For Matrix A
+      int rowIndexA = new Random().nextInt(size);
+      int colIndexA = new Random().nextInt(size);
+      float randomValA = new Random().nextFloat();
 
-      expectedB[rowIndexB][colIndexB] = randomValB;
-      b.set(rowIndexB, colIndexB, randomValB);
+      expectedA[rowIndexA][colIndexA] = randomValA;
+      a.set(rowIndexA, colIndexA, randomValA);
     }
 
-    SparseMatrix c = (SparseMatrix) a.postmul(b);
+    ArrayMatrix c = (ArrayMatrix) a.postmul(b);
 
     for (int i = 0; i < size; i++) {
       for (int j = 0; j < size; j++) {
@@ -548,4 +583,912 @@ public class SparseMatrixTest {
       }
     }
   }
-}
\ No newline at end of file
+
+  @Test(timeout = 10000)
+  public void permuteSymmetric() {
+    int size = 100;
+    float[][] expected = new float[size][size];
+    Random random = new Random(3);
+    for (int k = 0; k < 4 * size; k++) {
+      int i = random.nextInt(size);
+      int j = random.nextInt(size);
+      float value = random.nextFloat();
+      expected[i][j] = value;
+      sparseMatrix.set(i, j, value);
+    }
+
+    int[] order = new int[size];
+    for (int k = 0; k < size; k++) {
+      order[k] = (k * 37) % size;
+    }
+    Permutation p = new Permutation(order);
+    SparseMatrix permuted = sparseMatrix.permute(p);
+
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        assertEquals(expected[p.get(i)][p.get(j)], permuted.get(i, j), delta);
+        // the original matrix is not mutated
+        assertEquals(expected[i][j], sparseMatrix.get(i, j), delta);
+      }
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void permuteRowsAndColumnsThenBack() {
+    int size = 50;
+    Random random = new Random(4);
+    for (int k = 0; k < 3 * size; k++) {
+      sparseMatrix.set(random.nextInt(size), random.nextInt(size), random.nextFloat());
+    }
+    int[] rowOrder = new int[100];
+    int[] colOrder = new int[100];
+    for (int k = 0; k < 100; k++) {
+      rowOrder[k] = 99 - k;
+      colOrder[k] = (k + 7) % 100;
+    }
+    Permutation rowPerm = new Permutation(rowOrder);
+    Permutation colPerm = new Permutation(colOrder);
+
+    SparseMatrix restored = sparseMatrix.permute(rowPerm, colPerm)
+        .permute(rowPerm.inverse(), colPerm.inverse());
+    for (int i = 0; i < 100; i++) {
+      for (int j = 0; j < 100; j++) {
+        assertEquals(sparseMatrix.get(i, j), restored.get(i, j), delta);
+      }
+    }
+
+    // the permuted matrix is still fully functional
+    SparseMatrix sum = (SparseMatrix) restored.add(sparseMatrix);
+    assertEquals(2 * sparseMatrix.get(1, 1), sum.get(1, 1), delta);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void permuteSizeMismatch() {
+    sparseMatrix.permute(Permutation.identity(99));
+  }
+
+  @Test(timeout = 10000)
+  public void hugeMostlyEmptyMatrix() {
+    int size = 10_000_000;
+    SparseMatrix huge = new SparseMatrix(size);
+    // empty rows and columns take no space
+    assertEquals(true, huge.estimatedBytes() < 10_000_000);
+
+    huge.set(0, size - 1, 2f);
+    huge.set(size - 1, 0, 3f);
+    huge.set(5_000_000, 5_000_000, 4f);
+    assertEquals(3, huge.nnz());
+    assertEquals(2f, huge.get(0, size - 1), delta);
+    assertEquals(0f, huge.get(1, 1), delta);
+
+    SparseMatrix sum = (SparseMatrix) huge.add(huge);
+    assertEquals(6f, sum.get(size - 1, 0), delta);
+    assertEquals(3, sum.nnz());
+
+    // (0, n-1) * (n-1, 0) and its mirror, plus the middle entry squared
+    SparseMatrix product = (SparseMatrix) huge.postmul(huge);
+    assertEquals(6f, product.get(0, 0), delta);
+    assertEquals(6f, product.get(size - 1, size - 1), delta);
+    assertEquals(16f, product.get(5_000_000, 5_000_000), delta);
+    assertEquals(3, product.nnz());
+
+    assertEquals(4f, huge.freeze().get(5_000_000, 5_000_000), delta);
+  }
+
+  @Test
+  public void emptiedRowsAndColumnsAreReleased() {
+    SparseMatrix matrix = new SparseMatrix(5000);
+    long empty = matrix.estimatedBytes();
+    for (int k = 0; k < 5000; k++) {
+      matrix.set(k, (k * 7) % 5000, 1f);
+    }
+    long full = matrix.estimatedBytes();
+    for (int k = 0; k < 5000; k++) {
+      matrix.set(k, (k * 7) % 5000, 0f);
+    }
+    assertEquals(0, matrix.nnz());
+    assertEquals(empty, matrix.estimatedBytes());
+    assertEquals(true, full > empty);
+
+    // the matrix is still usable after its sentinels were dropped
+    matrix.set(3, 4, 5f);
+    assertEquals(5f, matrix.get(3, 4), delta);
+    assertEquals(10f, matrix.add(matrix).get(3, 4), delta);
+  }
+
+  @Test
+  public void setIdentityAfterEntries() {
+    sparseMatrix.set(3, 7, 2f);
+    sparseMatrix.setIdentity();
+    assertEquals(0f, sparseMatrix.get(3, 7), delta);
+    assertEquals(1f, sparseMatrix.get(99, 99), delta);
+    assertEquals(100, sparseMatrix.nnz());
+  }
+
+  @Test
+  public void pooledNodesMatchUnpooled() {
+    SparseMatrix pooled = new SparseMatrix(50);
+    pooled.enableNodePool(16);
+    SparseMatrix plain = new SparseMatrix(50);
+    Random random = new Random(7);
+    for (int k = 0; k < 20000; k++) {
+      int i = random.nextInt(50);
+      int j = random.nextInt(50);
+      float value = random.nextInt(3) == 0 ? 0f : random.nextInt(5);
+      pooled.set(i, j, value);
+      plain.set(i, j, value);
+    }
+    assertEquals(plain.nnz(), pooled.nnz());
+    for (int i = 0; i < 50; i++) {
+      for (int j = 0; j < 50; j++) {
+        assertEquals(plain.get(i, j), pooled.get(i, j), delta);
+      }
+    }
+    assertEquals(plain.postmul(plain).get(4, 9), pooled.postmul(pooled).get(4, 9), delta);
+  }
+
+  @Test
+  public void pooledNodesAreReused() {
+    SparseMatrix matrix = new SparseMatrix(100);
+    matrix.enableNodePool(8);
+    matrix.set(1, 2, 3f);
+    assertEquals(7, matrix.pooledNodes());
+    matrix.set(1, 2, 0f);
+    assertEquals(8, matrix.pooledNodes());
+    matrix.set(5, 6, 7f);
+    assertEquals(7, matrix.pooledNodes());
+
+    matrix.setIdentity();
+    assertEquals(8 + 8 * 12 - 100, matrix.pooledNodes());
+    assertEquals(1f, matrix.get(42, 42), delta);
+    assertEquals(0f, matrix.get(5, 6), delta);
+
+    matrix.disableNodePool();
+    assertEquals(0, matrix.pooledNodes());
+    matrix.set(5, 6, 7f);
+    assertEquals(7f, matrix.get(5, 6), delta);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nodePoolWithoutChunk() {
+    sparseMatrix.enableNodePool(0);
+  }
+
+  @Test
+  public void compactKeepsEveryOperation() {
+    Random random = new Random(11);
+    int size = 40;
+    SparseMatrix a = new SparseMatrix(size);
+    SparseMatrix b = new SparseMatrix(size);
+    ArrayMatrix denseA = new ArrayMatrix(size);
+    ArrayMatrix denseB = new ArrayMatrix(size);
+    ArrayMatrix other = new ArrayMatrix(size);
+    for (int k = 0; k < 200; k++) {
+      int i = random.nextInt(size);
+      int j = random.nextInt(size);
+      float value = random.nextInt(7) - 3;
+      a.set(i, j, value);
+      denseA.set(i, j, value);
+      i = random.nextInt(size);
+      j = random.nextInt(size);
+      b.set(i, j, value);
+      denseB.set(i, j, value);
+      other.set(random.nextInt(size), random.nextInt(size), random.nextInt(5));
+    }
+    long nnz = a.nnz();
+    long linkedBytes = a.estimatedBytes();
+    int[] band = {a.stats().getLowerBandwidth(), a.stats().getUpperBandwidth()};
+
+    a.compact();
+    assertEquals(true, a.isCompact());
+    assertEquals(nnz, a.nnz());
+    assertEquals(true, a.estimatedBytes() < linkedBytes);
+    assertEquals(band[0], a.stats().getLowerBandwidth());
+    assertEquals(band[1], a.stats().getUpperBandwidth());
+    assertSameEntries(denseA, a);
+
+    // compacted with linked, linked with compacted, and compacted with compacted
+    assertSameEntries(denseA.add(denseB), a.add(b));
+    assertSameEntries(denseA.postmul(denseB), a.postmul(b));
+    assertSameEntries(denseB.postmul(denseA), a.premul(b));
+    assertSameEntries(denseB.postmul(denseA), b.postmul(a));
+    b.compact();
+    assertSameEntries(denseA.postmul(denseB), a.postmul(b));
+    assertSameEntries(denseA.add(denseB), b.add(a));
+
+    // compacted with dense
+    assertSameEntries(denseA.add(other), other.add(a));
+    assertSameEntries(denseA.postmul(other), other.premul(a));
+    assertSameEntries(other.postmul(denseA), other.postmul(a));
+
+    assertSameEntries(denseA, a.freeze());
+    Permutation p = Permutation.identity(size);
+    assertSameEntries(denseA, a.permute(p));
+    assertEquals(true, a.isCompact());
+
+    // a change links the entries again
+    a.set(3, 5, 9f);
+    denseA.set(3, 5, 9f);
+    assertEquals(false, a.isCompact());
+    assertEquals(denseA.nnz(), a.nnz());
+    assertSameEntries(denseA, a);
+    assertSameEntries(denseA.postmul(denseB), a.postmul(b));
+  }
+
+  @Test
+  public void compactEmptyAndIdentity() {
+    sparseMatrix.compact();
+    assertEquals(0, sparseMatrix.nnz());
+    assertEquals(0f, sparseMatrix.get(4, 4), delta);
+    sparseMatrix.setIdentity();
+    sparseMatrix.compact();
+    sparseMatrix.compact();
+    assertEquals(1f, sparseMatrix.get(4, 4), delta);
+    assertEquals(100, sparseMatrix.postmul(sparseMatrix).nnz());
+    sparseMatrix.setIdentity();
+    assertEquals(false, sparseMatrix.isCompact());
+    assertEquals(100, sparseMatrix.nnz());
+  }
+
+  @Test
+  public void productRowsOfEveryShape() {
+    // rows of a with one and two entries, short rows, and rows that pick long rows of b
+    Random random = new Random(13);
+    SparseMatrix a = new SparseMatrix(200);
+    SparseMatrix b = new SparseMatrix(200);
+    for (int i = 0; i < 200; i++) {
+      int entries = i % 4 == 0 ? 1 : i % 4 == 1 ? 2 : 3 + random.nextInt(5);
+      for (int e = 0; e < entries; e++) {
+        a.set(i, random.nextInt(200), random.nextInt(5) - 2);
+      }
+      int length = i % 10 == 0 ? 60 : random.nextInt(3);
+      for (int e = 0; e < length; e++) {
+        b.set(i, random.nextInt(200), random.nextInt(5) - 2);
+      }
+    }
+    // rows of b that cancel out each other
+    b.set(7, 3, 1f);
+    b.set(8, 3, -1f);
+    a.set(5, 7, 1f);
+    a.set(5, 8, 1f);
+
+    SquareMatrix product = a.postmul(b);
+    long entries = 0;
+    for (int i = 0; i < 200; i++) {
+      for (int j = 0; j < 200; j++) {
+        float sum = 0f;
+        for (int k = 0; k < 200; k++) {
+          sum += a.get(i, k) * b.get(k, j);
+        }
+        assertEquals(sum, product.get(i, j), delta);
+        entries += sum != 0f ? 1 : 0;
+      }
+    }
+    assertEquals(entries, product.nnz());
+    assertSameEntries(product, b.premul(a));
+  }
+
+  @Test
+  public void multiplyParallelBalancesHeavyRows() {
+    // a hub row holding most of the entries, as in a power-law graph
+    Random random = new Random(17);
+    SparseMatrix a = new SparseMatrix(40000);
+    for (int j = 0; j < 40000; j += 2) {
+      a.set(3, j, 1f);
+    }
+    for (int k = 0; k < 20000; k++) {
+      a.set(random.nextInt(40000), random.nextInt(40000), random.nextInt(3) + 1);
+    }
+    float[] x = new float[40000];
+    for (int i = 0; i < 40000; i++) {
+      x[i] = i % 4;
+    }
+    float[] expected = new float[40000];
+    a.multiply(x, expected, Semiring.PLUS_TIMES);
+
+    for (boolean compact : new boolean[] {false, true}) {
+      if (compact) {
+        a.compact();
+      }
+      float[] y = new float[40000];
+      Arrays.fill(y, 9f);
+      ScheduleStats stats = a.multiplyParallel(x, y);
+      for (int i = 0; i < 40000; i++) {
+        assertEquals(expected[i], y[i], 1e-3f * Math.abs(expected[i]));
+      }
+      long weight = 0;
+      for (int t = 0; t < stats.getThreads(); t++) {
+        weight += stats.getWeight(t);
+        assertEquals(true, stats.getUtilization(t) >= 0 && stats.getUtilization(t) <= 1);
+      }
+      assertEquals(a.nnz(), weight);
+      // the entries are enough for several tasks, so the hub row is split between them
+      assertEquals(true, stats.getTasks() > 1);
+      assertEquals(true, stats.getImbalance() >= 1);
+    }
+  }
+
+  @Test
+  public void multiplyBlockOfVectors() {
+    Random random = new Random(19);
+    SparseMatrix a = new SparseMatrix(300);
+    for (int k = 0; k < 3000; k++) {
+      a.set(random.nextInt(300), random.nextInt(300), random.nextInt(5) - 2);
+    }
+    float[][] x = new float[300][4];
+    for (int i = 0; i < 300; i++) {
+      for (int v = 0; v < 4; v++) {
+        x[i][v] = random.nextInt(7) - 3;
+      }
+    }
+
+    for (boolean compact : new boolean[] {false, true}) {
+      if (compact) {
+        a.compact();
+      }
+      float[][] y = new float[300][4];
+      float[][] parallel = new float[300][4];
+      y[0][0] = 5f;
+      a.multiply(x, y);
+      a.multiplyParallel(x, parallel);
+      for (int v = 0; v < 4; v++) {
+        float[] column = new float[300];
+        float[] expected = new float[300];
+        for (int i = 0; i < 300; i++) {
+          column[i] = x[i][v];
+        }
+        a.multiply(column, expected, Semiring.PLUS_TIMES);
+        for (int i = 0; i < 300; i++) {
+          assertEquals(expected[i], y[i][v], delta);
+          assertEquals(expected[i], parallel[i][v], delta);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void productsWithDenseMatchInBothForms() {
+    Random random = new Random(23);
+    SparseMatrix a = new SparseMatrix(60);
+    ArrayMatrix b = new ArrayMatrix(60);
+    for (int k = 0; k < 300; k++) {
+      a.set(random.nextInt(60), random.nextInt(60), random.nextInt(5) - 2);
+      b.set(random.nextInt(60), random.nextInt(60), random.nextInt(5) - 2);
+    }
+    SquareMatrix postmul = a.postmul(b);
+    SquareMatrix premul = a.premul(b);
+    assertEquals(true, postmul instanceof ArrayMatrix);
+    for (int i = 0; i < 60; i++) {
+      for (int j = 0; j < 60; j++) {
+        float ab = 0f;
+        float ba = 0f;
+        for (int k = 0; k < 60; k++) {
+          ab += a.get(i, k) * b.get(k, j);
+          ba += b.get(i, k) * a.get(k, j);
+        }
+        assertEquals(ab, postmul.get(i, j), delta);
+        assertEquals(ba, premul.get(i, j), delta);
+      }
+    }
+    a.compact();
+    assertSameEntries(postmul, a.postmul(b));
+    assertSameEntries(premul, a.premul(b));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void multiplyBlockShapeMismatch() {
+    sparseMatrix.multiply(new float[100][3], new float[100][2]);
+  }
+
+  @Test
+  public void hadamardOfEveryForm() {
+    Random random = new Random(11);
+    SparseMatrix a = new SparseMatrix(40);
+    SparseMatrix b = new SparseMatrix(40);
+    ArrayMatrix dense = new ArrayMatrix(40);
+    for (int k = 0; k < 200; k++) {
+      a.set(random.nextInt(40), random.nextInt(40), random.nextInt(5) - 2);
+      b.set(random.nextInt(40), random.nextInt(40), random.nextInt(5) - 2);
+      dense.set(random.nextInt(40), random.nextInt(40), random.nextInt(5) - 2);
+    }
+    SquareMatrix product = a.hadamard(b);
+    SquareMatrix mixed = a.hadamard(dense);
+    assertEquals(true, product instanceof SparseMatrix);
+    assertEquals(true, mixed instanceof SparseMatrix);
+    long both = 0;
+    for (int i = 0; i < 40; i++) {
+      for (int j = 0; j < 40; j++) {
+        assertEquals(a.get(i, j) * b.get(i, j), product.get(i, j), delta);
+        assertEquals(a.get(i, j) * dense.get(i, j), mixed.get(i, j), delta);
+        both += a.get(i, j) * b.get(i, j) != 0f ? 1 : 0;
+      }
+    }
+    assertEquals(both, product.nnz());
+    assertSameEntries(mixed, dense.hadamard(a));
+    a.compact();
+    assertSameEntries(product, b.hadamard(a));
+    assertSameEntries(mixed, a.hadamard(dense));
+  }
+
+  @Test
+  public void kroneckerIsBuiltInSortedRows() {
+    Random random = new Random(12);
+    SparseMatrix a = new SparseMatrix(5);
+    SparseMatrix b = new SparseMatrix(7);
+    for (int k = 0; k < 10; k++) {
+      a.set(random.nextInt(5), random.nextInt(5), random.nextInt(5) - 2);
+      b.set(random.nextInt(7), random.nextInt(7), random.nextInt(5) - 2);
+    }
+    SquareMatrix product = a.kronecker(b);
+    assertEquals(35, product.size());
+    assertEquals(a.nnz() * b.nnz(), product.nnz());
+    for (int i = 0; i < 35; i++) {
+      for (int j = 0; j < 35; j++) {
+        assertEquals(a.get(i / 7, j / 7) * b.get(i % 7, j % 7), product.get(i, j), delta);
+      }
+    }
+    // the rows are in order, hence the structure matches the entries
+    assertEquals(true, ((SparseMatrix) product).isCompact());
+    assertEquals(product.nnz(), product.stats().getNnz());
+
+    ArrayMatrix dense = new ArrayMatrix(7);
+    for (int i = 0; i < 7; i++) {
+      for (int j = 0; j < 7; j++) {
+        dense.set(i, j, b.get(i, j));
+      }
+    }
+    assertSameEntries(product, a.kronecker(dense));
+    assertEquals(true, dense.kronecker(a) instanceof SparseMatrix);
+    SquareMatrix swapped = b.kronecker(a);
+    assertSameEntries(swapped, dense.kronecker(a));
+    assertEquals(product.nnz(), swapped.nnz());
+  }
+
+  @Test
+  public void mapKeepsSparsityWhenZeroMapsToZero() {
+    SparseMatrix a = new SparseMatrix(30);
+    a.set(3, 4, 2f);
+    a.set(10, 1, -3f);
+    a.set(29, 29, 0.5f);
+    SquareMatrix squared = a.map(x -> x * x);
+    assertEquals(true, squared instanceof SparseMatrix);
+    assertEquals(3, squared.nnz());
+    assertEquals(9f, squared.get(10, 1), delta);
+    // entries that map to 0 are not stored
+    assertEquals(2, a.map(x -> x > 0 ? x : 0f).nnz());
+
+    SquareMatrix shifted = a.map(x -> x + 1f);
+    assertEquals(true, shifted instanceof ArrayMatrix);
+    assertEquals(900, shifted.nnz());
+    assertEquals(3f, shifted.get(3, 4), delta);
+    assertEquals(1f, shifted.get(0, 0), delta);
+    a.compact();
+    assertSameEntries(squared, a.map(x -> x * x));
+  }
+
+  @Test
+  public void mapOfTwoMatricesMergesTheirEntries() {
+    Random random = new Random(13);
+    SparseMatrix a = new SparseMatrix(30);
+    SparseMatrix b = new SparseMatrix(30);
+    ArrayMatrix dense = new ArrayMatrix(30);
+    for (int k = 0; k < 100; k++) {
+      a.set(random.nextInt(30), random.nextInt(30), random.nextInt(5) - 2);
+      b.set(random.nextInt(30), random.nextInt(30), random.nextInt(5) - 2);
+      dense.set(random.nextInt(30), random.nextInt(30), random.nextInt(5) - 2);
+    }
+    SquareMatrix difference = a.map(b, (x, y) -> x - y);
+    SquareMatrix mixed = a.map(dense, (x, y) -> 2 * x - y);
+    SquareMatrix reversed = dense.map(a, (x, y) -> 2 * x - y);
+    SquareMatrix offset = a.map(b, (x, y) -> x + y + 1f);
+    assertEquals(true, difference instanceof SparseMatrix);
+    assertEquals(true, offset instanceof ArrayMatrix);
+    for (int i = 0; i < 30; i++) {
+      for (int j = 0; j < 30; j++) {
+        assertEquals(a.get(i, j) - b.get(i, j), difference.get(i, j), delta);
+        assertEquals(2 * a.get(i, j) - dense.get(i, j), mixed.get(i, j), delta);
+        assertEquals(2 * dense.get(i, j) - a.get(i, j), reversed.get(i, j), delta);
+        assertEquals(a.get(i, j) + b.get(i, j) + 1f, offset.get(i, j), delta);
+      }
+    }
+    assertSameEntries(a.add(b), a.map(b, (x, y) -> x + y));
+    b.compact();
+    assertSameEntries(difference, a.map(b, (x, y) -> x - y));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void hadamardSizeMismatch() {
+    sparseMatrix.hadamard(new SparseMatrix(99));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mapSizeMismatch() {
+    sparseMatrix.map(new ArrayMatrix(99), (x, y) -> x * y);
+  }
+
+  @Test
+  public void scaleInPlace() {
+    SparseMatrix a = new SparseMatrix(20);
+    a.set(1, 2, 3f);
+    a.set(5, 5, -2f);
+    a.set(19, 0, 1e-30f);
+    long modifications = a.modificationCount();
+    a.scale(2f);
+    assertEquals(6f, a.get(1, 2), delta);
+    assertEquals(-4f, a.get(5, 5), delta);
+    assertEquals(3, a.nnz());
+    assertEquals(true, a.modificationCount() > modifications);
+
+    // a product too small for a float is removed with its node
+    a.scale(1e-20f);
+    assertEquals(2, a.nnz());
+    assertEquals(0f, a.get(19, 0), delta);
+    a.set(19, 0, 7f);
+    assertEquals(3, a.stats().getNnz());
+
+    a.compact();
+    a.scale(-1f);
+    assertEquals(true, a.isCompact());
+    assertEquals(-7f, a.get(19, 0), delta);
+    a.scale(0f);
+    assertEquals(0, a.nnz());
+    assertEquals(0f, a.get(1, 2), delta);
+  }
+
+  @Test
+  public void axpyMergesIntoRowsAndColumns() {
+    Random random = new Random(14);
+    SparseMatrix a = new SparseMatrix(50);
+    SparseMatrix b = new SparseMatrix(50);
+    SparseMatrix c = new SparseMatrix(50);
+    for (int k = 0; k < 300; k++) {
+      a.set(random.nextInt(50), random.nextInt(50), random.nextInt(5) - 2);
+      b.set(random.nextInt(50), random.nextInt(50), random.nextInt(5) - 2);
+      c.set(random.nextInt(50), random.nextInt(50), random.nextInt(5) - 2);
+    }
+    // entries of b that cancel entries of a are removed
+    for (int i = 0; i < 50; i++) {
+      if (a.get(i, i) != 0f) {
+        b.set(i, i, -a.get(i, i) / 2);
+      }
+    }
+    SquareMatrix expected = a.add(b.add(b));
+    MaintainedProduct product = new MaintainedProduct(a, c);
+    a.axpy(2f, b);
+    assertSameEntries(expected, a);
+    assertEquals(expected.nnz(), a.nnz());
+    assertEquals(expected.nnz(), a.stats().getNnz());
+
+    // the columns are linked in order: the maintained product reads the columns of a, and set
+    // walks them to link new entries
+    assertSameEntries(a.postmul(c), product.get());
+    c.set(7, 3, 9f);
+    assertSameEntries(a.postmul(c), product.get());
+    for (int i = 0; i < 50; i++) {
+      a.set(i, (i * 7) % 50, i + 1f);
+    }
+    for (int i = 0; i < 50; i++) {
+      for (int j = 0; j < 50; j++) {
+        a.set(i, j, 0f);
+      }
+    }
+    assertEquals(0, a.nnz());
+    assertEquals(0, a.stats().getMaxColumnLength());
+
+    b.compact();
+    SquareMatrix doubled = b.add(b);
+    b.axpy(1f, b);
+    assertEquals(true, b.isCompact());
+    assertSameEntries(doubled, b);
+    b.axpy(1f, new ArrayMatrix(50));
+    assertSameEntries(doubled, b);
+  }
+
+  @Test
+  public void multiplyScaledAndAccumulated() {
+    Random random = new Random(15);
+    SparseMatrix a = new SparseMatrix(40);
+    for (int k = 0; k < 200; k++) {
+      a.set(random.nextInt(40), random.nextInt(40), random.nextInt(5) - 2);
+    }
+    float[] x = new float[40];
+    float[] y = new float[40];
+    float[] product = new float[40];
+    for (int i = 0; i < 40; i++) {
+      x[i] = random.nextInt(5) - 2;
+      y[i] = random.nextInt(5) - 2;
+    }
+    a.multiplyParallel(x, product);
+    float[] expected = new float[40];
+    for (int i = 0; i < 40; i++) {
+      expected[i] = 2f * product[i] - y[i];
+    }
+    a.multiply(2f, x, -1f, y);
+    assertEquals(true, Arrays.equals(expected, y));
+
+    // the previous contents are not read when beta is 0
+    Arrays.fill(y, Float.NaN);
+    a.compact();
+    a.multiply(1f, x, 0f, y);
+    assertEquals(true, Arrays.equals(product, y));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void axpySizeMismatch() {
+    sparseMatrix.axpy(1f, new SparseMatrix(99));
+  }
+
+  @Test
+  public void reductionsMatchEveryEntry() {
+    Random random = new Random(16);
+    SparseMatrix a = new SparseMatrix(300);
+    for (int k = 0; k < 30000; k++) {
+      a.set(random.nextInt(300), random.nextInt(300), random.nextInt(9) - 4);
+    }
+    // the rows are split between tasks, and a hub row crosses the ideal split points
+    for (int j = 0; j < 300; j++) {
+      a.set(150, j, j % 7 + 1);
+    }
+    assertReductions(a);
+    a.compact();
+    assertReductions(a);
+    assertReductions(a.freeze());
+
+    // a change is seen by the next call
+    float trace = a.trace();
+    a.set(3, 3, a.get(3, 3) + 10f);
+    assertEquals(trace + 10f, a.trace(), delta);
+    assertReductions(a);
+  }
+
+  @Test
+  public void reductionsOfSmallMatrices() {
+    assertEquals(0f, sparseMatrix.max(), delta);
+    assertEquals(0f, sparseMatrix.frobeniusNorm(), delta);
+    SparseMatrix a = new SparseMatrix(2);
+    a.set(0, 0, 3f);
+    a.set(0, 1, 4f);
+    a.set(1, 0, -1f);
+    assertEquals(4f, a.max(), delta);
+    assertEquals(-1f, a.min(), delta);
+    assertEquals(5.0990195f, a.frobeniusNorm(), 1e-6f);
+    assertEquals(7f, a.infinityNorm(), delta);
+    assertEquals(4f, a.oneNorm(), delta);
+    assertEquals(3f, a.trace(), delta);
+    // every entry is positive, so there is no 0 to count
+    a.set(1, 0, 1f);
+    a.set(1, 1, 2f);
+    assertEquals(1f, a.min(), delta);
+    // the arrays returned are copies
+    a.rowSums()[0] = 100f;
+    assertEquals(7f, a.rowSums()[0], delta);
+  }
+
+  @Test
+  public void nonZerosAreVisitedInOrder() {
+    Random random = new Random(17);
+    SparseMatrix a = new SparseMatrix(200);
+    for (int k = 0; k < 3000; k++) {
+      a.set(random.nextInt(200), random.nextInt(200), random.nextInt(9) - 4);
+    }
+    for (int j = 0; j < 200; j++) {
+      a.set(100, j, j + 1);
+    }
+    assertNonZeros(a);
+    a.compact();
+    assertNonZeros(a);
+    ImmutableSparseMatrix frozen = a.freeze();
+    assertNonZeros(frozen);
+    assertTrue(frozen.spliterator().hasCharacteristics(Spliterator.IMMUTABLE));
+    assertNonZeros(sparseMatrix);
+  }
+
+  @Test
+  public void spliteratorSplitsByWork() {
+    SparseMatrix a = new SparseMatrix(100);
+    // a hub row at the top holds most of the entries
+    for (int j = 0; j < 100; j++) {
+      a.set(0, j, 1f);
+    }
+    for (int i = 1; i < 100; i++) {
+      a.set(i, i, 2f);
+    }
+    Spliterator<MatrixEntry> suffix = a.spliterator();
+    assertEquals(a.nnz(), suffix.estimateSize());
+    assertTrue(suffix.hasCharacteristics(Spliterator.SIZED));
+    Spliterator<MatrixEntry> prefix = suffix.trySplit();
+    List<MatrixEntry> first = new ArrayList<>();
+    List<MatrixEntry> second = new ArrayList<>();
+    prefix.forEachRemaining(first::add);
+    suffix.forEachRemaining(second::add);
+    // the hub row alone is about half the work
+    assertTrue(first.size() >= 100 && first.size() < 130);
+    assertEquals(199, first.size() + second.size());
+    assertTrue(first.get(first.size() - 1).getRow() < second.get(0).getRow());
+  }
+
+  @Test
+  public void linkedCursorFailsAfterChange() {
+    sparseMatrix.set(4, 1, 1f);
+    sparseMatrix.set(4, 2, 2f);
+    EntryCursor cursor = sparseMatrix.rowCursor(4);
+    assertTrue(cursor.next());
+    sparseMatrix.set(4, 1, 0f);
+    try {
+      cursor.next();
+      fail();
+    } catch (ConcurrentModificationException e) {
+      // expected
+    }
+
+    // the cursors of a compacted matrix go on over the entries it had
+    sparseMatrix.compact();
+    cursor = sparseMatrix.columnCursor(2);
+    sparseMatrix.set(4, 2, 5f);
+    assertTrue(cursor.next());
+    assertEquals(4, cursor.getRow());
+    assertEquals(2f, cursor.getValue(), delta);
+    assertFalse(cursor.next());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rowCursorOutOfBounds() {
+    sparseMatrix.rowCursor(100);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void columnCursorOutOfBounds() {
+    sparseMatrix.columnCursor(-1);
+  }
+
+  @Test
+  public void setAllMatchesSetInOrder() {
+    Random random = new Random(18);
+    SparseMatrix batched = new SparseMatrix(100);
+    SparseMatrix single = new SparseMatrix(100);
+    // removed nodes are recycled by the next new entries of the batch
+    batched.enableNodePool(64);
+    for (int round = 0; round < 3; round++) {
+      // small ranges, so that cells repeat within a batch and some values are 0
+      int[] rows = new int[2000];
+      int[] cols = new int[2000];
+      float[] values = new float[2000];
+      for (int k = 0; k < rows.length; k++) {
+        rows[k] = random.nextInt(60);
+        cols[k] = random.nextInt(60);
+        values[k] = random.nextInt(5) - 1;
+        single.set(rows[k], cols[k], values[k]);
+      }
+      batched.setAll(rows, cols, values);
+      assertSameEntries(single, batched);
+      assertEquals(single.nnz(), batched.nnz());
+      assertNonZeros(batched);
+      if (round == 1) {
+        batched.compact();
+      }
+
+      float[] out = new float[rows.length];
+      batched.getAll(rows, cols, out);
+      for (int k = 0; k < rows.length; k++) {
+        assertEquals(single.get(rows[k], cols[k]), out[k], delta);
+      }
+    }
+  }
+
+  @Test
+  public void setAllChecksEveryCellFirst() {
+    sparseMatrix.set(1, 1, 5f);
+    long modifications = sparseMatrix.modificationCount();
+    try {
+      sparseMatrix.setAll(new int[] {1, 2, 100}, new int[] {1, 2, 3}, new float[] {0f, 1f, 1f});
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(5f, sparseMatrix.get(1, 1), delta);
+    assertEquals(1, sparseMatrix.nnz());
+    assertEquals(modifications, sparseMatrix.modificationCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getAllLengthMismatch() {
+    sparseMatrix.getAll(new int[] {1, 2}, new int[] {1, 2}, new float[1]);
+  }
+
+  // every way of reading the non-zero entries of the given matrix finds them all, in order
+  private void assertNonZeros(SquareMatrix matrix) {
+    int size = matrix.size();
+    List<MatrixEntry> entries = new ArrayList<>();
+    matrix.forEachNonZero((i, j, value) -> entries.add(new MatrixEntry(i, j, value)));
+    assertEquals(matrix.nnz(), entries.size());
+    long previous = -1;
+    for (MatrixEntry entry : entries) {
+      long position = (long) entry.getRow() * size + entry.getColumn();
+      assertTrue(position > previous);
+      assertEquals(matrix.get(entry.getRow(), entry.getColumn()), entry.getValue(), delta);
+      previous = position;
+    }
+
+    int k = 0;
+    for (int i = 0; i < size; i++) {
+      EntryCursor cursor = matrix.rowCursor(i);
+      while (cursor.next()) {
+        assertEquals(entries.get(k++),
+            new MatrixEntry(cursor.getRow(), cursor.getColumn(), cursor.getValue()));
+      }
+    }
+    assertEquals(entries.size(), k);
+    k = 0;
+    for (int j = 0; j < size; j++) {
+      EntryCursor cursor = matrix.columnCursor(j);
+      int row = -1;
+      while (cursor.next()) {
+        assertEquals(j, cursor.getColumn());
+        assertTrue(cursor.getRow() > row);
+        row = cursor.getRow();
+        assertEquals(matrix.get(row, j), cursor.getValue(), delta);
+        k++;
+      }
+    }
+    assertEquals(entries.size(), k);
+
+    assertEquals(entries, matrix.nonZeros().collect(Collectors.toList()));
+    assertEquals(entries, matrix.nonZeros().parallel().collect(Collectors.toList()));
+    List<MatrixEntry> advanced = new ArrayList<>();
+    Spliterator<MatrixEntry> spliterator = matrix.spliterator();
+    while (spliterator.tryAdvance(advanced::add)) {
+      // every entry is added by tryAdvance
+    }
+    assertEquals(entries, advanced);
+  }
+
+  // the reductions of the given matrix equal those computed from every entry
+  private void assertReductions(SquareMatrix matrix) {
+    int size = matrix.size();
+    float[] rowSums = matrix.rowSums();
+    float[] columnSums = matrix.columnSums();
+    double squares = 0;
+    float trace = 0f;
+    float oneNorm = 0f;
+    float infinityNorm = 0f;
+    float min = Float.POSITIVE_INFINITY;
+    float max = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < size; i++) {
+      float row = 0f;
+      float column = 0f;
+      float rowAbs = 0f;
+      float columnAbs = 0f;
+      for (int j = 0; j < size; j++) {
+        row += matrix.get(i, j);
+        column += matrix.get(j, i);
+        rowAbs += Math.abs(matrix.get(i, j));
+        columnAbs += Math.abs(matrix.get(j, i));
+        squares += matrix.get(i, j) * matrix.get(i, j);
+        min = Math.min(min, matrix.get(i, j));
+        max = Math.max(max, matrix.get(i, j));
+      }
+      // the values are small integers, so every sum is exact
+      assertEquals(row, rowSums[i], delta);
+      assertEquals(column, columnSums[i], delta);
+      trace += matrix.get(i, i);
+      oneNorm = Math.max(oneNorm, columnAbs);
+      infinityNorm = Math.max(infinityNorm, rowAbs);
+    }
+    assertEquals(trace, matrix.trace(), delta);
+    assertEquals(oneNorm, matrix.oneNorm(), delta);
+    assertEquals(infinityNorm, matrix.infinityNorm(), delta);
+    assertEquals((float) Math.sqrt(squares), matrix.frobeniusNorm(), delta);
+    assertEquals(min, matrix.min(), delta);
+    assertEquals(max, matrix.max(), delta);
+  }
+
+  // every entry of actual equals the entry of expected
+  private void assertSameEntries(SquareMatrix expected, SquareMatrix actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      for (int j = 0; j < expected.size(); j++) {
+        assertEquals(expected.get(i, j), actual.get(i, j), delta);
+      }
+    }
+  }
+}
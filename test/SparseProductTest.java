@@ -0,0 +1,103 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import mat.SparseMatrix;
+import mat.SparseProduct;
+import mat.SquareMatrix;
+import org.junit.Test;
+
+/**
+ * This class represents a Junit test class for the SparseProduct class.
+ */
+public class SparseProductTest {
+
+  private float delta = 0f;
+
+  // a random matrix with the given number of entries, and small integer values so that the sums
+  // are exact
+  private static SparseMatrix random(int size, int entries, long seed) {
+    Random random = new Random(seed);
+    SparseMatrix matrix = new SparseMatrix(size);
+    for (int k = 0; k < entries; k++) {
+      matrix.set(random.nextInt(size), random.nextInt(size), random.nextInt(4) + 1);
+    }
+    return matrix;
+  }
+
+  private static void assertSameEntries(SquareMatrix expected, SquareMatrix actual) {
+    for (int i = 0; i < expected.size(); i++) {
+      for (int j = 0; j < expected.size(); j++) {
+        assertEquals(expected.get(i, j), actual.get(i, j), 0f);
+      }
+    }
+    assertEquals(expected.nnz(), actual.nnz());
+  }
+
+  @Test
+  public void productMatchesPostmul() {
+    SparseMatrix a = random(60, 300, 1);
+    SparseMatrix b = random(60, 300, 2);
+    SparseProduct product = new SparseProduct(a, b);
+    SparseMatrix c = product.multiply(a, b);
+    assertSameEntries(a.postmul(b), c);
+    assertEquals(c.nnz(), product.nnz());
+    assertEquals(60, product.size());
+    assertTrue(c.isCompact());
+    assertTrue(product.getScheduleStats().getTasks() >= 1);
+
+    // the result can be changed like any other matrix
+    c.set(0, 0, 7f);
+    assertEquals(7f, c.get(0, 0), delta);
+  }
+
+  @Test
+  public void symbolicPhaseIsReusedForNewValues() {
+    SparseMatrix a = random(40, 150, 3);
+    SparseMatrix b = random(40, 150, 4);
+    SparseProduct product = new SparseProduct(a, b);
+    for (int step = 1; step <= 3; step++) {
+      // scale the values, keeping the patterns
+      SparseMatrix scaledA = new SparseMatrix(40);
+      SparseMatrix scaledB = new SparseMatrix(40);
+      for (int i = 0; i < 40; i++) {
+        for (int j = 0; j < 40; j++) {
+          scaledA.set(i, j, a.get(i, j) * step);
+          scaledB.set(i, j, b.get(i, j) * (step + 1));
+        }
+      }
+      assertSameEntries(scaledA.postmul(scaledB), product.multiply(scaledA, scaledB));
+    }
+  }
+
+  @Test
+  public void cancelledEntriesAreNotStored() {
+    SparseMatrix a = new SparseMatrix(3);
+    a.set(0, 0, 1f);
+    a.set(0, 1, 1f);
+    SparseMatrix b = new SparseMatrix(3);
+    b.set(0, 2, 2f);
+    b.set(1, 2, -2f);
+    b.set(1, 1, 3f);
+    SparseProduct product = new SparseProduct(a, b);
+    SparseMatrix c = product.multiply(a, b);
+    assertEquals(2, product.nnz());
+    assertEquals(1, c.nnz());
+    assertEquals(0f, c.get(0, 2), delta);
+    assertEquals(3f, c.get(0, 1), delta);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void patternMismatch() {
+    SparseMatrix a = random(10, 20, 5);
+    SparseMatrix b = random(10, 20, 6);
+    SparseProduct product = new SparseProduct(a, b);
+    b.set(9, 9, b.get(9, 9) == 0f ? 1f : 0f);
+    product.multiply(a, b);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sizeMismatch() {
+    new SparseProduct(new SparseMatrix(4), new SparseMatrix(5));
+  }
+}